@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.cxf.dosgi.discovery.local.util.ScopeIndex;
 import org.apache.cxf.dosgi.discovery.zookeeper.ZooKeeperDiscovery;
 import org.apache.cxf.dosgi.discovery.zookeeper.util.Utils;
 import org.apache.zookeeper.ZooKeeper;
@@ -36,8 +37,6 @@ import org.osgi.service.remoteserviceadmin.EndpointListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static org.apache.cxf.dosgi.discovery.local.util.Utils.matchFilter;
-
 /**
  * Manages the EndpointListeners and the scopes they are interested in.
  * For each scope with interested EndpointListeners an InterfaceMonitor is created.
@@ -55,6 +54,8 @@ public class InterfaceMonitorManager {
             new HashMap<ServiceReference<EndpointListener>, List<String>>();
     // map of scopes and their interest data
     private final Map<String, Interest> interests = new HashMap<String, Interest>();
+    // the compiled scopes of the interests
+    private final ScopeIndex scopeIndex = new ScopeIndex();
 
     protected static class Interest {
         List<ServiceReference<EndpointListener>> endpointListeners = 
@@ -98,6 +99,7 @@ public class InterfaceMonitorManager {
             // create interest, add listener and start monitor
             interest = new Interest();
             interests.put(scope, interest);
+            scopeIndex.add(scope);
             interest.endpointListeners.add(endpointListener); // add it before monitor starts so we don't miss events
             interest.monitor = createInterfaceMonitor(scope, objClass, interest);
             interest.monitor.start();
@@ -138,6 +140,7 @@ public class InterfaceMonitorManager {
                 if (interest.endpointListeners.isEmpty()) {
                     interest.monitor.close();
                     interests.remove(scope);
+                    scopeIndex.remove(scope);
                 }
             }
         }
@@ -161,16 +164,18 @@ public class InterfaceMonitorManager {
 
     private void notifyListeners(EndpointDescription endpoint, String currentScope, boolean isAdded,
             List<ServiceReference<EndpointListener>> endpointListeners) {
+        // the scope is the same for all listeners, so it is matched only once
+        LOG.trace("matching {} against {}", endpoint, currentScope);
+        if (!scopeIndex.matches(currentScope, endpoint.getProperties())) {
+            return;
+        }
+        LOG.debug("Matched {} against {}", endpoint, currentScope);
         for (ServiceReference<EndpointListener> endpointListenerRef : endpointListeners) {
             EndpointListener service = bctx.getService(endpointListenerRef);
             try {
                 EndpointListener endpointListener = (EndpointListener)service;
-                LOG.trace("matching {} against {}", endpoint, currentScope);
-                if (matchFilter(bctx, currentScope, endpoint)) {
-                    LOG.debug("Matched {} against {}", endpoint, currentScope);
-                    notifyListener(endpoint, currentScope, isAdded, endpointListenerRef.getBundle(),
-                                   endpointListener);
-                }
+                notifyListener(endpoint, currentScope, isAdded, endpointListenerRef.getBundle(),
+                               endpointListener);
             } finally {
                 if (service != null) {
                     bctx.ungetService(endpointListenerRef);
@@ -198,6 +203,9 @@ public class InterfaceMonitorManager {
         for (Interest interest : interests.values()) {
             interest.monitor.close();
         }
+        for (String scope : interests.keySet()) {
+            scopeIndex.remove(scope);
+        }
         interests.clear();
         endpointListenerScopes.clear();
     }
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.discovery.local.cache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches what is parsed from the descriptors of bundles, keyed by bundle id and valid as long as
+ * the bundle was not updated since they were parsed.
+ * <p>
+ * The parsed elements are also persisted in the data area of the bundle owning the cache, so the
+ * descriptors of unchanged bundles are not parsed again after a restart. The elements must therefore
+ * be serializable; a file holding elements of another type, e.g. of an older format, is ignored.
+ * <p>
+ * Besides the local discovery, this package is inlined by bundles which cache descriptors the same way.
+ *
+ * @param <T> the type of the parsed elements
+ */
+public abstract class BundleDescriptorCache<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BundleDescriptorCache.class);
+
+    private final BundleContext bundleContext;
+    private final String dirName;
+    private final Class<?> elementType;
+    private final Map<Long, Entry<T>> entries = new ConcurrentHashMap<Long, Entry<T>>();
+
+    /**
+     * @param bundleContext the context providing the data area, or null to only cache in memory
+     * @param dirName the name of the directory in the data area holding the cache files
+     * @param elementType the type of the parsed elements
+     */
+    protected BundleDescriptorCache(BundleContext bundleContext, String dirName, Class<?> elementType) {
+        this.bundleContext = bundleContext;
+        this.dirName = dirName;
+        this.elementType = elementType;
+    }
+
+    /**
+     * Returns the elements parsed from the descriptors of the given bundle, parsing them only if
+     * they are not cached for its current version.
+     *
+     * @param bundle the bundle
+     * @return the unmodifiable list of elements
+     */
+    public List<T> get(Bundle bundle) {
+        long bundleId = bundle.getBundleId();
+        long lastModified = bundle.getLastModified();
+        Entry<T> entry = entries.get(bundleId);
+        if (entry == null || entry.lastModified != lastModified) {
+            entry = load(bundleId, lastModified);
+            if (entry == null) {
+                entry = new Entry<T>(lastModified, Collections.unmodifiableList(new ArrayList<T>(parse(bundle))));
+                store(bundleId, entry);
+            }
+            entries.put(bundleId, entry);
+        }
+        return entry.elements;
+    }
+
+    /**
+     * Drops the cached elements of an uninstalled bundle.
+     *
+     * @param bundle the bundle
+     */
+    public void remove(Bundle bundle) {
+        entries.remove(bundle.getBundleId());
+        File file = getFile(bundle.getBundleId());
+        if (file != null && file.exists() && !file.delete()) {
+            LOG.debug("Could not delete {}", file);
+        }
+    }
+
+    /**
+     * Parses the descriptors of the given bundle.
+     *
+     * @param bundle the bundle
+     * @return the parsed elements
+     */
+    protected abstract List<T> parse(Bundle bundle);
+
+    private File getFile(long bundleId) {
+        File dir = bundleContext == null ? null : bundleContext.getDataFile(dirName);
+        return dir == null ? null : new File(dir, bundleId + ".ser");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Entry<T> load(long bundleId, long lastModified) {
+        File file = getFile(bundleId);
+        if (file == null || !file.isFile()) {
+            return null;
+        }
+        try {
+            ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+            try {
+                if (in.readLong() != lastModified) {
+                    return null;
+                }
+                Object elements = in.readObject();
+                if (!(elements instanceof ArrayList)) {
+                    return null;
+                }
+                for (Object element : (List<?>) elements) {
+                    if (!elementType.isInstance(element)) {
+                        return null;
+                    }
+                }
+                return new Entry<T>(lastModified, Collections.unmodifiableList((List<T>) elements));
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOG.debug("Ignoring unreadable cache file " + file, e);
+            return null;
+        }
+    }
+
+    private void store(long bundleId, Entry<T> entry) {
+        File file = getFile(bundleId);
+        if (file == null || !file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+            return;
+        }
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+            try {
+                out.writeLong(entry.lastModified);
+                out.writeObject(new ArrayList<T>(entry.elements));
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            // e.g. an element which is not serializable
+            LOG.debug("Could not persist the descriptors of bundle " + bundleId, e);
+            if (!file.delete()) {
+                LOG.debug("Could not delete {}", file);
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+
+        final long lastModified;
+        final List<T> elements;
+
+        Entry(long lastModified, List<T> elements) {
+            this.lastModified = lastModified;
+            this.elements = elements;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.discovery.local.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cxf.dosgi.discovery.local.cache.BundleDescriptorCache;
+import org.apache.cxf.dosgi.endpointdesc.EndpointDescriptionBundleParser;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+/**
+ * Caches the endpoint descriptions declared by bundles as their properties, which are persisted
+ * in the data area of this bundle.
+ */
+class EndpointDescriptionCache extends BundleDescriptorCache<Map<String, Object>> {
+
+    static final String CACHE_DIR = "endpoint-descriptions";
+
+    private final EndpointDescriptionBundleParser bundleParser;
+
+    EndpointDescriptionCache(BundleContext bundleContext, EndpointDescriptionBundleParser bundleParser) {
+        super(bundleContext, CACHE_DIR, Map.class);
+        this.bundleParser = bundleParser;
+    }
+
+    /**
+     * Returns the endpoint descriptions declared by the given bundle, parsing them only if
+     * they are not cached for its current version.
+     */
+    List<EndpointDescription> getEndpointDescriptions(Bundle bundle) {
+        List<Map<String, Object>> properties = get(bundle);
+        List<EndpointDescription> endpoints = new ArrayList<EndpointDescription>(properties.size());
+        for (Map<String, Object> props : properties) {
+            endpoints.add(new EndpointDescription(props));
+        }
+        return endpoints;
+    }
+
+    @Override
+    protected List<Map<String, Object>> parse(Bundle bundle) {
+        List<EndpointDescription> endpoints = bundleParser.getAllEndpointDescriptions(bundle);
+        List<Map<String, Object>> properties = new ArrayList<Map<String, Object>>(endpoints.size());
+        for (EndpointDescription endpoint : endpoints) {
+            properties.add(new HashMap<String, Object>(endpoint.getProperties()));
+        }
+        return properties;
+    }
+}
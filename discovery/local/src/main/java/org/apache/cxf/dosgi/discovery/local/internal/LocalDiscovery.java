@@ -22,11 +22,21 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.cxf.dosgi.discovery.local.util.ScopeIndex;
 import org.apache.cxf.dosgi.discovery.local.util.Utils;
 import org.apache.cxf.dosgi.endpointdesc.EndpointDescriptionBundleParser;
 import org.osgi.framework.Bundle;
@@ -37,9 +47,13 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
 import org.osgi.service.remoteserviceadmin.EndpointListener;
 import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class LocalDiscovery implements BundleListener {
 
+    private static final Logger LOG = LoggerFactory.getLogger(LocalDiscovery.class);
+
     // this is effectively a set which allows for multiple service descriptions with the
     // same interface name but different properties and takes care of itself with respect to concurrency
     ConcurrentHashMap<EndpointDescription, Bundle> endpointDescriptions =
@@ -48,13 +62,31 @@ public class LocalDiscovery implements BundleListener {
         new HashMap<EndpointListener, Collection<String>>();
     Map<String, Collection<EndpointListener>> filterToListeners =
         new HashMap<String, Collection<EndpointListener>>();
+    // the filters of filterToListeners, guarded by listenerToFilters
+    final ScopeIndex scopeIndex = new ScopeIndex();
     final BundleContext bundleContext;
 
     EndpointDescriptionBundleParser bundleParser;
+    EndpointDescriptionCache descriptionCache;
     ServiceTracker<EndpointListener, EndpointListener> listenerTracker;
+    // the started bundles by the number of their start, so that the descriptors parsed for an
+    // earlier start are ignored; also guards adding and removing the endpoints declared by bundles
+    private final Map<Bundle, Long> startedBundles = new HashMap<Bundle, Long>();
+    private long starts;
+    private final ExecutorService execService;
 
     public LocalDiscovery(BundleContext bc) {
+        this(bc, new ThreadPoolExecutor(5, 5, 50, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()));
+    }
+
+    /**
+     * @param bc the bundle context
+     * @param execService parses the descriptors of started bundles off the bundle event thread
+     */
+    LocalDiscovery(BundleContext bc, ExecutorService execService) {
         this.bundleParser = new EndpointDescriptionBundleParser();
+        this.descriptionCache = new EndpointDescriptionCache(bc, bundleParser);
+        this.execService = execService;
         bundleContext = bc;
 
         listenerTracker = new ServiceTracker<EndpointListener, EndpointListener>(bundleContext, 
@@ -96,9 +128,25 @@ public class LocalDiscovery implements BundleListener {
             return;
         }
 
+        // parse the descriptors in parallel, but add the endpoints in bundle order
+        Map<Bundle, Future<List<EndpointDescription>>> parsed
+            = new LinkedHashMap<Bundle, Future<List<EndpointDescription>>>();
+        Map<Bundle, Long> startNumbers = new HashMap<Bundle, Long>();
         for (Bundle b : bundles) {
             if (b.getState() == Bundle.ACTIVE) {
-                findDeclaredRemoteServices(b);
+                startNumbers.put(b, markStarted(b));
+                parsed.put(b, execService.submit(new DescriptorParser(b)));
+            }
+        }
+        for (Map.Entry<Bundle, Future<List<EndpointDescription>>> entry : parsed.entrySet()) {
+            try {
+                addDeclaredRemoteServices(entry.getKey(), startNumbers.get(entry.getKey()),
+                                          entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOG.warn("Could not read the endpoint descriptions of bundle " + entry.getKey(), e.getCause());
             }
         }
     }
@@ -117,6 +165,7 @@ public class LocalDiscovery implements BundleListener {
                 if (listeners == null) {
                     listeners = new ArrayList<EndpointListener>();
                     filterToListeners.put(filter, listeners);
+                    scopeIndex.add(filter);
                 }
                 listeners.add(endpointListener);
             }
@@ -144,6 +193,7 @@ public class LocalDiscovery implements BundleListener {
                     listeners.remove(endpointListener);
                     if (listeners.isEmpty()) {
                         filterToListeners.remove(filter);
+                        scopeIndex.remove(filter);
                     }
                 }
             }
@@ -154,11 +204,8 @@ public class LocalDiscovery implements BundleListener {
         // return a copy of matched filters/listeners so that caller doesn't need to hold locks while triggering events
         Map<String, Collection<EndpointListener>> matched = new HashMap<String, Collection<EndpointListener>>();
         synchronized (listenerToFilters) {
-            for (Entry<String, Collection<EndpointListener>> entry : filterToListeners.entrySet()) {
-                String filter = entry.getKey();
-                if (Utils.matchFilter(bundleContext, filter, endpoint)) {
-                    matched.put(filter, new ArrayList<EndpointListener>(entry.getValue()));
-                }
+            for (String filter : scopeIndex.getMatchingScopes(endpoint.getProperties())) {
+                matched.put(filter, new ArrayList<EndpointListener>(filterToListeners.get(filter)));
             }
         }
         return matched;
@@ -167,38 +214,87 @@ public class LocalDiscovery implements BundleListener {
     public void shutDown() {
         bundleContext.removeBundleListener(this);
         listenerTracker.close();
+        execService.shutdown();
     }
 
     // BundleListener method
     public void bundleChanged(BundleEvent be) {
+        Bundle bundle = be.getBundle();
         switch (be.getType()) {
         case BundleEvent.STARTED:
-            findDeclaredRemoteServices(be.getBundle());
+            bundleStarted(bundle);
             break;
         case BundleEvent.STOPPED:
-            removeServicesDeclaredInBundle(be.getBundle());
+            removeServicesDeclaredInBundle(bundle);
+            break;
+        case BundleEvent.UNINSTALLED:
+            descriptionCache.remove(bundle);
             break;
         default:
         }
     }
 
-    private void findDeclaredRemoteServices(Bundle bundle) {
-        List<EndpointDescription> endpoints = bundleParser.getAllEndpointDescriptions(bundle);
-        for (EndpointDescription endpoint : endpoints) {
-            endpointDescriptions.put(endpoint, bundle);
+    private long markStarted(Bundle bundle) {
+        synchronized (startedBundles) {
+            long start = ++starts;
+            startedBundles.put(bundle, start);
+            return start;
+        }
+    }
+
+    private void bundleStarted(final Bundle bundle) {
+        final long start = markStarted(bundle);
+        try {
+            execService.execute(new Runnable() {
+                public void run() {
+                    try {
+                        addDeclaredRemoteServices(bundle, start, new DescriptorParser(bundle).call());
+                    } catch (RuntimeException e) {
+                        LOG.warn("Could not read the endpoint descriptions of bundle " + bundle, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Ignoring bundle {} started during shutdown", bundle);
+        }
+    }
+
+    private void addDeclaredRemoteServices(Bundle bundle, long start, List<EndpointDescription> endpoints) {
+        // the listeners are notified outside the lock, so that they cannot block bundle events
+        List<EndpointDescription> added = new ArrayList<EndpointDescription>(endpoints.size());
+        synchronized (startedBundles) {
+            // the bundle may have been stopped, or stopped and started again, while its descriptors
+            // were parsed; in the latter case the endpoints are added for the latest start only
+            Long current = startedBundles.get(bundle);
+            if (current == null || current != start) {
+                return;
+            }
+            for (EndpointDescription endpoint : endpoints) {
+                endpointDescriptions.put(endpoint, bundle);
+                added.add(endpoint);
+            }
+        }
+        for (EndpointDescription endpoint : added) {
             addedEndpointDescription(endpoint);
         }
     }
 
     private void removeServicesDeclaredInBundle(Bundle bundle) {
-        for (Iterator<Entry<EndpointDescription, Bundle>> i = endpointDescriptions.entrySet().iterator();
-            i.hasNext();) {
-            Entry<EndpointDescription, Bundle> entry = i.next();
-            if (bundle.equals(entry.getValue())) {
-                removedEndpointDescription(entry.getKey());
-                i.remove();
+        List<EndpointDescription> removed = new ArrayList<EndpointDescription>();
+        synchronized (startedBundles) {
+            startedBundles.remove(bundle);
+            for (Iterator<Entry<EndpointDescription, Bundle>> i = endpointDescriptions.entrySet().iterator();
+                i.hasNext();) {
+                Entry<EndpointDescription, Bundle> entry = i.next();
+                if (bundle.equals(entry.getValue())) {
+                    removed.add(entry.getKey());
+                    i.remove();
+                }
             }
         }
+        for (EndpointDescription endpoint : removed) {
+            removedEndpointDescription(endpoint);
+        }
     }
 
     private void addedEndpointDescription(EndpointDescription endpoint) {
@@ -213,17 +309,13 @@ public class LocalDiscovery implements BundleListener {
         for (Map.Entry<String, Collection<EndpointListener>> entry : getMatchingListeners(endpoint).entrySet()) {
             String filter = entry.getKey();
             for (EndpointListener listener : entry.getValue()) {
-                triggerCallbacks(listener, filter, endpoint, added);
+                triggerCallback(listener, filter, endpoint, added);
             }
         }
     }
 
-    private void triggerCallbacks(EndpointListener endpointListener, String filter,
+    private static void triggerCallback(EndpointListener endpointListener, String filter,
             EndpointDescription endpoint, boolean added) {
-        if (!Utils.matchFilter(bundleContext, filter, endpoint)) {
-            return;
-        }
-
         if (added) {
             endpointListener.endpointAdded(endpoint, filter);
         } else {
@@ -234,9 +326,23 @@ public class LocalDiscovery implements BundleListener {
     private void triggerCallbacks(Collection<String> filters, EndpointListener endpointListener) {
         for (String filter : filters) {
             for (EndpointDescription endpoint : endpointDescriptions.keySet()) {
-                triggerCallbacks(endpointListener, filter, endpoint, true);
+                if (scopeIndex.matches(filter, endpoint.getProperties())) {
+                    triggerCallback(endpointListener, filter, endpoint, true);
+                }
             }
         }
     }
 
+    private final class DescriptorParser implements Callable<List<EndpointDescription>> {
+
+        private final Bundle bundle;
+
+        DescriptorParser(Bundle bundle) {
+            this.bundle = bundle;
+        }
+
+        public List<EndpointDescription> call() {
+            return descriptionCache.getEndpointDescriptions(bundle);
+        }
+    }
 }
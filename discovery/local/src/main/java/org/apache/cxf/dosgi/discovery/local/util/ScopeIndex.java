@@ -0,0 +1,320 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.discovery.local.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of compiled scope filters which finds the scopes matching a set of endpoint
+ * properties without evaluating every scope.
+ * <p>
+ * Each scope is filed under one equality term of its top-level conjunction, preferring the
+ * objectClass term, e.g. <code>(&amp;(objectClass=org.example.Foo)(zone=eu))</code> is filed under
+ * objectClass <code>org.example.Foo</code>. Only the scopes filed under a value of the endpoint,
+ * and the scopes without such a term, are evaluated against it.
+ */
+public class ScopeIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScopeIndex.class);
+    private static final String OBJECTCLASS = Constants.OBJECTCLASS.toLowerCase(Locale.ENGLISH);
+
+    // compiled filters by scope
+    private final Map<String, Filter> filters = new HashMap<String, Filter>();
+    // scopes by the lower case attribute name and value of the term they are filed under
+    private final Map<String, Map<String, Set<String>>> scopesByTerm
+        = new HashMap<String, Map<String, Set<String>>>();
+    // scopes which have no indexable term
+    private final Set<String> unindexed = new LinkedHashSet<String>();
+
+    /**
+     * Adds a scope to the index.
+     *
+     * @param scope an LDAP filter
+     * @return false if the scope is already indexed or is not a valid filter
+     */
+    public synchronized boolean add(String scope) {
+        if (filters.containsKey(scope)) {
+            return false;
+        }
+        Filter filter = createFilter(scope);
+        if (filter == null) {
+            return false;
+        }
+        filters.put(scope, filter);
+        String[] term = getIndexTerm(scope);
+        if (term == null) {
+            unindexed.add(scope);
+        } else {
+            Map<String, Set<String>> scopesByValue = scopesByTerm.get(term[0]);
+            if (scopesByValue == null) {
+                scopesByValue = new HashMap<String, Set<String>>();
+                scopesByTerm.put(term[0], scopesByValue);
+            }
+            Set<String> scopes = scopesByValue.get(term[1]);
+            if (scopes == null) {
+                scopes = new LinkedHashSet<String>();
+                scopesByValue.put(term[1], scopes);
+            }
+            scopes.add(scope);
+        }
+        return true;
+    }
+
+    public synchronized void remove(String scope) {
+        if (filters.remove(scope) == null) {
+            return;
+        }
+        String[] term = getIndexTerm(scope);
+        if (term == null) {
+            unindexed.remove(scope);
+            return;
+        }
+        Map<String, Set<String>> scopesByValue = scopesByTerm.get(term[0]);
+        Set<String> scopes = scopesByValue.get(term[1]);
+        scopes.remove(scope);
+        if (scopes.isEmpty()) {
+            scopesByValue.remove(term[1]);
+            if (scopesByValue.isEmpty()) {
+                scopesByTerm.remove(term[0]);
+            }
+        }
+    }
+
+    public synchronized boolean contains(String scope) {
+        return filters.containsKey(scope);
+    }
+
+    public synchronized int size() {
+        return filters.size();
+    }
+
+    /**
+     * Returns the indexed scopes which match the given properties.
+     *
+     * @param properties the endpoint properties
+     * @return the matching scopes
+     */
+    public List<String> getMatchingScopes(Map<String, ?> properties) {
+        Dictionary<String, Object> dict = new Hashtable<String, Object>(properties);
+        List<String> matching = new ArrayList<String>();
+        synchronized (this) {
+            for (String scope : getCandidates(properties)) {
+                if (filters.get(scope).match(dict)) {
+                    matching.add(scope);
+                }
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Checks whether a single scope matches the given properties, using the compiled
+     * filter if the scope is indexed.
+     *
+     * @param scope an LDAP filter
+     * @param properties the endpoint properties
+     * @return true if the scope matches
+     */
+    public boolean matches(String scope, Map<String, ?> properties) {
+        Filter filter;
+        synchronized (this) {
+            filter = filters.get(scope);
+        }
+        if (filter == null) {
+            filter = scope == null ? null : createFilter(scope);
+        }
+        return filter != null && filter.match(new Hashtable<String, Object>(properties));
+    }
+
+    // must be called while holding the lock on this
+    private Collection<String> getCandidates(Map<String, ?> properties) {
+        if (scopesByTerm.isEmpty()) {
+            return unindexed;
+        }
+        Set<String> candidates = new LinkedHashSet<String>(unindexed);
+        for (Map.Entry<String, ?> property : properties.entrySet()) {
+            String name = property.getKey().toLowerCase(Locale.ENGLISH);
+            Map<String, Set<String>> scopesByValue = scopesByTerm.get(name);
+            if (scopesByValue == null) {
+                continue;
+            }
+            Collection<?> values = getValues(property.getValue());
+            if (values == null) {
+                // not a string value, so the filter has to decide
+                for (Set<String> scopes : scopesByValue.values()) {
+                    candidates.addAll(scopes);
+                }
+                continue;
+            }
+            for (Object value : values) {
+                Set<String> scopes = value instanceof String ? scopesByValue.get(value) : null;
+                if (scopes != null) {
+                    candidates.addAll(scopes);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the string values of a property, or null if it has values of other types.
+     */
+    private static Collection<?> getValues(Object value) {
+        Collection<?> values;
+        if (value instanceof String) {
+            return Collections.singleton(value);
+        } else if (value instanceof String[]) {
+            values = Arrays.asList((String[])value);
+        } else if (value instanceof Collection) {
+            values = (Collection<?>)value;
+        } else {
+            return null;
+        }
+        for (Object v : values) {
+            if (v != null && !(v instanceof String)) {
+                return null;
+            }
+        }
+        return values;
+    }
+
+    private static Filter createFilter(String scope) {
+        try {
+            return FrameworkUtil.createFilter(scope);
+        } catch (InvalidSyntaxException e) {
+            LOG.error("invalid scope: {}", scope, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the lower case attribute name and the value of the equality term a scope
+     * is indexed by, or null if it has none.
+     *
+     * @param scope an LDAP filter
+     * @return the attribute name and value, or null
+     */
+    static String[] getIndexTerm(String scope) {
+        String s = scope.trim();
+        List<String> terms;
+        if (s.startsWith("(&") && s.endsWith(")")) {
+            terms = split(s.substring(2, s.length() - 1));
+            if (terms == null) {
+                return null;
+            }
+        } else {
+            terms = Collections.singletonList(s);
+        }
+        String[] found = null;
+        for (String term : terms) {
+            String[] parsed = parseEquality(term);
+            if (parsed != null) {
+                if (OBJECTCLASS.equals(parsed[0])) {
+                    return parsed;
+                }
+                if (found == null) {
+                    found = parsed;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Splits a sequence of parenthesized filters, or returns null if it is malformed.
+     */
+    private static List<String> split(String s) {
+        List<String> terms = new ArrayList<String>();
+        int depth = 0;
+        int start = -1;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '(') {
+                if (depth++ == 0) {
+                    start = i;
+                }
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    terms.add(s.substring(start, i + 1));
+                } else if (depth < 0) {
+                    return null;
+                }
+            } else if (depth == 0 && !Character.isWhitespace(c)) {
+                return null;
+            }
+        }
+        return depth == 0 ? terms : null;
+    }
+
+    /**
+     * Parses a simple equality filter like (name=value), returning the lower case name and
+     * the unescaped value, or null if the filter is anything else.
+     */
+    private static String[] parseEquality(String term) {
+        if (!term.startsWith("(") || !term.endsWith(")")) {
+            return null;
+        }
+        String inner = term.substring(1, term.length() - 1);
+        int eq = inner.indexOf('=');
+        if (eq <= 0) {
+            return null;
+        }
+        String name = inner.substring(0, eq).trim();
+        if (name.isEmpty() || name.indexOf('(') >= 0 || "&|!".indexOf(name.charAt(0)) >= 0
+            || "~<>".indexOf(name.charAt(name.length() - 1)) >= 0) {
+            return null; // not an equality term
+        }
+        StringBuilder value = new StringBuilder();
+        for (int i = eq + 1; i < inner.length(); i++) {
+            char c = inner.charAt(i);
+            if (c == '\\' && i + 1 < inner.length()) {
+                value.append(inner.charAt(++i));
+            } else if (c == '*' || c == '(' || c == ')') {
+                return null; // substring or presence term, or malformed
+            } else {
+                value.append(c);
+            }
+        }
+        String v = value.toString();
+        if (v.isEmpty() || !v.trim().equals(v)) {
+            return null; // leave whitespace handling to the filter
+        }
+        return new String[] {name.toLowerCase(Locale.ENGLISH), v};
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.discovery.local.internal;
+
+import java.io.File;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.cxf.dosgi.endpointdesc.EndpointDescriptionBundleParser;
+import org.easymock.EasyMock;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+public class EndpointDescriptionCacheTest extends TestCase {
+
+    public void testDescriptionsArePersistedPerBundleVersion() throws Exception {
+        File dataDir = File.createTempFile("endpoint-descriptions", "");
+        assertTrue(dataDir.delete());
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(bc.getDataFile(EndpointDescriptionCache.CACHE_DIR)).andReturn(dataDir).anyTimes();
+        EasyMock.replay(bc);
+
+        URL ed3 = getClass().getResource("/ed3.xml");
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        EasyMock.expect(bundle.getBundleId()).andReturn(7L).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(100L).times(3);
+        EasyMock.expect(bundle.getHeaders()).andReturn(new Hashtable<String, String>()).once();
+        EasyMock.expect(bundle.findEntries("OSGI-INF/remote-service", "*.xml", false))
+            .andReturn(Collections.enumeration(Collections.singleton(ed3))).once();
+        EasyMock.replay(bundle);
+
+        EndpointDescriptionCache cache = new EndpointDescriptionCache(bc, new EndpointDescriptionBundleParser());
+        List<EndpointDescription> endpoints = cache.getEndpointDescriptions(bundle);
+        assertEquals(1, endpoints.size());
+        assertEquals("http://somewhere:12345", endpoints.get(0).getId());
+        // cached in memory
+        assertEquals(endpoints, cache.getEndpointDescriptions(bundle));
+        // persisted, so a new cache does not parse the descriptors again
+        EndpointDescriptionCache cache2 = new EndpointDescriptionCache(bc, new EndpointDescriptionBundleParser());
+        assertEquals(endpoints, cache2.getEndpointDescriptions(bundle));
+        EasyMock.verify(bundle);
+
+        // an updated bundle is parsed again
+        EasyMock.reset(bundle);
+        EasyMock.expect(bundle.getBundleId()).andReturn(7L).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(200L).anyTimes();
+        EasyMock.expect(bundle.getHeaders()).andReturn(new Hashtable<String, String>()).once();
+        EasyMock.expect(bundle.findEntries("OSGI-INF/remote-service", "*.xml", false))
+            .andReturn(Collections.enumeration(Collections.<URL>emptySet())).once();
+        EasyMock.replay(bundle);
+        assertEquals(0, cache2.getEndpointDescriptions(bundle).size());
+        EasyMock.verify(bundle);
+
+        cache2.remove(bundle);
+        assertFalse(new File(dataDir, "7.ser").exists());
+        assertTrue(dataDir.delete());
+    }
+}
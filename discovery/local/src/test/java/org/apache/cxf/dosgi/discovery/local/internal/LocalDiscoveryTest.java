@@ -28,6 +28,9 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -109,6 +112,8 @@ public class LocalDiscoveryTest extends TestCase {
         Dictionary<String, String> headers = new Hashtable<String, String>();
         headers.put("Remote-Service", "OSGI-INF/remote-service/");
         EasyMock.expect(b2.getHeaders()).andReturn(headers);
+        EasyMock.expect(b2.getBundleId()).andReturn(2L).anyTimes();
+        EasyMock.expect(b2.getLastModified()).andReturn(0L).anyTimes();
 
         URL rs3URL = getClass().getResource("/ed3.xml");
         URL rs4URL = getClass().getResource("/ed4.xml");
@@ -118,6 +123,7 @@ public class LocalDiscoveryTest extends TestCase {
         EasyMock.replay(b2);
 
         EasyMock.expect(bc.getBundles()).andReturn(new Bundle[] {b1, b2});
+        EasyMock.expect(bc.getDataFile(EndpointDescriptionCache.CACHE_DIR)).andReturn(null).anyTimes();
         EasyMock.replay(bc);
 
         LocalDiscovery ld = new LocalDiscovery(bc);
@@ -139,6 +145,8 @@ public class LocalDiscoveryTest extends TestCase {
         Bundle bundle = EasyMock.createMock(Bundle.class);
         EasyMock.expect(bundle.getSymbolicName()).andReturn("testing.bundle").anyTimes();
         EasyMock.expect(bundle.getState()).andReturn(Bundle.ACTIVE);
+        EasyMock.expect(bundle.getBundleId()).andReturn(1L).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(0L).anyTimes();
         Dictionary<String, String> headers = new Hashtable<String, String>();
         headers.put("Remote-Service", "OSGI-INF/rsa/");
         EasyMock.expect(bundle.getHeaders()).andReturn(headers);
@@ -193,11 +201,97 @@ public class LocalDiscoveryTest extends TestCase {
         EasyMock.verify(endpointListener);
     }
 
+    public void testListenersNotifiedOutsideLock() throws Exception {
+        final LocalDiscovery ld = getLocalDiscovery();
+
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        EasyMock.expect(bundle.getBundleId()).andReturn(1L).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(0L).anyTimes();
+        Dictionary<String, String> headers = new Hashtable<String, String>();
+        headers.put("Remote-Service", "OSGI-INF/rsa/");
+        EasyMock.expect(bundle.getHeaders()).andReturn(headers);
+        EasyMock.expect(bundle.findEntries("OSGI-INF/rsa", "*.xml", false))
+            .andReturn(Collections.enumeration(
+                Collections.singleton(getClass().getResource("/ed3.xml"))));
+        EasyMock.replay(bundle);
+        final Bundle other = EasyMock.createNiceMock(Bundle.class);
+        EasyMock.replay(other);
+
+        @SuppressWarnings("unchecked")
+        ServiceReference<EndpointListener> sr = EasyMock.createMock(ServiceReference.class);
+        EasyMock.expect(sr.getProperty(EndpointListener.ENDPOINT_LISTENER_SCOPE))
+            .andReturn("(objectClass=*)").anyTimes();
+        EasyMock.replay(sr);
+
+        // a listener handling the event on another thread, which processes a bundle event meanwhile
+        final List<Boolean> otherEventProcessed = new ArrayList<Boolean>();
+        EndpointListener endpointListener = new EndpointListener() {
+            public void endpointAdded(EndpointDescription endpoint, String matchedFilter) {
+                Thread t = new Thread() {
+                    public void run() {
+                        ld.bundleChanged(new BundleEvent(BundleEvent.STOPPED, other));
+                    }
+                };
+                t.start();
+                try {
+                    t.join(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                otherEventProcessed.add(!t.isAlive());
+            }
+
+            public void endpointRemoved(EndpointDescription endpoint, String matchedFilter) {
+            }
+        };
+        ld.addListener(sr, endpointListener);
+
+        ld.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle));
+        assertEquals(Arrays.asList(true), otherEventProcessed);
+    }
+
+    public void testQuickRestartAddsEndpointsOnce() throws Exception {
+        QueuedExecutorService executor = new QueuedExecutorService();
+        LocalDiscovery ld = getLocalDiscovery(executor);
+
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        EasyMock.expect(bundle.getBundleId()).andReturn(1L).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(0L).anyTimes();
+        Dictionary<String, String> headers = new Hashtable<String, String>();
+        headers.put("Remote-Service", "OSGI-INF/rsa/");
+        EasyMock.expect(bundle.getHeaders()).andReturn(headers);
+        EasyMock.expect(bundle.findEntries("OSGI-INF/rsa", "*.xml", false))
+            .andReturn(Collections.enumeration(
+                Collections.singleton(getClass().getResource("/ed3.xml"))));
+        EasyMock.replay(bundle);
+
+        @SuppressWarnings("unchecked")
+        ServiceReference<EndpointListener> sr = EasyMock.createMock(ServiceReference.class);
+        EasyMock.expect(sr.getProperty(EndpointListener.ENDPOINT_LISTENER_SCOPE))
+            .andReturn("(objectClass=*)").anyTimes();
+        EasyMock.replay(sr);
+        EndpointListener endpointListener = EasyMock.createMock(EndpointListener.class);
+        endpointListener.endpointAdded((EndpointDescription) EasyMock.anyObject(), EasyMock.eq("(objectClass=*)"));
+        EasyMock.expectLastCall().once();
+        EasyMock.replay(endpointListener);
+        ld.addListener(sr, endpointListener);
+
+        // the bundle is restarted before the descriptors of its first start are parsed
+        ld.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle));
+        ld.bundleChanged(new BundleEvent(BundleEvent.STOPPED, bundle));
+        ld.bundleChanged(new BundleEvent(BundleEvent.STARTED, bundle));
+        executor.runAll();
+        assertEquals(1, ld.endpointDescriptions.size());
+        EasyMock.verify(endpointListener);
+    }
+
     public void testEndpointListenerService() throws Exception {
         LocalDiscovery ld = getLocalDiscovery();
 
         Bundle bundle = EasyMock.createMock(Bundle.class);
         EasyMock.expect(bundle.getState()).andReturn(Bundle.ACTIVE);
+        EasyMock.expect(bundle.getBundleId()).andReturn(1L).anyTimes();
+        EasyMock.expect(bundle.getLastModified()).andReturn(0L).anyTimes();
         Dictionary<String, String> headers = new Hashtable<String, String>();
         headers.put("Remote-Service", "OSGI-INF/rsa/ed4.xml");
         EasyMock.expect(bundle.getHeaders()).andReturn(headers);
@@ -388,6 +482,10 @@ public class LocalDiscoveryTest extends TestCase {
     }
 
     private LocalDiscovery getLocalDiscovery() throws InvalidSyntaxException {
+        return getLocalDiscovery(new DirectExecutorService());
+    }
+
+    private LocalDiscovery getLocalDiscovery(ExecutorService executor) throws InvalidSyntaxException {
         BundleContext bc = EasyMock.createMock(BundleContext.class);
         EasyMock.expect(bc.createFilter((String) EasyMock.anyObject())).andAnswer(new IAnswer<Filter>() {
             public Filter answer() throws Throwable {
@@ -402,8 +500,62 @@ public class LocalDiscoveryTest extends TestCase {
         bc.addBundleListener((BundleListener) EasyMock.anyObject());
         EasyMock.expectLastCall();
         EasyMock.expect(bc.getBundles()).andReturn(null);
+        EasyMock.expect(bc.getDataFile(EndpointDescriptionCache.CACHE_DIR)).andReturn(null).anyTimes();
         EasyMock.replay(bc);
 
-        return new LocalDiscovery(bc);
+        return new LocalDiscovery(bc, executor);
+    }
+
+    /**
+     * Runs the tasks in the calling thread, so the tests need not wait for them.
+     */
+    static class DirectExecutorService extends AbstractExecutorService {
+
+        private boolean shutdown;
+
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    /**
+     * Queues the tasks until they are run by the test.
+     */
+    static class QueuedExecutorService extends DirectExecutorService {
+
+        private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            tasks.clear();
+        }
     }
 }
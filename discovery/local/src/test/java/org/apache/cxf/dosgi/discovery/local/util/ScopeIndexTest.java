@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.discovery.local.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+public class ScopeIndexTest extends TestCase {
+
+    public void testGetIndexTerm() {
+        assertTerm("objectclass", "org.example.Foo", "(objectClass=org.example.Foo)");
+        assertTerm("objectclass", "org.example.Foo", "(&(zone=eu)(objectClass=org.example.Foo))");
+        assertTerm("zone", "eu", "(&(zone=eu)(service.imported=*))");
+        assertTerm("objectclass", "a(b)", "(objectClass=a\\(b\\))");
+        assertNull(ScopeIndex.getIndexTerm("(objectClass=org.example.*)"));
+        assertNull(ScopeIndex.getIndexTerm("(|(objectClass=A)(objectClass=B))"));
+        assertNull(ScopeIndex.getIndexTerm("(!(objectClass=A))"));
+        assertNull(ScopeIndex.getIndexTerm("(port>=80)"));
+        assertNull(ScopeIndex.getIndexTerm("(&(objectClass=A)"));
+    }
+
+    public void testGetMatchingScopes() {
+        ScopeIndex index = new ScopeIndex();
+        assertTrue(index.add("(objectClass=A)"));
+        assertTrue(index.add("(&(objectClass=B)(zone=eu))"));
+        assertTrue(index.add("(zone=eu)"));
+        assertTrue(index.add("(|(objectClass=A)(objectClass=C))"));
+        assertTrue(index.add("(port=80)"));
+        assertFalse(index.add("(objectClass=A)"));
+        assertFalse(index.add("(invalid"));
+        assertEquals(5, index.size());
+
+        assertEquals(set("(|(objectClass=A)(objectClass=C))", "(objectClass=A)"),
+                     set(index.getMatchingScopes(props(new String[] {"A"}, "us"))));
+        assertEquals(set("(&(objectClass=B)(zone=eu))", "(zone=eu)"),
+                     set(index.getMatchingScopes(props(new String[] {"B"}, "eu"))));
+        assertEquals(Collections.emptyList(), index.getMatchingScopes(props(new String[] {"B"}, "us")));
+
+        // values which are not strings are left to the filter
+        Map<String, Object> props = props(new String[] {"D"}, "us");
+        props.put("port", 80);
+        assertEquals(Arrays.asList("(port=80)"), index.getMatchingScopes(props));
+
+        index.remove("(objectClass=A)");
+        assertFalse(index.contains("(objectClass=A)"));
+        assertEquals(Arrays.asList("(|(objectClass=A)(objectClass=C))"),
+                     index.getMatchingScopes(props(new String[] {"A"}, "us")));
+    }
+
+    public void testMatches() {
+        ScopeIndex index = new ScopeIndex();
+        index.add("(objectClass=A)");
+        assertTrue(index.matches("(objectClass=A)", props(new String[] {"A"}, "us")));
+        assertTrue(index.matches("(zone=us)", props(new String[] {"A"}, "us")));
+        assertFalse(index.matches("(zone=eu)", props(new String[] {"A"}, "us")));
+        assertFalse(index.matches(null, props(new String[] {"A"}, "us")));
+    }
+
+    private static void assertTerm(String name, String value, String scope) {
+        assertEquals(Arrays.asList(name, value), Arrays.asList(ScopeIndex.getIndexTerm(scope)));
+    }
+
+    private static Set<String> set(String... scopes) {
+        return set(Arrays.asList(scopes));
+    }
+
+    private static Set<String> set(Collection<String> scopes) {
+        return new HashSet<String>(scopes);
+    }
+
+    private static Map<String, Object> props(String[] objectClass, String zone) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("objectClass", objectClass);
+        props.put("zone", zone);
+        return props;
+    }
+}
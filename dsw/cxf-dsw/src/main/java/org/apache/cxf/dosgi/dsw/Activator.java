@@ -33,12 +33,14 @@ import org.apache.cxf.dosgi.dsw.decorator.ServiceDecoratorImpl;
 import org.apache.cxf.dosgi.dsw.handlers.ConfigTypeHandlerFactory;
 import org.apache.cxf.dosgi.dsw.handlers.HttpServiceManager;
 import org.apache.cxf.dosgi.dsw.qos.DefaultIntentMapFactory;
+import org.apache.cxf.dosgi.dsw.qos.IntentListener;
 import org.apache.cxf.dosgi.dsw.qos.IntentManager;
 import org.apache.cxf.dosgi.dsw.qos.IntentManagerImpl;
 import org.apache.cxf.dosgi.dsw.qos.IntentMap;
 import org.apache.cxf.dosgi.dsw.qos.IntentTracker;
 import org.apache.cxf.dosgi.dsw.service.RemoteServiceAdminCore;
 import org.apache.cxf.dosgi.dsw.service.RemoteServiceadminFactory;
+import org.apache.cxf.dosgi.dsw.trace.Tracer;
 import org.apache.cxf.dosgi.dsw.util.Utils;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -51,16 +53,21 @@ import org.osgi.service.remoteserviceadmin.RemoteServiceAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static org.osgi.service.remoteserviceadmin.RemoteConstants.REMOTE_INTENTS_SUPPORTED;
+
 // registered as spring bean -> start / stop called accordingly
 public class Activator implements ManagedService, BundleActivator {
 
     private static final Logger LOG = LoggerFactory.getLogger(Activator.class);
-    private static final int DEFAULT_INTENT_TIMEOUT = 30000;
     private static final String CONFIG_SERVICE_PID = "cxf-dsw";
+    private static final double DEFAULT_TRACING_SAMPLING_RATE = 1.0;
+    private static final int DEFAULT_TRACING_BUFFER_SIZE = 1024;
     private ServiceRegistration rsaFactoryReg;
+    private Dictionary<String, Object> rsaFactoryProps;
     private ServiceRegistration decoratorReg;
     private IntentTracker intentTracker;
     private HttpServiceManager httpServiceManager;
+    private RemoteServiceAdminCore rsaCore;
     private BundleContext bc;
     private BundleListener bundleListener;
     private Map<String, Object> curConfiguration;
@@ -86,28 +93,76 @@ public class Activator implements ManagedService, BundleActivator {
         String httpBase = (String) config.get(org.apache.cxf.dosgi.dsw.Constants.HTTP_BASE);
         String cxfServletAlias = (String) config.get(org.apache.cxf.dosgi.dsw.Constants.CXF_SERVLET_ALIAS);
 
-        IntentMap intentMap = new IntentMap(new DefaultIntentMapFactory().create());
-        intentTracker = new IntentTracker(bc, intentMap);
+        Tracer tracer = createTracer(config);
+        IntentMap intentMap = new IntentMap(new DefaultIntentMapFactory().create(tracer));
+        intentTracker = new IntentTracker(bc, intentMap, new IntentListener() {
+            public void intentsChanged(IntentMap map) {
+                updateSupportedIntents(map);
+            }
+        });
         intentTracker.open();
-        IntentManager intentManager = new IntentManagerImpl(intentMap, DEFAULT_INTENT_TIMEOUT);
+        IntentManager intentManager = new IntentManagerImpl(intentMap);
         httpServiceManager = new HttpServiceManager(bc, httpBase, cxfServletAlias);
+        httpServiceManager.setHttpServiceListener(new Runnable() {
+            public void run() {
+                publishProperties();
+            }
+        });
         ConfigTypeHandlerFactory configTypeHandlerFactory
             = new ConfigTypeHandlerFactory(bc, intentManager, httpServiceManager);
-        RemoteServiceAdminCore rsaCore = new RemoteServiceAdminCore(bc, configTypeHandlerFactory);
+        if (Boolean.parseBoolean(String.valueOf(config.get(org.apache.cxf.dosgi.dsw.Constants.TRACING_ENABLED)))) {
+            configTypeHandlerFactory.setTracer(tracer);
+        }
+        rsaCore = new RemoteServiceAdminCore(bc, configTypeHandlerFactory);
         RemoteServiceadminFactory rsaf = new RemoteServiceadminFactory(rsaCore);
         Dictionary<String, Object> props = new Hashtable<String, Object>();
         String[] supportedIntents = intentMap.keySet().toArray(new String[] {});
-        props.put("remote.intents.supported", supportedIntents);
+        props.put(REMOTE_INTENTS_SUPPORTED, supportedIntents);
         props.put("remote.configs.supported",
                   obtainSupportedConfigTypes(configTypeHandlerFactory.getSupportedConfigurationTypes()));
         LOG.info("Registering RemoteServiceAdminFactory...");
+        rsaFactoryProps = props;
         rsaFactoryReg = bc.registerService(RemoteServiceAdmin.class.getName(), rsaf, props);
-        ServiceDecoratorImpl serviceDecorator = new ServiceDecoratorImpl();
+        ServiceDecoratorImpl serviceDecorator = new ServiceDecoratorImpl(bc);
         bundleListener = new ServiceDecoratorBundleListener(serviceDecorator);
         bc.addBundleListener(bundleListener);
         decoratorReg = bc.registerService(ServiceDecorator.class.getName(), serviceDecorator, null);
     }
 
+    /**
+     * Publishes the changed intents in the RemoteServiceAdmin service properties, so that
+     * topology managers retry the exports and imports which failed because of missing intents.
+     */
+    private synchronized void updateSupportedIntents(IntentMap intentMap) {
+        if (rsaFactoryReg == null) {
+            return;
+        }
+        rsaFactoryProps.put(REMOTE_INTENTS_SUPPORTED, intentMap.keySet().toArray(new String[] {}));
+        publishProperties();
+    }
+
+    /**
+     * Re-publishes the RemoteServiceAdmin service properties, so that topology managers
+     * retry the exports which failed because no HttpService was available.
+     */
+    private synchronized void publishProperties() {
+        if (rsaFactoryReg == null) {
+            return;
+        }
+        try {
+            rsaFactoryReg.setProperties(rsaFactoryProps);
+        } catch (IllegalStateException e) {
+            // already unregistered
+        }
+    }
+
+    private Tracer createTracer(Map<String, Object> config) {
+        Object rate = config.get(org.apache.cxf.dosgi.dsw.Constants.TRACING_SAMPLING_RATE);
+        Object size = config.get(org.apache.cxf.dosgi.dsw.Constants.TRACING_BUFFER_SIZE);
+        return new Tracer(rate == null ? DEFAULT_TRACING_SAMPLING_RATE : Double.parseDouble(rate.toString()),
+                          size == null ? DEFAULT_TRACING_BUFFER_SIZE : Integer.parseInt(size.toString()));
+    }
+
     private synchronized void uninit() {
         if (decoratorReg != null) {
             decoratorReg.unregister();
@@ -122,6 +177,10 @@ public class Activator implements ManagedService, BundleActivator {
             rsaFactoryReg.unregister();
             rsaFactoryReg = null;
         }
+        if (rsaCore != null) {
+            rsaCore.close();
+            rsaCore = null;
+        }
         if (httpServiceManager != null) {
             httpServiceManager.close();
             httpServiceManager = null;
@@ -140,6 +140,83 @@ public final class Constants {
     public static final String CXF_SERVLET_ALIAS = "cxfServletAlias";
     public static final String DEFAULT_CXF_SERVLET_ALIAS = "/cxf";
 
+    /**
+     * Whether all endpoints propagate trace headers and record spans, instead of only
+     * those with the "tracing" intent. Defaults to false.
+     */
+    public static final String TRACING_ENABLED = "tracing.enabled";
+
+    /**
+     * Fraction of new traces which are recorded, between 0 and 1. Defaults to 1.
+     */
+    public static final String TRACING_SAMPLING_RATE = "tracing.samplingRate";
+
+    /**
+     * Number of finished spans kept in memory. Defaults to 1024.
+     */
+    public static final String TRACING_BUFFER_SIZE = "tracing.bufferSize";
+
+    // Admission control, set as service properties of an exported service
+    public static final String ADMISSION_PREFIX = PROVIDER_PREFIX + ".admission";
+    /**
+     * Maximum number of requests the endpoint processes concurrently.
+     * Admission control is only enabled if this is set to a positive number.
+     */
+    public static final String ADMISSION_MAX_CONCURRENT = ADMISSION_PREFIX + ".maxConcurrent";
+    /**
+     * Maximum number of requests waiting for one of the concurrent requests to finish. Defaults to 0.
+     * Each waiting request blocks an HTTP container thread.
+     */
+    public static final String ADMISSION_MAX_QUEUED = ADMISSION_PREFIX + ".maxQueued";
+    /**
+     * Maximum time in milliseconds a queued request waits before it is rejected. Defaults to 1000.
+     */
+    public static final String ADMISSION_QUEUE_TIMEOUT = ADMISSION_PREFIX + ".queueTimeout";
+    /**
+     * Value in seconds of the Retry-After header of rejected requests. Defaults to 1.
+     */
+    public static final String ADMISSION_RETRY_AFTER = ADMISSION_PREFIX + ".retryAfter";
+
+    // Client-side response cache, set as endpoint properties (or service decorations of the exported service)
+    public static final String CACHE_PREFIX = PROVIDER_PREFIX + ".cache";
+    /**
+     * Names of the methods whose results are cached by the import proxies, as a String+
+     * or a comma separated String. Caching is only enabled if this is set.
+     */
+    public static final String CACHE_METHODS = CACHE_PREFIX + ".methods";
+    /**
+     * Time in milliseconds a cached result is used. Defaults to 60000.
+     */
+    public static final String CACHE_TTL = CACHE_PREFIX + ".ttl";
+    /**
+     * Maximum number of cached results per endpoint. Defaults to 1000.
+     */
+    public static final String CACHE_SIZE = CACHE_PREFIX + ".size";
+
+    // Locality of the exporting framework, published as endpoint properties so that importers
+    // can prefer nearby endpoints. The topology manager's LocalityRanking repeats these names,
+    // so they must be kept in sync with it.
+    /**
+     * Framework property naming the zone the framework runs in.
+     */
+    public static final String ZONE = PROVIDER_PREFIX + ".dosgi.zone";
+    /**
+     * Framework property naming the rack the framework runs on.
+     */
+    public static final String RACK = PROVIDER_PREFIX + ".dosgi.rack";
+    /**
+     * Endpoint property holding the host name of the exporting framework.
+     */
+    public static final String ENDPOINT_HOST = PROVIDER_PREFIX + ".dosgi.endpoint.host";
+    /**
+     * Endpoint property holding the {@link #ZONE} of the exporting framework.
+     */
+    public static final String ENDPOINT_ZONE = PROVIDER_PREFIX + ".dosgi.endpoint.zone";
+    /**
+     * Endpoint property holding the {@link #RACK} of the exporting framework.
+     */
+    public static final String ENDPOINT_RACK = PROVIDER_PREFIX + ".dosgi.endpoint.rack";
+
     private Constants() {
         // never constructed
     }
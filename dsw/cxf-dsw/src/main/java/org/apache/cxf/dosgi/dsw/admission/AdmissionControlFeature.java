@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.admission;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.Fault;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.interceptor.MessageSenderInterceptor.MessageSenderEndingInterceptor;
+import org.apache.cxf.interceptor.OutgoingChainInterceptor;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+import org.apache.cxf.transport.Conduit;
+
+/**
+ * Enforces the limits of an {@link AdmissionController} on a server.
+ * <p>
+ * Requests are admitted as soon as they are received. Rejected requests are answered right
+ * away with <code>503 Service Unavailable</code> and a <code>Retry-After</code> header, without
+ * running the rest of the interceptor chain. The feature must therefore be added before any
+ * other feature which tracks requests from the moment they are received.
+ * <p>
+ * Queued requests wait on the thread which received them, i.e. a thread of the HTTP container,
+ * so <code>maxQueued</code> should stay well below the size of the container's thread pool.
+ * <p>
+ * A request is released once its response is sent, when processing it fails, or at the end of
+ * the incoming chain at the latest, so that one-way requests and requests whose outgoing chain
+ * is aborted do not keep their permit.
+ */
+public class AdmissionControlFeature extends AbstractFeature {
+
+    static final String RETRY_AFTER = "Retry-After";
+
+    private static final String ADMITTED_KEY = AdmissionControlFeature.class.getName() + ".admitted";
+
+    private final AdmissionController controller;
+
+    public AdmissionControlFeature(AdmissionController controller) {
+        this.controller = controller;
+    }
+
+    public AdmissionController getController() {
+        return controller;
+    }
+
+    @Override
+    protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+        ReleaseInterceptor release = new ReleaseInterceptor(controller);
+        provider.getInInterceptors().add(new AdmitInterceptor(controller));
+        provider.getInInterceptors().add(new CompletionInterceptor(controller));
+        provider.getOutInterceptors().add(release);
+        provider.getOutFaultInterceptors().add(release);
+    }
+
+    static void release(AdmissionController controller, Exchange exchange) {
+        // the flag is removed so that a request is only ever released once
+        if (exchange.remove(ADMITTED_KEY) != null) {
+            controller.release();
+        }
+    }
+
+    static void reject(Message message, int retryAfter) {
+        Exchange exchange = message.getExchange();
+        Message response = new MessageImpl();
+        response.setExchange(exchange);
+        exchange.setOutMessage(response);
+        response.put(Message.RESPONSE_CODE, HttpURLConnection.HTTP_UNAVAILABLE);
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        headers.put(RETRY_AFTER, Collections.singletonList(Integer.toString(retryAfter)));
+        response.put(Message.PROTOCOL_HEADERS, headers);
+        message.getInterceptorChain().abort();
+        try {
+            Conduit backChannel = exchange.getDestination().getBackChannel(message);
+            exchange.setConduit(backChannel);
+            backChannel.prepare(response);
+            backChannel.close(response);
+        } catch (IOException e) {
+            throw new Fault(e);
+        }
+    }
+
+    static class AdmitInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final AdmissionController controller;
+
+        AdmitInterceptor(AdmissionController controller) {
+            super(Phase.RECEIVE);
+            this.controller = controller;
+        }
+
+        /**
+         * Admits the request. A queued request blocks the calling container thread
+         * for at most the queue timeout of the controller.
+         */
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            if (exchange.containsKey(ADMITTED_KEY)) {
+                return;
+            }
+            if (controller.acquire()) {
+                exchange.put(ADMITTED_KEY, Boolean.TRUE);
+            } else {
+                reject(message, controller.getRetryAfter());
+            }
+        }
+
+        @Override
+        public void handleFault(Message message) {
+            // processing of the request failed
+            release(controller, message.getExchange());
+        }
+    }
+
+    /**
+     * Releases the requests which are still admitted at the end of the incoming chain, i.e. after
+     * the response of a synchronous exchange has been sent. These are one-way requests, and two-way
+     * requests whose outgoing chain was aborted before anything was sent.
+     */
+    static class CompletionInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final AdmissionController controller;
+
+        CompletionInterceptor(AdmissionController controller) {
+            super(Phase.POST_INVOKE);
+            addAfter(OutgoingChainInterceptor.class.getName());
+            this.controller = controller;
+        }
+
+        public void handleMessage(Message message) {
+            release(controller, message.getExchange());
+        }
+    }
+
+    static class ReleaseInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final AdmissionController controller;
+
+        ReleaseInterceptor(AdmissionController controller) {
+            super(Phase.PRE_STREAM);
+            this.controller = controller;
+        }
+
+        public void handleMessage(Message message) {
+            message.getInterceptorChain().add(new ReleaseEndingInterceptor(controller));
+        }
+
+        @Override
+        public void handleFault(Message message) {
+            // sending the response failed
+            release(controller, message.getExchange());
+        }
+    }
+
+    static class ReleaseEndingInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final AdmissionController controller;
+
+        ReleaseEndingInterceptor(AdmissionController controller) {
+            super(Phase.PREPARE_SEND_ENDING);
+            addAfter(MessageSenderEndingInterceptor.class.getName());
+            this.controller = controller;
+        }
+
+        public void handleMessage(Message message) {
+            release(controller, message.getExchange());
+        }
+    }
+}
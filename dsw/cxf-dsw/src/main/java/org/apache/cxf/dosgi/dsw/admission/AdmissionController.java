@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.admission;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.dosgi.dsw.Constants;
+import org.apache.cxf.dosgi.dsw.util.OsgiUtils;
+
+/**
+ * Limits the number of requests an endpoint processes concurrently.
+ * <p>
+ * Up to <code>maxConcurrent</code> requests are admitted at once. Up to <code>maxQueued</code>
+ * further requests wait at most <code>queueTimeout</code> milliseconds for one of them to finish.
+ * Any other request is rejected right away, so that an overloaded endpoint sheds load instead of
+ * letting the latency of all callers grow.
+ */
+public class AdmissionController {
+
+    public static final int DEFAULT_QUEUE_TIMEOUT = 1000;
+    public static final int DEFAULT_RETRY_AFTER = 1;
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueTimeout;
+    private final int retryAfter;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param maxConcurrent the maximum number of requests processed at once
+     * @param maxQueued the maximum number of requests waiting to be processed
+     * @param queueTimeout the maximum time in milliseconds a request waits to be processed
+     * @param retryAfter the number of seconds after which rejected callers may retry
+     */
+    public AdmissionController(int maxConcurrent, int maxQueued, long queueTimeout, int retryAfter) {
+        if (maxConcurrent <= 0) {
+            throw new IllegalArgumentException("maxConcurrent must be positive: " + maxConcurrent);
+        }
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.queueTimeout = Math.max(0, queueTimeout);
+        this.retryAfter = Math.max(0, retryAfter);
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Creates the admission controller configured by the
+     * {@link Constants#ADMISSION_MAX_CONCURRENT} and related properties.
+     *
+     * @param props the endpoint properties
+     * @return the admission controller, or null if no concurrency limit is configured
+     */
+    public static AdmissionController create(Map<String, Object> props) {
+        int maxConcurrent = OsgiUtils.getIntProperty(props, Constants.ADMISSION_MAX_CONCURRENT, 0);
+        if (maxConcurrent <= 0) {
+            return null;
+        }
+        return new AdmissionController(maxConcurrent,
+            OsgiUtils.getIntProperty(props, Constants.ADMISSION_MAX_QUEUED, 0),
+            OsgiUtils.getIntProperty(props, Constants.ADMISSION_QUEUE_TIMEOUT, DEFAULT_QUEUE_TIMEOUT),
+            OsgiUtils.getIntProperty(props, Constants.ADMISSION_RETRY_AFTER, DEFAULT_RETRY_AFTER));
+    }
+
+    /**
+     * Admits a request, waiting for a free slot if the queue is not full.
+     * Every admitted request must be followed by a call to {@link #release()}.
+     *
+     * @return true if the request was admitted, false if it must be rejected
+     */
+    public boolean acquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        boolean admitted = false;
+        try {
+            admitted = permits.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queued.decrementAndGet();
+        }
+        if (!admitted) {
+            rejected.incrementAndGet();
+        }
+        return admitted;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Returns the number of requests currently being processed.
+     */
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of requests currently waiting to be processed.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Returns the number of requests rejected so far.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionController [active=" + getActive() + "/" + maxConcurrent
+            + ", queued=" + getQueued() + "/" + maxQueued + ", rejected=" + getRejected() + "]";
+    }
+}
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.cache;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.dosgi.dsw.Constants;
+import org.apache.cxf.dosgi.dsw.util.OsgiUtils;
+
+/**
+ * A bounded cache of the results of remote method calls, keyed by method and arguments.
+ * <p>
+ * Only the results of the configured methods are cached, for a fixed time to live.
+ * When the cache is full, the least recently used result is evicted. Cached results are
+ * shared between callers, so they should be immutable.
+ */
+public class ResponseCache {
+
+    public static final int DEFAULT_TTL = 60000;
+    public static final int DEFAULT_SIZE = 1000;
+
+    /**
+     * Returned by {@link #get(Method, Object[])} if there is no cached result.
+     */
+    public static final Object MISS = new Object();
+
+    private final Set<String> methods;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final Map<Key, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param methods the names of the methods whose results are cached
+     * @param ttl the time in milliseconds a result is cached
+     * @param maxSize the maximum number of cached results
+     */
+    public ResponseCache(Collection<String> methods, long ttl, int maxSize) {
+        this.methods = new HashSet<String>(methods);
+        this.ttlNanos = ttl * 1000000L;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > ResponseCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Creates the response cache configured by the {@link Constants#CACHE_METHODS} and related
+     * endpoint properties.
+     *
+     * @param props the endpoint properties
+     * @return the response cache, or null if no methods are cached
+     */
+    public static ResponseCache create(Map<String, Object> props) {
+        Collection<String> values = OsgiUtils.getMultiValueProperty(props.get(Constants.CACHE_METHODS));
+        if (values == null) {
+            return null;
+        }
+        Set<String> methods = new HashSet<String>();
+        for (String value : values) {
+            for (String method : value.split(",")) {
+                if (method.trim().length() > 0) {
+                    methods.add(method.trim());
+                }
+            }
+        }
+        int maxSize = OsgiUtils.getIntProperty(props, Constants.CACHE_SIZE, DEFAULT_SIZE);
+        if (methods.isEmpty() || maxSize <= 0) {
+            return null;
+        }
+        return new ResponseCache(methods, OsgiUtils.getIntProperty(props, Constants.CACHE_TTL, DEFAULT_TTL), maxSize);
+    }
+
+    public boolean isCacheable(Method method) {
+        return methods.contains(method.getName());
+    }
+
+    /**
+     * @return the cached result, or {@link #MISS} if there is none
+     */
+    public Object get(Method method, Object[] args) {
+        Key key = new Key(method, args);
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expires < 0) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return MISS;
+    }
+
+    public void put(Method method, Object[] args, Object value) {
+        Entry entry = new Entry(value, System.nanoTime() + ttlNanos);
+        synchronized (entries) {
+            entries.put(new Key(method, args), entry);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache [size=" + getSize() + "/" + maxSize + ", hits=" + getHits()
+            + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+    }
+
+    private static final class Key {
+
+        private final Method method;
+        private final Object[] args;
+        private final int hash;
+
+        Key(Method method, Object[] args) {
+            this.method = method;
+            this.args = args == null ? null : args.clone();
+            this.hash = 31 * method.hashCode() + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return hash == other.hash && method.equals(other.method) && Arrays.deepEquals(args, other.args);
+        }
+    }
+
+    private static final class Entry {
+
+        final Object value;
+        final long expires;
+
+        Entry(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+/**
+ * Holds the {@link ResponseCache} of each imported endpoint, keyed by framework UUID and
+ * endpoint id, so that all proxies of an endpoint share one cache.
+ */
+public class ResponseCacheRegistry {
+
+    private final ConcurrentMap<String, ResponseCache> caches = new ConcurrentHashMap<String, ResponseCache>();
+
+    private static String getKey(String frameworkUUID, String endpointId) {
+        return frameworkUUID + "#" + endpointId;
+    }
+
+    /**
+     * Returns the cache of the given endpoint, creating it as configured by the endpoint
+     * properties if necessary.
+     *
+     * @return the cache, or null if the endpoint has no cacheable methods
+     */
+    public ResponseCache getCache(EndpointDescription endpoint) {
+        String key = getKey(endpoint.getFrameworkUUID(), endpoint.getId());
+        ResponseCache cache = caches.get(key);
+        if (cache == null) {
+            cache = ResponseCache.create(endpoint.getProperties());
+            if (cache != null) {
+                ResponseCache existing = caches.putIfAbsent(key, cache);
+                if (existing != null) {
+                    cache = existing;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return the cache of the given endpoint, or null if it has none or no proxy has been created for it
+     */
+    public ResponseCache getCache(String frameworkUUID, String endpointId) {
+        return caches.get(getKey(frameworkUUID, endpointId));
+    }
+
+    public void remove(EndpointDescription endpoint) {
+        caches.remove(getKey(endpoint.getFrameworkUUID(), endpoint.getId()));
+    }
+}
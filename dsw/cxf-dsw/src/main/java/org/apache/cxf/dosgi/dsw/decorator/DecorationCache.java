@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.decorator;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.apache.cxf.dosgi.discovery.local.cache.BundleDescriptorCache;
+import org.apache.cxf.xmlns.service_decoration._1_0.MatchType;
+import org.apache.cxf.xmlns.service_decoration._1_0.ServiceDecorationType;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Caches the decoration matches declared by bundles.
+ * <p>
+ * The matches are kept as {@link DecorationMatch}es, which only hold strings, so they can be
+ * persisted in the data area of this bundle.
+ */
+class DecorationCache extends BundleDescriptorCache<DecorationMatch> {
+
+    static final String CACHE_DIR = "service-decorations";
+
+    private final DecorationParser parser;
+
+    /**
+     * @param bundleContext the context providing the data area, or null to only cache in memory
+     * @param parser the parser for the decoration descriptors
+     */
+    DecorationCache(BundleContext bundleContext, DecorationParser parser) {
+        super(bundleContext, CACHE_DIR, DecorationMatch.class);
+        this.parser = parser;
+    }
+
+    @Override
+    protected List<DecorationMatch> parse(Bundle bundle) {
+        List<DecorationMatch> matches = new ArrayList<DecorationMatch>();
+        @SuppressWarnings("rawtypes")
+        Enumeration urls = bundle.findEntries("OSGI-INF/remote-service", "*.xml", false);
+        if (urls == null) {
+            return matches;
+        }
+        while (urls.hasMoreElements()) {
+            for (ServiceDecorationType decoration : parser.getDecorations((URL)urls.nextElement())) {
+                for (MatchType match : decoration.getMatch()) {
+                    matches.add(new DecorationMatch(match));
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.decorator;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.cxf.xmlns.service_decoration._1_0.AddPropertyType;
+import org.apache.cxf.xmlns.service_decoration._1_0.MatchPropertyType;
+import org.apache.cxf.xmlns.service_decoration._1_0.MatchType;
+import org.osgi.framework.Bundle;
+
+/**
+ * A match of a service decoration descriptor. Unlike the JAXB {@link MatchType} it only holds
+ * strings, so it can be persisted by the {@link DecorationCache}.
+ */
+final class DecorationMatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String interfaceName;
+    // {name, value}
+    private final String[][] propMatches;
+    // {name, value, type}
+    private final String[][] addProps;
+
+    DecorationMatch(MatchType match) {
+        interfaceName = match.getInterface();
+        List<MatchPropertyType> matchProps = match.getMatchProperty();
+        propMatches = new String[matchProps.size()][];
+        for (int i = 0; i < propMatches.length; i++) {
+            propMatches[i] = new String[] {matchProps.get(i).getName(), matchProps.get(i).getValue()};
+        }
+        List<AddPropertyType> addPropTypes = match.getAddProperty();
+        addProps = new String[addPropTypes.size()][];
+        for (int i = 0; i < addProps.length; i++) {
+            AddPropertyType addProp = addPropTypes.get(i);
+            addProps[i] = new String[] {addProp.getName(), addProp.getValue(), addProp.getType()};
+        }
+    }
+
+    /**
+     * Creates the rule applying this match on behalf of the given bundle.
+     */
+    Rule createRule(Bundle bundle) {
+        InterfaceRule rule = new InterfaceRule(bundle, interfaceName);
+        for (String[] propMatch : propMatches) {
+            rule.addPropMatch(propMatch[0], propMatch[1]);
+        }
+        for (String[] addProp : addProps) {
+            rule.addProperty(addProp[0], addProp[1], addProp[2]);
+        }
+        return rule;
+    }
+}
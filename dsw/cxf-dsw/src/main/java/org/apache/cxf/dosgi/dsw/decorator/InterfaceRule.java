@@ -19,9 +19,9 @@
 package org.apache.cxf.dosgi.dsw.decorator;
 
 import java.lang.reflect.Constructor;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.osgi.framework.Bundle;
@@ -30,22 +30,37 @@ import org.osgi.framework.ServiceReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Adds properties to services whose interface matches a regular expression and whose properties
+ * match further regular expressions.
+ * <p>
+ * All patterns are compiled once. The property matches and added properties are published as
+ * immutable copies, so applying the rule does not need a lock. An interface pattern without any
+ * regular expression syntax apart from dots is treated as the literal interface name, which allows
+ * the rule to be indexed by it.
+ */
 public class InterfaceRule implements Rule {
 
     private static final Logger LOG = LoggerFactory.getLogger(InterfaceRule.class);
+    private static final Pattern REGEX_SYNTAX = Pattern.compile("[\\\\\\[\\](){}*+?^$|]");
 
     private final Bundle bundle;
     private final Pattern matchPattern;
-    private final Map<String, String> propMatches = new HashMap<String, String>();
-    private final Map<String, Object> addProps = new HashMap<String, Object>();
+    private final String interfaceName;
+    // copy on write
+    private volatile Map<String, Pattern> propMatches = Collections.emptyMap();
+    private volatile Map<String, Object> addProps = Collections.emptyMap();
 
     public InterfaceRule(Bundle b, String im) {
         bundle = b;
         matchPattern = Pattern.compile(im);
+        interfaceName = REGEX_SYNTAX.matcher(im).find() ? null : im;
     }
 
     public synchronized void addPropMatch(String name, String value) {
-        propMatches.put(name, value);
+        Map<String, Pattern> matches = new HashMap<String, Pattern>(propMatches);
+        matches.put(name, Pattern.compile(value));
+        propMatches = matches;
     }
 
     public synchronized void addProperty(String name, String value, String type) {
@@ -63,31 +78,44 @@ public class InterfaceRule implements Rule {
             }
         }
 
-        addProps.put(name, obj);
+        Map<String, Object> props = new HashMap<String, Object>(addProps);
+        props.put(name, obj);
+        addProps = props;
     }
 
-    public synchronized void apply(ServiceReference sref, Map<String, Object> target) {
+    public void apply(ServiceReference sref, Map<String, Object> target) {
         String[] objectClass = (String[]) sref.getProperty(Constants.OBJECTCLASS);
-        boolean matches = false;
-        for (String cls : objectClass) {
-            Matcher m = matchPattern.matcher(cls);
-            if (m.matches()) {
-                for (Map.Entry<String, String> pm : propMatches.entrySet()) {
-                    Object value = sref.getProperty(pm.getKey());
-                    if (value == null || !Pattern.matches(pm.getValue(), value.toString())) {
-                        return;
-                    }
-                }
-                matches = true;
-                break;
+        if (!matchesInterface(objectClass)) {
+            return;
+        }
+        for (Map.Entry<String, Pattern> pm : propMatches.entrySet()) {
+            Object value = sref.getProperty(pm.getKey());
+            if (value == null || !pm.getValue().matcher(value.toString()).matches()) {
+                return;
             }
         }
-        if (!matches) {
-            return;
+
+        Map<String, Object> props = addProps;
+        LOG.info("Adding the following properties to " + sref + ": " + props);
+        target.putAll(props);
+    }
+
+    private boolean matchesInterface(String[] objectClass) {
+        for (String cls : objectClass) {
+            if (interfaceName != null ? interfaceName.equals(cls) : matchPattern.matcher(cls).matches()) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        LOG.info("Adding the following properties to " + sref + ": " + addProps);
-        target.putAll(addProps);
+    /**
+     * Returns the name of the interface this rule applies to.
+     *
+     * @return the interface name, or null if the rule matches interfaces by a regular expression
+     */
+    public String getInterfaceName() {
+        return interfaceName;
     }
 
     public Bundle getBundle() {
@@ -42,6 +42,9 @@ public class ServiceDecoratorBundleListener implements BundleListener {
         case BundleEvent.STOPPING:
             this.serviceDecorator.removeDecorations(be.getBundle());
             break;
+        case BundleEvent.UNINSTALLED:
+            this.serviceDecorator.uninstalled(be.getBundle());
+            break;
         default:
         }
     }
@@ -18,66 +18,75 @@
  */
 package org.apache.cxf.dosgi.dsw.decorator;
 
-import java.net.URL;
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-import org.apache.cxf.xmlns.service_decoration._1_0.AddPropertyType;
-import org.apache.cxf.xmlns.service_decoration._1_0.MatchPropertyType;
-import org.apache.cxf.xmlns.service_decoration._1_0.MatchType;
-import org.apache.cxf.xmlns.service_decoration._1_0.ServiceDecorationType;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 
+/**
+ * Applies the service decoration rules found in the OSGI-INF/remote-service directory of bundles.
+ * <p>
+ * The rules are indexed by the literal interface name they apply to, so that decorating a service
+ * only applies the rules for its interfaces and those matching interfaces by a regular expression.
+ * Rules are still applied in the order they were added.
+ */
 public class ServiceDecoratorImpl implements ServiceDecorator {
     final List<Rule> decorations = new CopyOnWriteArrayList<Rule>();
 
-    private DecorationParser parser;
+    private final DecorationCache cache;
+    private volatile RuleIndex index = new RuleIndex(Collections.<Rule>emptyList());
 
     public ServiceDecoratorImpl() {
-        parser = new DecorationParser();
+        this(null);
     }
-    
+
+    /**
+     * @param bundleContext the context whose data area persists the parsed decorations, may be null
+     */
+    public ServiceDecoratorImpl(BundleContext bundleContext) {
+        cache = new DecorationCache(bundleContext, new DecorationParser());
+    }
+
     public void decorate(ServiceReference sref, Map<String, Object> target) {
-        for (Rule matcher : decorations) {
-            matcher.apply(sref, target);
+        RuleIndex current = index;
+        String[] objectClass = (String[]) sref.getProperty(Constants.OBJECTCLASS);
+        BitSet candidates = (BitSet) current.patternRules.clone();
+        if (objectClass != null) {
+            for (String cls : objectClass) {
+                BitSet rules = current.rulesByInterface.get(cls);
+                if (rules != null) {
+                    candidates.or(rules);
+                }
+            }
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            current.rules[i].apply(sref, target);
         }
     }
 
     void addDecorations(Bundle bundle) {
-        for (ServiceDecorationType decoration : getDecorationElements(bundle)) {
-            for (MatchType match : decoration.getMatch()) {
-                decorations.add(getRule(bundle, match));
-            }
+        for (DecorationMatch match : cache.get(bundle)) {
+            decorations.add(match.createRule(bundle));
         }
+        reindex();
     }
 
-    private Rule getRule(Bundle bundle, MatchType match) {
-        InterfaceRule m = new InterfaceRule(bundle, match.getInterface());
-        for (MatchPropertyType propMatch : match.getMatchProperty()) {
-            m.addPropMatch(propMatch.getName(), propMatch.getValue());
-        }
-        for (AddPropertyType addProp : match.getAddProperty()) {
-            m.addProperty(addProp.getName(), addProp.getValue(), addProp.getType());
-        }
-        return m;
+    private synchronized void reindex() {
+        index = new RuleIndex(decorations);
     }
 
-    List<ServiceDecorationType> getDecorationElements(Bundle bundle) {
-        @SuppressWarnings("rawtypes")
-        Enumeration entries = bundle.findEntries("OSGI-INF/remote-service", "*.xml", false);
-        if (entries == null) {
-            return Collections.emptyList();
-        }
-        List<ServiceDecorationType> elements = new ArrayList<ServiceDecorationType>();
-        while (entries.hasMoreElements()) {
-            elements.addAll(parser.getDecorations((URL)entries.nextElement()));
-        }
-        return elements;
+    /**
+     * Forgets the cached decorations of an uninstalled bundle.
+     */
+    void uninstalled(Bundle bundle) {
+        cache.remove(bundle);
     }
 
     void removeDecorations(Bundle bundle) {
@@ -86,5 +95,35 @@ public class ServiceDecoratorImpl implements ServiceDecorator {
                 decorations.remove(r); // the iterator doesn't support 'remove'
             }
         }
+        reindex();
+    }
+
+    /**
+     * An immutable snapshot of the rules, with the positions of the rules for each literal
+     * interface name and of the remaining rules.
+     */
+    private static final class RuleIndex {
+
+        final Rule[] rules;
+        final Map<String, BitSet> rulesByInterface = new HashMap<String, BitSet>();
+        final BitSet patternRules = new BitSet();
+
+        RuleIndex(List<Rule> decorations) {
+            rules = decorations.toArray(new Rule[decorations.size()]);
+            for (int i = 0; i < rules.length; i++) {
+                String interfaceName = rules[i] instanceof InterfaceRule
+                    ? ((InterfaceRule) rules[i]).getInterfaceName() : null;
+                if (interfaceName == null) {
+                    patternRules.set(i);
+                } else {
+                    BitSet positions = rulesByInterface.get(interfaceName);
+                    if (positions == null) {
+                        positions = new BitSet();
+                        rulesByInterface.put(interfaceName, positions);
+                    }
+                    positions.set(i);
+                }
+            }
+        }
     }
 }
@@ -31,13 +31,23 @@ import org.apache.cxf.Bus;
 import org.apache.cxf.BusFactory;
 import org.apache.cxf.common.util.PackageUtils;
 import org.apache.cxf.dosgi.dsw.Constants;
+import org.apache.cxf.dosgi.dsw.admission.AdmissionControlFeature;
+import org.apache.cxf.dosgi.dsw.admission.AdmissionController;
+import org.apache.cxf.dosgi.dsw.cache.ResponseCache;
+import org.apache.cxf.dosgi.dsw.cache.ResponseCacheRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
+import org.apache.cxf.dosgi.dsw.metrics.ServerMetricsFeature;
 import org.apache.cxf.dosgi.dsw.qos.IntentManager;
 import org.apache.cxf.dosgi.dsw.qos.IntentUtils;
+import org.apache.cxf.dosgi.dsw.trace.Tracer;
+import org.apache.cxf.dosgi.dsw.trace.TracingFeature;
 import org.apache.cxf.dosgi.dsw.util.ClassUtils;
 import org.apache.cxf.dosgi.dsw.util.OsgiUtils;
 import org.apache.cxf.endpoint.AbstractEndpointFactory;
 import org.apache.cxf.endpoint.Server;
 import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.feature.Feature;
 import org.apache.cxf.frontend.AbstractWSDLBasedEndpointFactory;
 import org.apache.cxf.frontend.ClientFactoryBean;
 import org.apache.cxf.frontend.ServerFactoryBean;
@@ -45,6 +55,7 @@ import org.apache.cxf.helpers.CastUtils;
 import org.apache.cxf.interceptor.Interceptor;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
 import org.osgi.service.remoteserviceadmin.RemoteConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -55,18 +66,85 @@ public abstract class AbstractPojoConfigurationTypeHandler implements Configurat
     protected BundleContext bundleContext;
     protected IntentManager intentManager;
     protected HttpServiceManager httpServiceManager;
+    protected ClientMetricsRegistry clientMetrics;
+    protected ResponseCacheRegistry responseCaches;
+    protected volatile Tracer tracer;
 
     public AbstractPojoConfigurationTypeHandler(BundleContext dswBC, IntentManager intentManager,
                                                 HttpServiceManager httpServiceManager) {
+        this(dswBC, intentManager, httpServiceManager, new ClientMetricsRegistry(), new ResponseCacheRegistry());
+    }
+
+    public AbstractPojoConfigurationTypeHandler(BundleContext dswBC, IntentManager intentManager,
+                                                HttpServiceManager httpServiceManager,
+                                                ClientMetricsRegistry clientMetrics,
+                                                ResponseCacheRegistry responseCaches) {
         this.bundleContext = dswBC;
         this.intentManager = intentManager;
         this.httpServiceManager = httpServiceManager;
+        this.clientMetrics = clientMetrics;
+        this.responseCaches = responseCaches;
+    }
+
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Adds the features every server and client gets, independent of the requested intents.
+     * Tracing is not added again if it was already requested through the tracing intent.
+     */
+    protected void addInstrumentationFeatures(List<Feature> features) {
+        Tracer t = tracer;
+        if (t != null && !containsTracing(features)) {
+            features.add(new TracingFeature(t));
+        }
+    }
+
+    private static boolean containsTracing(List<Feature> features) {
+        for (Feature feature : features) {
+            if (feature instanceof TracingFeature) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the features every server gets: admission control if it is configured in the
+     * endpoint properties, metrics and the instrumentation features.
+     */
+    protected void addServerFeatures(List<Feature> features, Map<String, Object> endpointProps) {
+        ServerMetricsFeature metrics = new ServerMetricsFeature();
+        AdmissionController admission = AdmissionController.create(endpointProps);
+        if (admission != null) {
+            // rejected requests must not be seen by the metrics
+            features.add(new AdmissionControlFeature(admission));
+            metrics.getMetrics().setAdmissionController(admission);
+        }
+        features.add(metrics);
+        addInstrumentationFeatures(features);
     }
 
     protected Object getProxy(Object serviceProxy, Class<?> iType) {
+        return getProxy(serviceProxy, iType, null, null);
+    }
+
+    protected Object getProxy(Object serviceProxy, Class<?> iType, EndpointMetrics metrics, ResponseCache cache) {
         return Proxy.newProxyInstance(iType.getClassLoader(), new Class[] {
             iType
-        }, new ServiceInvocationHandler(serviceProxy, iType));
+        }, new ServiceInvocationHandler(serviceProxy, iType, metrics, cache));
+    }
+
+    protected EndpointMetrics getClientMetrics(EndpointDescription endpoint) {
+        return clientMetrics.getMetrics(endpoint);
+    }
+
+    /**
+     * @return the cache shared by the proxies of the given endpoint, or null if nothing is cached
+     */
+    protected ResponseCache getResponseCache(EndpointDescription endpoint) {
+        return responseCaches.getCache(endpoint);
     }
 
     protected Map<String, Object> createEndpointProps(Map<String, Object> sd, Class<?> iClass,
@@ -101,9 +179,25 @@ public abstract class AbstractPojoConfigurationTypeHandler implements Configurat
         String[] allIntents = IntentUtils.mergeArrays(intents, IntentUtils.getIntentsImplementedByTheService(sd));
         props.put(RemoteConstants.SERVICE_INTENTS, allIntents);
         props.put(RemoteConstants.ENDPOINT_ID, address);
+        addLocalityProperties(props);
         return props;
     }
 
+    /**
+     * Publishes where the exporting framework runs, unless the service properties already do.
+     */
+    private void addLocalityProperties(Map<String, Object> props) {
+        Map<String, String> locality = new HashMap<String, String>();
+        locality.put(Constants.ENDPOINT_HOST, OsgiUtils.getHostName());
+        locality.put(Constants.ENDPOINT_ZONE, bundleContext.getProperty(Constants.ZONE));
+        locality.put(Constants.ENDPOINT_RACK, bundleContext.getProperty(Constants.RACK));
+        for (Map.Entry<String, String> entry : locality.entrySet()) {
+            if (entry.getValue() != null && !props.containsKey(entry.getKey())) {
+                props.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     private void copyEndpointProperties(Map<String, Object> sd, Map<String, Object> endpointProps) {
         Set<Map.Entry<String, Object>> keys = sd.entrySet();
         for (Map.Entry<String, Object> entry : keys) {
@@ -205,6 +299,7 @@ public abstract class AbstractPojoConfigurationTypeHandler implements Configurat
     }
 
     protected ExportResult createServerFromFactory(ServerFactoryBean factory, Map<String, Object> endpointProps) {
+        addServerFeatures(factory.getFeatures(), endpointProps);
         ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(ServerFactoryBean.class.getClassLoader());
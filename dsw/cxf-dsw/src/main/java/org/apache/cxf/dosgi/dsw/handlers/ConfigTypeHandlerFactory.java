@@ -25,7 +25,10 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.cxf.dosgi.dsw.Constants;
+import org.apache.cxf.dosgi.dsw.cache.ResponseCacheRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsRegistry;
 import org.apache.cxf.dosgi.dsw.qos.IntentManager;
+import org.apache.cxf.dosgi.dsw.trace.Tracer;
 import org.apache.cxf.dosgi.dsw.util.OsgiUtils;
 import org.apache.cxf.dosgi.dsw.util.Utils;
 import org.osgi.framework.BundleContext;
@@ -46,15 +49,21 @@ public class ConfigTypeHandlerFactory {
     private PojoConfigurationTypeHandler pojoConfigurationTypeHandler;
     private JaxRSPojoConfigurationTypeHandler jaxRsPojoConfigurationTypeHandler;
     private WsdlConfigurationTypeHandler wsdlConfigurationTypeHandler;
+    private final ClientMetricsRegistry clientMetrics = new ClientMetricsRegistry();
+    private final ResponseCacheRegistry responseCaches = new ResponseCacheRegistry();
 
     public ConfigTypeHandlerFactory(BundleContext bc, IntentManager intentManager,
                                     HttpServiceManager httpServiceManager) {
         this.intentManager = intentManager;
-        this.pojoConfigurationTypeHandler = new PojoConfigurationTypeHandler(bc, intentManager, httpServiceManager);
+        this.pojoConfigurationTypeHandler = new PojoConfigurationTypeHandler(bc, intentManager, httpServiceManager,
+                                                                             clientMetrics, responseCaches);
         this.jaxRsPojoConfigurationTypeHandler = new JaxRSPojoConfigurationTypeHandler(bc,
                                                                                        intentManager,
-                                                                                       httpServiceManager);
-        this.wsdlConfigurationTypeHandler = new WsdlConfigurationTypeHandler(bc, intentManager, httpServiceManager);
+                                                                                       httpServiceManager,
+                                                                                       clientMetrics,
+                                                                                       responseCaches);
+        this.wsdlConfigurationTypeHandler = new WsdlConfigurationTypeHandler(bc, intentManager, httpServiceManager,
+                                                                             clientMetrics, responseCaches);
         supportedConfigurationTypes = new ArrayList<String>();
         supportedConfigurationTypes.add(Constants.WSDL_CONFIG_TYPE);
         supportedConfigurationTypes.add(Constants.RS_CONFIG_TYPE);
@@ -163,6 +172,31 @@ public class ConfigTypeHandlerFactory {
         return usableConfigurationTypes;
     }
 
+    /**
+     * Enables tracing for all endpoints created by the handlers of this factory.
+     *
+     * @param tracer the tracer, or null to only trace endpoints with the tracing intent
+     */
+    public void setTracer(Tracer tracer) {
+        pojoConfigurationTypeHandler.setTracer(tracer);
+        jaxRsPojoConfigurationTypeHandler.setTracer(tracer);
+        wsdlConfigurationTypeHandler.setTracer(tracer);
+    }
+
+    /**
+     * Returns the call statistics of the proxies created by the handlers of this factory.
+     */
+    public ClientMetricsRegistry getClientMetrics() {
+        return clientMetrics;
+    }
+
+    /**
+     * Returns the response caches of the proxies created by the handlers of this factory.
+     */
+    public ResponseCacheRegistry getResponseCaches() {
+        return responseCaches;
+    }
+
     public List<String> getSupportedConfigurationTypes() {
         return supportedConfigurationTypes;
     }
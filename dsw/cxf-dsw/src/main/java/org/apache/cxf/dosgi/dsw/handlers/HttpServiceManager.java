@@ -18,18 +18,21 @@
  */
 package org.apache.cxf.dosgi.dsw.handlers;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.apache.cxf.Bus;
 import org.apache.cxf.transport.http.DestinationRegistry;
 import org.apache.cxf.transport.http.DestinationRegistryImpl;
 import org.apache.cxf.transport.servlet.CXFNonSpringServlet;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.Filter;
-import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceException;
 import org.osgi.framework.ServiceListener;
@@ -37,22 +40,32 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class HttpServiceManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(HttpServiceManager.class);
-    private static final long SERVICE_LOOKUP_TIMEOUT = 10000;
     private ServiceTracker tracker;
+    // security filter trackers by the bundle context servlets were exported with; guarded by this
+    private final Map<BundleContext, SecurityFilterTracker> filterTrackers
+        = new HashMap<BundleContext, SecurityFilterTracker>();
     private BundleContext bundleContext;
     private Map<Long, String> exportedAliases = Collections.synchronizedMap(new HashMap<Long, String>());
+    private ServiceListener unregisterListener;
+    // servlets by alias, both registered and pending ones; guarded by itself
+    private final Map<String, ServletEntry> servlets = new LinkedHashMap<String, ServletEntry>();
+    // HttpServices which went away; guarded by servlets
+    private final Set<HttpService> removedServices
+        = Collections.newSetFromMap(new WeakHashMap<HttpService, Boolean>());
+    private volatile Runnable httpServiceListener;
     private String httpBase;
     private String cxfServletAlias;
 
     public HttpServiceManager(BundleContext bundleContext, String httpBase, String cxfServletAlias) {
-        this(bundleContext, httpBase, cxfServletAlias,
-             new ServiceTracker(bundleContext, HttpService.class.getName(), null));
+        this(bundleContext, httpBase, cxfServletAlias, null);
+        this.tracker = new ServiceTracker(bundleContext, HttpService.class.getName(), new HttpServiceCustomizer());
         this.tracker.open();
     }
 
@@ -70,67 +83,255 @@ public class HttpServiceManager {
         return value == null ? defaultValue : value;
     }
 
+    /**
+     * Registers a CXF servlet for the given bus at the given context root.
+     * <p>
+     * If no HttpService is available, a ServiceException is thrown, so the export fails instead
+     * of publishing an endpoint which cannot be reached. The listener set with
+     * {@link #setHttpServiceListener(Runnable)} is notified when an HttpService appears, so that
+     * the export can be retried. The retry is up to the topology manager, which is expected to
+     * react to the re-published RemoteServiceAdmin properties. Servlets are moved to another
+     * HttpService if the one they are registered with goes away, and are pending until a
+     * replacement appears.
+     */
     public Bus registerServlet(Bus bus, String contextRoot, BundleContext callingContext,
             ServiceReference sref) {
+        HttpService httpService = getHttpService();
+        if (httpService == null) {
+            throw new ServiceException("CXF DOSGi: no HttpService available for the CXF HTTP Servlet at "
+                                       + contextRoot);
+        }
         bus.setExtension(new DestinationRegistryImpl(), DestinationRegistry.class);
         CXFNonSpringServlet cxf = new CXFNonSpringServlet();
         cxf.setBus(bus);
-        try {
-            HttpService httpService = getHttpService();
-            httpService.registerServlet(contextRoot, cxf, new Hashtable<String, String>(),
-                                       getHttpContext(callingContext, httpService));
-            registerUnexportHook(sref, contextRoot);
-
-            LOG.info("Successfully registered CXF DOSGi servlet at " + contextRoot);
-        } catch (Exception e) {
-            throw new ServiceException("CXF DOSGi: problem registering CXF HTTP Servlet", e);
+        ServletEntry entry = new ServletEntry(contextRoot, cxf, callingContext);
+        synchronized (servlets) {
+            servlets.put(contextRoot, entry);
         }
+        registerPending(httpService);
+        boolean failed;
+        SecurityFilterTracker unusedTracker = null;
+        synchronized (servlets) {
+            // a concurrent registerPending may have claimed the entry before we did
+            while (entry.registering) {
+                try {
+                    servlets.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            failed = entry.httpService == null;
+            if (failed && servlets.get(contextRoot) == entry) {
+                servlets.remove(contextRoot);
+                unusedTracker = removeUnusedSecurityFilterTracker(callingContext);
+            }
+        }
+        if (failed) {
+            if (unusedTracker != null) {
+                closeSecurityFilterTracker(unusedTracker);
+            }
+            throw new ServiceException("CXF DOSGi: problem registering CXF HTTP Servlet at " + contextRoot);
+        }
+        registerUnexportHook(sref, contextRoot);
         return bus;
     }
 
+    /**
+     * Sets the listener which is notified when an HttpService appears.
+     */
+    public void setHttpServiceListener(Runnable listener) {
+        this.httpServiceListener = listener;
+    }
+
+    /**
+     * @return the current HttpService, or null if there is none
+     */
     protected HttpService getHttpService() {
-        Object service = null;
-        try {
-            service = tracker.waitForService(SERVICE_LOOKUP_TIMEOUT);
-        } catch (InterruptedException ex) {
-            LOG.warn("waitForService interrupeted", ex);
+        return (HttpService) tracker.getService();
+    }
+
+    /**
+     * Registers all pending servlets with the given HttpService.
+     * <p>
+     * The HttpService is called without holding the lock on servlets; entries being
+     * registered are flagged so that concurrent calls leave them alone, and waiters
+     * on servlets are notified once the flag is cleared.
+     */
+    private void registerPending(HttpService httpService) {
+        List<ServletEntry> pending = new ArrayList<ServletEntry>();
+        synchronized (servlets) {
+            for (ServletEntry entry : servlets.values()) {
+                if (entry.httpService == null && !entry.registering) {
+                    entry.registering = true;
+                    pending.add(entry);
+                }
+            }
         }
-        if (service == null) {
-            throw new RuntimeException("No HTTPService found");
+        boolean retry = false;
+        for (ServletEntry entry : pending) {
+            boolean registered = false;
+            try {
+                httpService.registerServlet(entry.alias, entry.servlet, new Hashtable<String, String>(),
+                                            getHttpContext(entry.callingContext, httpService));
+                registered = true;
+                LOG.info("Successfully registered CXF DOSGi servlet at " + entry.alias);
+            } catch (Exception e) {
+                LOG.error("CXF DOSGi: problem registering CXF HTTP Servlet at " + entry.alias, e);
+            }
+            boolean unregister = false;
+            synchronized (servlets) {
+                entry.registering = false;
+                servlets.notifyAll();
+                if (!registered) {
+                    continue;
+                }
+                if (servlets.get(entry.alias) != entry) {
+                    // unexported in the meantime
+                    unregister = true;
+                } else if (removedServices.contains(httpService)) {
+                    // the HttpService went away in the meantime, the entry stays pending
+                    retry = true;
+                } else {
+                    entry.httpService = httpService;
+                }
+            }
+            if (unregister) {
+                unregister(httpService, entry.alias);
+            }
+        }
+        if (retry) {
+            HttpService replacement = getHttpService();
+            if (replacement != null && replacement != httpService) {
+                registerPending(replacement);
+            }
+        }
+    }
+
+    /**
+     * Registers all pending servlets with the given HttpService,
+     * and notifies the listener so that failed exports are retried.
+     */
+    void httpServiceAdded(HttpService httpService) {
+        registerPending(httpService);
+        Runnable listener = httpServiceListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Marks the servlets registered with the given HttpService as pending again,
+     * and moves them to another HttpService if there is one.
+     */
+    void httpServiceRemoved(HttpService httpService, HttpService replacement) {
+        List<String> moved = new ArrayList<String>();
+        synchronized (servlets) {
+            removedServices.add(httpService);
+            for (ServletEntry entry : servlets.values()) {
+                if (entry.httpService == httpService) {
+                    entry.httpService = null;
+                    moved.add(entry.alias);
+                }
+            }
+        }
+        if (!moved.isEmpty()) {
+            LOG.info("HttpService went away, registration of CXF DOSGi servlets at {} is pending", moved);
+            if (replacement != null) {
+                registerPending(replacement);
+            }
+        }
+    }
+
+    private static void unregister(HttpService httpService, String alias) {
+        try {
+            httpService.unregister(alias);
+        } catch (Exception e) {
+            LOG.warn("An exception occurred while unregistering service for HTTP servlet alias '{}'", alias, e);
         }
-        return (HttpService) service;
     }
 
     private HttpContext getHttpContext(BundleContext bc, HttpService httpService) {
         HttpContext httpContext = httpService.createDefaultHttpContext();
-        return new SecurityDelegatingHttpContext(bc, httpContext);
+        return new SecurityDelegatingHttpContext(bc, httpContext, getSecurityFilterTracker(bc));
+    }
+
+    /**
+     * Returns the tracker of security filters for servlets exported with the given bundle context,
+     * opening it on first use.
+     * <p>
+     * The filters are tracked with the context of the exporting bundle, as they were looked up
+     * before they were tracked, so that only filters from its class space are used. The tracker
+     * is shared by all servlets exported with that context.
+     *
+     * @param callingContext the bundle context the servlet is exported with
+     * @return the security filter tracker
+     */
+    private synchronized SecurityFilterTracker getSecurityFilterTracker(BundleContext callingContext) {
+        SecurityFilterTracker filterTracker = filterTrackers.get(callingContext);
+        if (filterTracker == null) {
+            filterTracker = new SecurityFilterTracker(callingContext);
+            filterTracker.open();
+            filterTrackers.put(callingContext, filterTracker);
+        }
+        return filterTracker;
+    }
+
+    /**
+     * Removes the tracker of security filters for the given bundle context,
+     * unless servlets exported with it are left.
+     * <p>
+     * Must be called while holding the lock on servlets, after the servlet was removed. As servlets
+     * are added before their tracker is requested, no tracker in use is removed. The caller closes
+     * the removed tracker after releasing the lock.
+     *
+     * @param callingContext the bundle context the removed servlet was exported with
+     * @return the removed tracker, or null if it is still used or there is none
+     */
+    private SecurityFilterTracker removeUnusedSecurityFilterTracker(BundleContext callingContext) {
+        for (ServletEntry entry : servlets.values()) {
+            if (entry.callingContext == callingContext) {
+                return null;
+            }
+        }
+        synchronized (this) {
+            return filterTrackers.remove(callingContext);
+        }
+    }
+
+    private static void closeSecurityFilterTracker(SecurityFilterTracker filterTracker) {
+        try {
+            filterTracker.close();
+        } catch (IllegalStateException e) {
+            // the exporting bundle's context is no longer valid
+        }
     }
 
     /**
-     * This listens for service removal events and "un-exports" the service
-     * from the HttpService.
+     * Makes sure the service is "un-exported" from the HttpService when it is unregistered.
+     * <p>
+     * A single listener, added with the first export, serves all exported services and
+     * looks up the alias by service id, so the cost of a service event does not grow
+     * with the number of exports. It has no filter, as services may be exported with
+     * {@code service.exported.interfaces} given only in the properties passed to the RemoteServiceAdmin.
      *
      * @param sref the service reference to track
      * @param alias the HTTP servlet context alias
      */
     private void registerUnexportHook(ServiceReference sref, String alias) {
         final Long sid = (Long) sref.getProperty(org.osgi.framework.Constants.SERVICE_ID);
-        LOG.debug("Registering service listener for service with ID {}", sid);
+        LOG.debug("Registering unexport hook for service with ID {}", sid);
 
         String previous = exportedAliases.put(sid, alias);
         if (previous != null) {
             LOG.warn("Overwriting service export for service with ID {}", sid);
         }
 
-        try {
-            Filter f = bundleContext.createFilter("(" + org.osgi.framework.Constants.SERVICE_ID + "=" + sid + ")");
-            if (f != null) {
-                bundleContext.addServiceListener(new UnregisterListener(), f.toString());
-            } else {
-                LOG.warn("Service listener could not be started. The service will not be automatically unexported.");
+        synchronized (this) {
+            if (unregisterListener == null) {
+                unregisterListener = new UnregisterListener();
+                bundleContext.addServiceListener(unregisterListener);
             }
-        } catch (InvalidSyntaxException e) {
-            LOG.warn("Service listener could not be started. The service will not be automatically unexported.", e);
         }
     }
 
@@ -147,31 +348,88 @@ public class HttpServiceManager {
     }
 
     public void close() {
-        tracker.close();
+        if (tracker != null) {
+            tracker.close();
+        }
+        synchronized (this) {
+            if (unregisterListener != null) {
+                try {
+                    bundleContext.removeServiceListener(unregisterListener);
+                } catch (IllegalStateException e) {
+                    // bundle context already invalid
+                }
+                unregisterListener = null;
+            }
+            for (SecurityFilterTracker filterTracker : filterTrackers.values()) {
+                closeSecurityFilterTracker(filterTracker);
+            }
+            filterTrackers.clear();
+        }
     }
 
     private final class UnregisterListener implements ServiceListener {
 
         public void serviceChanged(ServiceEvent event) {
-            if (!(event.getType() == ServiceEvent.UNREGISTERING)) {
+            // a modified service stays exported until its ExportRegistration is closed
+            if (event.getType() != ServiceEvent.UNREGISTERING) {
                 return;
             }
             final ServiceReference sref = event.getServiceReference();
             final Long sid = (Long) sref.getProperty(org.osgi.framework.Constants.SERVICE_ID);
             final String alias = exportedAliases.remove(sid);
             if (alias == null) {
-                LOG.error("Unable to unexport HTTP servlet for service class '{}',"
-                        + " service-id {}: no servlet alias found",
-                        sref.getProperty(org.osgi.framework.Constants.OBJECTCLASS), sid);
+                // not one of our exports
                 return;
             }
             LOG.debug("Unexporting HTTP servlet for alias '{}'", alias);
-            try {
-                HttpService http = getHttpService();
-                http.unregister(alias);
-            } catch (Exception e) {
-                LOG.warn("An exception occurred while unregistering service for HTTP servlet alias '{}'", alias, e);
+            HttpService http;
+            SecurityFilterTracker unusedTracker;
+            synchronized (servlets) {
+                ServletEntry entry = servlets.remove(alias);
+                http = entry == null ? null : entry.httpService;
+                unusedTracker = entry == null ? null : removeUnusedSecurityFilterTracker(entry.callingContext);
+            }
+            if (http != null) {
+                unregister(http, alias);
+            }
+            if (unusedTracker != null) {
+                closeSecurityFilterTracker(unusedTracker);
+            }
+        }
+    }
+
+    private final class HttpServiceCustomizer implements ServiceTrackerCustomizer {
+
+        public Object addingService(ServiceReference reference) {
+            HttpService httpService = (HttpService) bundleContext.getService(reference);
+            if (httpService != null) {
+                httpServiceAdded(httpService);
             }
+            return httpService;
+        }
+
+        public void modifiedService(ServiceReference reference, Object service) {
+        }
+
+        public void removedService(ServiceReference reference, Object service) {
+            // the tracker no longer returns the removed service at this point
+            httpServiceRemoved((HttpService) service, getHttpService());
+            bundleContext.ungetService(reference);
+        }
+    }
+
+    private static final class ServletEntry {
+
+        final String alias;
+        final CXFNonSpringServlet servlet;
+        final BundleContext callingContext;
+        HttpService httpService; // null while pending
+        boolean registering;
+
+        ServletEntry(String alias, CXFNonSpringServlet servlet, BundleContext callingContext) {
+            this.alias = alias;
+            this.servlet = servlet;
+            this.callingContext = callingContext;
         }
     }
 }
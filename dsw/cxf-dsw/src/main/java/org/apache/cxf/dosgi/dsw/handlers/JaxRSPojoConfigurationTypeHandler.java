@@ -25,6 +25,10 @@ import java.util.Map;
 import org.apache.cxf.Bus;
 import org.apache.cxf.common.util.ProxyClassLoader;
 import org.apache.cxf.dosgi.dsw.Constants;
+import org.apache.cxf.dosgi.dsw.cache.ResponseCacheRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsFeature;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
 import org.apache.cxf.dosgi.dsw.qos.IntentManager;
 import org.apache.cxf.dosgi.dsw.qos.IntentUnsatisfiedException;
 import org.apache.cxf.dosgi.dsw.util.OsgiUtils;
@@ -50,6 +54,14 @@ public class JaxRSPojoConfigurationTypeHandler extends AbstractPojoConfiguration
         super(dswBC, intentManager, httpServiceManager);
     }
 
+    public JaxRSPojoConfigurationTypeHandler(BundleContext dswBC,
+                                             IntentManager intentManager,
+                                             HttpServiceManager httpServiceManager,
+                                             ClientMetricsRegistry clientMetrics,
+                                             ResponseCacheRegistry responseCaches) {
+        super(dswBC, intentManager, httpServiceManager, clientMetrics, responseCaches);
+    }
+
     public String[] getSupportedTypes() {
         return new String[] {Constants.RS_CONFIG_TYPE};
     }
@@ -105,8 +117,11 @@ public class JaxRSPojoConfigurationTypeHandler extends AbstractPojoConfiguration
         if (providers != null && !providers.isEmpty()) {
             bean.setProviders(providers);
         }
+        EndpointMetrics metrics = getClientMetrics(endpoint);
+        bean.getFeatures().add(new ClientMetricsFeature(metrics));
+        addInstrumentationFeatures(bean.getFeatures());
         Thread.currentThread().setContextClassLoader(JAXRSClientFactoryBean.class.getClassLoader());
-        return getProxy(bean.create(), iClass);
+        return getProxy(bean.create(), iClass, metrics, getResponseCache(endpoint));
     }
 
     public ExportResult createServer(ServiceReference sref,
@@ -142,6 +157,7 @@ public class JaxRSPojoConfigurationTypeHandler extends AbstractPojoConfiguration
 
     private ExportResult createServerFromFactory(JAXRSServerFactoryBean factory,
                                                        Map<String, Object> endpointProps) {
+        addServerFeatures(factory.getFeatures(), endpointProps);
         ClassLoader oldClassLoader = Thread.currentThread().getContextClassLoader();
         try {
             Thread.currentThread().setContextClassLoader(JAXRSServerFactoryBean.class.getClassLoader());
@@ -26,6 +26,10 @@ import org.apache.cxf.Bus;
 import org.apache.cxf.aegis.databinding.AegisDatabinding;
 import org.apache.cxf.databinding.DataBinding;
 import org.apache.cxf.dosgi.dsw.Constants;
+import org.apache.cxf.dosgi.dsw.cache.ResponseCacheRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsFeature;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
 import org.apache.cxf.dosgi.dsw.qos.IntentManager;
 import org.apache.cxf.dosgi.dsw.qos.IntentUnsatisfiedException;
 import org.apache.cxf.frontend.ClientProxyFactoryBean;
@@ -49,6 +53,14 @@ public class PojoConfigurationTypeHandler extends AbstractPojoConfigurationTypeH
         super(dswBC, intentManager, httpServiceManager);
     }
 
+    public PojoConfigurationTypeHandler(BundleContext dswBC,
+                                        IntentManager intentManager,
+                                        HttpServiceManager httpServiceManager,
+                                        ClientMetricsRegistry clientMetrics,
+                                        ResponseCacheRegistry responseCaches) {
+        super(dswBC, intentManager, httpServiceManager, clientMetrics, responseCaches);
+    }
+
     public String[] getSupportedTypes() {
         return new String[] {Constants.WS_CONFIG_TYPE, Constants.WS_CONFIG_TYPE_OLD};
     }
@@ -75,9 +87,12 @@ public class PojoConfigurationTypeHandler extends AbstractPojoConfigurationTypeH
             setClientWsdlProperties(factory.getClientFactoryBean(), dswContext, sd, false);
 
             intentManager.applyIntents(factory.getFeatures(), factory.getClientFactoryBean(), sd);
+            EndpointMetrics metrics = getClientMetrics(endpoint);
+            factory.getFeatures().add(new ClientMetricsFeature(metrics));
+            addInstrumentationFeatures(factory.getFeatures());
 
             Thread.currentThread().setContextClassLoader(ClientProxyFactoryBean.class.getClassLoader());
-            return getProxy(factory.create(), iClass);
+            return getProxy(factory.create(), iClass, metrics, getResponseCache(endpoint));
         } catch (Exception e) {
             LOG.warn("proxy creation failed", e);
         } finally {
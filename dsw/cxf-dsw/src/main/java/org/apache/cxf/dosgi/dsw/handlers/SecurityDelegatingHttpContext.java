@@ -30,8 +30,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
-import org.osgi.framework.ServiceReference;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,7 +38,8 @@ import org.slf4j.LoggerFactory;
  * <p>
  * An HttpContext that delegates to another HttpContext for all things other than security. This implementation handles
  * security by delegating to a {@link FilterChain} based on the set of {@link Filter}s registered with a
- * {@link #FILTER_PROP} property.
+ * {@link #FILTER_PROP} property. The filters are supplied by a {@link SecurityFilterTracker}, so handling a
+ * request does not query the service registry.
  * </p>
  * <p>
  * If the {@link BundleContext} contains a {@link #FILTER_REQUIRED_PROP} property with value "true", requests will not
@@ -52,15 +51,17 @@ public class SecurityDelegatingHttpContext implements HttpContext {
     public static final String FILTER_PROP = "org.apache.cxf.httpservice.filter";
     public static final String FILTER_REQUIRED_PROP = "org.apache.cxf.httpservice.requirefilter";
     private static final Logger LOG = LoggerFactory.getLogger(SecurityDelegatingHttpContext.class);
-    private static final String FILTER_FILTER = "(" + FILTER_PROP + "=*)";
 
     BundleContext bundleContext;
     HttpContext delegate;
+    SecurityFilterTracker filterTracker;
     boolean requireFilter;
 
-    public SecurityDelegatingHttpContext(BundleContext bundleContext, HttpContext delegate) {
+    public SecurityDelegatingHttpContext(BundleContext bundleContext, HttpContext delegate,
+                                         SecurityFilterTracker filterTracker) {
         this.bundleContext = bundleContext;
         this.delegate = delegate;
+        this.filterTracker = filterTracker;
         requireFilter = Boolean.TRUE.toString().equalsIgnoreCase(bundleContext.getProperty(FILTER_REQUIRED_PROP));
     }
 
@@ -73,35 +74,17 @@ public class SecurityDelegatingHttpContext implements HttpContext {
     }
 
     public boolean handleSecurity(HttpServletRequest request, HttpServletResponse response) throws IOException {
-        ServiceReference[] refs;
-        try {
-            refs = bundleContext.getServiceReferences(Filter.class.getName(), FILTER_FILTER);
-        } catch (InvalidSyntaxException e) {
-            LOG.warn(e.getMessage(), e);
-            return false;
-        }
-        if (refs == null || refs.length == 0) {
-            LOG.info("No filter registered.");
+        Filter[] filters = filterTracker.getFilters();
+        if (filters.length == 0) {
+            LOG.debug("No filter registered.");
             return !requireFilter;
         }
-        Filter[] filters = new Filter[refs.length];
         try {
-            for (int i = 0; i < refs.length; i++) {
-                filters[i] = (Filter)bundleContext.getService(refs[i]);
-            }
-            try {
-                new Chain(filters).doFilter(request, response);
-                return !response.isCommitted();
-            } catch (ServletException e) {
-                LOG.warn(e.getMessage(), e);
-                return false;
-            }
-        } finally {
-            for (int i = 0; i < refs.length; i++) {
-                if (filters[i] != null) {
-                    bundleContext.ungetService(refs[i]);
-                }
-            }
+            new Chain(filters).doFilter(request, response);
+            return !response.isCommitted();
+        } catch (ServletException e) {
+            LOG.warn(e.getMessage(), e);
+            return false;
         }
     }
 }
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.handlers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.Filter;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Tracks the servlet {@link Filter}s registered with a {@link SecurityDelegatingHttpContext#FILTER_PROP}
+ * property.
+ * <p>
+ * The current filters are published as an immutable array ordered by service ranking (highest first),
+ * which is replaced whenever a filter is added, modified or removed. Readers therefore never touch the
+ * service registry.
+ */
+public class SecurityFilterTracker extends ServiceTracker {
+
+    static final String FILTER_SERVICES = "(&(" + org.osgi.framework.Constants.OBJECTCLASS + "="
+        + Filter.class.getName() + ")(" + SecurityDelegatingHttpContext.FILTER_PROP + "=*))";
+
+    private static final Filter[] NO_FILTERS = new Filter[0];
+
+    private final Map<ServiceReference, Filter> tracked = new LinkedHashMap<ServiceReference, Filter>();
+    private volatile Filter[] filters = NO_FILTERS;
+
+    public SecurityFilterTracker(BundleContext context) {
+        super(context, getFilter(context), null);
+    }
+
+    static org.osgi.framework.Filter getFilter(BundleContext context) {
+        try {
+            return context.createFilter(FILTER_SERVICES);
+        } catch (InvalidSyntaxException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the currently registered filters, ordered by service ranking.
+     * The returned array must not be modified.
+     *
+     * @return the current filters, or an empty array if there are none
+     */
+    public Filter[] getFilters() {
+        return filters;
+    }
+
+    @Override
+    public Object addingService(ServiceReference reference) {
+        Object service = super.addingService(reference);
+        if (service instanceof Filter) {
+            synchronized (tracked) {
+                tracked.put(reference, (Filter)service);
+                publish();
+            }
+        }
+        return service;
+    }
+
+    @Override
+    public void modifiedService(ServiceReference reference, Object service) {
+        // the ranking may have changed
+        synchronized (tracked) {
+            publish();
+        }
+    }
+
+    @Override
+    public void removedService(ServiceReference reference, Object service) {
+        synchronized (tracked) {
+            tracked.remove(reference);
+            publish();
+        }
+        super.removedService(reference, service);
+    }
+
+    // must be called while holding the lock on tracked
+    private void publish() {
+        if (tracked.isEmpty()) {
+            filters = NO_FILTERS;
+            return;
+        }
+        List<ServiceReference> refs = new ArrayList<ServiceReference>(tracked.keySet());
+        Collections.sort(refs, Collections.reverseOrder());
+        Filter[] sorted = new Filter[refs.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = tracked.get(refs.get(i));
+        }
+        filters = sorted;
+    }
+}
@@ -30,6 +30,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.cxf.dosgi.dsw.cache.ResponseCache;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
+import org.apache.cxf.dosgi.dsw.metrics.MetricsUtils;
 import org.osgi.framework.ServiceException;
 
 public class ServiceInvocationHandler implements InvocationHandler {
@@ -39,9 +42,28 @@ public class ServiceInvocationHandler implements InvocationHandler {
 
     private Map<Method, List<Class<?>>> exceptionsMap = new HashMap<Method, List<Class<?>>>();
     private Object serviceObject;
+    private final EndpointMetrics metrics;
+    private final ResponseCache cache;
 
     public ServiceInvocationHandler(Object serviceObject, Class<?> iType) {
+        this(serviceObject, iType, null);
+    }
+
+    public ServiceInvocationHandler(Object serviceObject, Class<?> iType, EndpointMetrics metrics) {
+        this(serviceObject, iType, metrics, null);
+    }
+
+    /**
+     * @param serviceObject the client proxy calls are delegated to
+     * @param iType the service interface
+     * @param metrics the metrics recording the calls, or null
+     * @param cache the cache of the results of the calls, or null
+     */
+    public ServiceInvocationHandler(Object serviceObject, Class<?> iType, EndpointMetrics metrics,
+                                    ResponseCache cache) {
         this.serviceObject = serviceObject;
+        this.metrics = metrics;
+        this.cache = cache;
         introspectType(iType);
     }
 
@@ -53,16 +75,39 @@ public class ServiceInvocationHandler implements InvocationHandler {
             return m.invoke(this, params);
         }
 
+        if (cache != null && cache.isCacheable(m)) {
+            Object cached = cache.get(m, params);
+            if (cached != ResponseCache.MISS) {
+                return cached;
+            }
+        }
+
         ClassLoader oldCl = Thread.currentThread().getContextClassLoader();
+        long start = 0;
+        if (metrics != null) {
+            metrics.requestStarted();
+            start = System.nanoTime();
+        }
         try {
             Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
             final Object[] paramsFinal = params;
-            return AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
+            Object result = AccessController.doPrivileged(new PrivilegedExceptionAction<Object>() {
                 public Object run() throws Exception {
                     return m.invoke(serviceObject, paramsFinal);
                 }
             });
+            if (metrics != null) {
+                metrics.requestCompleted(m.getName(), System.nanoTime() - start, 0, 0, false);
+            }
+            if (cache != null && cache.isCacheable(m)) {
+                cache.put(m, params, result);
+            }
+            return result;
         } catch (Throwable ex) {
+            if (metrics != null) {
+                metrics.requestCompleted(m.getName(), System.nanoTime() - start, 0, 0,
+                                         true, MetricsUtils.isTimeout(ex));
+            }
             Throwable theCause = ex.getCause() == null ? ex : ex.getCause();
             Throwable theCauseCause = theCause.getCause() == null ? theCause : theCause.getCause();
             List<Class<?>> excTypes = exceptionsMap.get(m);
@@ -77,7 +122,7 @@ public class ServiceInvocationHandler implements InvocationHandler {
                 }
             }
 
-            throw new ServiceException(REMOTE_EXCEPTION_TYPE, theCause);
+            throw new ServiceException(REMOTE_EXCEPTION_TYPE, ServiceException.REMOTE, theCause);
         } finally {
             Thread.currentThread().setContextClassLoader(oldCl);
         }
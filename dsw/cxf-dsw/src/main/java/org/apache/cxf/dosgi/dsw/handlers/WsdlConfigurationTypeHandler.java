@@ -29,6 +29,10 @@ import org.apache.cxf.Bus;
 import org.apache.cxf.common.util.PackageUtils;
 import org.apache.cxf.databinding.DataBinding;
 import org.apache.cxf.dosgi.dsw.Constants;
+import org.apache.cxf.dosgi.dsw.cache.ResponseCacheRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsFeature;
+import org.apache.cxf.dosgi.dsw.metrics.ClientMetricsRegistry;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
 import org.apache.cxf.dosgi.dsw.qos.IntentManager;
 import org.apache.cxf.dosgi.dsw.util.OsgiUtils;
 import org.apache.cxf.jaxb.JAXBDataBinding;
@@ -49,6 +53,14 @@ public class WsdlConfigurationTypeHandler extends AbstractPojoConfigurationTypeH
         super(dswBC, intentManager, httpServiceManager);
     }
 
+    public WsdlConfigurationTypeHandler(BundleContext dswBC,
+                                        IntentManager intentManager,
+                                        HttpServiceManager httpServiceManager,
+                                        ClientMetricsRegistry clientMetrics,
+                                        ResponseCacheRegistry responseCaches) {
+        super(dswBC, intentManager, httpServiceManager, clientMetrics, responseCaches);
+    }
+
     public String[] getSupportedTypes() {
         return new String[] {Constants.WSDL_CONFIG_TYPE};
     }
@@ -89,8 +101,13 @@ public class WsdlConfigurationTypeHandler extends AbstractPojoConfigurationTypeH
         QName portQname = getPortQName(serviceQname.getNamespaceURI(),
                 endpoint.getProperties(), Constants.WSDL_PORT_NAME);
         Service service = createWebService(wsdlAddress, serviceQname);
-        Object proxy = getProxy(portQname == null ? service.getPort(iClass) : service.getPort(portQname, iClass),
-                                iClass);
+        EndpointMetrics metrics = getClientMetrics(endpoint);
+        // CXF features passed as WebServiceFeatures are applied to the client endpoint
+        ClientMetricsFeature metricsFeature = new ClientMetricsFeature(metrics);
+        Object port = portQname == null
+            ? service.getPort(iClass, metricsFeature)
+            : service.getPort(portQname, iClass, metricsFeature);
+        Object proxy = getProxy(port, iClass, metrics, getResponseCache(endpoint));
         // MARC: FIXME!!!! getDistributionProvider().addRemoteService(serviceReference);
         return proxy;
     }
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Records the bytes sent and received by a client into {@link EndpointMetrics}.
+ * <p>
+ * The payload sizes are recorded when the request and response streams are closed.
+ * Call counts, latencies, faults and timeouts are recorded by the service proxy,
+ * see {@link org.apache.cxf.dosgi.dsw.handlers.ServiceInvocationHandler}.
+ */
+public class ClientMetricsFeature extends AbstractFeature {
+
+    private final EndpointMetrics metrics;
+
+    public ClientMetricsFeature(EndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+        provider.getOutInterceptors().add(new SendInterceptor(metrics));
+        provider.getInInterceptors().add(new ReceiveInterceptor(metrics));
+    }
+
+    static class SendInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final EndpointMetrics metrics;
+
+        SendInterceptor(EndpointMetrics metrics) {
+            super(Phase.PRE_STREAM);
+            this.metrics = metrics;
+        }
+
+        public void handleMessage(Message message) {
+            OutputStream os = message.getContent(OutputStream.class);
+            if (os == null) {
+                return;
+            }
+            final Exchange exchange = message.getExchange();
+            message.setContent(OutputStream.class, new CountingOutputStream(os) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            metrics.bytesTransferred(MetricsUtils.getOperationName(exchange), 0, getCount());
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    static class ReceiveInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final EndpointMetrics metrics;
+
+        ReceiveInterceptor(EndpointMetrics metrics) {
+            super(Phase.RECEIVE);
+            this.metrics = metrics;
+        }
+
+        public void handleMessage(Message message) {
+            InputStream is = message.getContent(InputStream.class);
+            if (is == null) {
+                return;
+            }
+            final Exchange exchange = message.getExchange();
+            message.setContent(InputStream.class, new CountingInputStream(is) {
+                private boolean closed;
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!closed) {
+                            closed = true;
+                            metrics.bytesTransferred(MetricsUtils.getOperationName(exchange), getCount(), 0);
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
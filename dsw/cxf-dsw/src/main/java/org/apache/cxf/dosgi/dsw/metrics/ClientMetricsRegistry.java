@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+/**
+ * Holds the client-side {@link EndpointMetrics} of the imported endpoints,
+ * keyed by framework UUID and endpoint id.
+ */
+public class ClientMetricsRegistry {
+
+    private final ConcurrentMap<String, EndpointMetrics> metrics = new ConcurrentHashMap<String, EndpointMetrics>();
+
+    private static String getKey(String frameworkUUID, String endpointId) {
+        return frameworkUUID + "#" + endpointId;
+    }
+
+    /**
+     * Returns the metrics of the given endpoint, creating them if necessary.
+     */
+    public EndpointMetrics getMetrics(EndpointDescription endpoint) {
+        String key = getKey(endpoint.getFrameworkUUID(), endpoint.getId());
+        EndpointMetrics m = metrics.get(key);
+        if (m == null) {
+            m = new EndpointMetrics();
+            EndpointMetrics existing = metrics.putIfAbsent(key, m);
+            if (existing != null) {
+                m = existing;
+            }
+        }
+        return m;
+    }
+
+    /**
+     * @return the metrics of the given endpoint, or null if no proxy has been created for it
+     */
+    public EndpointMetrics getMetrics(String frameworkUUID, String endpointId) {
+        return metrics.get(getKey(frameworkUUID, endpointId));
+    }
+
+    public void remove(EndpointDescription endpoint) {
+        metrics.remove(getKey(endpoint.getFrameworkUUID(), endpoint.getId()));
+    }
+}
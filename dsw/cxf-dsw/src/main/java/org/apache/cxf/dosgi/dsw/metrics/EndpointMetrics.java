@@ -0,0 +1,125 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.cxf.dosgi.dsw.admission.AdmissionController;
+
+/**
+ * Per-operation call statistics of a single endpoint.
+ */
+public class EndpointMetrics {
+
+    public static final String UNKNOWN_OPERATION = "unknown";
+
+    private final ConcurrentMap<String, OperationMetrics> operations
+        = new ConcurrentHashMap<String, OperationMetrics>();
+    private final AtomicLong inFlight = new AtomicLong();
+    private volatile AdmissionController admissionController;
+
+    public void requestStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void requestCompleted(String operation, long nanos, long received, long sent, boolean error) {
+        requestCompleted(operation, nanos, received, sent, error, false);
+    }
+
+    /**
+     * Records the completion of a request that was announced with {@link #requestStarted()}.
+     *
+     * @param operation the operation name, or null if unknown
+     * @param nanos the request duration
+     * @param received the number of bytes received, if known
+     * @param sent the number of bytes sent, if known
+     * @param error whether the request failed
+     * @param timeout whether the request failed because of a timeout
+     */
+    public void requestCompleted(String operation, long nanos, long received, long sent,
+                                 boolean error, boolean timeout) {
+        inFlight.decrementAndGet();
+        getOrCreate(operation).record(nanos, received, sent, error || timeout, timeout);
+    }
+
+    /**
+     * Records payload sizes which are only known separately from the request completion.
+     */
+    public void bytesTransferred(String operation, long received, long sent) {
+        getOrCreate(operation).addBytes(received, sent);
+    }
+
+    private OperationMetrics getOrCreate(String operation) {
+        if (operation == null) {
+            operation = UNKNOWN_OPERATION;
+        }
+        OperationMetrics metrics = operations.get(operation);
+        if (metrics == null) {
+            metrics = new OperationMetrics(operation);
+            OperationMetrics existing = operations.putIfAbsent(operation, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the number of requests that have been received but not yet completed.
+     */
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return the admission controller limiting the endpoint, or null if it is not limited
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    public void setAdmissionController(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * @return the statistics of the given operation, or null if it has not been called yet
+     */
+    public OperationMetrics getOperation(String operation) {
+        return operations.get(operation);
+    }
+
+    /**
+     * @return a read-only live view of the statistics of all operations called so far
+     */
+    public Map<String, OperationMetrics> getOperations() {
+        return Collections.unmodifiableMap(operations);
+    }
+
+    @Override
+    public String toString() {
+        AdmissionController ac = admissionController;
+        return "EndpointMetrics [inFlight=" + getInFlight() + (ac == null ? "" : ", admission=" + ac)
+            + ", operations=" + operations.values() + "]";
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import java.lang.reflect.Method;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.cxf.jaxrs.model.OperationResourceInfo;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.service.model.BindingOperationInfo;
+
+public final class MetricsUtils {
+
+    // set on outgoing messages by the JAX-RS client proxy
+    static final String JAXRS_METHOD = "org.apache.cxf.resource.method";
+
+    private MetricsUtils() {
+    }
+
+    public static String getOperationName(Exchange exchange) {
+        BindingOperationInfo boi = exchange.get(BindingOperationInfo.class);
+        if (boi != null) {
+            return boi.getName().getLocalPart();
+        }
+        OperationResourceInfo ori = exchange.get(OperationResourceInfo.class);
+        if (ori != null && ori.getMethodToInvoke() != null) {
+            return ori.getMethodToInvoke().getName();
+        }
+        Message out = exchange.getOutMessage();
+        Object method = out == null ? null : out.get(JAXRS_METHOD);
+        if (method instanceof Method) {
+            return ((Method)method).getName();
+        }
+        return EndpointMetrics.UNKNOWN_OPERATION;
+    }
+
+    /**
+     * Checks whether the given exception, or one of its causes, signals a timeout.
+     */
+    public static boolean isTimeout(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Call statistics of a single operation. All updates are lock-free.
+ */
+public class OperationMetrics {
+
+    private final String name;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos, long received, long sent, boolean error, boolean timeout) {
+        requests.incrementAndGet();
+        if (error) {
+            errors.incrementAndGet();
+        }
+        if (timeout) {
+            timeouts.incrementAndGet();
+        }
+        addBytes(received, sent);
+        latency.record(nanos);
+    }
+
+    void addBytes(long received, long sent) {
+        if (received > 0) {
+            bytesReceived.addAndGet(received);
+        }
+        if (sent > 0) {
+            bytesSent.addAndGet(sent);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * Returns the number of failed requests that were caused by a timeout.
+     * These are also included in the error count.
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [requests=" + getRequestCount() + ", errors=" + getErrorCount()
+            + ", timeouts=" + getTimeoutCount()
+            + ", mean=" + latency.getMeanMicros() + "us, p99=" + latency.getPercentileMicros(0.99)
+            + "us, max=" + latency.getMaxMicros() + "us, received=" + getBytesReceived()
+            + ", sent=" + getBytesSent() + "]";
+    }
+}
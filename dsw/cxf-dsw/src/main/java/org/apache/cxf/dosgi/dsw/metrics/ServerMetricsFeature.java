@@ -0,0 +1,203 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.endpoint.Server;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.interceptor.MessageSenderInterceptor.MessageSenderEndingInterceptor;
+import org.apache.cxf.interceptor.OutgoingChainInterceptor;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Records {@link EndpointMetrics} for every request handled by a server.
+ * <p>
+ * A request is started when it is received and completed once its response (or fault)
+ * has been sent, or after invocation for one-way operations. Requests are errors if a fault
+ * or a 5xx response was sent, if processing failed, or if no response was sent for a two-way
+ * request. The metrics of a server the feature was applied to can be obtained with
+ * {@link #getMetrics(Server)}.
+ */
+public class ServerMetricsFeature extends AbstractFeature {
+
+    private static final String METRICS_KEY = EndpointMetrics.class.getName();
+    private static final String START_KEY = ServerMetricsFeature.class.getName() + ".start";
+    private static final String IN_KEY = ServerMetricsFeature.class.getName() + ".in";
+    private static final String OUT_KEY = ServerMetricsFeature.class.getName() + ".out";
+
+    private final EndpointMetrics metrics;
+
+    public ServerMetricsFeature() {
+        this(new EndpointMetrics());
+    }
+
+    public ServerMetricsFeature(EndpointMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public EndpointMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of the given server, or null if it is not instrumented
+     */
+    public static EndpointMetrics getMetrics(Server server) {
+        return server == null ? null : (EndpointMetrics)server.getEndpoint().get(METRICS_KEY);
+    }
+
+    @Override
+    public void initialize(Server server, Bus bus) {
+        server.getEndpoint().put(METRICS_KEY, metrics);
+        super.initialize(server, bus);
+    }
+
+    @Override
+    protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+        SendInterceptor send = new SendInterceptor(metrics);
+        provider.getInInterceptors().add(new ReceiveInterceptor(metrics));
+        provider.getInInterceptors().add(new CompletionInterceptor(metrics));
+        provider.getOutInterceptors().add(send);
+        provider.getOutFaultInterceptors().add(send);
+    }
+
+    static void complete(EndpointMetrics metrics, Exchange exchange, boolean error) {
+        // the start time is removed so that a request is only ever completed once
+        Long start = (Long)exchange.remove(START_KEY);
+        if (start == null) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        CountingInputStream in = (CountingInputStream)exchange.get(IN_KEY);
+        CountingOutputStream out = (CountingOutputStream)exchange.get(OUT_KEY);
+        metrics.requestCompleted(MetricsUtils.getOperationName(exchange), nanos,
+                                 in == null ? 0 : in.getCount(), out == null ? 0 : out.getCount(), error);
+    }
+
+    static boolean isError(Message message) {
+        if (message == message.getExchange().getOutFaultMessage()) {
+            return true;
+        }
+        // e.g. JAX-RS exceptions mapped to error responses
+        Integer responseCode = (Integer)message.get(Message.RESPONSE_CODE);
+        return responseCode != null && responseCode >= 500;
+    }
+
+    static class ReceiveInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final EndpointMetrics metrics;
+
+        ReceiveInterceptor(EndpointMetrics metrics) {
+            super(Phase.RECEIVE);
+            this.metrics = metrics;
+        }
+
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            if (exchange.containsKey(START_KEY)) {
+                return;
+            }
+            exchange.put(START_KEY, System.nanoTime());
+            metrics.requestStarted();
+            InputStream is = message.getContent(InputStream.class);
+            if (is != null) {
+                CountingInputStream in = new CountingInputStream(is);
+                message.setContent(InputStream.class, in);
+                exchange.put(IN_KEY, in);
+            }
+        }
+
+        @Override
+        public void handleFault(Message message) {
+            // processing of the request failed
+            complete(metrics, message.getExchange(), true);
+        }
+    }
+
+    /**
+     * Completes the requests which are still in flight at the end of the incoming chain, i.e. after
+     * the response of a synchronous exchange has been sent. These are one-way requests, and two-way
+     * requests whose outgoing chain was aborted before anything was sent.
+     */
+    static class CompletionInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final EndpointMetrics metrics;
+
+        CompletionInterceptor(EndpointMetrics metrics) {
+            super(Phase.POST_INVOKE);
+            addAfter(OutgoingChainInterceptor.class.getName());
+            this.metrics = metrics;
+        }
+
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            complete(metrics, exchange, !exchange.isOneWay());
+        }
+    }
+
+    static class SendInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final EndpointMetrics metrics;
+
+        SendInterceptor(EndpointMetrics metrics) {
+            super(Phase.PRE_STREAM);
+            this.metrics = metrics;
+        }
+
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            OutputStream os = message.getContent(OutputStream.class);
+            if (os != null) {
+                CountingOutputStream out = new CountingOutputStream(os);
+                message.setContent(OutputStream.class, out);
+                exchange.put(OUT_KEY, out);
+            }
+            message.getInterceptorChain().add(new SendEndingInterceptor(metrics));
+        }
+
+        @Override
+        public void handleFault(Message message) {
+            // sending the response failed
+            complete(metrics, message.getExchange(), true);
+        }
+    }
+
+    static class SendEndingInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final EndpointMetrics metrics;
+
+        SendEndingInterceptor(EndpointMetrics metrics) {
+            super(Phase.PREPARE_SEND_ENDING);
+            addAfter(MessageSenderEndingInterceptor.class.getName());
+            this.metrics = metrics;
+        }
+
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            complete(metrics, exchange, isError(message));
+        }
+    }
+}
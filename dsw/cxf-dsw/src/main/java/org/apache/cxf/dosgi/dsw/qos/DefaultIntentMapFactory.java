@@ -25,10 +25,21 @@ import org.apache.cxf.binding.soap.Soap11;
 import org.apache.cxf.binding.soap.Soap12;
 import org.apache.cxf.binding.soap.SoapBindingConfiguration;
 import org.apache.cxf.binding.soap.SoapVersion;
+import org.apache.cxf.dosgi.dsw.trace.Tracer;
+import org.apache.cxf.dosgi.dsw.trace.TracingFeature;
 import org.apache.cxf.feature.LoggingFeature;
 
 public class DefaultIntentMapFactory {
 
+    /**
+     * Creates the default intents, including the "tracing" intent backed by the given tracer.
+     */
+    public Map<String, Object> create(Tracer tracer) {
+        Map<String, Object> intentMap = create();
+        intentMap.put(Tracer.INTENT, new TracingFeature(tracer));
+        return intentMap;
+    }
+
     public Map<String, Object> create() {
         Map<String, Object> intentMap = new HashMap<String, Object>();
         intentMap.put("logging", getLoggingFeature());
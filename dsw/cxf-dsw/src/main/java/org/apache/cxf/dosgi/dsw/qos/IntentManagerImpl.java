@@ -20,11 +20,12 @@ package org.apache.cxf.dosgi.dsw.qos;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.cxf.binding.BindingConfiguration;
 import org.apache.cxf.endpoint.AbstractEndpointFactory;
@@ -37,39 +38,71 @@ public class IntentManagerImpl implements IntentManager {
     static final Logger LOG = LoggerFactory.getLogger(IntentManagerImpl.class);
     private static final String PROVIDED_INTENT_VALUE = "PROVIDED";
 
+    private static final int MAX_CACHED_RESOLUTIONS = 256;
+
     private final IntentMap intentMap;
-    private final long maxIntentWaitTime;
+    // resolutions by requested intents, each valid for the intent map version it was resolved with
+    private final ConcurrentMap<Set<String>, Resolution> resolutions
+        = new ConcurrentHashMap<Set<String>, Resolution>();
 
     public IntentManagerImpl(IntentMap intentMap) {
-        this(intentMap, 0);
-    }
-
-    public IntentManagerImpl(IntentMap intentMap, int maxIntentWaitTime) {
         this.intentMap = intentMap;
-        this.maxIntentWaitTime = maxIntentWaitTime;
     }
 
     public String[] applyIntents(List<Feature> features, AbstractEndpointFactory factory,
                                  Map<String, Object> props) throws IntentUnsatisfiedException {
-        Set<String> requestedIntents = IntentUtils.getRequestedIntents(props);
+        Resolution resolution = resolve(IntentUtils.getRequestedIntents(props));
+        if (resolution.unsatisfiedIntent != null) {
+            throw new IntentUnsatisfiedException(resolution.unsatisfiedIntent);
+        }
+        features.addAll(resolution.features);
+        if (resolution.bindingConfig != null) {
+            factory.setBindingConfig(resolution.bindingConfig);
+        }
+        return resolution.appliedIntents.clone();
+    }
+
+    /**
+     * Returns the resolution of the given requested intents, which is cached until the intent map changes.
+     */
+    Resolution resolve(Set<String> requestedIntents) {
+        long version = intentMap.getVersion();
+        Resolution resolution = resolutions.get(requestedIntents);
+        if (resolution == null || resolution.version != version) {
+            resolution = new Resolution(version);
+            resolveIntents(requestedIntents, resolution);
+            if (resolutions.size() >= MAX_CACHED_RESOLUTIONS) {
+                resolutions.clear();
+            }
+            resolutions.put(requestedIntents, resolution);
+        }
+        return resolution;
+    }
+
+    private void resolveIntents(Set<String> requestedIntents, Resolution resolution) {
         Set<String> appliedIntents = new HashSet<String>();
-        appliedIntents.addAll(reverseLookup(intentMap, PROVIDED_INTENT_VALUE));
+        appliedIntents.addAll(intentMap.getNames(PROVIDED_INTENT_VALUE));
         boolean bindingApplied = false;
-        for (String intentName : requestedIntents) {
-            bindingApplied |= processIntent(features, factory, intentName, intentMap.get(intentName));
-            appliedIntents.add(intentName);
-        }
-        if (!bindingApplied) {
-            String defaultBindingName = "SOAP";
-            processIntent(features, factory, defaultBindingName, intentMap.get(defaultBindingName));
-            appliedIntents.add(defaultBindingName);
+        try {
+            for (String intentName : requestedIntents) {
+                bindingApplied |= processIntent(resolution, intentName, intentMap.get(intentName));
+                appliedIntents.add(intentName);
+            }
+            if (!bindingApplied) {
+                String defaultBindingName = "SOAP";
+                processIntent(resolution, defaultBindingName, intentMap.get(defaultBindingName));
+                appliedIntents.add(defaultBindingName);
+            }
+        } catch (IntentUnsatisfiedException e) {
+            resolution.unsatisfiedIntent = e.getIntent();
+            return;
         }
         appliedIntents.addAll(addSynonymIntents(appliedIntents, intentMap));
-        return appliedIntents.toArray(new String[appliedIntents.size()]);
+        resolution.appliedIntents = appliedIntents.toArray(new String[appliedIntents.size()]);
     }
 
-    private boolean processIntent(List<Feature> features, AbstractEndpointFactory factory,
-                                  String intentName, Object intent) throws IntentUnsatisfiedException {
+    private boolean processIntent(Resolution resolution, String intentName, Object intent)
+        throws IntentUnsatisfiedException {
         if (intent instanceof String) {
             if (PROVIDED_INTENT_VALUE.equalsIgnoreCase((String) intent)) {
                 return false;
@@ -77,12 +110,12 @@ public class IntentManagerImpl implements IntentManager {
         } else if (intent instanceof BindingConfiguration) {
             BindingConfiguration bindingCfg = (BindingConfiguration)intent;
             LOG.info("Applying intent: " + intentName + " via binding config: " + bindingCfg);
-            factory.setBindingConfig(bindingCfg);
+            resolution.bindingConfig = bindingCfg;
             return true;
         } else if (intent instanceof Feature) {
             Feature feature = (Feature) intent;
             LOG.info("Applying intent: " + intentName + " via feature: " + feature);
-            features.add(feature);
+            resolution.features.add(feature);
             return false;
         } else {
             LOG.info("No mapping for intent: " + intentName);
@@ -98,57 +131,43 @@ public class IntentManagerImpl implements IntentManager {
         for (String key : appliedIntents) {
             values.add(map.get(key));
         }
-        return reverseLookup(map, values);
-    }
-
-    private static Collection<String> reverseLookup(IntentMap im, Object obj) {
-        return reverseLookup(im, Collections.singleton(obj));
+        return map.getNames(values);
     }
 
     /**
-     * Retrieves all keys whose mapped values are found in the given collection.
-     *
-     * @param im an intent map
-     * @param values a collection of potential values
-     * @return all keys whose mapped values are found in the given collection
+     * Checks that all intents required by the given service are supported, without waiting
+     * for missing ones. Callers are expected to retry once the supported intents change,
+     * which is announced through the remote.intents.supported property of the
+     * RemoteServiceAdmin service.
      */
-    private static Collection<String> reverseLookup(IntentMap im, Collection<?> values) {
-        Set<String> intentsFound = new HashSet<String>();
-        for (Map.Entry<String, Object> entry : im.entrySet()) {
-            if (values.contains(entry.getValue())) {
-                intentsFound.add(entry.getKey());
-            }
-        }
-        return intentsFound;
-    }
-
     public void assertAllIntentsSupported(Map<String, Object> serviceProperties) {
-        long endTime = System.currentTimeMillis() + maxIntentWaitTime;
         Set<String> requiredIntents = IntentUtils.getRequestedIntents(serviceProperties);
         List<String> unsupportedIntents = new ArrayList<String>();
-        do {
-            unsupportedIntents.clear();
-            for (String ri : requiredIntents) {
-                if (!intentMap.containsKey(ri)) {
-                    unsupportedIntents.add(ri);
-                }
+        for (String ri : requiredIntents) {
+            if (!intentMap.containsKey(ri)) {
+                unsupportedIntents.add(ri);
             }
-            long remainingSeconds = (endTime - System.currentTimeMillis()) / 1000;
-            if (!unsupportedIntents.isEmpty() && remainingSeconds > 0) {
-                LOG.debug("Waiting for custom intents " + unsupportedIntents + " timeout in " + remainingSeconds);
-                try {
-                    synchronized (intentMap) {
-                        intentMap.wait(1000);
-                    }
-                } catch (InterruptedException e) {
-                    LOG.warn(e.getMessage(), e);
-                }
-            }
-        } while (!unsupportedIntents.isEmpty() && System.currentTimeMillis() < endTime);
+        }
 
         if (!unsupportedIntents.isEmpty()) {
             throw new RuntimeException("service cannot be exported because the following "
                                        + "intents are not supported by this RSA: " + unsupportedIntents);
         }
     }
+
+    /**
+     * The outcome of applying a set of requested intents.
+     */
+    static final class Resolution {
+
+        final long version;
+        final List<Feature> features = new ArrayList<Feature>();
+        BindingConfiguration bindingConfig;
+        String[] appliedIntents;
+        String unsatisfiedIntent;
+
+        Resolution(long version) {
+            this.version = version;
+        }
+    }
 }
@@ -18,20 +18,35 @@
  */
 package org.apache.cxf.dosgi.dsw.qos;
 
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Maps intent names to intent objects
  * An intent object can be a Feature, a BindingConfiguration or a String
  *
  * Also supports a default intent map. Custom intents can override the defaults
+ *
+ * The map keeps an index from intent objects to the names they are mapped to, and a version
+ * which changes with every modification, so that results derived from the map can be cached.
+ * All modifications therefore go through the mutators of this class; the key, value and entry
+ * views are read-only. Lookups do not lock.
  */
-public class IntentMap extends ConcurrentHashMap<String, Object> {
+public class IntentMap extends AbstractMap<String, Object> implements ConcurrentMap<String, Object> {
 
-    private static final long serialVersionUID = 2606460607920520767L;
+    private final Map<String, Object> intentsByName = new ConcurrentHashMap<String, Object>();
+    private final Set<Entry<String, Object>> entries = Collections.unmodifiableMap(intentsByName).entrySet();
     private Map<String, Object> defaultMap;
+    // guarded by this
+    private final Map<Object, Set<String>> namesByIntent = new HashMap<Object, Set<String>>();
+    private volatile long version;
 
     public IntentMap() {
         this(new HashMap<String, Object>());
@@ -43,20 +58,143 @@ public class IntentMap extends ConcurrentHashMap<String, Object> {
     }
 
     @Override
-    public Object put(String key, Object value) {
-        Object result = super.put(key, value);
-        synchronized (this) {
-            notifyAll();
+    public Set<Entry<String, Object>> entrySet() {
+        return entries;
+    }
+
+    @Override
+    public Object get(Object key) {
+        return intentsByName.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return intentsByName.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return intentsByName.size();
+    }
+
+    @Override
+    public synchronized Object put(String key, Object value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
         }
-        return result;
+        Object old = intentsByName.put(key, value);
+        unindex(key, old);
+        index(key, value);
+        version++;
+        return old;
     }
 
     @Override
-    public Object remove(Object key) {
-        Object old = super.remove(key);
+    public void putAll(Map<? extends String, ? extends Object> m) {
+        for (Map.Entry<? extends String, ? extends Object> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized Object putIfAbsent(String key, Object value) {
+        Object old = intentsByName.get(key);
+        return old == null ? put(key, value) : old;
+    }
+
+    public synchronized Object replace(String key, Object value) {
+        return intentsByName.containsKey(key) ? put(key, value) : null;
+    }
+
+    public synchronized boolean replace(String key, Object oldValue, Object newValue) {
+        if (oldValue == null || !oldValue.equals(intentsByName.get(key))) {
+            return false;
+        }
+        put(key, newValue);
+        return true;
+    }
+
+    /**
+     * Removes the given intent. If it overrides a default intent, the default is restored.
+     */
+    @Override
+    public synchronized Object remove(Object key) {
+        Object old = intentsByName.remove(key);
+        if (old == null) {
+            return null;
+        }
+        unindex((String)key, old);
+        version++;
         if (defaultMap.containsKey(key)) {
             put((String)key, defaultMap.get(key));
         }
         return old;
     }
+
+    public synchronized boolean remove(Object key, Object value) {
+        if (value == null || !value.equals(intentsByName.get(key))) {
+            return false;
+        }
+        remove(key);
+        return true;
+    }
+
+    /**
+     * Removes all intents, restoring the default intents.
+     */
+    @Override
+    public synchronized void clear() {
+        for (String key : new HashSet<String>(intentsByName.keySet())) {
+            remove(key);
+        }
+    }
+
+    private void index(String name, Object intent) {
+        Set<String> names = namesByIntent.get(intent);
+        if (names == null) {
+            names = new HashSet<String>();
+            namesByIntent.put(intent, names);
+        }
+        names.add(name);
+    }
+
+    private void unindex(String name, Object intent) {
+        if (intent == null) {
+            return;
+        }
+        Set<String> names = namesByIntent.get(intent);
+        if (names != null) {
+            names.remove(name);
+            if (names.isEmpty()) {
+                namesByIntent.remove(intent);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the names which are mapped to any of the given intent objects.
+     *
+     * @param intents intent objects
+     * @return the names mapped to them
+     */
+    public synchronized Set<String> getNames(Collection<?> intents) {
+        Set<String> found = new HashSet<String>();
+        for (Object intent : intents) {
+            Set<String> names = intent == null ? null : namesByIntent.get(intent);
+            if (names != null) {
+                found.addAll(names);
+            }
+        }
+        return found;
+    }
+
+    public Set<String> getNames(Object intent) {
+        return getNames(Collections.singleton(intent));
+    }
+
+    /**
+     * Returns a number which changes whenever an intent is added, replaced or removed.
+     */
+    public long getVersion() {
+        return version;
+    }
 }
@@ -28,10 +28,21 @@ import org.osgi.util.tracker.ServiceTracker;
 public class IntentTracker extends ServiceTracker {
 
     private final IntentMap intentMap;
+    private final IntentListener listener;
 
     public IntentTracker(BundleContext context, IntentMap intentMap) {
+        this(context, intentMap, null);
+    }
+
+    /**
+     * @param context the bundle context
+     * @param intentMap the intent map to which the tracked intents are added
+     * @param listener notified whenever an intent is added or removed, may be null
+     */
+    public IntentTracker(BundleContext context, IntentMap intentMap, IntentListener listener) {
         super(context, getFilter(context), null);
         this.intentMap = intentMap;
+        this.listener = listener;
     }
 
     static Filter getFilter(BundleContext context) {
@@ -48,6 +59,7 @@ public class IntentTracker extends ServiceTracker {
         Object intent = super.addingService(reference);
         IntentManagerImpl.LOG.info("Adding custom intent " + intentName);
         intentMap.put(intentName, intent);
+        notifyListener();
         return intent;
     }
 
@@ -55,6 +67,17 @@ public class IntentTracker extends ServiceTracker {
     public void removedService(ServiceReference reference, Object service) {
         String intentName = (String) reference.getProperty(Constants.INTENT_NAME_PROP);
         intentMap.remove(intentName);
+        notifyListener();
         super.removedService(reference, service);
     }
+
+    private void notifyListener() {
+        if (listener != null) {
+            try {
+                listener.intentsChanged(intentMap);
+            } catch (RuntimeException e) {
+                IntentManagerImpl.LOG.warn("Intent listener failed", e);
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -19,7 +19,6 @@
 package org.apache.cxf.dosgi.dsw.qos;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -63,30 +62,21 @@ public final class IntentUtils {
     }
 
     public static Set<String> getRequestedIntents(Map<String, Object> sd) {
-        Collection<String> intents = OsgiUtils.getMultiValueProperty(sd.get(RemoteConstants.SERVICE_EXPORTED_INTENTS));
-        Collection<String> intents2
-            = OsgiUtils.getMultiValueProperty(sd.get(RemoteConstants.SERVICE_EXPORTED_INTENTS_EXTRA));
-        @SuppressWarnings("deprecation")
-        Collection<String> oldIntents = OsgiUtils.getMultiValueProperty(sd.get(Constants.EXPORTED_INTENTS_OLD));
         Set<String> allIntents = new HashSet<String>();
-        if (intents != null) {
-            allIntents.addAll(parseIntents(intents));
-        }
-        if (intents2 != null) {
-            allIntents.addAll(parseIntents(intents2));
-        }
-        if (oldIntents != null) {
-            allIntents.addAll(parseIntents(oldIntents));
-        }
-
+        addIntents(allIntents, sd.get(RemoteConstants.SERVICE_EXPORTED_INTENTS));
+        addIntents(allIntents, sd.get(RemoteConstants.SERVICE_EXPORTED_INTENTS_EXTRA));
+        @SuppressWarnings("deprecation")
+        String oldIntentsKey = Constants.EXPORTED_INTENTS_OLD;
+        addIntents(allIntents, sd.get(oldIntentsKey));
         return allIntents;
     }
 
-    private static Collection<String> parseIntents(Collection<String> intents) {
-        List<String> parsed = new ArrayList<String>();
-        for (String intent : intents) {
-            parsed.addAll(Arrays.asList(intent.split("[ ]")));
+    private static void addIntents(Set<String> allIntents, Object property) {
+        Collection<String> intents = OsgiUtils.getMultiValueProperty(property);
+        if (intents != null) {
+            for (String intent : intents) {
+                Collections.addAll(allIntents, intent.split(" "));
+            }
         }
-        return parsed;
     }
 }
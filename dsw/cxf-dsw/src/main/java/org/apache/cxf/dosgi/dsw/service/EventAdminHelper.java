@@ -18,47 +18,77 @@
  */
 package org.apache.cxf.dosgi.dsw.service;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.Version;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
 import org.osgi.service.remoteserviceadmin.RemoteServiceAdminEvent;
+import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.apache.cxf.dosgi.dsw.util.Utils.setIfNotNull;
 
+/**
+ * Posts {@link RemoteServiceAdminEvent}s to the EventAdmin services.
+ * <p>
+ * The EventAdmin services and the topics of the registered {@link EventHandler}s are tracked,
+ * and an event is only built when at least one handler subscribed to its topic. The properties
+ * describing the RSA bundle are computed once.
+ */
 public class EventAdminHelper {
 
+    static final String TOPIC_PREFIX = "org/osgi/service/remoteserviceadmin/";
+
     private static final Logger LOG = LoggerFactory.getLogger(EventAdminHelper.class);
+    private static final String[] NO_TOPICS = new String[0];
 
     private BundleContext bctx;
+    // guarded by this
+    private ServiceTracker eventAdminTracker;
+    private ServiceTracker handlerTracker;
+    private Map<String, Object> bundleProps;
+    private boolean closed;
 
     public EventAdminHelper(BundleContext bc) {
         bctx = bc;
     }
 
-    private Event createEvent(Map<String, Object> props, String type) {
-        String topic = "org/osgi/service/remoteserviceadmin/" + type;
-        props.put("bundle", bctx.getBundle());
-        props.put("bundle.id", bctx.getBundle().getBundleId());
-        props.put("bundle.symbolicname", bctx.getBundle().getSymbolicName());
-
-        String version = (String)bctx.getBundle().getHeaders().get("Bundle-Version");
-        Version v = version != null ? new Version(version) : Version.emptyVersion;
-        setIfNotNull(props, "bundle.version", v);
-
+    private Event createEvent(Map<String, Object> props, String topic) {
+        props.putAll(getBundleProperties());
         return new Event(topic, props);
     }
 
+    private synchronized Map<String, Object> getBundleProperties() {
+        if (bundleProps == null) {
+            Bundle bundle = bctx.getBundle();
+            Map<String, Object> props = new HashMap<String, Object>();
+            props.put("bundle", bundle);
+            props.put("bundle.id", bundle.getBundleId());
+            props.put("bundle.symbolicname", bundle.getSymbolicName());
+            String version = (String)bundle.getHeaders().get("Bundle-Version");
+            Version v = version != null ? new Version(version) : Version.emptyVersion;
+            setIfNotNull(props, "bundle.version", v);
+            bundleProps = props;
+        }
+        return bundleProps;
+    }
+
     public void notifyEventAdmin(RemoteServiceAdminEvent rsae) {
-        String topic = remoteServiceAdminEventTypeToString(rsae.getType());
+        String topic = TOPIC_PREFIX + remoteServiceAdminEventTypeToString(rsae.getType());
+        if (!open() || !hasHandler(topic)) {
+            return;
+        }
 
         Map<String, Object> props = new HashMap<String, Object>();
         setIfNotNull(props, "cause", rsae.getException());
@@ -86,27 +116,113 @@ public class EventAdminHelper {
         notifyEventAdmins(topic, event);
     }
 
-    private void notifyEventAdmins(String topic, Event event) {
-        ServiceReference[] refs = null;
-        try {
-            refs = bctx.getAllServiceReferences(EventAdmin.class.getName(), null);
-        } catch (InvalidSyntaxException e) {
-            LOG.error("Failed to get EventAdmin: " + e.getMessage(), e);
-        }
-
-        if (refs != null) {
-            LOG.debug("Publishing event to {} EventAdmins; Topic:[{}]", refs.length, topic);
-            for (ServiceReference serviceReference : refs) {
-                EventAdmin eventAdmin = (EventAdmin) bctx.getService(serviceReference);
-                try {
-                    eventAdmin.postEvent(event);
-                } finally {
-                    if (eventAdmin != null) {
-                        bctx.ungetService(serviceReference);
+    // opens the trackers with the first event, returns false once closed
+    private synchronized boolean open() {
+        if (closed) {
+            return false;
+        }
+        if (eventAdminTracker == null) {
+            eventAdminTracker = new ServiceTracker(bctx, EventAdmin.class.getName(), null);
+            eventAdminTracker.open(true);
+            handlerTracker = new ServiceTracker(bctx, EventHandler.class.getName(), null) {
+                @Override
+                public Object addingService(ServiceReference reference) {
+                    // only the topics are needed, so the handler service itself is never obtained
+                    return new AtomicReference<String[]>(getTopics(reference));
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public void modifiedService(ServiceReference reference, Object service) {
+                    ((AtomicReference<String[]>)service).set(getTopics(reference));
+                }
+
+                @Override
+                public void removedService(ServiceReference reference, Object service) {
+                }
+            };
+            handlerTracker.open(true);
+        }
+        return true;
+    }
+
+    private boolean hasHandler(String topic) {
+        ServiceTracker tracker;
+        synchronized (this) {
+            tracker = handlerTracker;
+        }
+        Object[] handlerTopics = tracker == null ? null : tracker.getServices();
+        if (handlerTopics != null) {
+            for (Object topics : handlerTopics) {
+                @SuppressWarnings("unchecked")
+                String[] patterns = ((AtomicReference<String[]>)topics).get();
+                for (String pattern : patterns) {
+                    if (matches(pattern, topic)) {
+                        return true;
                     }
                 }
             }
         }
+        return false;
+    }
+
+    static String[] getTopics(ServiceReference reference) {
+        Object topics = reference.getProperty(EventConstants.EVENT_TOPIC);
+        if (topics instanceof String) {
+            return new String[] {(String)topics};
+        }
+        if (topics instanceof String[]) {
+            return (String[])topics;
+        }
+        if (topics instanceof Collection) {
+            Collection<?> c = (Collection<?>)topics;
+            return c.toArray(new String[c.size()]);
+        }
+        return NO_TOPICS;
+    }
+
+    /**
+     * Checks whether the given topic matches the given EventHandler topic pattern, which is either
+     * the topic itself or ends with a wildcard after a slash, such as {@code org/osgi/*}.
+     */
+    static boolean matches(String pattern, String topic) {
+        if ("*".equals(pattern)) {
+            return true;
+        }
+        if (pattern.endsWith("/*")) {
+            return topic.startsWith(pattern.substring(0, pattern.length() - 1));
+        }
+        return pattern.equals(topic);
+    }
+
+    private void notifyEventAdmins(String topic, Event event) {
+        ServiceTracker tracker;
+        synchronized (this) {
+            tracker = eventAdminTracker;
+        }
+        Object[] eventAdmins = tracker == null ? null : tracker.getServices();
+        if (eventAdmins != null) {
+            LOG.debug("Publishing event to {} EventAdmins; Topic:[{}]", eventAdmins.length, topic);
+            for (Object eventAdmin : eventAdmins) {
+                ((EventAdmin)eventAdmin).postEvent(event);
+            }
+        }
+    }
+
+    public void close() {
+        ServiceTracker eaTracker;
+        ServiceTracker hTracker;
+        synchronized (this) {
+            closed = true;
+            eaTracker = eventAdminTracker;
+            hTracker = handlerTracker;
+            eventAdminTracker = null;
+            handlerTracker = null;
+        }
+        if (eaTracker != null) {
+            eaTracker.close();
+            hTracker.close();
+        }
     }
 
     private static String remoteServiceAdminEventTypeToString(int type) {
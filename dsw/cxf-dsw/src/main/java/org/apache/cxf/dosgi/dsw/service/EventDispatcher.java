@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.remoteserviceadmin.RemoteServiceAdminEvent;
+import org.osgi.service.remoteserviceadmin.RemoteServiceAdminListener;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers {@link RemoteServiceAdminEvent}s to the tracked {@link RemoteServiceAdminListener}s
+ * asynchronously.
+ * <p>
+ * Every listener has its own unbounded queue, which is drained in batches by a shared thread pool,
+ * so that each listener receives the events in the order they were dispatched, and a slow listener
+ * neither delays the RSA operation that produced the event nor the other listeners.
+ * Events are never dropped, as listeners like topology managers rely on receiving every
+ * unregistration. Instead a warning is logged when the queue of a listener passes a high-water mark.
+ */
+public class EventDispatcher extends ServiceTracker {
+
+    static final int DEFAULT_HIGH_WATER_MARK = 1000;
+    private static final int MAX_BATCH_SIZE = 100;
+    private static final int POOL_SIZE = 5;
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventDispatcher.class);
+
+    private final int highWaterMark;
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    public EventDispatcher(BundleContext context) {
+        this(context, DEFAULT_HIGH_WATER_MARK);
+    }
+
+    EventDispatcher(BundleContext context, int highWaterMark) {
+        super(context, RemoteServiceAdminListener.class.getName(), null);
+        this.highWaterMark = highWaterMark;
+        executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>(), new DispatcherThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues the event for delivery to all currently tracked listeners.
+     *
+     * @param event the event
+     */
+    public void dispatch(RemoteServiceAdminEvent event) {
+        Object[] queues = getServices();
+        if (queues != null) {
+            for (Object queue : queues) {
+                ((ListenerQueue)queue).offer(event);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of events waiting to be delivered, summed over all listeners.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Returns the largest number of events that have been waiting for a single listener.
+     */
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    @Override
+    public Object addingService(ServiceReference reference) {
+        Object service = super.addingService(reference);
+        if (!(service instanceof RemoteServiceAdminListener)) {
+            if (service != null) {
+                context.ungetService(reference);
+            }
+            return null;
+        }
+        return new ListenerQueue((RemoteServiceAdminListener)service);
+    }
+
+    @Override
+    public void removedService(ServiceReference reference, Object service) {
+        ((ListenerQueue)service).close();
+        super.removedService(reference, ((ListenerQueue)service).listener);
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        executor.shutdown();
+    }
+
+    final class ListenerQueue implements Runnable {
+
+        final RemoteServiceAdminListener listener;
+        private final BlockingQueue<RemoteServiceAdminEvent> events;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // set while the queue is above the high-water mark, so that passing it is logged once
+        private final AtomicBoolean overHighWaterMark = new AtomicBoolean();
+        private volatile boolean closed;
+
+        ListenerQueue(RemoteServiceAdminListener listener) {
+            this.listener = listener;
+            this.events = new LinkedBlockingQueue<RemoteServiceAdminEvent>();
+        }
+
+        void offer(RemoteServiceAdminEvent event) {
+            if (closed) {
+                return;
+            }
+            events.add(event);
+            queued.incrementAndGet();
+            int depth = events.size();
+            updateMaxDepth(depth);
+            if (depth > highWaterMark && overHighWaterMark.compareAndSet(false, true)) {
+                LOG.warn("event queue of RemoteServiceAdminListener {} passed {} events, {} are waiting",
+                         new Object[] {listener, highWaterMark, depth});
+            }
+            schedule();
+        }
+
+        private void updateMaxDepth(int depth) {
+            int max = maxDepth.get();
+            while (depth > max && !maxDepth.compareAndSet(max, depth)) {
+                max = maxDepth.get();
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("dispatcher is closed, discarding events for {}", listener);
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        public void run() {
+            List<RemoteServiceAdminEvent> batch = new ArrayList<RemoteServiceAdminEvent>(MAX_BATCH_SIZE);
+            try {
+                while (!closed && events.drainTo(batch, MAX_BATCH_SIZE) > 0) {
+                    queued.addAndGet(-batch.size());
+                    for (RemoteServiceAdminEvent event : batch) {
+                        deliver(event);
+                    }
+                    batch.clear();
+                }
+                if (events.size() <= highWaterMark && overHighWaterMark.compareAndSet(true, false)) {
+                    LOG.info("event queue of RemoteServiceAdminListener {} is back below {} events",
+                             listener, highWaterMark);
+                }
+            } finally {
+                scheduled.set(false);
+                // events may have been added after the last drain
+                if (!closed && !events.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private void deliver(RemoteServiceAdminEvent event) {
+            if (closed) {
+                return;
+            }
+            try {
+                listener.remoteAdminEvent(event);
+                delivered.incrementAndGet();
+            } catch (RuntimeException e) {
+                LOG.warn("RemoteServiceAdminListener " + listener + " failed to handle event", e);
+            }
+        }
+
+        void close() {
+            closed = true;
+            queued.addAndGet(-events.size());
+            events.clear();
+        }
+    }
+
+    private static final class DispatcherThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "RemoteServiceAdminEvent-dispatcher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
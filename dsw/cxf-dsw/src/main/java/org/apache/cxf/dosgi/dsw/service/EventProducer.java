@@ -20,14 +20,10 @@ package org.apache.cxf.dosgi.dsw.service;
 
 import java.util.List;
 
-import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
-import org.osgi.framework.ServiceReference;
 import org.osgi.service.remoteserviceadmin.ExportRegistration;
 import org.osgi.service.remoteserviceadmin.ImportRegistration;
 import org.osgi.service.remoteserviceadmin.RemoteServiceAdminEvent;
-import org.osgi.service.remoteserviceadmin.RemoteServiceAdminListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +32,9 @@ public class EventProducer {
     private static final Logger LOG = LoggerFactory.getLogger(EventProducer.class);
     private final BundleContext bctx;
     private final EventAdminHelper eaHelper;
+    // guarded by this
+    private EventDispatcher listenerDispatcher;
+    private boolean closed;
 
     public EventProducer(BundleContext bc) {
         bctx = bc;
@@ -84,28 +83,37 @@ public class EventProducer {
     }
 
     private void notifyListeners(RemoteServiceAdminEvent rsae) {
-        try {
-            ServiceReference[] listenerRefs = bctx.getServiceReferences(
-                    RemoteServiceAdminListener.class.getName(), null);
-            if (listenerRefs != null) {
-                for (ServiceReference sref : listenerRefs) {
-                    RemoteServiceAdminListener rsal = (RemoteServiceAdminListener)bctx.getService(sref);
-                    if (rsal != null) {
-                        try {
-                            Bundle bundle = sref.getBundle();
-                            if (bundle != null) {
-                                LOG.debug("notify RemoteServiceAdminListener {} of bundle {}",
-                                        rsal, bundle.getSymbolicName());
-                                rsal.remoteAdminEvent(rsae);
-                            }
-                        } finally {
-                            bctx.ungetService(sref);
-                        }
-                    }
-                }
+        EventDispatcher dispatcher;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (listenerDispatcher == null) {
+                // opened lazily, so nothing is tracked until the first event is published
+                listenerDispatcher = new EventDispatcher(bctx);
+                listenerDispatcher.open();
             }
-        } catch (InvalidSyntaxException e) {
-            LOG.error(e.getMessage(), e);
+            dispatcher = listenerDispatcher;
+        }
+        dispatcher.dispatch(rsae);
+    }
+
+    EventDispatcher getListenerDispatcher() {
+        synchronized (this) {
+            return listenerDispatcher;
+        }
+    }
+
+    public void close() {
+        EventDispatcher dispatcher;
+        synchronized (this) {
+            closed = true;
+            dispatcher = listenerDispatcher;
+            listenerDispatcher = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
         }
+        eaHelper.close();
     }
 }
@@ -22,6 +22,8 @@ import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
+import org.apache.cxf.dosgi.dsw.metrics.ServerMetricsFeature;
 import org.apache.cxf.endpoint.Server;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
@@ -85,6 +87,15 @@ public class ExportRegistrationImpl implements ExportRegistration {
         return closed ? null : exception;
     }
 
+    /**
+     * Returns the request statistics of the exported endpoint.
+     *
+     * @return the endpoint metrics, or null if the registration is closed or failed
+     */
+    public EndpointMetrics getEndpointMetrics() {
+        return closed ? null : ServerMetricsFeature.getMetrics(server);
+    }
+
     public final void close() {
         synchronized (this) {
             if (closed) {
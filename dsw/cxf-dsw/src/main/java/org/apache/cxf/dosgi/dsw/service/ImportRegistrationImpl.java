@@ -21,6 +21,8 @@ package org.apache.cxf.dosgi.dsw.service;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.cxf.dosgi.dsw.cache.ResponseCache;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
@@ -171,6 +173,25 @@ public class ImportRegistrationImpl implements ImportRegistration, ImportReferen
         return isInvalid() || parent.importedService == null ? null : parent.importedService.getReference();
     }
 
+    /**
+     * Returns the call statistics of the proxies created for the imported endpoint.
+     *
+     * @return the endpoint metrics, or null if the registration is invalid or no proxy has been created yet
+     */
+    public EndpointMetrics getEndpointMetrics() {
+        return isInvalid() ? null : rsaCore.getImportMetrics(endpoint);
+    }
+
+    /**
+     * Returns the cache shared by the proxies created for the imported endpoint.
+     *
+     * @return the response cache, or null if the registration is invalid, nothing is cached
+     *         or no proxy has been created yet
+     */
+    public ResponseCache getResponseCache() {
+        return isInvalid() ? null : rsaCore.getImportCache(endpoint);
+    }
+
     @Override
     public ImportReference getImportReference() {
         return this;
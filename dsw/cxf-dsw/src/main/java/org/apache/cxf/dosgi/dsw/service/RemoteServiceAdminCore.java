@@ -32,9 +32,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.cxf.dosgi.dsw.cache.ResponseCache;
 import org.apache.cxf.dosgi.dsw.handlers.ConfigTypeHandlerFactory;
 import org.apache.cxf.dosgi.dsw.handlers.ConfigurationTypeHandler;
 import org.apache.cxf.dosgi.dsw.handlers.ExportResult;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
 import org.apache.cxf.dosgi.dsw.util.ClassUtils;
 import org.apache.cxf.dosgi.dsw.util.OsgiUtils;
 import org.apache.cxf.dosgi.dsw.util.Utils;
@@ -504,12 +506,23 @@ public class RemoteServiceAdminCore implements RemoteServiceAdmin {
             }
             if (imRegs == null || imRegs.isEmpty()) {
                 importedServices.remove(iri.getImportedEndpointAlways());
+                configTypeHandlerFactory.getClientMetrics().remove(iri.getImportedEndpointAlways());
+                configTypeHandlerFactory.getResponseCaches().remove(iri.getImportedEndpointAlways());
             }
         }
     }
 
+    EndpointMetrics getImportMetrics(EndpointDescription endpoint) {
+        return configTypeHandlerFactory.getClientMetrics().getMetrics(endpoint.getFrameworkUUID(), endpoint.getId());
+    }
+
+    ResponseCache getImportCache(EndpointDescription endpoint) {
+        return configTypeHandlerFactory.getResponseCaches().getCache(endpoint.getFrameworkUUID(), endpoint.getId());
+    }
+
     public void close() {
         removeImportRegistrations();
         bctx.removeServiceListener(exportedServiceListener);
+        eventProducer.close();
     }
 }
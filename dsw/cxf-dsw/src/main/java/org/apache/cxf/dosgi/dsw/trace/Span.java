@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+/**
+ * A finished span. Instances are immutable.
+ */
+public final class Span {
+
+    public enum Kind {
+        CLIENT, SERVER
+    }
+
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final Kind kind;
+    private final String address;
+    private final long startMillis;
+    private final long durationNanos;
+    private final boolean error;
+
+    Span(ActiveSpan active, String name, String address, long durationNanos, boolean error) {
+        this.traceId = active.traceId;
+        this.spanId = active.spanId;
+        this.parentSpanId = active.parentSpanId;
+        this.kind = active.kind;
+        this.startMillis = active.startMillis;
+        this.name = name;
+        this.address = address;
+        this.durationNanos = durationNanos;
+        this.error = error;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * @return the id of the parent span, or null for the root span of a trace
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + name + " [trace=" + traceId + ", span=" + spanId + ", parent=" + parentSpanId
+            + ", address=" + address + ", duration=" + durationNanos / 1000 + "us, error=" + error + "]";
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size ring buffer holding the most recently finished spans.
+ * Adding a span never blocks; once the buffer is full the oldest spans are overwritten.
+ */
+public class SpanBuffer {
+
+    private final AtomicReferenceArray<Span> spans;
+    private final AtomicLong next = new AtomicLong();
+
+    public SpanBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        spans = new AtomicReferenceArray<Span>(capacity);
+    }
+
+    public void add(Span span) {
+        long index = next.getAndIncrement();
+        spans.set((int)(index % spans.length()), span);
+    }
+
+    public int getCapacity() {
+        return spans.length();
+    }
+
+    /**
+     * Returns the total number of spans added so far, including overwritten ones.
+     * Exporters can use it to detect whether spans were lost between two reads.
+     */
+    public long getAddedCount() {
+        return next.get();
+    }
+
+    /**
+     * @return the buffered spans, oldest first
+     */
+    public List<Span> getSpans() {
+        long end = next.get();
+        long start = Math.max(0, end - spans.length());
+        List<Span> result = new ArrayList<Span>((int)(end - start));
+        for (long i = start; i < end; i++) {
+            Span span = spans.get((int)(i % spans.length()));
+            if (span != null) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+/**
+ * The propagated part of a trace: trace id, id of the calling span and sampling decision.
+ * Serialized as a W3C traceparent header, e.g.
+ * <code>00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01</code>.
+ */
+public final class TraceContext {
+
+    public static final String HEADER = "traceparent";
+
+    private static final String VERSION = "00";
+    private static final int LENGTH = 55;
+
+    private final String traceId;
+    private final String spanId;
+    private final boolean sampled;
+
+    public TraceContext(String traceId, String spanId, boolean sampled) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public String toHeader() {
+        return VERSION + "-" + traceId + "-" + spanId + (sampled ? "-01" : "-00");
+    }
+
+    /**
+     * Parses a traceparent header.
+     *
+     * @param header the header value, may be null
+     * @return the context, or null if the header is missing or malformed
+     */
+    public static TraceContext parse(String header) {
+        if (header == null) {
+            return null;
+        }
+        String value = header.trim();
+        if (value.length() < LENGTH || value.charAt(2) != '-' || value.charAt(35) != '-'
+            || value.charAt(52) != '-' || "ff".equals(value.substring(0, 2))) {
+            return null;
+        }
+        String traceId = value.substring(3, 35);
+        String spanId = value.substring(36, 52);
+        String flags = value.substring(53, 55);
+        if (!isHex(traceId) || !isHex(spanId) || !isHex(flags) || isZero(traceId) || isZero(spanId)) {
+            return null;
+        }
+        boolean sampled = (Integer.parseInt(flags, 16) & 1) != 0;
+        return new TraceContext(traceId, spanId, sampled);
+    }
+
+    private static boolean isHex(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return toHeader();
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which traces are sampled and collects the finished spans.
+ * <p>
+ * A trace started here is sampled at the configured rate. Incoming and outgoing calls
+ * which are part of an existing trace follow the sampling decision of that trace.
+ * Unsampled calls only cost a header lookup, so tracing can stay enabled with a low rate.
+ */
+public class Tracer {
+
+    public static final String INTENT = "tracing";
+
+    private final double samplingRate;
+    private final SpanBuffer buffer;
+    private final AtomicLong counter = new AtomicLong();
+    private final Random random = new Random();
+    private final ThreadLocal<TraceContext> current = new ThreadLocal<TraceContext>();
+
+    /**
+     * @param samplingRate the fraction of new traces to record, between 0 (none) and 1 (all)
+     * @param bufferSize the number of finished spans to keep
+     */
+    public Tracer(double samplingRate, int bufferSize) {
+        this.samplingRate = Math.min(1.0, Math.max(0.0, samplingRate));
+        this.buffer = new SpanBuffer(bufferSize);
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    public SpanBuffer getSpanBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Decides whether a new trace is sampled. A counter is used instead of a random
+     * number, so the configured rate is met exactly over any longer period.
+     */
+    boolean sample() {
+        if (samplingRate <= 0.0) {
+            return false;
+        }
+        if (samplingRate >= 1.0) {
+            return true;
+        }
+        long n = counter.incrementAndGet();
+        return (long)(n * samplingRate) != (long)((n - 1) * samplingRate);
+    }
+
+    String newTraceId() {
+        return toHex(random.nextLong()) + toHex(random.nextLong());
+    }
+
+    String newSpanId() {
+        return toHex(random.nextLong());
+    }
+
+    private static String toHex(long value) {
+        if (value == 0) {
+            value = 1; // all-zero ids are invalid
+        }
+        String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * @return the trace context of the request being served by the current thread, or null
+     */
+    public TraceContext getCurrentContext() {
+        return current.get();
+    }
+
+    /**
+     * Binds a trace context to the current thread.
+     *
+     * @param context the context, or null to bind none
+     * @return the previously bound context, to be restored with {@link #restoreContext(TraceContext)}
+     */
+    TraceContext bindContext(TraceContext context) {
+        TraceContext previous = current.get();
+        restoreContext(context);
+        return previous;
+    }
+
+    /**
+     * Restores the context which was bound before {@link #bindContext(TraceContext)}, so that a
+     * request served within another one, e.g. through a local transport, does not lose the outer trace.
+     */
+    void restoreContext(TraceContext previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    void record(Span span) {
+        buffer.add(span);
+    }
+}
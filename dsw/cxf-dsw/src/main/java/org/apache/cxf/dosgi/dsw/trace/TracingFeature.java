@@ -0,0 +1,284 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.dosgi.dsw.metrics.MetricsUtils;
+import org.apache.cxf.endpoint.Endpoint;
+import org.apache.cxf.feature.AbstractFeature;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.interceptor.InterceptorProvider;
+import org.apache.cxf.interceptor.MessageSenderInterceptor.MessageSenderEndingInterceptor;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageUtils;
+import org.apache.cxf.phase.AbstractPhaseInterceptor;
+import org.apache.cxf.phase.Phase;
+
+/**
+ * Propagates the {@link TraceContext#HEADER} header and records client and server spans
+ * into a {@link Tracer}.
+ * <p>
+ * The same interceptors serve clients and servers. While a server invokes the service,
+ * the trace context is bound to the invoking thread, so that calls the service makes to
+ * other remote services become part of the same trace.
+ */
+public class TracingFeature extends AbstractFeature {
+
+    private static final String SPAN_KEY = TracingFeature.class.getName() + ".span";
+    private static final String CONTEXT_KEY = TracingFeature.class.getName() + ".context";
+    private static final String BINDING_KEY = TracingFeature.class.getName() + ".binding";
+
+    private final Tracer tracer;
+
+    public TracingFeature(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected void initializeProvider(InterceptorProvider provider, Bus bus) {
+        ReceiveInterceptor receive = new ReceiveInterceptor(tracer);
+        SendInterceptor send = new SendInterceptor(tracer);
+        provider.getInInterceptors().add(receive);
+        provider.getInFaultInterceptors().add(receive);
+        provider.getInInterceptors().add(new PreInvokeInterceptor(tracer));
+        provider.getInInterceptors().add(new PostInvokeInterceptor(tracer));
+        provider.getOutInterceptors().add(send);
+        provider.getOutFaultInterceptors().add(send);
+    }
+
+    static String getHeader(Message message) {
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>)message.get(Message.PROTOCOL_HEADERS));
+        if (headers == null) {
+            return null;
+        }
+        List<String> values = headers.get(TraceContext.HEADER);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    static void setHeader(Message message, TraceContext context) {
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>)message.get(Message.PROTOCOL_HEADERS));
+        if (headers == null) {
+            headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+            message.put(Message.PROTOCOL_HEADERS, headers);
+        }
+        headers.put(TraceContext.HEADER, Collections.singletonList(context.toHeader()));
+    }
+
+    static void finish(Tracer tracer, Exchange exchange, boolean error) {
+        // the span is removed so that it is only ever finished once
+        ActiveSpan active = (ActiveSpan)exchange.remove(SPAN_KEY);
+        if (active == null) {
+            return;
+        }
+        long duration = System.nanoTime() - active.startNanos;
+        Endpoint endpoint = exchange.getEndpoint();
+        String address = endpoint == null ? null : endpoint.getEndpointInfo().getAddress();
+        tracer.record(new Span(active, MetricsUtils.getOperationName(exchange), address, duration, error));
+    }
+
+    static boolean isErrorResponse(Message message) {
+        Integer code = (Integer)message.get(Message.RESPONSE_CODE);
+        return message == message.getExchange().getInFaultMessage() || code != null && code >= 400;
+    }
+
+    /**
+     * Finishes client spans when the response arrives and starts server spans when a request arrives.
+     */
+    static class ReceiveInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final Tracer tracer;
+
+        ReceiveInterceptor(Tracer tracer) {
+            super(Phase.RECEIVE);
+            this.tracer = tracer;
+        }
+
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            if (MessageUtils.isRequestor(message)) {
+                finish(tracer, exchange, isErrorResponse(message));
+                return;
+            }
+            if (exchange.containsKey(CONTEXT_KEY)) {
+                return;
+            }
+            TraceContext parent = TraceContext.parse(getHeader(message));
+            boolean sampled = parent != null ? parent.isSampled() : tracer.sample();
+            if (!sampled) {
+                if (parent != null) {
+                    // keep propagating the decision of the caller
+                    exchange.put(CONTEXT_KEY, parent);
+                }
+                return;
+            }
+            String traceId = parent != null ? parent.getTraceId() : tracer.newTraceId();
+            String spanId = tracer.newSpanId();
+            exchange.put(SPAN_KEY, new ActiveSpan(traceId, spanId,
+                                                  parent == null ? null : parent.getSpanId(), Span.Kind.SERVER));
+            exchange.put(CONTEXT_KEY, new TraceContext(traceId, spanId, true));
+        }
+    }
+
+    /**
+     * Binds the trace context of a served request to the invoking thread.
+     */
+    static class PreInvokeInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final Tracer tracer;
+
+        PreInvokeInterceptor(Tracer tracer) {
+            super(Phase.PRE_INVOKE);
+            this.tracer = tracer;
+        }
+
+        public void handleMessage(Message message) {
+            if (!MessageUtils.isRequestor(message)) {
+                Exchange exchange = message.getExchange();
+                TraceContext previous = tracer.bindContext((TraceContext)exchange.get(CONTEXT_KEY));
+                exchange.put(BINDING_KEY, new Binding(previous));
+            }
+        }
+
+        @Override
+        public void handleFault(Message message) {
+            unbind(tracer, message.getExchange());
+        }
+    }
+
+    /**
+     * Restores the context which was bound to the invoking thread before the request was served.
+     */
+    static void unbind(Tracer tracer, Exchange exchange) {
+        Binding binding = (Binding)exchange.remove(BINDING_KEY);
+        if (binding != null) {
+            tracer.restoreContext(binding.previous);
+        }
+    }
+
+    /**
+     * The context bound before a served request, which may be null.
+     */
+    private static final class Binding {
+
+        final TraceContext previous;
+
+        Binding(TraceContext previous) {
+            this.previous = previous;
+        }
+    }
+
+    /**
+     * Unbinds the trace context again and finishes one-way server spans.
+     */
+    static class PostInvokeInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final Tracer tracer;
+
+        PostInvokeInterceptor(Tracer tracer) {
+            super(Phase.POST_INVOKE);
+            this.tracer = tracer;
+        }
+
+        public void handleMessage(Message message) {
+            if (MessageUtils.isRequestor(message)) {
+                return;
+            }
+            Exchange exchange = message.getExchange();
+            unbind(tracer, exchange);
+            if (exchange.isOneWay()) {
+                finish(tracer, exchange, false);
+            }
+        }
+    }
+
+    /**
+     * Starts client spans and sets the header on outgoing requests.
+     */
+    static class SendInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final Tracer tracer;
+
+        SendInterceptor(Tracer tracer) {
+            super(Phase.POST_LOGICAL);
+            this.tracer = tracer;
+        }
+
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            if (!MessageUtils.isRequestor(message)) {
+                if (exchange.containsKey(SPAN_KEY)) {
+                    message.getInterceptorChain().add(new SendEndingInterceptor(tracer));
+                }
+                return;
+            }
+            TraceContext parent = tracer.getCurrentContext();
+            boolean sampled = parent != null ? parent.isSampled() : tracer.sample();
+            if (!sampled) {
+                if (parent != null) {
+                    setHeader(message, parent);
+                }
+                return;
+            }
+            String traceId = parent != null ? parent.getTraceId() : tracer.newTraceId();
+            String spanId = tracer.newSpanId();
+            exchange.put(SPAN_KEY, new ActiveSpan(traceId, spanId,
+                                                  parent == null ? null : parent.getSpanId(), Span.Kind.CLIENT));
+            setHeader(message, new TraceContext(traceId, spanId, true));
+            message.getInterceptorChain().add(new SendEndingInterceptor(tracer));
+        }
+
+        @Override
+        public void handleFault(Message message) {
+            // the request could not be sent
+            if (MessageUtils.isRequestor(message)) {
+                finish(tracer, message.getExchange(), true);
+            }
+        }
+    }
+
+    /**
+     * Finishes server spans once the response has been sent, and client spans
+     * for which no response has been received (e.g. one-way calls).
+     */
+    static class SendEndingInterceptor extends AbstractPhaseInterceptor<Message> {
+
+        private final Tracer tracer;
+
+        SendEndingInterceptor(Tracer tracer) {
+            super(Phase.PREPARE_SEND_ENDING);
+            addAfter(MessageSenderEndingInterceptor.class.getName());
+            this.tracer = tracer;
+        }
+
+        public void handleMessage(Message message) {
+            Exchange exchange = message.getExchange();
+            if (MessageUtils.isRequestor(message)) {
+                finish(tracer, exchange, false);
+            } else {
+                finish(tracer, exchange, message == exchange.getOutFaultMessage());
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@
  */
 package org.apache.cxf.dosgi.dsw.util;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -39,6 +41,8 @@ public final class OsgiUtils {
 
     public static final Logger LOG = LoggerFactory.getLogger(OsgiUtils.class);
 
+    private static volatile String hostName;
+
     private OsgiUtils() {
     }
 
@@ -83,6 +87,29 @@ public final class OsgiUtils {
         return null;
     }
 
+    /**
+     * Returns an integer property given as a number or a string.
+     *
+     * @param dict the properties
+     * @param name the property name
+     * @param defaultValue the value to use if the property is missing or invalid
+     * @return the property value
+     */
+    public static int getIntProperty(Map<String, Object> dict, String name, int defaultValue) {
+        Object value = dict.get(name);
+        if (value instanceof Number) {
+            return ((Number)value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt(((String)value).trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring invalid value of {}: {}", name, value);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Tries to retrieve the version of iClass via the PackageAdmin.
      *
@@ -143,6 +170,23 @@ public final class OsgiUtils {
         }
     }
 
+    /**
+     * Returns the name of the local host, which is looked up only once, or null if it is unknown.
+     */
+    public static String getHostName() {
+        String name = hostName;
+        if (name == null) {
+            try {
+                name = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                LOG.warn("Unable to determine the local host name", e);
+                name = "";
+            }
+            hostName = name;
+        }
+        return name.isEmpty() ? null : name;
+    }
+
     public static void overlayProperties(Map<String, Object> serviceProperties,
                                          Map<String, Object> additionalProperties) {
         Map<String, String> keysLowerCase = new HashMap<String, String>();
@@ -23,12 +23,17 @@ import java.util.Hashtable;
 
 import junit.framework.TestCase;
 
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.easymock.IMocksControl;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.http.HttpService;
 import org.osgi.service.remoteserviceadmin.RemoteServiceAdmin;
 
 public class ActivatorTest extends TestCase {
@@ -60,4 +65,30 @@ public class ActivatorTest extends TestCase {
         a.start(bc);
         control.verify();
     }
+
+    public void testPropertiesRepublishedWhenHttpServiceAppears() throws Exception {
+        IMocksControl control = EasyMock.createNiceControl();
+        BundleContext bc = getMockBundleContext(control);
+        Filter filter = control.createMock(Filter.class);
+        EasyMock.expect(bc.createFilter(EasyMock.<String>anyObject())).andReturn(filter).anyTimes();
+        ServiceRegistration sr = control.createMock(ServiceRegistration.class);
+        EasyMock.expect(bc.registerService(EasyMock.eq(RemoteServiceAdmin.class.getName()),
+                                           EasyMock.anyObject(), (Dictionary<String, String>)EasyMock.anyObject()))
+                                           .andReturn(sr).atLeastOnce();
+        Capture<ServiceListener> httpServiceListener = new Capture<ServiceListener>();
+        bc.addServiceListener(EasyMock.capture(httpServiceListener),
+                              EasyMock.contains(HttpService.class.getName()));
+        EasyMock.expectLastCall().once();
+        ServiceReference httpServiceRef = control.createMock(ServiceReference.class);
+        EasyMock.expect(bc.getService(httpServiceRef)).andReturn(control.createMock(HttpService.class));
+        // exports which failed for lack of an HttpService are retried by topology managers
+        sr.setProperties(EasyMock.<Dictionary<String, ?>>anyObject());
+        EasyMock.expectLastCall().once();
+
+        control.replay();
+        Activator a = new Activator();
+        a.start(bc);
+        httpServiceListener.getValue().serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, httpServiceRef));
+        control.verify();
+    }
 }
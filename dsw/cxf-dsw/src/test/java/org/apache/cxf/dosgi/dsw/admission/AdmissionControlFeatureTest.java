@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.admission;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.cxf.bus.managers.PhaseManagerImpl;
+import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.transport.Conduit;
+import org.apache.cxf.transport.Destination;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.easymock.IMocksControl;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissionControlFeatureTest {
+
+    @Test
+    public void testAdmitAndRelease() {
+        AdmissionController ac = new AdmissionController(1, 0, 0, 1);
+        Exchange exchange = new ExchangeImpl();
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        new AdmissionControlFeature.AdmitInterceptor(ac).handleMessage(in);
+        Assert.assertEquals(1, ac.getActive());
+
+        Message out = createMessage(exchange);
+        exchange.setOutMessage(out);
+        new AdmissionControlFeature.ReleaseEndingInterceptor(ac).handleMessage(out);
+        // a request is only released once
+        new AdmissionControlFeature.ReleaseEndingInterceptor(ac).handleMessage(out);
+        Assert.assertEquals(0, ac.getActive());
+        Assert.assertEquals(0, ac.getRejected());
+    }
+
+    @Test
+    public void testReleaseAtEndOfIncomingChain() {
+        AdmissionController ac = new AdmissionController(1, 0, 0, 1);
+        Exchange exchange = new ExchangeImpl();
+        exchange.setOneWay(true);
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        new AdmissionControlFeature.AdmitInterceptor(ac).handleMessage(in);
+        Assert.assertEquals(1, ac.getActive());
+
+        // e.g. a one-way request, or an outgoing chain aborted before sending
+        new AdmissionControlFeature.CompletionInterceptor(ac).handleMessage(in);
+        Assert.assertEquals(0, ac.getActive());
+    }
+
+    @Test
+    public void testReleaseOnFault() {
+        AdmissionController ac = new AdmissionController(1, 0, 0, 1);
+        Exchange exchange = new ExchangeImpl();
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        AdmissionControlFeature.AdmitInterceptor admit = new AdmissionControlFeature.AdmitInterceptor(ac);
+        admit.handleMessage(in);
+        admit.handleFault(in);
+        Assert.assertEquals(0, ac.getActive());
+
+        in = createMessage(new ExchangeImpl());
+        in.getExchange().setInMessage(in);
+        admit.handleMessage(in);
+        Message out = createMessage(in.getExchange());
+        in.getExchange().setOutMessage(out);
+        new AdmissionControlFeature.ReleaseInterceptor(ac).handleFault(out);
+        Assert.assertEquals(0, ac.getActive());
+    }
+
+    @Test
+    public void testReject() throws Exception {
+        AdmissionController ac = new AdmissionController(1, 0, 0, 7);
+        Assert.assertTrue(ac.acquire());
+
+        IMocksControl c = EasyMock.createControl();
+        Destination destination = c.createMock(Destination.class);
+        Conduit backChannel = c.createMock(Conduit.class);
+        Exchange exchange = new ExchangeImpl();
+        exchange.setDestination(destination);
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        EasyMock.expect(destination.getBackChannel(in)).andReturn(backChannel);
+        Capture<Message> response = new Capture<Message>();
+        backChannel.prepare(EasyMock.capture(response));
+        backChannel.close(EasyMock.<Message>anyObject());
+        c.replay();
+
+        new AdmissionControlFeature.AdmitInterceptor(ac).handleMessage(in);
+        c.verify();
+        Assert.assertEquals(PhaseInterceptorChain.State.ABORTED, in.getInterceptorChain().getState());
+        Assert.assertEquals(503, response.getValue().get(Message.RESPONSE_CODE));
+        Map<String, List<String>> headers = CastUtils.cast((Map<?, ?>)response.getValue()
+            .get(Message.PROTOCOL_HEADERS));
+        Assert.assertEquals("7", headers.get(AdmissionControlFeature.RETRY_AFTER).get(0));
+        Assert.assertEquals(1, ac.getRejected());
+
+        // rejected requests are not released
+        new AdmissionControlFeature.ReleaseEndingInterceptor(ac).handleMessage(response.getValue());
+        Assert.assertEquals(1, ac.getActive());
+    }
+
+    private static Message createMessage(Exchange exchange) {
+        Message message = new MessageImpl();
+        message.setExchange(exchange);
+        message.setInterceptorChain(new PhaseInterceptorChain(new PhaseManagerImpl().getOutPhases()));
+        return message;
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.admission;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.cxf.dosgi.dsw.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void testRejectWithoutQueue() {
+        AdmissionController ac = new AdmissionController(2, 0, 0, 5);
+        Assert.assertTrue(ac.acquire());
+        Assert.assertTrue(ac.acquire());
+        Assert.assertEquals(2, ac.getActive());
+        Assert.assertFalse(ac.acquire());
+        Assert.assertEquals(1, ac.getRejected());
+        Assert.assertEquals(0, ac.getQueued());
+
+        ac.release();
+        Assert.assertTrue(ac.acquire());
+        Assert.assertEquals(1, ac.getRejected());
+    }
+
+    @Test
+    public void testQueuedRequestIsAdmittedOnRelease() throws Exception {
+        final AdmissionController ac = new AdmissionController(1, 1, 10000, 1);
+        Assert.assertTrue(ac.acquire());
+        final boolean[] admitted = new boolean[1];
+        Thread waiting = new Thread() {
+            public void run() {
+                admitted[0] = ac.acquire();
+            }
+        };
+        waiting.start();
+        while (ac.getQueued() == 0) {
+            Thread.sleep(1);
+        }
+        // the queue is full
+        Assert.assertFalse(ac.acquire());
+
+        ac.release();
+        waiting.join(10000);
+        Assert.assertTrue(admitted[0]);
+        Assert.assertEquals(0, ac.getQueued());
+        Assert.assertEquals(1, ac.getActive());
+        Assert.assertEquals(1, ac.getRejected());
+    }
+
+    @Test
+    public void testQueueTimeout() {
+        AdmissionController ac = new AdmissionController(1, 1, 10, 1);
+        Assert.assertTrue(ac.acquire());
+        Assert.assertFalse(ac.acquire());
+        Assert.assertEquals(1, ac.getRejected());
+        Assert.assertEquals(0, ac.getQueued());
+    }
+
+    @Test
+    public void testCreate() {
+        Map<String, Object> props = new HashMap<String, Object>();
+        Assert.assertNull(AdmissionController.create(props));
+
+        props.put(Constants.ADMISSION_MAX_CONCURRENT, "10");
+        props.put(Constants.ADMISSION_MAX_QUEUED, 20);
+        AdmissionController ac = AdmissionController.create(props);
+        Assert.assertEquals(10, ac.getMaxConcurrent());
+        Assert.assertEquals(20, ac.getMaxQueued());
+        Assert.assertEquals(AdmissionController.DEFAULT_QUEUE_TIMEOUT, ac.getQueueTimeout());
+        Assert.assertEquals(AdmissionController.DEFAULT_RETRY_AFTER, ac.getRetryAfter());
+    }
+}
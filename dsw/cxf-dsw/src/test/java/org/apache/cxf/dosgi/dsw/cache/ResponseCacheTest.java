@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.cache;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.cxf.dosgi.dsw.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+
+public class ResponseCacheTest {
+
+    private static final Method CHAR_AT = getMethod("charAt", int.class);
+
+    @Test
+    public void testGetAndPut() {
+        ResponseCache cache = new ResponseCache(Arrays.asList("charAt"), 60000, 10);
+        Assert.assertTrue(cache.isCacheable(CHAR_AT));
+        Assert.assertFalse(cache.isCacheable(getMethod("length")));
+
+        Assert.assertSame(ResponseCache.MISS, cache.get(CHAR_AT, new Object[] {1}));
+        cache.put(CHAR_AT, new Object[] {1}, 'a');
+        Assert.assertEquals('a', cache.get(CHAR_AT, new Object[] {1}));
+        Assert.assertSame(ResponseCache.MISS, cache.get(CHAR_AT, new Object[] {2}));
+        // null results are cached as well
+        cache.put(CHAR_AT, new Object[] {2}, null);
+        Assert.assertNull(cache.get(CHAR_AT, new Object[] {2}));
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        ResponseCache cache = new ResponseCache(Arrays.asList("charAt"), 1, 10);
+        cache.put(CHAR_AT, new Object[] {1}, 'a');
+        Thread.sleep(5);
+        Assert.assertSame(ResponseCache.MISS, cache.get(CHAR_AT, new Object[] {1}));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testLruEviction() {
+        ResponseCache cache = new ResponseCache(Arrays.asList("charAt"), 60000, 2);
+        cache.put(CHAR_AT, new Object[] {1}, 'a');
+        cache.put(CHAR_AT, new Object[] {2}, 'b');
+        cache.get(CHAR_AT, new Object[] {1});
+        cache.put(CHAR_AT, new Object[] {3}, 'c');
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals('a', cache.get(CHAR_AT, new Object[] {1}));
+        Assert.assertSame(ResponseCache.MISS, cache.get(CHAR_AT, new Object[] {2}));
+    }
+
+    @Test
+    public void testCreate() {
+        Map<String, Object> props = new HashMap<String, Object>();
+        Assert.assertNull(ResponseCache.create(props));
+
+        props.put(Constants.CACHE_METHODS, "charAt, length");
+        props.put(Constants.CACHE_SIZE, "5");
+        ResponseCache cache = ResponseCache.create(props);
+        Assert.assertTrue(cache.isCacheable(CHAR_AT));
+        Assert.assertTrue(cache.isCacheable(getMethod("length")));
+        Assert.assertEquals(5, cache.getMaxSize());
+
+        props.put(Constants.CACHE_METHODS, new String[] {"length"});
+        Assert.assertFalse(ResponseCache.create(props).isCacheable(CHAR_AT));
+    }
+
+    @Test
+    public void testRegistrySharesCachePerEndpoint() {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(org.osgi.framework.Constants.OBJECTCLASS, new String[] {CharSequence.class.getName()});
+        props.put(RemoteConstants.ENDPOINT_ID, "http://localhost/cached");
+        props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "myConfig");
+        props.put(RemoteConstants.ENDPOINT_FRAMEWORK_UUID, "fw1");
+        props.put(Constants.CACHE_METHODS, "charAt");
+        EndpointDescription endpoint = new EndpointDescription(props);
+
+        ResponseCacheRegistry registry = new ResponseCacheRegistry();
+        Assert.assertNull(registry.getCache("fw1", "http://localhost/cached"));
+        ResponseCache cache = registry.getCache(endpoint);
+        Assert.assertNotNull(cache);
+        Assert.assertSame(cache, registry.getCache(endpoint));
+        Assert.assertSame(cache, registry.getCache("fw1", "http://localhost/cached"));
+        registry.remove(endpoint);
+        Assert.assertNull(registry.getCache("fw1", "http://localhost/cached"));
+    }
+
+    private static Method getMethod(String name, Class<?>... params) {
+        try {
+            return String.class.getMethod(name, params);
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -42,6 +42,13 @@ public class InterfaceRuleTest extends TestCase {
         assertSame(b, ir.getBundle());
     }
 
+    public void testInterfaceRuleGetInterfaceName() {
+        assertEquals("org.apache.Foo", new InterfaceRule(null, "org.apache.Foo").getInterfaceName());
+        assertNull(new InterfaceRule(null, "org.apache.F(.*)").getInterfaceName());
+        assertNull(new InterfaceRule(null, "org\\.apache\\.Foo").getInterfaceName());
+        assertNull(new InterfaceRule(null, "org.apache.Foo|org.apache.Bar").getInterfaceName());
+    }
+
     public void testInterfaceRule1() {
         InterfaceRule ir = new InterfaceRule(null, "org.apache.Foo");
         ir.addProperty("x", "y", String.class.getName());
@@ -18,6 +18,7 @@
  */
 package org.apache.cxf.dosgi.dsw.decorator;
 
+import java.io.File;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
@@ -30,6 +31,7 @@ import junit.framework.TestCase;
 import org.easymock.EasyMock;
 import org.easymock.IAnswer;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 
@@ -74,6 +76,51 @@ public class ServiceDecoratorImplTest extends TestCase {
         assertEquals(EMPTY, target2);
     }
 
+    public void testDecorationsAreParsedOnce() {
+        Bundle b = createBundleContaining(RES_SD1, RES_SD2);
+        ServiceDecoratorImpl sd = new ServiceDecoratorImpl();
+        sd.addDecorations(b);
+        int rules = sd.decorations.size();
+        sd.removeDecorations(b);
+        sd.addDecorations(b);
+        assertEquals(rules, sd.decorations.size());
+        EasyMock.verify(b);
+    }
+
+    public void testDecorationsArePersisted() throws Exception {
+        File dataDir = File.createTempFile("service-decorations", "");
+        assertTrue(dataDir.delete());
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(bc.getDataFile(DecorationCache.CACHE_DIR)).andReturn(dataDir).anyTimes();
+        EasyMock.replay(bc);
+
+        Bundle b = createBundleContaining(RES_SD);
+        new ServiceDecoratorImpl(bc).addDecorations(b);
+        EasyMock.verify(b);
+
+        // a new instance reads the decorations from the data area instead of parsing the bundle again
+        ServiceDecoratorImpl sd = new ServiceDecoratorImpl(bc);
+        sd.addDecorations(b);
+        assertEquals(1, sd.decorations.size());
+        final Map<String, Object> serviceProps = new HashMap<String, Object>();
+        serviceProps.put(Constants.OBJECTCLASS, new String[] {"org.acme.foo.Bar"});
+        serviceProps.put("test.prop", "xyz");
+        ServiceReference sref = EasyMock.createMock(ServiceReference.class);
+        EasyMock.expect(sref.getProperty((String) EasyMock.anyObject())).andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                return serviceProps.get(EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+        EasyMock.replay(sref);
+        Map<String, Object> target = new HashMap<String, Object>();
+        sd.decorate(sref, target);
+        assertEquals(Collections.singletonMap("test.too", "ahaha"), target);
+
+        sd.uninstalled(b);
+        assertFalse(new File(dataDir, "1.ser").exists());
+        assertTrue(dataDir.delete());
+    }
+
     public void testAddDecorations() {
         final Map<String, Object> serviceProps = new HashMap<String, Object>();
         serviceProps.put(Constants.OBJECTCLASS, new String[] {"org.acme.foo.Bar"});
@@ -169,8 +216,10 @@ public class ServiceDecoratorImplTest extends TestCase {
 
     private Bundle createBundleContaining(URL... resources) {
         Bundle b = EasyMock.createMock(Bundle.class);
+        EasyMock.expect(b.getBundleId()).andReturn(1L).anyTimes();
+        EasyMock.expect(b.getLastModified()).andReturn(0L).anyTimes();
         EasyMock.expect(b.findEntries("OSGI-INF/remote-service", "*.xml", false)).andReturn(
-            Collections.enumeration(Arrays.asList(resources))).anyTimes();
+            Collections.enumeration(Arrays.asList(resources))).once();
         EasyMock.replay(b);
         return b;
     }
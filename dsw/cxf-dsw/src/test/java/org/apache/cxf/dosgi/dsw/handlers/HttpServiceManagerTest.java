@@ -19,6 +19,9 @@
 package org.apache.cxf.dosgi.dsw.handlers;
 
 import java.util.Dictionary;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
@@ -36,6 +39,7 @@ import org.easymock.IMocksControl;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceException;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.http.HttpContext;
@@ -67,10 +71,17 @@ public class HttpServiceManagerTest extends TestCase {
         IMocksControl c = EasyMock.createControl();
         BundleContext dswContext = c.createMock(BundleContext.class);
         Filter filter = c.createMock(Filter.class);
-        expect(dswContext.createFilter(EasyMock.eq("(service.id=12345)"))).andReturn(filter).once();
+        expect(dswContext.createFilter(SecurityFilterTracker.FILTER_SERVICES)).andReturn(filter).once();
+        expect(dswContext.getServiceReferences((String)EasyMock.isNull(), EasyMock.<String>anyObject()))
+            .andReturn(null).once();
         Capture<ServiceListener> captured = new Capture<ServiceListener>();
-        dswContext.addServiceListener(EasyMock.capture(captured), EasyMock.<String>anyObject());
-        expectLastCall().atLeastOnce();
+        dswContext.addServiceListener(EasyMock.capture(captured));
+        expectLastCall().once();
+        // the security filter tracker
+        dswContext.addServiceListener(EasyMock.<ServiceListener>anyObject(), EasyMock.<String>anyObject());
+        expectLastCall().once();
+        dswContext.removeServiceListener(EasyMock.<ServiceListener>anyObject());
+        expectLastCall().times(2);
         expect(dswContext.getProperty("org.apache.cxf.httpservice.requirefilter")).andReturn(null).atLeastOnce();
         ServletConfig config = c.createMock(ServletConfig.class);
         expect(config.getInitParameter(EasyMock.<String>anyObject())).andReturn(null).atLeastOnce();
@@ -93,11 +104,251 @@ public class HttpServiceManagerTest extends TestCase {
 
         ServiceEvent event = new ServiceEvent(ServiceEvent.UNREGISTERING, sr);
         captured.getValue().serviceChanged(event);
+        h.close();
         c.verify();
     }
 
+    public void testRegisterServletWhenHttpServiceAppears() throws Exception {
+        IMocksControl c = EasyMock.createNiceControl();
+        BundleContext dswContext = c.createMock(BundleContext.class);
+        Filter filter = c.createMock(Filter.class);
+        expect(dswContext.createFilter(EasyMock.<String>anyObject())).andReturn(filter).anyTimes();
+        ServletConfig config = c.createMock(ServletConfig.class);
+        ServletContext servletContext = c.createMock(ServletContext.class);
+        expect(config.getServletContext()).andReturn(servletContext).anyTimes();
+        ServiceReference sr = c.createMock(ServiceReference.class);
+        expect(sr.getProperty(EasyMock.eq("service.id"))).andReturn(12345L).anyTimes();
+        c.replay();
+
+        final HttpService[] current = new HttpService[1];
+        HttpServiceManager h = new HttpServiceManager(dswContext, null, null, null) {
+            @Override
+            protected HttpService getHttpService() {
+                return current[0];
+            }
+        };
+        final int[] notified = new int[1];
+        h.setHttpServiceListener(new Runnable() {
+            public void run() {
+                notified[0]++;
+            }
+        });
+        Bus bus = BusFactory.newInstance().createBus();
+        try {
+            h.registerServlet(bus, "/myService", dswContext, sr);
+            fail("The export must fail while there is no HttpService");
+        } catch (ServiceException e) {
+            // expected
+        }
+
+        DummyHttpService first = new DummyHttpService(config);
+        current[0] = first;
+        h.httpServiceAdded(first);
+        assertEquals(1, notified[0]);
+        assertEquals(0, first.registered);
+        h.registerServlet(bus, "/myService", dswContext, sr);
+        assertEquals(1, first.registered);
+
+        DummyHttpService second = new DummyHttpService(config);
+        current[0] = second;
+        h.httpServiceRemoved(first, second);
+        assertEquals(1, second.registered);
+
+        current[0] = null;
+        h.httpServiceRemoved(second, null);
+        DummyHttpService third = new DummyHttpService(config);
+        current[0] = third;
+        h.httpServiceAdded(third);
+        assertEquals(1, third.registered);
+        assertEquals(2, notified[0]);
+    }
+
+    public void testServletStaysExportedWhileServiceIsRegistered() throws Exception {
+        IMocksControl c = EasyMock.createNiceControl();
+        BundleContext dswContext = c.createMock(BundleContext.class);
+        Filter filter = c.createMock(Filter.class);
+        expect(dswContext.createFilter(EasyMock.<String>anyObject())).andReturn(filter).anyTimes();
+        ServletConfig config = c.createMock(ServletConfig.class);
+        ServletContext servletContext = c.createMock(ServletContext.class);
+        expect(config.getServletContext()).andReturn(servletContext).anyTimes();
+        ServiceReference sr = c.createMock(ServiceReference.class);
+        expect(sr.getProperty(EasyMock.eq("service.id"))).andReturn(12345L).anyTimes();
+        Capture<ServiceListener> captured = new Capture<ServiceListener>();
+        dswContext.addServiceListener(EasyMock.capture(captured));
+        expectLastCall().once();
+        c.replay();
+
+        final DummyHttpService httpService = new DummyHttpService(config);
+        HttpServiceManager h = new HttpServiceManager(dswContext, null, null, null) {
+            @Override
+            protected HttpService getHttpService() {
+                return httpService;
+            }
+        };
+        h.registerServlet(BusFactory.newInstance().createBus(), "/myService", dswContext, sr);
+        captured.getValue().serviceChanged(new ServiceEvent(ServiceEvent.MODIFIED, sr));
+        captured.getValue().serviceChanged(new ServiceEvent(ServiceEvent.MODIFIED_ENDMATCH, sr));
+        assertEquals(0, httpService.unregistered);
+        captured.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, sr));
+        assertEquals(1, httpService.unregistered);
+    }
+
+    public void testSecurityFiltersTrackedWithExportingBundleContext() throws Exception {
+        IMocksControl c = EasyMock.createNiceControl();
+        BundleContext dswContext = c.createMock(BundleContext.class);
+        BundleContext exportingContext = c.createMock(BundleContext.class);
+        Filter filter = c.createMock(Filter.class);
+        expect(exportingContext.createFilter(SecurityFilterTracker.FILTER_SERVICES)).andReturn(filter).once();
+        exportingContext.addServiceListener(EasyMock.<ServiceListener>anyObject(), EasyMock.<String>anyObject());
+        expectLastCall().once();
+        // the tracker is closed once the last servlet exported with the context goes away
+        exportingContext.removeServiceListener(EasyMock.<ServiceListener>anyObject());
+        expectLastCall().once();
+        ServletConfig config = c.createMock(ServletConfig.class);
+        ServletContext servletContext = c.createMock(ServletContext.class);
+        expect(config.getServletContext()).andReturn(servletContext).anyTimes();
+        ServiceReference sr = c.createMock(ServiceReference.class);
+        expect(sr.getProperty(EasyMock.eq("service.id"))).andReturn(12345L).anyTimes();
+        Capture<ServiceListener> captured = new Capture<ServiceListener>();
+        dswContext.addServiceListener(EasyMock.capture(captured));
+        expectLastCall().once();
+        c.replay();
+
+        final DummyHttpService httpService = new DummyHttpService(config);
+        HttpServiceManager h = new HttpServiceManager(dswContext, null, null, null) {
+            @Override
+            protected HttpService getHttpService() {
+                return httpService;
+            }
+        };
+        h.registerServlet(BusFactory.newInstance().createBus(), "/myService", exportingContext, sr);
+        captured.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, sr));
+        h.close();
+        c.verify();
+    }
+
+    public void testServletUnexportedDuringRegistration() throws Exception {
+        IMocksControl c = EasyMock.createNiceControl();
+        BundleContext dswContext = c.createMock(BundleContext.class);
+        Filter filter = c.createMock(Filter.class);
+        expect(dswContext.createFilter(EasyMock.<String>anyObject())).andReturn(filter).anyTimes();
+        ServletConfig config = c.createMock(ServletConfig.class);
+        ServletContext servletContext = c.createMock(ServletContext.class);
+        expect(config.getServletContext()).andReturn(servletContext).anyTimes();
+        ServiceReference sr = c.createMock(ServiceReference.class);
+        expect(sr.getProperty(EasyMock.eq("service.id"))).andReturn(12345L).anyTimes();
+        Capture<ServiceListener> captured = new Capture<ServiceListener>();
+        dswContext.addServiceListener(EasyMock.capture(captured));
+        expectLastCall().once();
+        c.replay();
+
+        final DummyHttpService first = new DummyHttpService(config);
+        final HttpService[] current = new HttpService[] {first};
+        HttpServiceManager h = new HttpServiceManager(dswContext, null, null, null) {
+            @Override
+            protected HttpService getHttpService() {
+                return current[0];
+            }
+        };
+        h.registerServlet(BusFactory.newInstance().createBus(), "/myService", dswContext, sr);
+        current[0] = null;
+        h.httpServiceRemoved(first, null);
+
+        // the servlet is unexported while the new HttpService registers it
+        final ServiceListener unregisterListener = captured.getValue();
+        final ServiceReference ref = sr;
+        DummyHttpService second = new DummyHttpService(config) {
+            @SuppressWarnings("rawtypes")
+            @Override
+            public void registerServlet(String alias, Servlet servlet, Dictionary initparams, HttpContext context)
+                throws ServletException, NamespaceException {
+                super.registerServlet(alias, servlet, initparams, context);
+                unregisterListener.serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, ref));
+            }
+        };
+        current[0] = second;
+        h.httpServiceAdded(second);
+        assertEquals(1, second.registered);
+        assertEquals(1, second.unregistered);
+    }
+
+    public void testRegistrationClaimedByConcurrentCallIsAwaited() throws Exception {
+        IMocksControl c = EasyMock.createNiceControl();
+        BundleContext dswContext = c.createMock(BundleContext.class);
+        Filter filter = c.createMock(Filter.class);
+        expect(dswContext.createFilter(EasyMock.<String>anyObject())).andReturn(filter).anyTimes();
+        ServletConfig config = c.createMock(ServletConfig.class);
+        ServletContext servletContext = c.createMock(ServletContext.class);
+        expect(config.getServletContext()).andReturn(servletContext).anyTimes();
+        ServiceReference sr = c.createMock(ServiceReference.class);
+        expect(sr.getProperty(EasyMock.eq("service.id"))).andReturn(12345L).anyTimes();
+        c.replay();
+
+        final Thread exporter = Thread.currentThread();
+        final CountDownLatch claimed = new CountDownLatch(1);
+        final AtomicBoolean resumed = new AtomicBoolean();
+        final HttpService[] current = new HttpService[1];
+        final HttpServiceManager[] manager = new HttpServiceManager[1];
+        // claims the pending servlet, and registers it once the exporting thread waits for it
+        final DummyHttpService second = new DummyHttpService(config) {
+            @SuppressWarnings("rawtypes")
+            @Override
+            public void registerServlet(String alias, Servlet servlet, Dictionary initparams, HttpContext context)
+                throws ServletException, NamespaceException {
+                claimed.countDown();
+                long deadline = System.currentTimeMillis() + 5000;
+                while ((!resumed.get() || exporter.getState() != Thread.State.WAITING)
+                    && System.currentTimeMillis() < deadline) {
+                    Thread.yield();
+                }
+                super.registerServlet(alias, servlet, initparams, context);
+            }
+        };
+        final Thread adder = new Thread() {
+            public void run() {
+                manager[0].httpServiceAdded(second);
+            }
+        };
+        // when the exporting thread looks for a replacement, another thread picks it up first
+        final int[] lookups = new int[1];
+        final HttpServiceManager h = new HttpServiceManager(dswContext, null, null, null) {
+            @Override
+            protected HttpService getHttpService() {
+                if (lookups[0]++ == 1) {
+                    adder.start();
+                    try {
+                        Assert.assertTrue(claimed.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    resumed.set(true);
+                }
+                return current[0];
+            }
+        };
+        manager[0] = h;
+        // goes away while registering the servlet
+        DummyHttpService first = new DummyHttpService(config) {
+            @SuppressWarnings("rawtypes")
+            @Override
+            public void registerServlet(String alias, Servlet servlet, Dictionary initparams, HttpContext context)
+                throws ServletException, NamespaceException {
+                super.registerServlet(alias, servlet, initparams, context);
+                current[0] = second;
+                h.httpServiceRemoved(this, null);
+            }
+        };
+        current[0] = first;
+        h.registerServlet(BusFactory.newInstance().createBus(), "/myService", dswContext, sr);
+        adder.join(5000);
+        assertEquals(1, second.registered);
+        assertEquals(0, second.unregistered);
+    }
+
     static class DummyHttpService implements HttpService {
 
+        int registered;
+        int unregistered;
         private ServletConfig config;
 
         public DummyHttpService(ServletConfig config) {
@@ -109,6 +360,7 @@ public class HttpServiceManagerTest extends TestCase {
             throws ServletException, NamespaceException {
             Assert.assertEquals("/myService", alias);
             servlet.init(config);
+            registered++;
         }
 
         public void registerResources(String alias, String name, HttpContext context) throws NamespaceException {
@@ -116,6 +368,7 @@ public class HttpServiceManagerTest extends TestCase {
         }
 
         public void unregister(String alias) {
+            unregistered++;
         }
 
         public HttpContext createDefaultHttpContext() {
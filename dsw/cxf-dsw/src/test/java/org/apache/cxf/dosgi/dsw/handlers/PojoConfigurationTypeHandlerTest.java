@@ -18,6 +18,7 @@
  */
 package org.apache.cxf.dosgi.dsw.handlers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +37,8 @@ import org.apache.cxf.dosgi.dsw.handlers.simple.MySimpleEchoServiceImpl;
 import org.apache.cxf.dosgi.dsw.qos.IntentManager;
 import org.apache.cxf.dosgi.dsw.qos.IntentManagerImpl;
 import org.apache.cxf.dosgi.dsw.qos.IntentMap;
+import org.apache.cxf.dosgi.dsw.trace.Tracer;
+import org.apache.cxf.dosgi.dsw.trace.TracingFeature;
 import org.apache.cxf.endpoint.AbstractEndpointFactory;
 import org.apache.cxf.endpoint.Endpoint;
 import org.apache.cxf.endpoint.EndpointImpl;
@@ -115,6 +118,7 @@ public class PojoConfigurationTypeHandlerTest extends TestCase {
         final ClientProxyFactoryBean cpfb = c.createMock(ClientProxyFactoryBean.class);
         ReflectionServiceFactoryBean sf = c.createMock(ReflectionServiceFactoryBean.class);
         EasyMock.expect(cpfb.getServiceFactory()).andReturn(sf).anyTimes();
+        EasyMock.expect(cpfb.getFeatures()).andReturn(new ArrayList<Feature>()).anyTimes();
         IntentManager intentManager = new IntentManagerImpl(new IntentMap()) {
             @Override
             public String[] applyIntents(List<Feature> features,
@@ -287,6 +291,7 @@ public class PojoConfigurationTypeHandlerTest extends TestCase {
         Server server = createMockServer(sfb);
 
         EasyMock.expect(sfb.getServiceFactory()).andReturn(sf).anyTimes();
+        EasyMock.expect(sfb.getFeatures()).andReturn(new ArrayList<Feature>()).anyTimes();
         EasyMock.expect(sfb.create()).andReturn(server);
         sfb.setAddress((String) EasyMock.anyObject());
         EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
@@ -328,9 +333,27 @@ public class PojoConfigurationTypeHandlerTest extends TestCase {
         return server;
     }
 
+    public void testTracingIsAddedOnce() {
+        PojoConfigurationTypeHandler handler = new PojoConfigurationTypeHandler(null,
+                                                                                new IntentManagerImpl(new IntentMap()),
+                                                                                dummyHttpServiceManager());
+        Tracer tracer = new Tracer(1.0, 10);
+        handler.setTracer(tracer);
+        // tracing requested through the intent
+        List<Feature> features = new ArrayList<Feature>();
+        features.add(new TracingFeature(tracer));
+        handler.addInstrumentationFeatures(features);
+        assertEquals(1, features.size());
+
+        features.clear();
+        handler.addInstrumentationFeatures(features);
+        assertEquals(1, features.size());
+    }
+
     public void testCreateEndpointProps() {
         BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
         EasyMock.expect(bc.getProperty("org.osgi.framework.uuid")).andReturn("some_uuid1");
+        EasyMock.expect(bc.getProperty(Constants.ZONE)).andReturn("zone1");
         EasyMock.replay(bc);
 
         IntentManager intentManager = new IntentManagerImpl(new IntentMap());
@@ -354,6 +377,8 @@ public class PojoConfigurationTypeHandlerTest extends TestCase {
         assertEquals(Arrays.asList("my_intent", "your_intent"),
                      Arrays.asList((Object[]) props.get(RemoteConstants.SERVICE_INTENTS)));
         assertEquals("0.0.0", props.get("endpoint.package.version.java.lang"));
+        assertEquals("zone1", props.get(Constants.ENDPOINT_ZONE));
+        assertFalse(props.containsKey(Constants.ENDPOINT_RACK));
     }
 
     public void t2estCreateJaxWsEndpointWithoutIntents() {
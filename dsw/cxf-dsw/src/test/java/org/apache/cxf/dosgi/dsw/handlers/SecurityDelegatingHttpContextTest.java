@@ -65,18 +65,8 @@ public class SecurityDelegatingHttpContextTest extends TestCase {
     }
 
     public void testFilterRequired() throws Exception {
-        // Mock up the service references
-        ServiceReference[] serviceReferences = new ServiceReference[] {};
-
-        // Mock up the bundle context
-        BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
-        EasyMock.expect(bundleContext.getServiceReferences(Filter.class.getName(),
-                                                           "(org.apache.cxf.httpservice.filter=true)"))
-            .andReturn(serviceReferences);
-        EasyMock.replay(bundleContext);
-
-        // Set up the secure http context
-        httpContext = new SecurityDelegatingHttpContext(bundleContext, defaultHttpContext);
+        // Set up the secure http context without any registered servlet filters
+        httpContext = createHttpContext();
         httpContext.requireFilter = true;
 
         // Ensure that the httpContext doesn't allow the request to be processed, since there are no registered servlet
@@ -95,22 +85,8 @@ public class SecurityDelegatingHttpContextTest extends TestCase {
     }
 
     public void testSingleCommitFilter() throws Exception {
-        // Mock up the service references
-        ServiceReference filterReference = EasyMock.createNiceMock(ServiceReference.class);
-        EasyMock.replay(filterReference);
-        ServiceReference[] serviceReferences = new ServiceReference[] {
-            filterReference
-        };
-
-        // Mock up the bundle context
-        BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
-        EasyMock.expect(bundleContext.getServiceReferences((String)EasyMock.anyObject(), (String)EasyMock.anyObject()))
-            .andReturn(serviceReferences);
-        EasyMock.expect(bundleContext.getService((ServiceReference)EasyMock.anyObject())).andReturn(commitFilter);
-        EasyMock.replay(bundleContext);
-
         // Set up the secure http context
-        httpContext = new SecurityDelegatingHttpContext(bundleContext, defaultHttpContext);
+        httpContext = createHttpContext(commitFilter);
 
         // Ensure that the httpContext returns false, since the filter has committed the response
         HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
@@ -131,23 +107,8 @@ public class SecurityDelegatingHttpContextTest extends TestCase {
     }
 
     public void testFilterChain() throws Exception {
-        // Mock up the service references
-        ServiceReference filterReference = EasyMock.createNiceMock(ServiceReference.class);
-        EasyMock.replay(filterReference);
-        ServiceReference[] serviceReferences = new ServiceReference[] {
-            filterReference, filterReference
-        };
-
-        // Mock up the bundle context
-        BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
-        EasyMock.expect(bundleContext.getServiceReferences((String)EasyMock.anyObject(), (String)EasyMock.anyObject()))
-            .andReturn(serviceReferences);
-        EasyMock.expect(bundleContext.getService((ServiceReference)EasyMock.anyObject())).andReturn(doNothingFilter);
-        EasyMock.expect(bundleContext.getService((ServiceReference)EasyMock.anyObject())).andReturn(commitFilter);
-        EasyMock.replay(bundleContext);
-
         // Set up the secure http context
-        httpContext = new SecurityDelegatingHttpContext(bundleContext, defaultHttpContext);
+        httpContext = createHttpContext(doNothingFilter, commitFilter);
 
         // Ensure that the httpContext returns false, since the filter has committed the response
         HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
@@ -168,22 +129,8 @@ public class SecurityDelegatingHttpContextTest extends TestCase {
     }
 
     public void testAllowRequest() throws Exception {
-        // Mock up the service references
-        ServiceReference filterReference = EasyMock.createNiceMock(ServiceReference.class);
-        EasyMock.replay(filterReference);
-        ServiceReference[] serviceReferences = new ServiceReference[] {
-            filterReference
-        };
-
-        // Mock up the bundle context
-        BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
-        EasyMock.expect(bundleContext.getServiceReferences((String)EasyMock.anyObject(), (String)EasyMock.anyObject()))
-            .andReturn(serviceReferences);
-        EasyMock.expect(bundleContext.getService((ServiceReference)EasyMock.anyObject())).andReturn(doNothingFilter);
-        EasyMock.replay(bundleContext);
-
         // Set up the secure http context
-        httpContext = new SecurityDelegatingHttpContext(bundleContext, defaultHttpContext);
+        httpContext = createHttpContext(doNothingFilter);
 
         // Ensure that the httpContext returns true, since the filter has not committed the response
         HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
@@ -199,17 +146,64 @@ public class SecurityDelegatingHttpContextTest extends TestCase {
         Assert.assertFalse(accessDeniedFilter.called);
     }
 
-    public void testDelegation() throws Exception {
-        BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
-        EasyMock.replay(bundleContext);
+    public void testFiltersOrderedByRanking() throws Exception {
+        BundleContext bundleContext = createBundleContext();
+        ServiceReference lowRef = EasyMock.createNiceMock(ServiceReference.class);
+        ServiceReference highRef = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.expect(lowRef.compareTo(highRef)).andReturn(-1).anyTimes();
+        EasyMock.expect(highRef.compareTo(lowRef)).andReturn(1).anyTimes();
+        EasyMock.expect(bundleContext.getService(lowRef)).andReturn(doNothingFilter);
+        EasyMock.expect(bundleContext.getService(highRef)).andReturn(commitFilter);
+        EasyMock.replay(bundleContext, lowRef, highRef);
+
+        SecurityFilterTracker tracker = new SecurityFilterTracker(bundleContext);
+        tracker.addingService(lowRef);
+        tracker.addingService(highRef);
+        Assert.assertArrayEquals(new Filter[] {commitFilter, doNothingFilter}, tracker.getFilters());
+
+        // the published array is replaced when a filter goes away
+        tracker.removedService(highRef, commitFilter);
+        Assert.assertArrayEquals(new Filter[] {doNothingFilter}, tracker.getFilters());
+        tracker.removedService(lowRef, doNothingFilter);
+        Assert.assertEquals(0, tracker.getFilters().length);
+    }
 
+    public void testDelegation() throws Exception {
         // Set up the secure http context
-        httpContext = new SecurityDelegatingHttpContext(bundleContext, defaultHttpContext);
+        httpContext = createHttpContext();
 
         // Ensure that it delegates non-security calls to the wrapped implementation (in this case, the mock)
         Assert.assertEquals(mimeType, httpContext.getMimeType(""));
         Assert.assertEquals(url, httpContext.getResource(""));
     }
+
+    private BundleContext createBundleContext() throws Exception {
+        org.osgi.framework.Filter trackerFilter = EasyMock.createNiceMock(org.osgi.framework.Filter.class);
+        EasyMock.replay(trackerFilter);
+        BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(bundleContext.createFilter(SecurityFilterTracker.FILTER_SERVICES)).andReturn(trackerFilter);
+        return bundleContext;
+    }
+
+    /**
+     * Creates a secure http context whose tracker holds the given filters, in the given order.
+     */
+    private SecurityDelegatingHttpContext createHttpContext(Filter... filters) throws Exception {
+        BundleContext bundleContext = createBundleContext();
+        ServiceReference[] refs = new ServiceReference[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            refs[i] = EasyMock.createNiceMock(ServiceReference.class);
+            EasyMock.replay(refs[i]);
+            EasyMock.expect(bundleContext.getService(refs[i])).andReturn(filters[i]);
+        }
+        EasyMock.replay(bundleContext);
+
+        SecurityFilterTracker tracker = new SecurityFilterTracker(bundleContext);
+        for (ServiceReference ref : refs) {
+            tracker.addingService(ref);
+        }
+        return new SecurityDelegatingHttpContext(bundleContext, defaultHttpContext, tracker);
+    }
 }
 
 class CommitResponseFilter implements Filter {
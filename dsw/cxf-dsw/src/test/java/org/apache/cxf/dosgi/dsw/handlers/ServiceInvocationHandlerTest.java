@@ -28,6 +28,10 @@ import java.util.Map;
 
 import junit.framework.TestCase;
 
+import org.apache.cxf.dosgi.dsw.cache.ResponseCache;
+import org.apache.cxf.dosgi.dsw.metrics.EndpointMetrics;
+import org.osgi.framework.ServiceException;
+
 public class ServiceInvocationHandlerTest extends TestCase {
 
     private static final Map<String, Method> OBJECT_METHODS = new HashMap<String, Method>(); {
@@ -42,6 +46,44 @@ public class ServiceInvocationHandlerTest extends TestCase {
         assertEquals(5, sih.invoke(null, m, new Object[] {}));
     }
 
+    public void testInvokeUsesResponseCache() throws Throwable {
+        EndpointMetrics metrics = new EndpointMetrics();
+        ResponseCache cache = new ResponseCache(Arrays.asList("charAt"), 60000, 10);
+        ServiceInvocationHandler sih = new ServiceInvocationHandler("hello", String.class, metrics, cache);
+        Method charAt = String.class.getMethod("charAt", new Class[] {int.class});
+        Method length = String.class.getMethod("length", new Class[] {});
+        assertEquals('e', sih.invoke(null, charAt, new Object[] {1}));
+        assertEquals('e', sih.invoke(null, charAt, new Object[] {1}));
+        assertEquals(5, sih.invoke(null, length, new Object[] {}));
+        assertEquals(5, sih.invoke(null, length, new Object[] {}));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        // cache hits are not remote calls
+        assertEquals(1, metrics.getOperation("charAt").getRequestCount());
+        assertEquals(2, metrics.getOperation("length").getRequestCount());
+    }
+
+    public void testInvokeRecordsMetrics() throws Throwable {
+        EndpointMetrics metrics = new EndpointMetrics();
+        ServiceInvocationHandler sih = new ServiceInvocationHandler("hello", String.class, metrics);
+        Method length = String.class.getMethod("length", new Class[] {});
+        Method charAt = String.class.getMethod("charAt", new Class[] {int.class});
+        sih.invoke(null, length, new Object[] {});
+        try {
+            sih.invoke(null, charAt, new Object[] {10});
+            fail("Expected an exception");
+        } catch (ServiceException e) {
+            assertEquals(ServiceException.REMOTE, e.getType());
+        }
+
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(1, metrics.getOperation("length").getRequestCount());
+        assertEquals(0, metrics.getOperation("length").getErrorCount());
+        assertEquals(1, metrics.getOperation("charAt").getErrorCount());
+        assertEquals(0, metrics.getOperation("charAt").getTimeoutCount());
+    }
+
     public void testInvokeObjectMethod() throws Throwable {
         final List<String> called = new ArrayList<String>();
         ServiceInvocationHandler sih = new ServiceInvocationHandler("hi", String.class) {
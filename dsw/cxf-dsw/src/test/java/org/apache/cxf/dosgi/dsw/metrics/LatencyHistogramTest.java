@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        Assert.assertEquals(0, LatencyHistogram.getBucket(0));
+        Assert.assertEquals(1, LatencyHistogram.getBucket(1));
+        Assert.assertEquals(2, LatencyHistogram.getBucket(3));
+        Assert.assertEquals(11, LatencyHistogram.getBucket(1500));
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testRecord() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getPercentileMicros(0.5));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100000); // 100us
+        }
+        histogram.record(50000000); // 50ms
+
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(50000, histogram.getMaxMicros());
+        Assert.assertEquals((99 * 100 + 50000) / 100, histogram.getMeanMicros());
+        Assert.assertEquals(128, histogram.getPercentileMicros(0.5));
+        Assert.assertEquals(128, histogram.getPercentileMicros(0.99));
+        Assert.assertEquals(50000, histogram.getPercentileMicros(1.0));
+        Assert.assertEquals(99, histogram.getBucketCounts()[LatencyHistogram.getBucket(100)]);
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.bus.managers.PhaseManagerImpl;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.apache.cxf.service.model.BindingInfo;
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.apache.cxf.service.model.InterfaceInfo;
+import org.apache.cxf.service.model.OperationInfo;
+import org.apache.cxf.service.model.ServiceInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ServerMetricsFeatureTest {
+
+    @Test
+    public void testRequestResponse() throws Exception {
+        EndpointMetrics metrics = new EndpointMetrics();
+        Exchange exchange = new ExchangeImpl();
+
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        in.setContent(InputStream.class, new ByteArrayInputStream(new byte[10]));
+        new ServerMetricsFeature.ReceiveInterceptor(metrics).handleMessage(in);
+        Assert.assertEquals(1, metrics.getInFlight());
+        in.getContent(InputStream.class).read(new byte[20]);
+        exchange.put(BindingOperationInfo.class, createOperation("echo"));
+
+        Message out = createMessage(exchange);
+        exchange.setOutMessage(out);
+        out.setContent(OutputStream.class, new ByteArrayOutputStream());
+        new ServerMetricsFeature.SendInterceptor(metrics).handleMessage(out);
+        out.getContent(OutputStream.class).write(new byte[5]);
+        new ServerMetricsFeature.SendEndingInterceptor(metrics).handleMessage(out);
+        // a request is only completed once
+        new ServerMetricsFeature.SendEndingInterceptor(metrics).handleMessage(out);
+
+        Assert.assertEquals(0, metrics.getInFlight());
+        OperationMetrics echo = metrics.getOperation("echo");
+        Assert.assertEquals(1, echo.getRequestCount());
+        Assert.assertEquals(0, echo.getErrorCount());
+        Assert.assertEquals(10, echo.getBytesReceived());
+        Assert.assertEquals(5, echo.getBytesSent());
+        Assert.assertEquals(1, echo.getLatency().getCount());
+    }
+
+    @Test
+    public void testFault() throws Exception {
+        EndpointMetrics metrics = new EndpointMetrics();
+        Exchange exchange = new ExchangeImpl();
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        new ServerMetricsFeature.ReceiveInterceptor(metrics).handleMessage(in);
+
+        Message fault = createMessage(exchange);
+        exchange.setOutFaultMessage(fault);
+        new ServerMetricsFeature.SendInterceptor(metrics).handleMessage(fault);
+        new ServerMetricsFeature.SendEndingInterceptor(metrics).handleMessage(fault);
+
+        OperationMetrics unknown = metrics.getOperation(EndpointMetrics.UNKNOWN_OPERATION);
+        Assert.assertEquals(1, unknown.getRequestCount());
+        Assert.assertEquals(1, unknown.getErrorCount());
+        Assert.assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void testOneWay() throws Exception {
+        EndpointMetrics metrics = new EndpointMetrics();
+        Exchange exchange = new ExchangeImpl();
+        exchange.setOneWay(true);
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        new ServerMetricsFeature.ReceiveInterceptor(metrics).handleMessage(in);
+        exchange.put(BindingOperationInfo.class, createOperation("notify"));
+        new ServerMetricsFeature.CompletionInterceptor(metrics).handleMessage(in);
+
+        Assert.assertEquals(1, metrics.getOperation("notify").getRequestCount());
+        Assert.assertEquals(0, metrics.getOperation("notify").getErrorCount());
+        Assert.assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void testServerErrorResponse() throws Exception {
+        EndpointMetrics metrics = new EndpointMetrics();
+        Exchange exchange = new ExchangeImpl();
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        new ServerMetricsFeature.ReceiveInterceptor(metrics).handleMessage(in);
+
+        // e.g. an exception mapped to a response by a JAX-RS exception mapper
+        Message out = createMessage(exchange);
+        exchange.setOutMessage(out);
+        out.put(Message.RESPONSE_CODE, 503);
+        new ServerMetricsFeature.SendInterceptor(metrics).handleMessage(out);
+        new ServerMetricsFeature.SendEndingInterceptor(metrics).handleMessage(out);
+
+        Assert.assertEquals(1, metrics.getOperation(EndpointMetrics.UNKNOWN_OPERATION).getErrorCount());
+        Assert.assertEquals(0, metrics.getInFlight());
+    }
+
+    @Test
+    public void testRequestWithoutResponse() throws Exception {
+        EndpointMetrics metrics = new EndpointMetrics();
+        Exchange exchange = new ExchangeImpl();
+        Message in = createMessage(exchange);
+        exchange.setInMessage(in);
+        new ServerMetricsFeature.ReceiveInterceptor(metrics).handleMessage(in);
+        new ServerMetricsFeature.CompletionInterceptor(metrics).handleMessage(in);
+        Assert.assertEquals(1, metrics.getOperation(EndpointMetrics.UNKNOWN_OPERATION).getErrorCount());
+        Assert.assertEquals(0, metrics.getInFlight());
+
+        // failed processing
+        Exchange failed = new ExchangeImpl();
+        in = createMessage(failed);
+        failed.setInMessage(in);
+        new ServerMetricsFeature.ReceiveInterceptor(metrics).handleMessage(in);
+        new ServerMetricsFeature.ReceiveInterceptor(metrics).handleFault(in);
+        Assert.assertEquals(2, metrics.getOperation(EndpointMetrics.UNKNOWN_OPERATION).getErrorCount());
+        Assert.assertEquals(0, metrics.getInFlight());
+    }
+
+    private static Message createMessage(Exchange exchange) {
+        Message message = new MessageImpl();
+        message.setExchange(exchange);
+        message.setInterceptorChain(new PhaseInterceptorChain(new PhaseManagerImpl().getOutPhases()));
+        return message;
+    }
+
+    private static BindingOperationInfo createOperation(String name) {
+        ServiceInfo service = new ServiceInfo();
+        InterfaceInfo iface = new InterfaceInfo(service, new QName("urn:test", "Test"));
+        OperationInfo op = iface.addOperation(new QName("urn:test", name));
+        return new BindingInfo(service, "binding").buildOperation(op.getName(), null, null);
+    }
+}
@@ -50,7 +50,7 @@ public class IntentManagerImplTest extends Assert {
         AbstractEndpointFactory factory = control.createMock(AbstractEndpointFactory.class);
         control.replay();
 
-        IntentManager intentManager = new IntentManagerImpl(intentMap, 10000);
+        IntentManager intentManager = new IntentManagerImpl(intentMap);
 
         Map<String, Object> props = new HashMap<String, Object>();
         props.put("osgi.remote.requires.intents", "A");
@@ -106,6 +106,59 @@ public class IntentManagerImplTest extends Assert {
         }
     }
 
+    @Test
+    public void testResolutionIsCachedUntilIntentMapChanges() {
+        Map<String, Object> intents = new HashMap<String, Object>();
+        intents.put("A", new TestFeature("A"));
+        intents.put("SOAP", new TestFeature("SOAP"));
+        final IntentMap intentMap = new IntentMap(intents);
+
+        IMocksControl control = EasyMock.createNiceControl();
+        AbstractEndpointFactory factory = control.createMock(AbstractEndpointFactory.class);
+        control.replay();
+
+        IntentManager intentManager = new IntentManagerImpl(intentMap);
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("osgi.remote.requires.intents", "A B");
+        try {
+            intentManager.applyIntents(new ArrayList<Feature>(), factory, props);
+            Assert.fail("B is not supported yet");
+        } catch (IntentUnsatisfiedException iue) {
+            assertEquals("B", iue.getIntent());
+        }
+
+        TestFeature b = new TestFeature("B");
+        intentMap.put("B", b);
+        List<Feature> features = new ArrayList<Feature>();
+        intentManager.applyIntents(features, factory, props);
+        assertEquals(3, features.size());
+        assertTrue(features.contains(b));
+
+        // a cached resolution still adds its features to every caller
+        List<Feature> features2 = new ArrayList<Feature>();
+        intentManager.applyIntents(features2, factory, props);
+        assertEquals(features, features2);
+    }
+
+    @Test
+    public void testAssertAllIntentsSupportedDoesNotWait() {
+        IntentMap intentMap = new IntentMap(new DefaultIntentMapFactory().create());
+        IntentManager intentManager = new IntentManagerImpl(intentMap);
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("osgi.remote.requires.intents", "custom");
+
+        long start = System.currentTimeMillis();
+        try {
+            intentManager.assertAllIntentsSupported(props);
+            Assert.fail("the custom intent is not supported yet");
+        } catch (RuntimeException e) {
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        }
+
+        intentMap.put("custom", new TestFeature("custom"));
+        intentManager.assertAllIntentsSupported(props);
+    }
+
     @Test
     public void testInferIntents() {
         Map<String, Object> intents = new HashMap<String, Object>();
@@ -18,7 +18,10 @@
  */
 package org.apache.cxf.dosgi.dsw.qos;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
 import junit.framework.Assert;
@@ -39,4 +42,62 @@ public class IntentMapTest {
         Assert.assertEquals("overridden", curValue);
         Assert.assertEquals("defaultValue", intentMap.get("key1"));
     }
+
+    @Test
+    public void testNamesByIntent() {
+        IntentMap intentMap = new IntentMap(new HashMap<String, Object>());
+        long version = intentMap.getVersion();
+        intentMap.put("SOAP", "soap11");
+        intentMap.put("SOAP.1_1", "soap11");
+        intentMap.put("HTTP", "PROVIDED");
+        Assert.assertTrue(intentMap.getVersion() != version);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("SOAP", "SOAP.1_1")),
+                            intentMap.getNames("soap11"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("SOAP", "SOAP.1_1", "HTTP")),
+                            intentMap.getNames(Arrays.asList("soap11", "PROVIDED")));
+
+        intentMap.put("SOAP", "soap12");
+        intentMap.remove("HTTP");
+        Assert.assertEquals(Collections.singleton("SOAP.1_1"), intentMap.getNames("soap11"));
+        Assert.assertEquals(Collections.singleton("SOAP"), intentMap.getNames("soap12"));
+        Assert.assertTrue(intentMap.getNames("PROVIDED").isEmpty());
+    }
+
+    @Test
+    public void testAllMutatorsMaintainIndex() {
+        Map<String, Object> defaultMap = new HashMap<String, Object>();
+        defaultMap.put("HTTP", "PROVIDED");
+        IntentMap intentMap = new IntentMap(defaultMap);
+        Assert.assertNull(intentMap.putIfAbsent("SOAP", "soap11"));
+        Assert.assertEquals("soap11", intentMap.putIfAbsent("SOAP", "soap12"));
+        Assert.assertEquals(Collections.singleton("SOAP"), intentMap.getNames("soap11"));
+
+        long version = intentMap.getVersion();
+        Assert.assertEquals("soap11", intentMap.replace("SOAP", "soap12"));
+        Assert.assertFalse(intentMap.replace("SOAP", "soap11", "soap13"));
+        Assert.assertTrue(intentMap.replace("SOAP", "soap12", "soap13"));
+        Assert.assertTrue(intentMap.getVersion() != version);
+        Assert.assertTrue(intentMap.getNames(Arrays.asList("soap11", "soap12")).isEmpty());
+        Assert.assertEquals(Collections.singleton("SOAP"), intentMap.getNames("soap13"));
+
+        try {
+            intentMap.keySet().remove("SOAP");
+            Assert.fail("The views must be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            intentMap.values().remove("soap13");
+            Assert.fail("The views must be read-only");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        Assert.assertFalse(intentMap.remove("SOAP", "soap11"));
+        intentMap.put("HTTP", "custom");
+        intentMap.clear();
+        Assert.assertEquals(Collections.singleton("HTTP"), intentMap.keySet());
+        Assert.assertEquals(Collections.singleton("HTTP"), intentMap.getNames("PROVIDED"));
+        Assert.assertTrue(intentMap.getNames(Arrays.asList("soap13", "custom")).isEmpty());
+    }
 }
@@ -18,6 +18,10 @@
  */
 package org.apache.cxf.dosgi.dsw.qos;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.apache.cxf.dosgi.dsw.Constants;
@@ -62,7 +66,12 @@ public class IntentTrackerTest {
 
         c.replay();
 
-        IntentTracker tracker = new IntentTracker(bc, intentMap);
+        final List<IntentMap> changes = new ArrayList<IntentMap>();
+        IntentTracker tracker = new IntentTracker(bc, intentMap, new IntentListener() {
+            public void intentsChanged(IntentMap map) {
+                changes.add(map);
+            }
+        });
         tracker.open();
 
         Assert.assertFalse("IntentMap should not contain " + MY_INTENT_NAME, intentMap.containsKey(MY_INTENT_NAME));
@@ -75,6 +84,7 @@ public class IntentTrackerTest {
         // our custom intent should now be available
         Assert.assertTrue("IntentMap should contain " + MY_INTENT_NAME, intentMap.containsKey(MY_INTENT_NAME));
         Assert.assertEquals(testIntent, intentMap.get(MY_INTENT_NAME));
+        Assert.assertEquals(Arrays.asList(intentMap), changes);
 
         c.verify();
     }
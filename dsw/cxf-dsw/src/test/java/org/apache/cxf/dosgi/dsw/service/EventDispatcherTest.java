@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.remoteserviceadmin.RemoteServiceAdminEvent;
+import org.osgi.service.remoteserviceadmin.RemoteServiceAdminListener;
+
+public class EventDispatcherTest {
+
+    @Test
+    public void testOrderedDeliveryIsolatedFromSlowListener() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> slowReceived = Collections.synchronizedList(new ArrayList<Integer>());
+        final Semaphore slowDelivered = new Semaphore(0);
+        RemoteServiceAdminListener slow = new RemoteServiceAdminListener() {
+            public void remoteAdminEvent(RemoteServiceAdminEvent event) {
+                slowReceived.add(event.getType());
+                slowDelivered.release();
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        final Semaphore delivered = new Semaphore(0);
+        RemoteServiceAdminListener fast = new RemoteServiceAdminListener() {
+            public void remoteAdminEvent(RemoteServiceAdminEvent event) {
+                received.add(event.getType());
+                delivered.release();
+            }
+        };
+
+        EventDispatcher dispatcher = new EventDispatcher(createContext(slow, fast), 10);
+        dispatcher.open();
+        try {
+            for (int i = 0; i < 50; i++) {
+                dispatcher.dispatch(createEvent(i));
+                // keep pace with the fast listener so that only the slow one queues up
+                Assert.assertTrue(delivered.tryAcquire(5, TimeUnit.SECONDS));
+                if (i == 0) {
+                    Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+                }
+            }
+            for (int i = 0; i < 50; i++) {
+                Assert.assertEquals(i, received.get(i).intValue());
+            }
+            // the slow listener holds the first event and queues the rest past the high-water mark
+            Assert.assertEquals(49, dispatcher.getQueued());
+            Assert.assertEquals(49, dispatcher.getMaxDepth());
+
+            // nothing is lost once the slow listener catches up
+            release.countDown();
+            Assert.assertTrue(slowDelivered.tryAcquire(50, 5, TimeUnit.SECONDS));
+            for (int i = 0; i < 50; i++) {
+                Assert.assertEquals(i, slowReceived.get(i).intValue());
+            }
+            Assert.assertEquals(0, dispatcher.getQueued());
+        } finally {
+            release.countDown();
+            dispatcher.close();
+        }
+    }
+
+    private static RemoteServiceAdminEvent createEvent(int type) {
+        return new RemoteServiceAdminEvent(type, EasyMock.createNiceMock(Bundle.class),
+                                           (org.osgi.service.remoteserviceadmin.ExportReference)null, null);
+    }
+
+    private static BundleContext createContext(RemoteServiceAdminListener... listeners) throws Exception {
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        ServiceReference[] refs = new ServiceReference[listeners.length];
+        for (int i = 0; i < listeners.length; i++) {
+            refs[i] = EasyMock.createNiceMock(ServiceReference.class);
+            EasyMock.replay(refs[i]);
+            EasyMock.expect(bc.getService(refs[i])).andReturn(listeners[i]).anyTimes();
+        }
+        EasyMock.expect(bc.getServiceReferences(RemoteServiceAdminListener.class.getName(), null))
+            .andReturn(refs).anyTimes();
+        EasyMock.replay(bc);
+        return bc;
+    }
+}
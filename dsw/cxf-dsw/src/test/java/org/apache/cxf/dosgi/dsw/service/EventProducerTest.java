@@ -35,6 +35,8 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.framework.Version;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
 import org.osgi.service.remoteserviceadmin.ExportReference;
 import org.osgi.service.remoteserviceadmin.ExportRegistration;
@@ -111,11 +113,13 @@ public class EventProducerTest {
         EasyMock.expect(bc.getAllServiceReferences(EventAdmin.class.getName(), null))
             .andReturn(new ServiceReference[] {eaSref}).anyTimes();
         EasyMock.expect(bc.getService(eaSref)).andReturn(ea).anyTimes();
+        expectEventHandler(bc, "org/osgi/service/remoteserviceadmin/*");
         EasyMock.replay(bc);
         EventProducer eventProducer = new EventProducer(bc);
 
         ExportRegistrationImpl ereg = new ExportRegistrationImpl(sref, endpoint, remoteServiceAdminCore, (Server)null);
         eventProducer.publishNotification(ereg);
+        EasyMock.verify(ea);
     }
 
     @Test
@@ -175,10 +179,59 @@ public class EventProducerTest {
         EasyMock.expect(bc.getAllServiceReferences(EventAdmin.class.getName(), null))
             .andReturn(new ServiceReference[] {eaSref}).anyTimes();
         EasyMock.expect(bc.getService(eaSref)).andReturn(ea).anyTimes();
+        expectEventHandler(bc, "org/osgi/service/remoteserviceadmin/*");
         EasyMock.replay(bc);
         EventProducer eventProducer = new EventProducer(bc);
 
         ExportRegistrationImpl ereg = new ExportRegistrationImpl(sref, endpoint, rsaCore, exportException);
         eventProducer.publishNotification(Arrays.<ExportRegistration>asList(ereg));
+        EasyMock.verify(ea);
+    }
+
+    @Test
+    public void testNoEventWithoutHandler() throws Exception {
+        RemoteServiceAdminCore rsaCore = EasyMock.createNiceMock(RemoteServiceAdminCore.class);
+        EasyMock.replay(rsaCore);
+        EndpointDescription endpoint = EasyMock.createNiceMock(EndpointDescription.class);
+        EasyMock.replay(endpoint);
+        ServiceReference sref = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.replay(sref);
+        // the bundle headers must not be read and no event must be posted
+        Bundle bundle = EasyMock.createMock(Bundle.class);
+        EasyMock.replay(bundle);
+        EventAdmin ea = EasyMock.createMock(EventAdmin.class);
+        EasyMock.replay(ea);
+
+        ServiceReference eaSref = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.replay(eaSref);
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(bc.getBundle()).andReturn(bundle).anyTimes();
+        EasyMock.expect(bc.getAllServiceReferences(EventAdmin.class.getName(), null))
+            .andReturn(new ServiceReference[] {eaSref}).anyTimes();
+        EasyMock.expect(bc.getService(eaSref)).andReturn(ea).anyTimes();
+        expectEventHandler(bc, "org/osgi/service/remoteserviceadmin/IMPORT_*", "org/osgi/framework/*");
+        EasyMock.replay(bc);
+
+        EventProducer eventProducer = new EventProducer(bc);
+        eventProducer.publishNotification(new ExportRegistrationImpl(sref, endpoint, rsaCore, (Server)null));
+        EasyMock.verify(ea);
+    }
+
+    @Test
+    public void testTopicMatches() {
+        String topic = "org/osgi/service/remoteserviceadmin/EXPORT_REGISTRATION";
+        Assert.assertTrue(EventAdminHelper.matches("*", topic));
+        Assert.assertTrue(EventAdminHelper.matches("org/osgi/service/*", topic));
+        Assert.assertTrue(EventAdminHelper.matches(topic, topic));
+        Assert.assertFalse(EventAdminHelper.matches("org/osgi/service/remoteserviceadmin/IMPORT_*", topic));
+        Assert.assertFalse(EventAdminHelper.matches("org/osgi/framework/*", topic));
+    }
+
+    private static void expectEventHandler(BundleContext bc, String... topics) throws Exception {
+        ServiceReference handlerSref = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.expect(handlerSref.getProperty(EventConstants.EVENT_TOPIC)).andReturn(topics).anyTimes();
+        EasyMock.replay(handlerSref);
+        EasyMock.expect(bc.getAllServiceReferences(EventHandler.class.getName(), null))
+            .andReturn(new ServiceReference[] {handlerSref}).anyTimes();
     }
 }
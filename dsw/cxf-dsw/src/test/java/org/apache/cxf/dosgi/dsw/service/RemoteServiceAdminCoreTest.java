@@ -47,10 +47,13 @@ import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.event.EventAdmin;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
 import org.osgi.service.remoteserviceadmin.ExportRegistration;
 import org.osgi.service.remoteserviceadmin.ImportRegistration;
 import org.osgi.service.remoteserviceadmin.RemoteConstants;
+import org.osgi.service.remoteserviceadmin.RemoteServiceAdminListener;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -120,7 +123,7 @@ public class RemoteServiceAdminCoreTest {
         p.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "unsupportedConfiguration");
         EndpointDescription endpoint = new EndpointDescription(p);
         IntentMap intentMap = new IntentMap(new DefaultIntentMapFactory().create());
-        IntentManager intentManager = new IntentManagerImpl(intentMap, 10000);
+        IntentManager intentManager = new IntentManagerImpl(intentMap);
         HttpServiceManager httpServiceManager = c.createMock(HttpServiceManager.class);
         ConfigTypeHandlerFactory configTypeHandlerFactory
             = new ConfigTypeHandlerFactory(bc, intentManager, httpServiceManager);
@@ -200,6 +203,12 @@ public class RemoteServiceAdminCoreTest {
         EasyMock.expect(bc.getBundle()).andReturn(b).anyTimes();
         EasyMock.expect(bc.createFilter("(service.id=51)"))
             .andReturn(FrameworkUtil.createFilter("(service.id=51)")).anyTimes();
+        // trackers for RemoteServiceAdminListeners, EventAdmins and EventHandlers
+        for (Class<?> tracked : new Class[] {RemoteServiceAdminListener.class, EventAdmin.class, EventHandler.class}) {
+            String trackerFilter = "(objectClass=" + tracked.getName() + ")";
+            EasyMock.expect(bc.createFilter(trackerFilter))
+                .andReturn(FrameworkUtil.createFilter(trackerFilter)).anyTimes();
+        }
         EasyMock.replay(bc);
 
         Map<String, Object> eProps = new HashMap<String, Object>(sProps);
@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TraceContextTest {
+
+    private static final String HEADER = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+
+    @Test
+    public void testParse() {
+        TraceContext context = TraceContext.parse(HEADER);
+        Assert.assertEquals("0af7651916cd43dd8448eb211c80319c", context.getTraceId());
+        Assert.assertEquals("b7ad6b7169203331", context.getSpanId());
+        Assert.assertTrue(context.isSampled());
+        Assert.assertEquals(HEADER, context.toHeader());
+        Assert.assertFalse(TraceContext.parse(HEADER.replace("-01", "-00")).isSampled());
+    }
+
+    @Test
+    public void testParseInvalid() {
+        Assert.assertNull(TraceContext.parse(null));
+        Assert.assertNull(TraceContext.parse("00-abc-def-01"));
+        Assert.assertNull(TraceContext.parse(HEADER.replace('a', 'X')));
+        Assert.assertNull(TraceContext.parse("00-00000000000000000000000000000000-b7ad6b7169203331-01"));
+        Assert.assertNull(TraceContext.parse("ff" + HEADER.substring(2)));
+    }
+}
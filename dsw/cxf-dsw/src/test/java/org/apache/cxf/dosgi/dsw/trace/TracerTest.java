@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TracerTest {
+
+    @Test
+    public void testSampling() {
+        Assert.assertFalse(new Tracer(0.0, 1).sample());
+        Assert.assertTrue(new Tracer(1.0, 1).sample());
+
+        Tracer tracer = new Tracer(0.25, 1);
+        int sampled = 0;
+        for (int i = 0; i < 100; i++) {
+            if (tracer.sample()) {
+                sampled++;
+            }
+        }
+        Assert.assertEquals(25, sampled);
+    }
+
+    @Test
+    public void testIds() {
+        Tracer tracer = new Tracer(1.0, 1);
+        TraceContext context = new TraceContext(tracer.newTraceId(), tracer.newSpanId(), true);
+        Assert.assertNotNull(TraceContext.parse(context.toHeader()));
+    }
+
+    @Test
+    public void testSpanBuffer() {
+        SpanBuffer buffer = new SpanBuffer(2);
+        Span s1 = createSpan("s1");
+        Span s2 = createSpan("s2");
+        Span s3 = createSpan("s3");
+        buffer.add(s1);
+        buffer.add(s2);
+        buffer.add(s3);
+        List<Span> spans = buffer.getSpans();
+        Assert.assertEquals(2, spans.size());
+        Assert.assertSame(s2, spans.get(0));
+        Assert.assertSame(s3, spans.get(1));
+        Assert.assertEquals(3, buffer.getAddedCount());
+    }
+
+    private static Span createSpan(String name) {
+        return new Span(new ActiveSpan("t", name, null, Span.Kind.SERVER), name, null, 0, false);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.dsw.trace;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.cxf.bus.managers.PhaseManagerImpl;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.message.MessageImpl;
+import org.apache.cxf.phase.PhaseInterceptorChain;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TracingFeatureTest {
+
+    private static final String HEADER = "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+
+    @Test
+    public void testNestedCallContinuesTrace() {
+        Tracer tracer = new Tracer(0.0, 10);
+
+        // a sampled request arrives at the server
+        Exchange serverExchange = new ExchangeImpl();
+        Message request = createMessage(serverExchange, false);
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("TraceParent", Collections.singletonList(HEADER));
+        request.put(Message.PROTOCOL_HEADERS, headers);
+        new TracingFeature.ReceiveInterceptor(tracer).handleMessage(request);
+        new TracingFeature.PreInvokeInterceptor(tracer).handleMessage(request);
+
+        // the service calls another remote service
+        Exchange clientExchange = new ExchangeImpl();
+        Message call = createMessage(clientExchange, true);
+        new TracingFeature.SendInterceptor(tracer).handleMessage(call);
+        TraceContext sent = TraceContext.parse(TracingFeature.getHeader(call));
+        Assert.assertEquals("0af7651916cd43dd8448eb211c80319c", sent.getTraceId());
+        Assert.assertTrue(sent.isSampled());
+        Message response = createMessage(clientExchange, true);
+        clientExchange.setInMessage(response);
+        new TracingFeature.ReceiveInterceptor(tracer).handleMessage(response);
+
+        new TracingFeature.PostInvokeInterceptor(tracer).handleMessage(request);
+        Assert.assertNull(tracer.getCurrentContext());
+        Message reply = createMessage(serverExchange, false);
+        serverExchange.setOutMessage(reply);
+        new TracingFeature.SendEndingInterceptor(tracer).handleMessage(reply);
+
+        List<Span> spans = tracer.getSpanBuffer().getSpans();
+        Assert.assertEquals(2, spans.size());
+        Span client = spans.get(0);
+        Span server = spans.get(1);
+        Assert.assertEquals(Span.Kind.CLIENT, client.getKind());
+        Assert.assertEquals(Span.Kind.SERVER, server.getKind());
+        Assert.assertEquals("b7ad6b7169203331", server.getParentSpanId());
+        Assert.assertEquals(server.getSpanId(), client.getParentSpanId());
+        Assert.assertEquals(sent.getSpanId(), client.getSpanId());
+    }
+
+    @Test
+    public void testNestedServerInvocationRestoresContext() {
+        Tracer tracer = new Tracer(1.0, 10);
+        TraceContext outer = new TraceContext("0af7651916cd43dd8448eb211c80319c", "b7ad6b7169203331", true);
+        tracer.bindContext(outer);
+
+        // a request served within the outer invocation, e.g. through a local transport
+        Exchange exchange = new ExchangeImpl();
+        Message request = createMessage(exchange, false);
+        new TracingFeature.ReceiveInterceptor(tracer).handleMessage(request);
+        new TracingFeature.PreInvokeInterceptor(tracer).handleMessage(request);
+        Assert.assertNotSame(outer, tracer.getCurrentContext());
+        new TracingFeature.PostInvokeInterceptor(tracer).handleMessage(request);
+
+        Assert.assertSame(outer, tracer.getCurrentContext());
+        tracer.restoreContext(null);
+    }
+
+    @Test
+    public void testUnsampled() {
+        Tracer tracer = new Tracer(0.0, 10);
+        Message call = createMessage(new ExchangeImpl(), true);
+        new TracingFeature.SendInterceptor(tracer).handleMessage(call);
+        Assert.assertNull(TracingFeature.getHeader(call));
+        Assert.assertTrue(tracer.getSpanBuffer().getSpans().isEmpty());
+    }
+
+    private static Message createMessage(Exchange exchange, boolean requestor) {
+        Message message = new MessageImpl();
+        message.setExchange(exchange);
+        message.put(Message.REQUESTOR_ROLE, requestor);
+        message.setInterceptorChain(new PhaseInterceptorChain(new PhaseManagerImpl().getOutPhases()));
+        return message;
+    }
+}
@@ -18,38 +18,133 @@
  */
 package org.apache.cxf.dosgi.topologymanager;
 
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.apache.cxf.dosgi.topologymanager.exporter.ExportScheduler;
 import org.apache.cxf.dosgi.topologymanager.exporter.TopologyManagerExport;
+import org.apache.cxf.dosgi.topologymanager.importer.LatencyRanking;
+import org.apache.cxf.dosgi.topologymanager.importer.LoadBalancingPolicy;
+import org.apache.cxf.dosgi.topologymanager.importer.LocalityRanking;
 import org.apache.cxf.dosgi.topologymanager.importer.TopologyManagerImport;
+import org.apache.cxf.dosgi.topologymanager.importer.TrackedEndpointRanking;
+import org.apache.cxf.dosgi.topologymanager.ranking.EndpointRanking;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTracker;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.osgi.service.remoteserviceadmin.RemoteServiceAdmin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class Activator implements BundleActivator {
+public class Activator implements ManagedService, BundleActivator {
 
     private static final Logger LOG = LoggerFactory.getLogger(Activator.class);
+    private static final String CONFIG_SERVICE_PID = "cxf-topology-manager";
+    private static final String DEFAULT_ENDPOINT_RANKING = "locality";
 
     private TopologyManagerExport topologyManagerExport;
     private TopologyManagerImport topologyManagerImport;
     private SimpleServiceTracker<RemoteServiceAdmin> rsaTracker;
+    private final List<TrackedEndpointRanking> trackedRankings = new ArrayList<TrackedEndpointRanking>();
 
     public void start(BundleContext bc) throws Exception {
         LOG.debug("TopologyManager: start()");
         rsaTracker = new SimpleServiceTracker<RemoteServiceAdmin>(bc, RemoteServiceAdmin.class);
         topologyManagerExport = new TopologyManagerExport(bc, rsaTracker);
         topologyManagerImport = new TopologyManagerImport(bc, rsaTracker);
+        topologyManagerImport.setAggregationPolicy(getAggregationPolicy(bc));
+        configureEndpointSelection(bc, topologyManagerImport);
 
         rsaTracker.open();
         topologyManagerExport.start();
         topologyManagerImport.start();
+        registerManagedService(bc);
+    }
+
+    private void registerManagedService(BundleContext bc) {
+        Dictionary<String, String> props = new Hashtable<String, String>();
+        props.put(Constants.SERVICE_PID, CONFIG_SERVICE_PID);
+        // No need to store the registration. Will be unregistered in stop by framework
+        bc.registerService(ManagedService.class.getName(), this, props);
+    }
+
+    @SuppressWarnings("rawtypes")
+    public synchronized void updated(Dictionary config) throws ConfigurationException {
+        LOG.debug("TopologyManager configuration is updated with {}", config);
+        // config is null if it doesn't exist or is being deleted, in which case the defaults apply
+        Object threads = config == null ? null : config.get(TopologyManagerExport.EXPORT_THREADS);
+        try {
+            topologyManagerExport.setExportThreads(threads == null
+                ? ExportScheduler.DEFAULT_THREADS : Integer.parseInt(threads.toString().trim()));
+        } catch (NumberFormatException e) {
+            throw new ConfigurationException(TopologyManagerExport.EXPORT_THREADS, "not a number: " + threads);
+        }
+    }
+
+    private static LoadBalancingPolicy getAggregationPolicy(BundleContext bc) {
+        String policy = bc.getProperty(TopologyManagerImport.AGGREGATED_IMPORTS);
+        try {
+            return LoadBalancingPolicy.parse(policy);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unknown load balancing policy {}, aggregated imports are disabled", policy);
+            return null;
+        }
+    }
+
+    private void configureEndpointSelection(BundleContext bc, TopologyManagerImport tmi) {
+        String importAll = bc.getProperty(TopologyManagerImport.IMPORT_ALL_AVAILABLE);
+        if (importAll == null || Boolean.parseBoolean(importAll.trim())) {
+            return;
+        }
+        tmi.setImportAllAvailable(false);
+        long interval = TopologyManagerImport.DEFAULT_REEVALUATION_INTERVAL;
+        String intervalValue = bc.getProperty(TopologyManagerImport.REEVALUATION_INTERVAL);
+        if (intervalValue != null) {
+            try {
+                interval = Long.parseLong(intervalValue.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid import re-evaluation interval {}, using {}", intervalValue, interval);
+            }
+        }
+        tmi.setReevaluationInterval(interval);
+        String rankingNames = bc.getProperty(TopologyManagerImport.ENDPOINT_RANKING);
+        List<EndpointRanking> rankings = new ArrayList<EndpointRanking>();
+        for (String name : (rankingNames == null ? DEFAULT_ENDPOINT_RANKING : rankingNames).split(",")) {
+            name = name.trim();
+            if ("locality".equalsIgnoreCase(name)) {
+                rankings.add(LocalityRanking.create(bc));
+            } else if ("latency".equalsIgnoreCase(name)) {
+                // measurements are renewed at each re-evaluation
+                rankings.add(new LatencyRanking(Math.max(interval, 1) * 1000 / 2));
+            } else if (name.length() > 0) {
+                // provided by other bundles as a service of that name
+                try {
+                    TrackedEndpointRanking ranking = new TrackedEndpointRanking(bc, name);
+                    ranking.open();
+                    trackedRankings.add(ranking);
+                    rankings.add(ranking);
+                } catch (InvalidSyntaxException e) {
+                    LOG.warn("Invalid endpoint ranking name {} is ignored", name);
+                }
+            }
+        }
+        tmi.setEndpointRankings(rankings);
     }
 
     public void stop(BundleContext bc) throws Exception {
         LOG.debug("TopologyManager: stop()");
         topologyManagerExport.stop();
         topologyManagerImport.stop();
+        for (TrackedEndpointRanking ranking : trackedRankings) {
+            ranking.close();
+        }
+        trackedRankings.clear();
         rsaTracker.close();
     }
 }
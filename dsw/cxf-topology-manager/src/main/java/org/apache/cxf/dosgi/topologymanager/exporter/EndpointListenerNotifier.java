@@ -20,9 +20,13 @@ package org.apache.cxf.dosgi.topologymanager.exporter;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.apache.cxf.dosgi.discovery.local.util.ScopeIndex;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTracker;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTrackerListener;
 import org.apache.cxf.dosgi.topologymanager.util.Utils;
@@ -38,6 +42,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Tracks EndpointListeners and allows to notify them of endpoints.
+ * <p>
+ * The scopes of all tracked listeners are kept in a {@link ScopeIndex}, which is compiled once
+ * when a listener is added or modified, so that each endpoint is only matched against the scopes
+ * which may match it, once for all listeners sharing a scope.
  */
 public class EndpointListenerNotifier {
 
@@ -47,6 +55,11 @@ public class EndpointListenerNotifier {
     private static final Logger LOG = LoggerFactory.getLogger(EndpointListenerNotifier.class);
     private BundleContext bctx;
     private SimpleServiceTracker<EndpointListener> endpointListenerTracker;
+    // the tracked listeners by their references, guarded by scopeIndex
+    private final Map<ServiceReference, TrackedListener> listeners = new HashMap<ServiceReference, TrackedListener>();
+    // the tracked listeners by scope, guarded by scopeIndex
+    private final Map<String, List<TrackedListener>> listenersByScope = new HashMap<String, List<TrackedListener>>();
+    private final ScopeIndex scopeIndex = new ScopeIndex();
 
     public EndpointListenerNotifier(BundleContext bctx, final EndpointRepository endpointRepository) {
         this.bctx = bctx;
@@ -61,17 +74,20 @@ public class EndpointListenerNotifier {
             @Override
             public void added(ServiceReference<EndpointListener> reference, EndpointListener service) {
                 LOG.debug("new EndpointListener detected");
+                track(reference, service);
                 notifyListener(true, reference, endpointRepository.getAllEndpoints());
             }
 
             @Override
             public void modified(ServiceReference<EndpointListener> reference, EndpointListener service) {
                 LOG.debug("EndpointListener modified");
+                track(reference, service);
                 notifyListener(true, reference, endpointRepository.getAllEndpoints());
             }
 
             @Override
             public void removed(ServiceReference<EndpointListener> reference, EndpointListener service) {
+                untrack(reference);
             }
         });
     }
@@ -82,6 +98,49 @@ public class EndpointListenerNotifier {
 
     public void stop() {
         endpointListenerTracker.close();
+        synchronized (scopeIndex) {
+            for (ServiceReference reference : new ArrayList<ServiceReference>(listeners.keySet())) {
+                untrack(reference);
+            }
+        }
+    }
+
+    private void track(ServiceReference reference, EndpointListener service) {
+        // the scopes are normalized by the compiled filters
+        List<String> scopes = new ArrayList<String>();
+        for (Filter filter : getFiltersFromEndpointListenerScope(reference, bctx)) {
+            scopes.add(filter.toString());
+        }
+        TrackedListener listener = new TrackedListener(service, scopes);
+        synchronized (scopeIndex) {
+            untrack(reference);
+            listeners.put(reference, listener);
+            for (String scope : scopes) {
+                List<TrackedListener> scopeListeners = listenersByScope.get(scope);
+                if (scopeListeners == null) {
+                    scopeListeners = new ArrayList<TrackedListener>(1);
+                    listenersByScope.put(scope, scopeListeners);
+                    scopeIndex.add(scope);
+                }
+                scopeListeners.add(listener);
+            }
+        }
+    }
+
+    private void untrack(ServiceReference reference) {
+        synchronized (scopeIndex) {
+            TrackedListener listener = listeners.remove(reference);
+            if (listener == null) {
+                return;
+            }
+            for (String scope : listener.scopes) {
+                List<TrackedListener> scopeListeners = listenersByScope.get(scope);
+                if (scopeListeners != null && scopeListeners.remove(listener) && scopeListeners.isEmpty()) {
+                    listenersByScope.remove(scope);
+                    scopeIndex.remove(scope);
+                }
+            }
+        }
     }
 
     /**
@@ -94,8 +153,22 @@ public class EndpointListenerNotifier {
         if (endpoints.isEmpty()) { // a little optimization to prevent unnecessary processing
             return;
         }
-        for (ServiceReference eplReference : endpointListenerTracker.getAllServiceReferences()) {
-            notifyListener(added, eplReference, endpoints);
+        for (EndpointDescription endpoint : endpoints) {
+            List<String> scopes = scopeIndex.getMatchingScopes(getProperties(endpoint));
+            for (String scope : scopes) {
+                List<TrackedListener> scopeListeners;
+                synchronized (scopeIndex) {
+                    scopeListeners = listenersByScope.get(scope);
+                    if (scopeListeners == null) {
+                        continue;
+                    }
+                    scopeListeners = new ArrayList<TrackedListener>(scopeListeners);
+                }
+                LOG.debug("Scope {} matches endpoint {}", scope, endpoint);
+                for (TrackedListener listener : scopeListeners) {
+                    notifyListener(added, listener.listener, endpoint, scope);
+                }
+            }
         }
     }
 
@@ -108,18 +181,29 @@ public class EndpointListenerNotifier {
      */
     void notifyListener(boolean added, ServiceReference endpointListenerRef,
                                 Collection<EndpointDescription> endpoints) {
+        TrackedListener listener;
+        synchronized (scopeIndex) {
+            listener = listeners.get(endpointListenerRef);
+        }
+        if (listener != null) {
+            LOG.debug("notifyListener (added={})", added);
+            for (EndpointDescription endpoint : endpoints) {
+                for (String scope : scopeIndex.getMatchingScopes(getProperties(endpoint))) {
+                    if (listener.scopes.contains(scope)) {
+                        notifyListener(added, listener.listener, endpoint, scope);
+                    }
+                }
+            }
+            return;
+        }
+        // not tracked (yet), so the service and its scope are looked up for this notification only
         List<Filter> filters = getFiltersFromEndpointListenerScope(endpointListenerRef, bctx);
         EndpointListener endpointListener = (EndpointListener)bctx.getService(endpointListenerRef);
         try {
             LOG.debug("notifyListener (added={})", added);
             for (EndpointDescription endpoint : endpoints) {
-                List<Filter> matchingFilters = getMatchingFilters(filters, endpoint);
-                for (Filter filter : matchingFilters) {
-                    if (added) {
-                        endpointListener.endpointAdded(endpoint, filter.toString());
-                    } else {
-                        endpointListener.endpointRemoved(endpoint, filter.toString());
-                    }
+                for (Filter filter : getMatchingFilters(filters, Utils.getEndpointProperties(endpoint))) {
+                    notifyListener(added, endpointListener, endpoint, filter.toString());
                 }
             }
         } finally {
@@ -129,6 +213,20 @@ public class EndpointListenerNotifier {
         }
     }
 
+    private static void notifyListener(boolean added, EndpointListener endpointListener,
+                                       EndpointDescription endpoint, String scope) {
+        if (added) {
+            endpointListener.endpointAdded(endpoint, scope);
+        } else {
+            endpointListener.endpointRemoved(endpoint, scope);
+        }
+    }
+
+    private static Map<String, Object> getProperties(EndpointDescription endpoint) {
+        Map<String, Object> props = endpoint == null ? null : endpoint.getProperties();
+        return props == null ? Collections.<String, Object>emptyMap() : props;
+    }
+
     static List<Filter> getFiltersFromEndpointListenerScope(ServiceReference sref, BundleContext bctx) {
         List<Filter> filters = new ArrayList<Filter>();
         String[] scopes = Utils.getStringPlusProperty(sref.getProperty(EndpointListener.ENDPOINT_LISTENER_SCOPE));
@@ -142,9 +240,8 @@ public class EndpointListenerNotifier {
         return filters;
     }
 
-    private static List<Filter> getMatchingFilters(List<Filter> filters, EndpointDescription endpoint) {
+    private static List<Filter> getMatchingFilters(List<Filter> filters, Dictionary<String, Object> dict) {
         List<Filter> matchingFilters = new ArrayList<Filter>();
-        Dictionary<String, Object> dict = Utils.getEndpointProperties(endpoint);
 
         for (Filter filter : filters) {
             if (filter.match(dict)) {
@@ -156,4 +253,18 @@ public class EndpointListenerNotifier {
         }
         return matchingFilters;
     }
+
+    /**
+     * A tracked EndpointListener with its normalized scopes.
+     */
+    private static final class TrackedListener {
+
+        final EndpointListener listener;
+        final List<String> scopes;
+
+        TrackedListener(EndpointListener listener, List<String> scopes) {
+            this.listener = listener;
+            this.scopes = scopes;
+        }
+    }
 }
@@ -20,6 +20,7 @@ package org.apache.cxf.dosgi.topologymanager.exporter;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -37,13 +38,18 @@ import org.slf4j.LoggerFactory;
  * Holds all endpoints that are exported by a TopologyManager. For each ServiceReference that is exported a
  * map is maintained which contains information on the endpoints for each RemoteAdminService that created the
  * endpoints.
+ * <p>
+ * The exports are published as immutable snapshots, which are replaced on every modification. Reads use
+ * the current snapshot without locking. Modifications are serialized and copy the map of exported services,
+ * so each one takes time linear in the number of exported services. This is cheap compared to the export
+ * itself, but exporting many services at once takes quadratic time in total.
  */
 class EndpointRepository {
 
     private static final Logger LOG = LoggerFactory.getLogger(EndpointRepository.class);
 
-    private final Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> exportedServices
-        = new LinkedHashMap<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>>();
+    private volatile Snapshot snapshot = new Snapshot(0,
+        Collections.<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>>emptyMap());
 
     /**
      * Remove all services exported by the given rsa.
@@ -53,32 +59,55 @@ class EndpointRepository {
      */
     synchronized List<EndpointDescription> removeRemoteServiceAdmin(RemoteServiceAdmin rsa) {
         List<EndpointDescription> removedEndpoints = new ArrayList<EndpointDescription>();
-        for (Map<RemoteServiceAdmin, Collection<EndpointDescription>> exports : exportedServices.values()) {
-            Collection<EndpointDescription> endpoints = exports.get(rsa);
+        Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> exportedServices = null;
+        for (Map.Entry<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> entry
+                : snapshot.exportedServices.entrySet()) {
+            Collection<EndpointDescription> endpoints = entry.getValue().get(rsa);
             if (endpoints != null) {
                 removedEndpoints.addAll(endpoints);
+                if (exportedServices == null) {
+                    exportedServices = copy(snapshot.exportedServices);
+                }
+                Map<RemoteServiceAdmin, Collection<EndpointDescription>> exports = copy(entry.getValue());
                 exports.remove(rsa);
+                exportedServices.put(entry.getKey(), Collections.unmodifiableMap(exports));
             }
         }
+        if (exportedServices != null) {
+            publish(exportedServices);
+        }
         return removedEndpoints;
     }
 
-    synchronized List<EndpointDescription> removeService(ServiceReference sref) {
-        List<EndpointDescription> removedEndpoints = new ArrayList<EndpointDescription>();
-        Map<RemoteServiceAdmin, Collection<EndpointDescription>> rsas = exportedServices.get(sref);
-        if (rsas != null) {
+    List<EndpointDescription> removeService(ServiceReference sref) {
+        // most services are never exported, so their unregistration is checked without locking
+        if (!snapshot.exportedServices.containsKey(sref)) {
+            return Collections.emptyList();
+        }
+        synchronized (this) {
+            Map<RemoteServiceAdmin, Collection<EndpointDescription>> rsas = snapshot.exportedServices.get(sref);
+            if (rsas == null) {
+                return Collections.emptyList();
+            }
+            List<EndpointDescription> removedEndpoints = new ArrayList<EndpointDescription>();
             for (Collection<EndpointDescription> endpoints : rsas.values()) {
                 removedEndpoints.addAll(endpoints);
             }
+            Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> exportedServices
+                = copy(snapshot.exportedServices);
             exportedServices.remove(sref);
+            publish(exportedServices);
+            return removedEndpoints;
         }
-        return removedEndpoints;
     }
 
     synchronized void addService(ServiceReference sref) {
-        if (!exportedServices.containsKey(sref)) {
+        if (!snapshot.exportedServices.containsKey(sref)) {
             LOG.info("Marking service from bundle {} for export", Utils.getBundleName(sref));
-            exportedServices.put(sref, new LinkedHashMap<RemoteServiceAdmin, Collection<EndpointDescription>>());
+            Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> exportedServices
+                = copy(snapshot.exportedServices);
+            exportedServices.put(sref, Collections.<RemoteServiceAdmin, Collection<EndpointDescription>>emptyMap());
+            publish(exportedServices);
         }
     }
 
@@ -87,34 +116,88 @@ class EndpointRepository {
         if (endpoints == null) {
             throw new NullPointerException();
         }
-        addService(sref);
+        if (!snapshot.exportedServices.containsKey(sref)) {
+            LOG.info("Marking service from bundle {} for export", Utils.getBundleName(sref));
+        }
+        Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> exportedServices
+            = copy(snapshot.exportedServices);
         Map<RemoteServiceAdmin, Collection<EndpointDescription>> exports = exportedServices.get(sref);
-        exports.put(rsa, endpoints);
+        exports = exports == null
+            ? new LinkedHashMap<RemoteServiceAdmin, Collection<EndpointDescription>>() : copy(exports);
+        exports.put(rsa, Collections.unmodifiableList(new ArrayList<EndpointDescription>(endpoints)));
+        exportedServices.put(sref, Collections.unmodifiableMap(exports));
+        publish(exportedServices);
     }
 
-    synchronized boolean isAlreadyExportedForRsa(ServiceReference sref, RemoteServiceAdmin rsa) {
-        Map<RemoteServiceAdmin, Collection<EndpointDescription>> exports = exportedServices.get(sref);
+    boolean isAlreadyExportedForRsa(ServiceReference sref, RemoteServiceAdmin rsa) {
+        Map<RemoteServiceAdmin, Collection<EndpointDescription>> exports = snapshot.exportedServices.get(sref);
         return exports != null && exports.containsKey(rsa);
     }
 
-    synchronized Collection<EndpointDescription> getAllEndpoints() {
-        List<EndpointDescription> allEndpoints = new ArrayList<EndpointDescription>();
-        for (Map<RemoteServiceAdmin, Collection<EndpointDescription>> exports : exportedServices.values()) {
-            for (Collection<EndpointDescription> endpoints : exports.values()) {
-                allEndpoints.addAll(endpoints);
-            }
-        }
-        return allEndpoints;
+    /**
+     * Returns all exported endpoints. The returned collection is immutable and shared
+     * by all callers until the exports change.
+     */
+    Collection<EndpointDescription> getAllEndpoints() {
+        return snapshot.getAllEndpoints();
     }
 
-    synchronized Set<ServiceReference> getServicesToBeExportedFor(RemoteServiceAdmin rsa) {
+    /**
+     * Returns a number which changes whenever the exports change.
+     */
+    long getVersion() {
+        return snapshot.version;
+    }
+
+    Set<ServiceReference> getServicesToBeExportedFor(RemoteServiceAdmin rsa) {
         Set<ServiceReference> servicesToBeExported = new HashSet<ServiceReference>();
         for (Map.Entry<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> entry
-                : exportedServices.entrySet()) {
+                : snapshot.exportedServices.entrySet()) {
             if (!entry.getValue().containsKey(rsa)) {
                 servicesToBeExported.add(entry.getKey());
             }
         }
         return servicesToBeExported;
     }
+
+    // must be called while holding the lock on this repository
+    private void publish(Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> services) {
+        snapshot = new Snapshot(snapshot.version + 1, Collections.unmodifiableMap(services));
+    }
+
+    private static <K, V> Map<K, V> copy(Map<K, V> map) {
+        return new LinkedHashMap<K, V>(map);
+    }
+
+    /**
+     * An immutable state of the exports.
+     */
+    private static final class Snapshot {
+
+        final long version;
+        final Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> exportedServices;
+        // computed on first use, racing threads compute equal lists
+        private volatile Collection<EndpointDescription> allEndpoints;
+
+        Snapshot(long version,
+                 Map<ServiceReference, Map<RemoteServiceAdmin, Collection<EndpointDescription>>> exportedServices) {
+            this.version = version;
+            this.exportedServices = exportedServices;
+        }
+
+        Collection<EndpointDescription> getAllEndpoints() {
+            Collection<EndpointDescription> endpoints = allEndpoints;
+            if (endpoints == null) {
+                List<EndpointDescription> list = new ArrayList<EndpointDescription>();
+                for (Map<RemoteServiceAdmin, Collection<EndpointDescription>> exports : exportedServices.values()) {
+                    for (Collection<EndpointDescription> e : exports.values()) {
+                        list.addAll(e);
+                    }
+                }
+                endpoints = Collections.unmodifiableList(list);
+                allEndpoints = endpoints;
+            }
+            return endpoints;
+        }
+    }
 }
@@ -0,0 +1,240 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.exporter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the exports of services on a thread pool of configurable size.
+ * <p>
+ * Triggers for a service whose export is still pending are coalesced into the pending one, and a
+ * trigger arriving while the export of the service runs makes it run once more afterwards, so an
+ * export check never runs concurrently for the same service. Cancelling a service, e.g. because it
+ * was unregistered, discards its pending export.
+ */
+public class ExportScheduler {
+
+    public static final int DEFAULT_THREADS = 5;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExportScheduler.class);
+
+    /**
+     * The action performed for a scheduled service.
+     */
+    public interface ExportAction {
+        void export(ServiceReference sref);
+    }
+
+    private enum State { PENDING, RUNNING, RUNNING_DIRTY }
+
+    private final ExportAction action;
+    private final ThreadPoolExecutor executor;
+    // guarded by itself
+    private final Map<ServiceReference, State> states = new HashMap<ServiceReference, State>();
+    private final Map<ServiceReference, Long> enqueued = new HashMap<ServiceReference, Long>();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    public ExportScheduler(ExportAction action) {
+        this.action = action;
+        // with an unbounded queue the pool never grows beyond its core size, so both are kept equal
+        executor = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS, 50, TimeUnit.SECONDS,
+                                          new LinkedBlockingQueue<Runnable>());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Changes the number of threads exporting services.
+     *
+     * @param threads the number of threads, at least 1
+     */
+    public void setThreads(int threads) {
+        int n = Math.max(1, threads);
+        if (n > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(n);
+            executor.setCorePoolSize(n);
+        } else {
+            executor.setCorePoolSize(n);
+            executor.setMaximumPoolSize(n);
+        }
+    }
+
+    public int getThreads() {
+        return executor.getCorePoolSize();
+    }
+
+    /**
+     * Schedules the export of the given service, unless it is already pending.
+     */
+    public void schedule(ServiceReference sref) {
+        synchronized (states) {
+            State state = states.get(sref);
+            if (state == State.PENDING || state == State.RUNNING_DIRTY) {
+                coalesced.incrementAndGet();
+                return;
+            }
+            if (state == State.RUNNING) {
+                // run once more when the current export finishes
+                states.put(sref, State.RUNNING_DIRTY);
+                return;
+            }
+            states.put(sref, State.PENDING);
+            enqueued.put(sref, System.nanoTime());
+        }
+        submit(sref);
+    }
+
+    /**
+     * Discards the pending export of the given service.
+     */
+    public void cancel(ServiceReference sref) {
+        synchronized (states) {
+            if (states.get(sref) == State.PENDING) {
+                states.remove(sref);
+                enqueued.remove(sref);
+            } else if (states.get(sref) == State.RUNNING_DIRTY) {
+                states.put(sref, State.RUNNING);
+            }
+        }
+    }
+
+    /**
+     * Runs the given task on the export threads, e.g. to export through several
+     * RemoteServiceAdmins in parallel. Once the scheduler is shut down, the task runs
+     * in the calling thread.
+     */
+    public void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    private void submit(final ServiceReference sref) {
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    runExport(sref);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("scheduler is shut down, not exporting {}", sref);
+            synchronized (states) {
+                states.remove(sref);
+                enqueued.remove(sref);
+            }
+        }
+    }
+
+    private void runExport(ServiceReference sref) {
+        synchronized (states) {
+            if (states.get(sref) != State.PENDING) {
+                return; // cancelled
+            }
+            states.put(sref, State.RUNNING);
+            recordLatency(System.nanoTime() - enqueued.remove(sref));
+        }
+        try {
+            action.export(sref);
+        } catch (Throwable t) {
+            LOG.error("export failed", t);
+        } finally {
+            executed.incrementAndGet();
+            boolean again;
+            synchronized (states) {
+                again = states.remove(sref) == State.RUNNING_DIRTY;
+                if (again) {
+                    states.put(sref, State.PENDING);
+                    enqueued.put(sref, System.nanoTime());
+                }
+            }
+            if (again) {
+                submit(sref);
+            }
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        totalLatency.addAndGet(nanos);
+        long max = maxLatency.get();
+        while (nanos > max && !maxLatency.compareAndSet(max, nanos)) {
+            max = maxLatency.get();
+        }
+    }
+
+    /**
+     * Returns the number of services whose export is waiting for a thread.
+     */
+    public int getQueueDepth() {
+        synchronized (states) {
+            return enqueued.size();
+        }
+    }
+
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * Returns the average time exports waited for a thread, in milliseconds.
+     */
+    public double getAverageLatency() {
+        long count = executed.get();
+        return count == 0 ? 0 : totalLatency.get() / 1000000.0 / count;
+    }
+
+    /**
+     * Returns the longest time an export waited for a thread, in milliseconds.
+     */
+    public double getMaxLatency() {
+        return maxLatency.get() / 1000000.0;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        synchronized (states) {
+            states.clear();
+            enqueued.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExportScheduler[threads=" + getThreads() + ", queued=" + getQueueDepth()
+            + ", executed=" + getExecutedCount() + ", coalesced=" + getCoalescedCount()
+            + ", avgLatency=" + getAverageLatency() + "ms, maxLatency=" + getMaxLatency() + "ms]";
+    }
+}
@@ -21,10 +21,11 @@ package org.apache.cxf.dosgi.topologymanager.exporter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTracker;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTrackerListener;
@@ -52,19 +53,31 @@ import org.slf4j.LoggerFactory;
  *      the EndpointListeners are notified
  * <li> When a service is unpublished the EndpointListeners are notified.
  *      The endpoints are not closed as the ExportRegistration takes care of this
+ * <li> When a service stops requesting export while still registered, its
+ *      ExportRegistrations are closed and the EndpointListeners are notified
+ * <li> Exports are run by an {@link ExportScheduler}, which coalesces repeated triggers
+ *      for the same service and discards pending exports of unregistered services
  */
 public class TopologyManagerExport {
 
+    /**
+     * The configuration property holding the number of threads exporting services.
+     */
+    public static final String EXPORT_THREADS = "export.threads";
+
     private static final String DOSGI_SERVICES = "(" + RemoteConstants.SERVICE_EXPORTED_INTERFACES + "=*)";
 
     private static final Logger LOG = LoggerFactory.getLogger(TopologyManagerExport.class);
 
     private final BundleContext bctx;
     private final EndpointListenerNotifier epListenerNotifier;
-    private final ExecutorService execService;
+    private final ExportScheduler scheduler;
     private final SimpleServiceTracker<RemoteServiceAdmin> remoteServiceAdminTracker;
     private final ServiceListener serviceListener;
     private final EndpointRepository endpointRepo;
+    // open registrations by service, so they can be closed when the service stops requesting export
+    private final ConcurrentMap<ServiceReference, List<ExportRegistration>> exportRegistrations
+        = new ConcurrentHashMap<ServiceReference, List<ExportRegistration>>();
 
     public TopologyManagerExport(BundleContext ctx, SimpleServiceTracker<RemoteServiceAdmin> rsaTracker) {
         this(ctx, rsaTracker, null);
@@ -74,7 +87,11 @@ public class TopologyManagerExport {
                                  EndpointListenerNotifier notif) {
         endpointRepo = new EndpointRepository();
         epListenerNotifier = notif == null ? new EndpointListenerNotifier(ctx, endpointRepo) : notif;
-        execService = new ThreadPoolExecutor(5, 10, 50, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        scheduler = new ExportScheduler(new ExportScheduler.ExportAction() {
+            public void export(ServiceReference sref) {
+                doExportService(sref);
+            }
+        });
         bctx = ctx;
         remoteServiceAdminTracker = rsaTracker;
 
@@ -90,6 +107,10 @@ public class TopologyManagerExport {
             }
 
             public void modified(ServiceReference<RemoteServiceAdmin> reference, RemoteServiceAdmin rsa) {
+                // e.g. its supported intents changed, so retry the exports it could not handle so far
+                for (ServiceReference serviceRef : endpointRepo.getServicesToBeExportedFor(rsa)) {
+                    triggerExport(serviceRef);
+                }
             }
 
             public void removed(ServiceReference<RemoteServiceAdmin> reference, RemoteServiceAdmin rsa) {
@@ -113,13 +134,35 @@ public class TopologyManagerExport {
                     }
                 } else if (event.getType() == ServiceEvent.UNREGISTERING) {
                     LOG.debug("Received UNREGISTERING ServiceEvent: {}", event);
-                    List<EndpointDescription> endpoints = endpointRepo.removeService(sref);
-                    epListenerNotifier.notifyListeners(false, endpoints);
+                    // the RemoteServiceAdmins close the exports of unregistered services themselves
+                    exportRegistrations.remove(sref);
+                    unexport(sref);
+                } else if (event.getType() == ServiceEvent.MODIFIED_ENDMATCH) {
+                    // with the listener filter, a service no longer requesting export is
+                    // reported as MODIFIED_ENDMATCH rather than by its later unregistration
+                    LOG.debug("Received MODIFIED_ENDMATCH ServiceEvent: {}", event);
+                    closeExportRegistrations(sref);
+                    unexport(sref);
                 }
             }
         };
     }
 
+    private void unexport(ServiceReference sref) {
+        scheduler.cancel(sref);
+        List<EndpointDescription> endpoints = endpointRepo.removeService(sref);
+        epListenerNotifier.notifyListeners(false, endpoints);
+    }
+
+    private void closeExportRegistrations(ServiceReference sref) {
+        List<ExportRegistration> regs = exportRegistrations.remove(sref);
+        if (regs != null) {
+            for (ExportRegistration reg : regs) {
+                reg.close();
+            }
+        }
+    }
+
     /**
      * checks if a Service is intended to be exported
      */
@@ -129,26 +172,34 @@ public class TopologyManagerExport {
 
     public void start() {
         epListenerNotifier.start();
-        bctx.addServiceListener(serviceListener);
+        try {
+            // only services requesting export are of interest, so leave all others to the framework
+            bctx.addServiceListener(serviceListener, DOSGI_SERVICES);
+        } catch (InvalidSyntaxException e) {
+            LOG.error("Error in filter {}. This should not occur!", DOSGI_SERVICES);
+        }
         exportExistingServices();
     }
 
     public void stop() {
-        execService.shutdown();
+        scheduler.shutdown();
         bctx.removeServiceListener(serviceListener);
         epListenerNotifier.stop();
     }
 
+    /**
+     * Changes the number of threads exporting services.
+     */
+    public void setExportThreads(int threads) {
+        scheduler.setThreads(threads);
+    }
+
+    public ExportScheduler getScheduler() {
+        return scheduler;
+    }
+
     protected void triggerExport(final ServiceReference sref) {
-        execService.execute(new Runnable() {
-            public void run() {
-                try {
-                    doExportService(sref);
-                } catch (Throwable t) {
-                    LOG.error("export failed", t);
-                }
-            }
-        });
+        scheduler.schedule(sref);
     }
 
     protected void doExportService(final ServiceReference sref) {
@@ -161,14 +212,52 @@ public class TopologyManagerExport {
                     sref.getProperty(org.osgi.framework.Constants.OBJECTCLASS));
         }
 
-        for (final RemoteServiceAdmin remoteServiceAdmin : rsaList) {
+        List<RemoteServiceAdmin> pending = new ArrayList<RemoteServiceAdmin>();
+        for (RemoteServiceAdmin remoteServiceAdmin : rsaList) {
             LOG.info("TopologyManager: handling remoteServiceAdmin " + remoteServiceAdmin);
 
             if (endpointRepo.isAlreadyExportedForRsa(sref, remoteServiceAdmin)) {
                 // already handled by this remoteServiceAdmin
                 LOG.debug("already handled by this remoteServiceAdmin -> skipping");
             } else {
-                exportServiceUsingRemoteServiceAdmin(sref, remoteServiceAdmin);
+                pending.add(remoteServiceAdmin);
+            }
+        }
+        if (pending.size() == 1) {
+            exportServiceUsingRemoteServiceAdmin(sref, pending.get(0));
+        } else if (pending.size() > 1) {
+            exportInParallel(sref, pending);
+        }
+    }
+
+    /**
+     * Exports the service through several RemoteServiceAdmins at once. Exports not yet picked up
+     * by another thread are run by the calling thread, so waiting for them can never starve the pool.
+     */
+    private void exportInParallel(final ServiceReference sref, List<RemoteServiceAdmin> rsaList) {
+        List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+        for (final RemoteServiceAdmin remoteServiceAdmin : rsaList) {
+            FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                public void run() {
+                    exportServiceUsingRemoteServiceAdmin(sref, remoteServiceAdmin);
+                }
+            }, null);
+            tasks.add(task);
+            if (tasks.size() > 1) {
+                scheduler.execute(task);
+            }
+        }
+        for (FutureTask<Void> task : tasks) {
+            task.run(); // no-op if already run or running elsewhere
+        }
+        for (FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOG.error("export failed", e.getCause());
             }
         }
     }
@@ -192,25 +281,26 @@ public class TopologyManagerExport {
         }
         // process successful/failed registrations
         List<EndpointDescription> endpoints = new ArrayList<EndpointDescription>();
+        List<ExportRegistration> succeeded = new ArrayList<ExportRegistration>();
         for (ExportRegistration reg : exportRegs) {
             if (reg.getException() == null) {
                 EndpointDescription endpoint = getExportedEndpoint(reg);
                 LOG.info("TopologyManager: export succeeded for {}, endpoint ", sref, endpoint);
                 endpoints.add(endpoint);
+                succeeded.add(reg);
             } else {
                 // TODO: what should we do with failed exports?
                 LOG.error("TopologyManager: export failed for {}", sref);
                 reg.close();
             }
         }
-        // abort export if service was unregistered in the meanwhile (since we have a race
-        // with the unregister event which may have already been handled, so we'll miss it)
-        if (sref.getBundle() == null) {
-            LOG.info("TopologyManager: export reverted for {} since service was unregistered", sref);
+        addExportRegistrations(sref, succeeded);
+        // abort export if service was unregistered or stopped requesting export in the meanwhile (since
+        // we have a race with the service event which may have already been handled, so we'll miss it)
+        if (sref.getBundle() == null || !shouldExportService(sref)) {
+            LOG.info("TopologyManager: export reverted for {} since service is no longer exported", sref);
             endpointRepo.removeService(sref);
-            for (ExportRegistration reg : exportRegs) {
-                reg.close();
-            }
+            closeExportRegistrations(sref);
             return;
         }
         // add the new exported endpoints
@@ -221,6 +311,18 @@ public class TopologyManagerExport {
         }
     }
 
+    private void addExportRegistrations(ServiceReference sref, Collection<ExportRegistration> regs) {
+        List<ExportRegistration> list = exportRegistrations.get(sref);
+        if (list == null) {
+            list = new CopyOnWriteArrayList<ExportRegistration>();
+            List<ExportRegistration> existing = exportRegistrations.putIfAbsent(sref, list);
+            if (existing != null) {
+                list = existing;
+            }
+        }
+        list.addAll(regs);
+    }
+
     /**
      * Retrieves an exported Endpoint (while safely handling nulls).
      *
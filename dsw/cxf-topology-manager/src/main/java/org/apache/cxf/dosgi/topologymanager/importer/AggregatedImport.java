@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single service which spreads calls over all services imported for one interface, by any
+ * import filter, using a {@link LoadBalancer}.
+ * <p>
+ * The service is registered with the highest possible ranking, so that consumers picking the
+ * best ranked service use it instead of one of the individual imports.
+ */
+public class AggregatedImport {
+
+    /**
+     * Service property set on aggregated imports, whose value is the number of imported endpoints.
+     */
+    public static final String AGGREGATED_ENDPOINTS = "org.apache.cxf.dosgi.aggregated.endpoints";
+
+    private static final Logger LOG = LoggerFactory.getLogger(AggregatedImport.class);
+
+    private final BundleContext bctx;
+    private final String interfaceName;
+    private final LoadBalancer loadBalancer;
+    // the services obtained from the imported service references, in import order
+    private final Map<ServiceReference<?>, Object> services = new LinkedHashMap<ServiceReference<?>, Object>();
+    private ServiceRegistration<?> registration;
+
+    public AggregatedImport(BundleContext bctx, String interfaceName, LoadBalancingPolicy policy) {
+        this.bctx = bctx;
+        this.interfaceName = interfaceName;
+        this.loadBalancer = new LoadBalancer(policy);
+    }
+
+    public String getInterfaceName() {
+        return interfaceName;
+    }
+
+    public LoadBalancer getLoadBalancer() {
+        return loadBalancer;
+    }
+
+    /**
+     * Updates the imported services the calls are spread over, registering the aggregated
+     * service once there is one and unregistering it once there are none.
+     *
+     * @param refs the references of the imported services
+     */
+    public synchronized void update(List<ServiceReference<?>> refs) {
+        for (ServiceReference<?> ref : new ArrayList<ServiceReference<?>>(services.keySet())) {
+            if (!refs.contains(ref)) {
+                services.remove(ref);
+                ungetService(ref);
+            }
+        }
+        for (ServiceReference<?> ref : refs) {
+            if (!services.containsKey(ref)) {
+                Object service = bctx.getService(ref);
+                if (service != null) {
+                    services.put(ref, service);
+                }
+            }
+        }
+        loadBalancer.setTargets(new ArrayList<Object>(services.values()));
+        if (services.isEmpty()) {
+            unregister();
+        } else if (registration == null) {
+            register();
+        } else {
+            registration.setProperties(getProperties());
+        }
+    }
+
+    public synchronized void close() {
+        unregister();
+        for (ServiceReference<?> ref : services.keySet()) {
+            ungetService(ref);
+        }
+        services.clear();
+        loadBalancer.setTargets(new ArrayList<Object>());
+    }
+
+    private void register() {
+        Object first = services.values().iterator().next();
+        Class<?> iClass = getInterface(first.getClass());
+        if (iClass == null) {
+            LOG.warn("Imported service does not implement {}, not aggregating it", interfaceName);
+            return;
+        }
+        Object proxy = Proxy.newProxyInstance(iClass.getClassLoader(), new Class[] {iClass}, loadBalancer);
+        registration = bctx.registerService(interfaceName, proxy, getProperties());
+        LOG.info("Registered aggregated import of {} with {} load balancing", interfaceName,
+                 loadBalancer.getPolicy());
+    }
+
+    private Class<?> getInterface(Class<?> serviceClass) {
+        for (Class<?> c = serviceClass; c != null; c = c.getSuperclass()) {
+            for (Class<?> i : c.getInterfaces()) {
+                if (i.getName().equals(interfaceName)) {
+                    return i;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Dictionary<String, Object> getProperties() {
+        // copy the properties of the first import, so that consumer filters match both alike
+        ServiceReference<?> first = services.keySet().iterator().next();
+        Dictionary<String, Object> props = new Hashtable<String, Object>();
+        for (String key : first.getPropertyKeys()) {
+            props.put(key, first.getProperty(key));
+        }
+        props.remove(Constants.SERVICE_ID);
+        props.remove(Constants.OBJECTCLASS);
+        props.remove(RemoteConstants.ENDPOINT_ID);
+        props.remove(RemoteConstants.ENDPOINT_SERVICE_ID);
+        props.put(Constants.SERVICE_RANKING, Integer.MAX_VALUE);
+        props.put(RemoteConstants.SERVICE_IMPORTED, Boolean.TRUE);
+        props.put(AGGREGATED_ENDPOINTS, services.size());
+        return props;
+    }
+
+    private void unregister() {
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (IllegalStateException ise) {
+                // already unregistered
+            }
+            registration = null;
+        }
+    }
+
+    private void ungetService(ServiceReference<?> ref) {
+        try {
+            bctx.ungetService(ref);
+        } catch (IllegalStateException ise) {
+            // our bundle context is no longer valid
+        }
+    }
+}
@@ -22,6 +22,10 @@ import java.util.ArrayList;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -31,19 +35,44 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Manages an EndpointListener and adjusts its scope according to requested service filters.
+ * <p>
+ * Every change of the registered scope makes the discovery providers re-evaluate it and resend
+ * the matching endpoints, so scope changes which follow each other closely, e.g. while bundles
+ * are starting, are collected and published as a single update. Reductions are published right away,
+ * together with any collected extensions, so that endpoints no longer of interest are not sent meanwhile.
  */
 public class EndpointListenerManager {
 
+    /**
+     * The time in milliseconds scope changes are collected for before they are published
+     */
+    static final long SCOPE_UPDATE_DELAY = 20;
+
     private static final Logger LOG = LoggerFactory.getLogger(EndpointListenerManager.class);
 
     private final BundleContext bctx;
     private volatile ServiceRegistration serviceRegistration;
     private final List<String> filters = new ArrayList<String>();
     private final EndpointListener endpointListener;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean updatePending = new AtomicBoolean();
+    private final Object updateLock = new Object();
+    // the last published scope, guarded by filters
+    private List<String> publishedScope;
 
     protected EndpointListenerManager(BundleContext bc, EndpointListener endpointListener) {
+        this(bc, endpointListener, null);
+    }
+
+    /**
+     * @param executor the executor publishing collected scope changes, or null to publish each
+     *            change right away
+     */
+    protected EndpointListenerManager(BundleContext bc, EndpointListener endpointListener,
+                                      ScheduledExecutorService executor) {
         this.bctx = bc;
         this.endpointListener = endpointListener;
+        this.executor = executor;
     }
 
     protected void start() {
@@ -65,7 +94,7 @@ public class EndpointListenerManager {
         synchronized (filters) {
             filters.add(filter);
         }
-        updateRegistration();
+        scheduleUpdate();
     }
 
     protected void reduceScope(String filter) {
@@ -76,23 +105,60 @@ public class EndpointListenerManager {
         synchronized (filters) {
             filters.remove(filter);
         }
+        flush();
+    }
+
+    /**
+     * Publishes the collected scope changes right away.
+     */
+    public void flush() {
+        updatePending.set(false);
         updateRegistration();
     }
 
+    private void scheduleUpdate() {
+        if (executor == null) {
+            updateRegistration();
+        } else if (updatePending.compareAndSet(false, true)) {
+            try {
+                executor.schedule(new Runnable() {
+                    public void run() {
+                        if (updatePending.compareAndSet(true, false)) {
+                            updateRegistration();
+                        }
+                    }
+                }, SCOPE_UPDATE_DELAY, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flush(); // shutting down
+            }
+        }
+    }
+
     private Dictionary<String, Object> getRegistrationProperties() {
         Dictionary<String, Object> p = new Hashtable<String, Object>();
 
         synchronized (filters) {
             LOG.debug("Current filter: {}", filters);
-            p.put(EndpointListener.ENDPOINT_LISTENER_SCOPE, new ArrayList<String>(filters));
+            publishedScope = new ArrayList<String>(filters);
+            p.put(EndpointListener.ENDPOINT_LISTENER_SCOPE, publishedScope);
         }
 
         return p;
     }
 
     private void updateRegistration() {
-        if (serviceRegistration != null) {
-            serviceRegistration.setProperties(getRegistrationProperties());
+        ServiceRegistration reg = serviceRegistration;
+        if (reg == null) {
+            return;
+        }
+        // serialized, so that an older scope never overwrites a newer one
+        synchronized (updateLock) {
+            synchronized (filters) {
+                if (filters.equals(publishedScope)) {
+                    return; // the changes cancelled each other out
+                }
+            }
+            reg.setProperties(getRegistrationProperties());
         }
     }
 }
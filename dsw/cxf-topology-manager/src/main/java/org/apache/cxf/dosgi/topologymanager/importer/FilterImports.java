@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.ImportReference;
+import org.osgi.service.remoteserviceadmin.ImportRegistration;
+
+/**
+ * The imports of a single import filter.
+ * <p>
+ * The state is guarded by the object itself, and held only briefly. Reconciliation passes of
+ * the filter are serialized by the separate {@link #getPassLock() pass lock}, which is held while
+ * services are being imported, so that unrelated filters and import removals never wait for them.
+ */
+class FilterImports {
+
+    private final String filter;
+    private final Object passLock = new Object();
+    // registrations by imported endpoint, guarded by this
+    private final Map<EndpointDescription, ImportRegistration> registrations
+        = new LinkedHashMap<EndpointDescription, ImportRegistration>();
+    // imported endpoints by the references of their registrations, which no longer
+    // know their endpoint once closed, guarded by this
+    private final Map<ImportReference, EndpointDescription> endpoints
+        = new HashMap<ImportReference, EndpointDescription>();
+    private boolean closed;
+
+    FilterImports(String filter) {
+        this.filter = filter;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public Object getPassLock() {
+        return passLock;
+    }
+
+    /**
+     * Returns the registrations by imported endpoint, which must not be modified directly.
+     */
+    public Map<EndpointDescription, ImportRegistration> getRegistrations() {
+        return registrations;
+    }
+
+    public void add(EndpointDescription endpoint, ImportRegistration ir) {
+        registrations.put(endpoint, ir);
+        endpoints.put(ir.getImportReference(), endpoint);
+    }
+
+    public ImportRegistration remove(EndpointDescription endpoint) {
+        ImportRegistration ir = registrations.remove(endpoint);
+        if (ir != null) {
+            endpoints.remove(ir.getImportReference());
+        }
+        return ir;
+    }
+
+    public ImportRegistration remove(ImportReference ref) {
+        EndpointDescription endpoint = endpoints.remove(ref);
+        return endpoint == null ? null : registrations.remove(endpoint);
+    }
+
+    public void clear() {
+        registrations.clear();
+        endpoints.clear();
+    }
+
+    /**
+     * Returns whether the filter's interest is gone, in which case no registrations may be added.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void setClosed() {
+        closed = true;
+    }
+}
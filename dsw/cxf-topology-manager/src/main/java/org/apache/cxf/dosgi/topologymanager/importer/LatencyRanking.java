@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cxf.dosgi.topologymanager.ranking.EndpointRanking;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prefers the endpoints with the lowest round trip time, measured as the time it takes to
+ * open a connection to the host and port of the endpoint address.
+ * <p>
+ * The rank is the order of magnitude of the time in microseconds, e.g. 3 for 100 to 999 microseconds,
+ * so that jitter between endpoints of similar latency does not make the re-evaluation switch between them.
+ * <p>
+ * Measurements are kept per host and port for a limited time, so that re-evaluated imports
+ * follow changing network conditions without measuring each endpoint on every import.
+ * <p>
+ * Connecting may take up to a second per endpoint, so the measurements are made in the background
+ * rather than by the import pass asking for the rank. Until an address is measured, its endpoints
+ * are ranked as {@link #UNKNOWN}, and an expired measurement is used until it is renewed. The
+ * re-evaluation of the imports then picks up the measured ranks. Measurements of addresses which
+ * were not ranked for a long time are dropped.
+ */
+public class LatencyRanking implements EndpointRanking {
+
+    /**
+     * The rank of endpoints whose address has no host and port, or is not measured yet.
+     */
+    static final long UNKNOWN = Long.MAX_VALUE / 2;
+    /**
+     * The rank of endpoints which could not be connected to.
+     */
+    static final long UNREACHABLE = Long.MAX_VALUE;
+
+    private static final Logger LOG = LoggerFactory.getLogger(LatencyRanking.class);
+    private static final int CONNECT_TIMEOUT = 1000;
+    private static final int MEASURING_THREADS = 2;
+    private static final long MIN_UNUSED_TIME = 60000;
+
+    private final long maxAge;
+    private final long maxUnusedTime;
+    private final Executor executor;
+    // measurements by host and port
+    private final ConcurrentMap<String, Measurement> measurements = new ConcurrentHashMap<String, Measurement>();
+    // the hosts and ports being measured
+    private final Set<String> pending = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * @param maxAge the time in milliseconds a measurement is used
+     */
+    public LatencyRanking(long maxAge) {
+        this(maxAge, createExecutor());
+    }
+
+    /**
+     * @param maxAge the time in milliseconds a measurement is used
+     * @param executor the executor making the measurements
+     */
+    LatencyRanking(long maxAge, Executor executor) {
+        this.maxAge = maxAge;
+        this.maxUnusedTime = Math.max(10 * maxAge, MIN_UNUSED_TIME);
+        this.executor = executor;
+    }
+
+    private static Executor createExecutor() {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "cxf-dosgi-latency-ranking");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        // idle threads time out, so nothing needs to be shut down
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MEASURING_THREADS, MEASURING_THREADS, 10, TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public long rank(EndpointDescription endpoint) {
+        URI uri;
+        try {
+            uri = new URI(endpoint.getId());
+        } catch (URISyntaxException e) {
+            return UNKNOWN;
+        }
+        int port = uri.getPort();
+        if (port < 0 && "http".equalsIgnoreCase(uri.getScheme())) {
+            port = 80;
+        } else if (port < 0 && "https".equalsIgnoreCase(uri.getScheme())) {
+            port = 443;
+        }
+        if (uri.getHost() == null || port < 0) {
+            return UNKNOWN;
+        }
+        String key = uri.getHost() + ":" + port;
+        long now = System.currentTimeMillis();
+        Measurement measurement = measurements.get(key);
+        if (measurement != null) {
+            measurement.lastUsed = now;
+        }
+        if (measurement == null || now - measurement.measured > maxAge) {
+            scheduleMeasurement(key, uri.getHost(), port);
+        }
+        return measurement == null ? UNKNOWN : measurement.rank;
+    }
+
+    /**
+     * Returns the order of magnitude of a round trip time, i.e. its number of decimal digits.
+     */
+    static long toRank(long micros) {
+        if (micros == UNREACHABLE) {
+            return UNREACHABLE;
+        }
+        long rank = 1;
+        for (long bound = 10; micros >= bound && rank < 19; bound *= 10) {
+            rank++;
+        }
+        return rank;
+    }
+
+    private void scheduleMeasurement(final String key, final String host, final int port) {
+        if (!pending.add(key)) {
+            return; // already being measured
+        }
+        evictUnused();
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        measurements.put(key, new Measurement(toRank(measure(host, port))));
+                    } finally {
+                        pending.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key);
+        }
+    }
+
+    private void evictUnused() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Measurement> it = measurements.values().iterator(); it.hasNext();) {
+            if (now - it.next().lastUsed > maxUnusedTime) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Measures the round trip time to the given host and port.
+     *
+     * @return the time in microseconds, or {@link #UNREACHABLE}
+     */
+    long measure(String host, int port) {
+        Socket socket = new Socket();
+        long start = System.nanoTime();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        } catch (IOException e) {
+            LOG.debug("Unable to connect to {}:{}", host, port);
+            return UNREACHABLE;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static final class Measurement {
+
+        final long rank;
+        final long measured;
+        volatile long lastUsed;
+
+        Measurement(long rank) {
+            this.rank = rank;
+            this.measured = System.currentTimeMillis();
+            this.lastUsed = measured;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.apache.cxf.dosgi.topologymanager.util.FilterNormalizer;
 import org.apache.cxf.dosgi.topologymanager.util.Utils;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.hooks.service.ListenerHook;
@@ -113,7 +114,12 @@ public class ListenerHookImpl implements ListenerHook {
         return false;
     }
 
+    /**
+     * Restricts the filter to remote endpoints and normalizes it, so that listener filters which
+     * are written differently but mean the same share a single service interest.
+     */
     static String extendFilter(String filter, BundleContext bctx) {
-        return "(&" + filter + "(!(" + RemoteConstants.ENDPOINT_FRAMEWORK_UUID + "=" + Utils.getUUID(bctx) + ")))";
+        return FilterNormalizer.normalize("(&" + filter
+            + "(!(" + RemoteConstants.ENDPOINT_FRAMEWORK_UUID + "=" + Utils.getUUID(bctx) + ")))");
     }
 }
@@ -0,0 +1,281 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.osgi.framework.ServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the calls made on a proxy over a set of target services, according to a
+ * {@link LoadBalancingPolicy}.
+ * <p>
+ * A target whose call fails with a remote {@link ServiceException} is ejected for a while,
+ * doubling the time with each consecutive failure. If all targets are ejected, calls are
+ * still spread over all of them rather than failing outright.
+ * <p>
+ * The targets are published as an immutable array which is replaced on each update,
+ * so calls never wait for a lock.
+ */
+public class LoadBalancer implements InvocationHandler {
+
+    static final long DEFAULT_EJECTION_MILLIS = 5000;
+    static final int MAX_EJECTION_DOUBLINGS = 6;
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadBalancer.class);
+    private static final Target[] NO_TARGETS = new Target[0];
+
+    private final LoadBalancingPolicy policy;
+    private final long ejectionNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Random random = new Random();
+    private volatile Target[] targets = NO_TARGETS;
+
+    public LoadBalancer(LoadBalancingPolicy policy) {
+        this(policy, DEFAULT_EJECTION_MILLIS);
+    }
+
+    public LoadBalancer(LoadBalancingPolicy policy, long ejectionMillis) {
+        this.policy = policy;
+        this.ejectionNanos = ejectionMillis * 1000000L;
+    }
+
+    public LoadBalancingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Replaces the target services. The state of targets which are kept is preserved.
+     *
+     * @param services the new target services
+     */
+    public synchronized void setTargets(List<?> services) {
+        Target[] old = targets;
+        Target[] updated = new Target[services.size()];
+        for (int i = 0; i < updated.length; i++) {
+            Object service = services.get(i);
+            updated[i] = find(old, service);
+            if (updated[i] == null) {
+                updated[i] = new Target(service);
+            }
+        }
+        targets = updated;
+    }
+
+    private static Target find(Target[] targets, Object service) {
+        for (Target target : targets) {
+            if (target.service == service) {
+                return target;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the current target services
+     */
+    public List<Object> getTargets() {
+        Target[] current = targets;
+        List<Object> services = new ArrayList<Object>(current.length);
+        for (Target target : current) {
+            services.add(target.service);
+        }
+        return services;
+    }
+
+    /**
+     * @return the number of targets which are currently not ejected
+     */
+    public int getAvailableCount() {
+        long now = System.nanoTime();
+        int count = 0;
+        for (Target target : targets) {
+            if (target.isAvailable(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return invokeObjectMethod(proxy, method, args);
+        }
+        Target target = select();
+        if (target == null) {
+            throw new ServiceException("No endpoint available for " + method.getDeclaringClass().getName(),
+                                       ServiceException.UNREGISTERED);
+        }
+        target.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            Object result = method.invoke(target.service, args);
+            target.succeeded(System.nanoTime() - start);
+            return result;
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (isRemoteFailure(cause)) {
+                target.failed(System.nanoTime(), ejectionNanos);
+                LOG.info("Ejecting endpoint after failed call to {}: {}", method.getName(), cause.getMessage());
+            } else {
+                target.succeeded(System.nanoTime() - start);
+            }
+            throw cause;
+        } finally {
+            target.outstanding.decrementAndGet();
+        }
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        } else if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        } else if ("toString".equals(name)) {
+            return "LoadBalancer [policy=" + policy + ", targets=" + targets.length + "]";
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    static boolean isRemoteFailure(Throwable t) {
+        return t instanceof ServiceException && ((ServiceException)t).getType() == ServiceException.REMOTE;
+    }
+
+    /**
+     * Selects the target for the next call.
+     *
+     * @return the selected target, or null if there are no targets
+     */
+    Target select() {
+        Target[] all = targets;
+        if (all.length == 0) {
+            return null;
+        }
+        Target[] candidates = getAvailable(all, System.nanoTime());
+        switch (policy) {
+        case LEAST_OUTSTANDING:
+            return selectLeastOutstanding(candidates);
+        case LATENCY_WEIGHTED:
+            return selectLatencyWeighted(candidates);
+        default:
+            return candidates[nextIndex(candidates.length)];
+        }
+    }
+
+    private static Target[] getAvailable(Target[] all, long now) {
+        int count = 0;
+        for (Target target : all) {
+            if (target.isAvailable(now)) {
+                count++;
+            }
+        }
+        if (count == all.length || count == 0) {
+            // if all targets are ejected, try them anyway
+            return all;
+        }
+        Target[] available = new Target[count];
+        int i = 0;
+        for (Target target : all) {
+            if (target.isAvailable(now)) {
+                available[i++] = target;
+            }
+        }
+        return available;
+    }
+
+    private int nextIndex(int length) {
+        return (next.getAndIncrement() & Integer.MAX_VALUE) % length;
+    }
+
+    private Target selectLeastOutstanding(Target[] candidates) {
+        // start at a rotating position, so that ties are spread over all targets
+        int start = nextIndex(candidates.length);
+        Target best = null;
+        for (int i = 0; i < candidates.length; i++) {
+            Target target = candidates[(start + i) % candidates.length];
+            if (best == null || target.outstanding.get() < best.outstanding.get()) {
+                best = target;
+            }
+        }
+        return best;
+    }
+
+    private Target selectLatencyWeighted(Target[] candidates) {
+        double[] weights = new double[candidates.length];
+        double total = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            long latency = candidates[i].latencyNanos;
+            if (latency == 0) {
+                // no latency known yet, so give the target a chance first
+                return candidates[i];
+            }
+            weights[i] = 1.0 / latency;
+            total += weights[i];
+        }
+        double r = random.nextDouble() * total;
+        for (int i = 0; i < candidates.length; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return candidates[i];
+            }
+        }
+        return candidates[candidates.length - 1];
+    }
+
+    static final class Target {
+
+        final Object service;
+        final AtomicInteger outstanding = new AtomicInteger();
+        // exponentially weighted moving average of the latency, 0 if unknown
+        volatile long latencyNanos;
+        volatile long ejectedUntil;
+        private int failures;
+
+        Target(Object service) {
+            this.service = service;
+        }
+
+        boolean isAvailable(long now) {
+            long until = ejectedUntil;
+            return until == 0 || now - until >= 0;
+        }
+
+        synchronized void succeeded(long nanos) {
+            failures = 0;
+            ejectedUntil = 0;
+            long old = latencyNanos;
+            latencyNanos = old == 0 ? Math.max(1, nanos) : Math.max(1, old - (old >> 3) + (nanos >> 3));
+        }
+
+        synchronized void failed(long now, long ejectionNanos) {
+            int doublings = Math.min(failures, MAX_EJECTION_DOUBLINGS);
+            failures++;
+            ejectedUntil = now + (ejectionNanos << doublings);
+        }
+    }
+}
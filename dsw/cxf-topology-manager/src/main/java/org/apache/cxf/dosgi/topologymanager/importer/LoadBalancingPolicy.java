@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.util.Locale;
+
+/**
+ * The ways an aggregated import spreads calls over the endpoints it imports.
+ */
+public enum LoadBalancingPolicy {
+
+    /**
+     * Uses the endpoints in turn.
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Uses the endpoint with the fewest calls in progress.
+     */
+    LEAST_OUTSTANDING,
+
+    /**
+     * Picks endpoints at random, weighted by the inverse of their recent latency.
+     */
+    LATENCY_WEIGHTED;
+
+    /**
+     * Parses a policy name, ignoring case and allowing dashes instead of underscores.
+     *
+     * @param name the policy name
+     * @return the policy, or null if the name is null or empty
+     * @throws IllegalArgumentException if there is no policy with the given name
+     */
+    public static LoadBalancingPolicy parse(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        return valueOf(name.trim().replace('-', '_').toUpperCase(Locale.ENGLISH));
+    }
+}
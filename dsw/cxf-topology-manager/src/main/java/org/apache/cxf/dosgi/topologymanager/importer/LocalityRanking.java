@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+
+import org.apache.cxf.dosgi.topologymanager.ranking.EndpointRanking;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Prefers endpoints exported by the local framework or host, then endpoints on the same rack,
+ * then endpoints in the same zone.
+ * <p>
+ * The locality of an endpoint is taken from the endpoint properties published by the CXF
+ * RemoteServiceAdmin, and the local rack and zone from the framework properties of the same names.
+ */
+public class LocalityRanking implements EndpointRanking {
+
+    // The following names are defined by org.apache.cxf.dosgi.dsw.Constants, which is not exported
+    // by the cxf-dsw bundle, and must stay in sync with it.
+
+    /**
+     * Framework property naming the zone the framework runs in.
+     */
+    public static final String ZONE = "org.apache.cxf.dosgi.zone";
+    /**
+     * Framework property naming the rack the framework runs on.
+     */
+    public static final String RACK = "org.apache.cxf.dosgi.rack";
+    public static final String ENDPOINT_HOST = "org.apache.cxf.dosgi.endpoint.host";
+    public static final String ENDPOINT_ZONE = "org.apache.cxf.dosgi.endpoint.zone";
+    public static final String ENDPOINT_RACK = "org.apache.cxf.dosgi.endpoint.rack";
+
+    static final long SAME_HOST = 0;
+    static final long SAME_RACK = 1;
+    static final long SAME_ZONE = 2;
+    static final long REMOTE = 3;
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalityRanking.class);
+
+    private final String frameworkUUID;
+    private final String host;
+    private final String zone;
+    private final String rack;
+
+    public LocalityRanking(String frameworkUUID, String host, String zone, String rack) {
+        this.frameworkUUID = frameworkUUID;
+        this.host = host;
+        this.zone = zone;
+        this.rack = rack;
+    }
+
+    /**
+     * Creates the ranking for the locality of the given framework.
+     */
+    public static LocalityRanking create(BundleContext bc) {
+        String host = null;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            LOG.warn("Unable to determine the local host name", e);
+        }
+        return new LocalityRanking(bc.getProperty("org.osgi.framework.uuid"), host,
+                                   bc.getProperty(ZONE), bc.getProperty(RACK));
+    }
+
+    public long rank(EndpointDescription endpoint) {
+        Map<String, Object> props = endpoint.getProperties();
+        if (equal(frameworkUUID, props.get(RemoteConstants.ENDPOINT_FRAMEWORK_UUID))
+            || equal(host, props.get(ENDPOINT_HOST))) {
+            return SAME_HOST;
+        }
+        boolean sameZone = equal(zone, props.get(ENDPOINT_ZONE));
+        if (equal(rack, props.get(ENDPOINT_RACK)) && (sameZone || zone == null)) {
+            return SAME_RACK;
+        }
+        return sameZone ? SAME_ZONE : REMOTE;
+    }
+
+    private static boolean equal(String local, Object remote) {
+        return local != null && local.equals(remote);
+    }
+}
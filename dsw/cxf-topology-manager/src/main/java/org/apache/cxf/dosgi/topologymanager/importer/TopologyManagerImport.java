@@ -21,19 +21,35 @@ package org.apache.cxf.dosgi.topologymanager.importer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.cxf.dosgi.topologymanager.ranking.EndpointRanking;
 import org.apache.cxf.dosgi.topologymanager.util.ReferenceCounter;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTracker;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTrackerListener;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.hooks.service.ListenerHook;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
@@ -54,8 +70,47 @@ import org.slf4j.LoggerFactory;
  */
 public class TopologyManagerImport implements EndpointListener, RemoteServiceAdminListener, ServiceInterestListener {
 
+    /**
+     * Framework property selecting the {@link LoadBalancingPolicy} of aggregated imports.
+     * If it is not set, no aggregated imports are registered.
+     */
+    public static final String AGGREGATED_IMPORTS = "org.apache.cxf.dosgi.topologymanager.aggregatedImports";
+
+    /**
+     * Framework property which, if set to false, makes only the best ranked endpoint of each
+     * import interest be imported rather than all available endpoints.
+     */
+    public static final String IMPORT_ALL_AVAILABLE = "org.apache.cxf.dosgi.topologymanager.importAllAvailable";
+
+    /**
+     * Framework property listing the rankings by which the endpoint to import is chosen when not
+     * all available endpoints are imported, separated by commas and in order of precedence.
+     * Supported are {@code locality}, {@code latency}, and the names of rankings provided by other bundles
+     * as {@link EndpointRanking} services with the {@link EndpointRanking#NAME} property.
+     */
+    public static final String ENDPOINT_RANKING = "org.apache.cxf.dosgi.topologymanager.endpointRanking";
+
+    /**
+     * Framework property with the interval in seconds at which the imported endpoints are checked
+     * against better ranked ones, when not all available endpoints are imported.
+     */
+    public static final String REEVALUATION_INTERVAL = "org.apache.cxf.dosgi.topologymanager.reevaluationInterval";
+
+    public static final long DEFAULT_REEVALUATION_INTERVAL = 60;
+
+    /**
+     * The time in milliseconds added endpoints are collected for before the imports of their
+     * filter are reconciled, so that a burst of endpoints results in a single pass
+     */
+    static final long IMPORT_DELAY = 50;
+
     private static final Logger LOG = LoggerFactory.getLogger(TopologyManagerImport.class);
-    private ExecutorService execService;
+    private final ScheduledThreadPoolExecutor execService;
+
+    /**
+     * Filters whose imports are due to be reconciled
+     */
+    private final Set<String> pendingFilters = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     private final EndpointListenerManager endpointListenerManager;
     private final BundleContext bctx;
@@ -65,10 +120,16 @@ public class TopologyManagerImport implements EndpointListener, RemoteServiceAdm
     /**
      * If set to false only one service is imported for each import interest even it multiple services are
      * available. If set to true, all available services are imported.
-     *
-     * TODO: Make this available as a configuration option
      */
-    private boolean importAllAvailable = true;
+    private volatile boolean importAllAvailable = true;
+
+    /**
+     * The rankings choosing the endpoint to import if not all are imported, in order of precedence
+     */
+    private final List<EndpointRanking> endpointRankings = new CopyOnWriteArrayList<EndpointRanking>();
+
+    private long reevaluationInterval = DEFAULT_REEVALUATION_INTERVAL;
+    private ScheduledFuture<?> reevaluation;
 
     /**
      * Contains an instance of the Class Import Interest for each distinct import request. If the same filter
@@ -79,16 +140,43 @@ public class TopologyManagerImport implements EndpointListener, RemoteServiceAdm
     private final ReferenceCounter<String> importInterestsCounter = new ReferenceCounter<String>();
 
     /**
-     * List of Endpoints by matched filter that were reported by the EndpointListener and can be imported
+     * Endpoints by matched filter that were reported by the EndpointListener and can be imported
      */
-    private final Map<String /* filter */, List<EndpointDescription>> importPossibilities
-        = new HashMap<String, List<EndpointDescription>>();
+    private final Map<String /* filter */, Set<EndpointDescription>> importPossibilities
+        = new HashMap<String, Set<EndpointDescription>>();
 
     /**
-     * List of already imported Endpoints by their matched filter
+     * The filters by which each importable endpoint was matched, guarded by importPossibilities
      */
-    private final Map<String /* filter */, List<ImportRegistration>> importedServices
-        = new HashMap<String, List<ImportRegistration>>();
+    private final Map<EndpointDescription, Set<String>> filtersByEndpoint
+        = new HashMap<EndpointDescription, Set<String>>();
+
+    /**
+     * Already imported Endpoints and aggregated imports by their matched filter
+     */
+    private final ConcurrentMap<String /* filter */, FilterImports> importedServices
+        = new ConcurrentHashMap<String, FilterImports>();
+
+    /**
+     * The imports of each filter by the references of their import registrations
+     */
+    private final ConcurrentMap<ImportReference, FilterImports> importsByReference
+        = new ConcurrentHashMap<ImportReference, FilterImports>();
+
+    /**
+     * The policy of aggregated imports, or null if they are disabled
+     */
+    private volatile LoadBalancingPolicy aggregationPolicy;
+
+    /**
+     * Guards the aggregated imports, and is held while they register and get services
+     */
+    private final Object aggregationLock = new Object();
+
+    /**
+     * Aggregated imports by interface name, across all filters, guarded by aggregationLock
+     */
+    private final Map<String, AggregatedImport> aggregates = new HashMap<String, AggregatedImport>();
 
     public TopologyManagerImport(BundleContext bc, SimpleServiceTracker<RemoteServiceAdmin> rsaTracker) {
         bctx = bc;
@@ -100,26 +188,81 @@ public class TopologyManagerImport implements EndpointListener, RemoteServiceAdm
             }
 
             public void modified(ServiceReference<RemoteServiceAdmin> reference, RemoteServiceAdmin rsa) {
+                // e.g. its supported intents changed, so retry the imports it could not handle so far
+                triggerImportsForRemoteServiceAdmin(rsa);
             }
 
             public void removed(ServiceReference<RemoteServiceAdmin> reference, RemoteServiceAdmin rsa) {
                 // the RSA's imports will be closed by its shutdown, so nothing to do here
             }
         });
-        endpointListenerManager = new EndpointListenerManager(bctx, this);
-        execService = new ThreadPoolExecutor(5, 10, 50, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+        execService = new ScheduledThreadPoolExecutor(5);
+        execService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        endpointListenerManager = new EndpointListenerManager(bctx, this, execService);
         listenerHook = new ListenerHookImpl(bc, this);
     }
 
+    /**
+     * Enables or disables aggregated imports. If enabled, a single service spreading calls over
+     * all imported endpoints is registered for each imported interface, in addition to the
+     * individual imports.
+     *
+     * @param policy the load balancing policy, or null to disable aggregated imports
+     */
+    public void setAggregationPolicy(LoadBalancingPolicy policy) {
+        this.aggregationPolicy = policy;
+    }
+
+    /**
+     * Sets whether all available endpoints of an import interest are imported, or only the best
+     * ranked one.
+     */
+    public void setImportAllAvailable(boolean importAllAvailable) {
+        this.importAllAvailable = importAllAvailable;
+    }
+
+    /**
+     * Sets the rankings choosing the endpoint to import when not all available endpoints are imported.
+     * Endpoints are compared by the first ranking, then by the following ones if they are ranked equal.
+     * Without rankings, the first available endpoint is imported.
+     *
+     * @param rankings the rankings in order of precedence
+     */
+    public void setEndpointRankings(List<EndpointRanking> rankings) {
+        endpointRankings.clear();
+        endpointRankings.addAll(rankings);
+    }
+
+    /**
+     * Sets the interval at which imported endpoints are replaced by better ranked ones.
+     * Takes effect on {@link #start()}.
+     *
+     * @param seconds the interval, or 0 to only choose the endpoint when the import is made
+     */
+    public void setReevaluationInterval(long seconds) {
+        this.reevaluationInterval = seconds;
+    }
+
     public void start() {
         bctx.registerService(RemoteServiceAdminListener.class.getName(), this, null);
         bctx.registerService(ListenerHook.class.getName(), listenerHook, null);
         endpointListenerManager.start();
+        if (!importAllAvailable && !endpointRankings.isEmpty() && reevaluationInterval > 0) {
+            reevaluation = execService.scheduleWithFixedDelay(new Runnable() {
+                public void run() {
+                    triggerAllImports();
+                }
+            }, reevaluationInterval, reevaluationInterval, TimeUnit.SECONDS);
+        }
     }
 
     public void stop() {
+        if (reevaluation != null) {
+            reevaluation.cancel(false);
+        }
         endpointListenerManager.stop();
         execService.shutdown();
+        closeAggregatedImports();
         // this is called from Activator.stop(), which implicitly unregisters our registered services
     }
 
@@ -139,13 +282,22 @@ public class TopologyManagerImport implements EndpointListener, RemoteServiceAdm
         if (importInterestsCounter.remove(filter) == 0) {
             LOG.debug("last reference to import interest is gone -> removing interest filter: {}", filter);
             endpointListenerManager.reduceScope(filter);
-            synchronized (importedServices) {
-                List<ImportRegistration> irs = importedServices.remove(filter);
-                if (irs != null) {
+            FilterImports imports = importedServices.remove(filter);
+            if (imports != null) {
+                List<ImportRegistration> irs;
+                synchronized (imports) {
+                    imports.setClosed();
+                    irs = new ArrayList<ImportRegistration>(imports.getRegistrations().values());
+                    imports.clear();
                     for (ImportRegistration ir : irs) {
-                        ir.close();
+                        importsByReference.remove(ir.getImportReference());
                     }
                 }
+                // release the aggregated imports' use of the removed services before closing them
+                updateAggregatedImports();
+                for (ImportRegistration ir : irs) {
+                    ir.close();
+                }
             }
         }
     }
@@ -157,85 +309,166 @@ public class TopologyManagerImport implements EndpointListener, RemoteServiceAdm
         }
         LOG.debug("importable service added for filter {}, endpoint {}", filter, endpoint);
         addImportPossibility(endpoint, filter);
-        triggerImport(filter);
+        triggerImport(filter, false);
     }
 
     public void endpointRemoved(EndpointDescription endpoint, String filter) {
         LOG.debug("EndpointRemoved {}", endpoint);
-        removeImportPossibility(endpoint, filter);
-        triggerImport(filter);
+        // without a filter, the endpoint is removed from all filters it was matched by
+        for (String removedFrom : removeImportPossibility(endpoint, filter)) {
+            // dead endpoints are dropped right away rather than waiting for the debounce delay
+            triggerImport(removedFrom, true);
+        }
     }
 
     private void addImportPossibility(EndpointDescription endpoint, String filter) {
         synchronized (importPossibilities) {
-            List<EndpointDescription> endpoints = importPossibilities.get(filter);
+            Set<EndpointDescription> endpoints = importPossibilities.get(filter);
             if (endpoints == null) {
-                endpoints = new ArrayList<EndpointDescription>();
+                endpoints = new LinkedHashSet<EndpointDescription>();
                 importPossibilities.put(filter, endpoints);
             }
-            // prevent adding the same endpoint multiple times, which can happen sometimes,
-            // and which causes imports to remain available even when services are actually down
-            if (!endpoints.contains(endpoint)) {
-                endpoints.add(endpoint);
+            // the same endpoint may be added multiple times, which must not cause
+            // imports to remain available when services are actually down
+            if (endpoints.add(endpoint)) {
+                Set<String> filters = filtersByEndpoint.get(endpoint);
+                if (filters == null) {
+                    filters = new HashSet<String>();
+                    filtersByEndpoint.put(endpoint, filters);
+                }
+                filters.add(filter);
             }
         }
     }
 
-    private void removeImportPossibility(EndpointDescription endpoint, String filter) {
+    /**
+     * Removes the given endpoint from the import possibilities of the given filter,
+     * or of all filters if none is given.
+     *
+     * @return the filters the endpoint was removed from
+     */
+    private Collection<String> removeImportPossibility(EndpointDescription endpoint, String filter) {
         synchronized (importPossibilities) {
-            List<EndpointDescription> endpoints = importPossibilities.get(filter);
-            if (endpoints != null) {
+            Set<String> filters = filtersByEndpoint.get(endpoint);
+            if (filters == null || (filter != null && !filters.contains(filter))) {
+                return Collections.emptySet();
+            }
+            Collection<String> removedFrom = filter == null
+                ? new ArrayList<String>(filters) : Collections.singleton(filter);
+            for (String f : removedFrom) {
+                Set<EndpointDescription> endpoints = importPossibilities.get(f);
                 endpoints.remove(endpoint);
                 if (endpoints.isEmpty()) {
-                    importPossibilities.remove(filter);
+                    importPossibilities.remove(f);
                 }
+                filters.remove(f);
+            }
+            if (filters.isEmpty()) {
+                filtersByEndpoint.remove(endpoint);
             }
+            return removedFrom;
         }
     }
 
     public void triggerImportsForRemoteServiceAdmin(RemoteServiceAdmin rsa) {
         LOG.debug("New RemoteServiceAdmin {} detected, trying to import services with it", rsa);
+        triggerAllImports();
+    }
+
+    private void triggerAllImports() {
         synchronized (importPossibilities) {
             for (String filter : importPossibilities.keySet()) {
-                triggerImport(filter);
+                triggerImport(filter, false);
             }
         }
     }
 
-    private void triggerImport(final String filter) {
+    /**
+     * Marks the imports of the given filter for reconciliation. Triggers for a filter which
+     * is already pending are merged into a single pass.
+     *
+     * @param filter the import filter
+     * @param immediate true if the pass should not wait for the debounce delay
+     */
+    private void triggerImport(final String filter, boolean immediate) {
+        if (!pendingFilters.add(filter) && !immediate) {
+            return; // already pending
+        }
         LOG.debug("Import of a service for filter {} was queued", filter);
 
-        execService.execute(new Runnable() {
+        execService.schedule(new Runnable() {
             public void run() {
+                if (!pendingFilters.remove(filter)) {
+                    return; // already handled by an earlier pass
+                }
                 try {
-                    unexportNotAvailableServices(filter);
-                    importServices(filter);
+                    FilterImports imports = getFilterImports(filter);
+                    if (imports == null) {
+                        LOG.debug("Import interest for filter {} is gone, skipping its import", filter);
+                        return;
+                    }
+                    synchronized (imports.getPassLock()) {
+                        unexportNotAvailableServices(filter, imports);
+                        importServices(filter, imports);
+                    }
                 } catch (Exception e) {
                     LOG.error(e.getMessage(), e);
                 }
                 // Notify EndpointListeners? NO!
             }
-        });
+        }, immediate ? 0 : IMPORT_DELAY, TimeUnit.MILLISECONDS);
     }
 
-    private void unexportNotAvailableServices(String filter) {
-        synchronized (importedServices) {
-            List<ImportRegistration> importRegistrations = importedServices.get(filter);
-            if (importRegistrations != null) {
-                // iterate over a copy
-                for (ImportRegistration ir : new ArrayList<ImportRegistration>(importRegistrations)) {
-                    EndpointDescription endpoint = ir.getImportReference().getImportedEndpoint();
-                    if (!isImportPossibilityAvailable(endpoint, filter)) {
-                        removeImport(ir, null); // also unexports the service
-                    }
+    /**
+     * Returns the imports of the given filter, creating them if the filter's interest exists.
+     *
+     * @return the imports, or null if the filter's interest was removed
+     */
+    private FilterImports getFilterImports(String filter) {
+        FilterImports imports = importedServices.get(filter);
+        if (imports == null) {
+            if (importInterestsCounter.get(filter) == 0) {
+                return null;
+            }
+            FilterImports created = new FilterImports(filter);
+            imports = importedServices.putIfAbsent(filter, created);
+            if (imports == null) {
+                imports = created;
+                // the interest may have been removed before the imports were added, in which case
+                // the removal did not find them
+                if (importInterestsCounter.get(filter) == 0 && importedServices.remove(filter, created)) {
+                    return null;
                 }
             }
         }
+        return imports;
+    }
+
+    private void unexportNotAvailableServices(String filter, FilterImports imports) {
+        List<ImportRegistration> removed = new ArrayList<ImportRegistration>();
+        synchronized (imports) {
+            List<EndpointDescription> imported
+                = new ArrayList<EndpointDescription>(imports.getRegistrations().keySet());
+            for (EndpointDescription endpoint : imported) {
+                if (!isImportPossibilityAvailable(endpoint, filter)) {
+                    ImportRegistration ir = imports.remove(endpoint);
+                    importsByReference.remove(ir.getImportReference());
+                    removed.add(ir);
+                }
+            }
+        }
+        if (!removed.isEmpty()) {
+            // release the aggregated imports' use of the removed services before closing them
+            updateAggregatedImports();
+        }
+        for (ImportRegistration ir : removed) {
+            ir.close(); // also unexports the service
+        }
     }
 
     private boolean isImportPossibilityAvailable(EndpointDescription endpoint, String filter) {
         synchronized (importPossibilities) {
-            List<EndpointDescription> endpoints = importPossibilities.get(filter);
+            Set<EndpointDescription> endpoints = importPossibilities.get(filter);
             return endpoints != null && endpoints.contains(endpoint);
         }
     }
@@ -243,47 +476,292 @@ public class TopologyManagerImport implements EndpointListener, RemoteServiceAdm
     // return a copy to prevent sync issues
     private List<EndpointDescription> getImportPossibilitiesCopy(String filter) {
         synchronized (importPossibilities) {
-            List<EndpointDescription> possibilities = importPossibilities.get(filter);
+            Set<EndpointDescription> possibilities = importPossibilities.get(filter);
             return possibilities == null
                 ? Collections.<EndpointDescription>emptyList()
                 : new ArrayList<EndpointDescription>(possibilities);
         }
     }
 
-    private void importServices(String filter) {
-        synchronized (importedServices) {
-            List<ImportRegistration> importRegistrations = importedServices.get(filter);
+    /**
+     * Imports the not yet imported endpoints of the given filter. The imports are done without
+     * holding the filter's state lock, in parallel. If not all available services are imported,
+     * only the best ranked endpoint is imported instead.
+     * Must be called while holding the filter's pass lock.
+     */
+    private void importServices(String filter, FilterImports imports) {
+        if (!importAllAvailable) {
+            importBestService(filter, imports);
+            return;
+        }
+        List<EndpointDescription> endpoints = new ArrayList<EndpointDescription>();
+        synchronized (imports) {
             for (EndpointDescription endpoint : getImportPossibilitiesCopy(filter)) {
-                // TODO but optional: if the service is already imported and the endpoint is still
-                // in the list of possible imports check if a "better" endpoint is now in the list
-                if (!alreadyImported(endpoint, importRegistrations)) {
-                    // service not imported yet -> import it now
-                    ImportRegistration ir = importService(endpoint);
-                    if (ir != null) {
-                        // import was successful
-                        if (importRegistrations == null) {
-                            importRegistrations = new ArrayList<ImportRegistration>();
-                            importedServices.put(filter, importRegistrations);
-                        }
-                        importRegistrations.add(ir);
-                        if (!importAllAvailable) {
-                            return;
-                        }
+                if (!imports.getRegistrations().containsKey(endpoint)) {
+                    endpoints.add(endpoint);
+                }
+            }
+        }
+        if (endpoints.isEmpty()) {
+            return;
+        }
+        Map<EndpointDescription, ImportRegistration> added = importServices(endpoints);
+        Collection<ImportRegistration> rejected = Collections.emptyList();
+        synchronized (imports) {
+            if (imports.isClosed()) {
+                // the interest was removed while importing
+                rejected = added.values();
+            } else {
+                addImports(imports, added);
+            }
+        }
+        updateAggregatedImports();
+        for (ImportRegistration ir : rejected) {
+            ir.close();
+        }
+    }
+
+    /**
+     * Imports the best ranked endpoint of the given filter, or replaces the imported endpoint if
+     * a better ranked one is available. Must be called while holding the filter's pass lock.
+     */
+    private void importBestService(String filter, FilterImports imports) {
+        EndpointDescription current;
+        synchronized (imports) {
+            Iterator<EndpointDescription> it = imports.getRegistrations().keySet().iterator();
+            current = it.hasNext() ? it.next() : null;
+        }
+        List<EndpointDescription> candidates = new ArrayList<EndpointDescription>(getImportPossibilitiesCopy(filter));
+        candidates.remove(current);
+        if (candidates.isEmpty() || (current != null && endpointRankings.isEmpty())) {
+            return;
+        }
+        final Map<EndpointDescription, long[]> ranks = new HashMap<EndpointDescription, long[]>();
+        for (EndpointDescription endpoint : candidates) {
+            ranks.put(endpoint, rank(endpoint));
+        }
+        if (current != null) {
+            // only switch to strictly better endpoints, so equally ranked ones don't cause churn
+            long[] currentRank = rank(current);
+            for (Iterator<EndpointDescription> it = candidates.iterator(); it.hasNext();) {
+                if (compareRanks(ranks.get(it.next()), currentRank) >= 0) {
+                    it.remove();
+                }
+            }
+        }
+        Collections.sort(candidates, new Comparator<EndpointDescription>() {
+            public int compare(EndpointDescription e1, EndpointDescription e2) {
+                return compareRanks(ranks.get(e1), ranks.get(e2));
+            }
+        });
+        Map<EndpointDescription, ImportRegistration> added = importFirstService(candidates);
+        if (added.isEmpty()) {
+            return;
+        }
+        Collection<ImportRegistration> rejected = Collections.emptyList();
+        ImportRegistration replaced = null;
+        synchronized (imports) {
+            if (imports.isClosed()) {
+                rejected = added.values();
+            } else {
+                replaced = current == null ? null : imports.remove(current);
+                if (replaced != null) {
+                    importsByReference.remove(replaced.getImportReference());
+                }
+                addImports(imports, added);
+            }
+        }
+        // release the aggregated imports' use of the replaced service before closing it
+        updateAggregatedImports();
+        for (ImportRegistration ir : rejected) {
+            ir.close();
+        }
+        if (replaced != null) {
+            LOG.info("Replaced import of {} by better ranked {}",
+                     current.getId(), added.keySet().iterator().next().getId());
+            replaced.close();
+        }
+    }
+
+    private long[] rank(EndpointDescription endpoint) {
+        long[] rank = new long[endpointRankings.size()];
+        int i = 0;
+        for (EndpointRanking ranking : endpointRankings) {
+            if (i == rank.length) {
+                break; // the rankings were changed concurrently
+            }
+            rank[i++] = ranking.rank(endpoint);
+        }
+        return rank;
+    }
+
+    private static int compareRanks(long[] r1, long[] r2) {
+        for (int i = 0; i < Math.min(r1.length, r2.length); i++) {
+            if (r1[i] != r2[i]) {
+                return r1[i] < r2[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    // must be called while holding the lock on the filter's imports
+    private void addImports(FilterImports imports, Map<EndpointDescription, ImportRegistration> added) {
+        for (Map.Entry<EndpointDescription, ImportRegistration> entry : added.entrySet()) {
+            imports.add(entry.getKey(), entry.getValue());
+            importsByReference.put(entry.getValue().getImportReference(), imports);
+        }
+    }
+
+    private Map<EndpointDescription, ImportRegistration> importFirstService(List<EndpointDescription> endpoints) {
+        for (EndpointDescription endpoint : endpoints) {
+            ImportRegistration ir = importService(endpoint);
+            if (ir != null) {
+                return Collections.singletonMap(endpoint, ir);
+            }
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Imports the given endpoints in parallel. Imports not yet picked up by another thread
+     * are run by the calling thread, so waiting for them can never starve the executor.
+     */
+    private Map<EndpointDescription, ImportRegistration> importServices(List<EndpointDescription> endpoints) {
+        List<FutureTask<ImportRegistration>> tasks = new ArrayList<FutureTask<ImportRegistration>>();
+        for (final EndpointDescription endpoint : endpoints) {
+            FutureTask<ImportRegistration> task = new FutureTask<ImportRegistration>(
+                new Callable<ImportRegistration>() {
+                    public ImportRegistration call() {
+                        return importService(endpoint);
                     }
+                });
+            tasks.add(task);
+            if (tasks.size() > 1) {
+                try {
+                    execService.execute(task);
+                } catch (RejectedExecutionException e) {
+                    // shutting down, run by the calling thread below
+                }
+            }
+        }
+        Map<EndpointDescription, ImportRegistration> irs = new LinkedHashMap<EndpointDescription, ImportRegistration>();
+        for (FutureTask<ImportRegistration> task : tasks) {
+            task.run(); // no-op if already run or running elsewhere
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                ImportRegistration ir = tasks.get(i).get();
+                if (ir != null) {
+                    irs.put(endpoints.get(i), ir);
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOG.error("import failed", e.getCause());
             }
         }
+        return irs;
     }
 
-    private boolean alreadyImported(EndpointDescription endpoint, List<ImportRegistration> importRegistrations) {
-        if (importRegistrations != null) {
-            for (ImportRegistration ir : importRegistrations) {
-                if (endpoint.equals(ir.getImportReference().getImportedEndpoint())) {
-                    return true;
+    /**
+     * Brings the aggregated imports in line with the imported services of all filters. Services
+     * imported for the same interface by several filters are spread over by a single aggregate.
+     * <p>
+     * Aggregated imports register and get services, which calls out to other bundles, so this
+     * must not be called while holding the lock on a filter's imports. Updates are serialized by
+     * the aggregation lock instead, which only guards the aggregates.
+     */
+    private void updateAggregatedImports() {
+        LoadBalancingPolicy policy = aggregationPolicy;
+        if (policy == null) {
+            return;
+        }
+        synchronized (aggregationLock) {
+            Map<String, Set<ServiceReference<?>>> refsByInterface = new HashMap<String, Set<ServiceReference<?>>>();
+            for (FilterImports imports : importedServices.values()) {
+                addImportedServicesByInterface(imports, refsByInterface);
+            }
+            for (Iterator<AggregatedImport> it = aggregates.values().iterator(); it.hasNext();) {
+                AggregatedImport aggregate = it.next();
+                if (!refsByInterface.containsKey(aggregate.getInterfaceName())) {
+                    it.remove();
+                    aggregate.close();
+                }
+            }
+            for (Map.Entry<String, Set<ServiceReference<?>>> entry : refsByInterface.entrySet()) {
+                AggregatedImport aggregate = aggregates.get(entry.getKey());
+                if (aggregate == null) {
+                    aggregate = new AggregatedImport(bctx, entry.getKey(), policy);
+                    aggregates.put(entry.getKey(), aggregate);
                 }
+                aggregate.update(new ArrayList<ServiceReference<?>>(entry.getValue()));
             }
         }
-        return false;
+    }
+
+    /**
+     * Adds the imported services of the given filter by each of their interfaces the filter
+     * requests, or none if the filter's interest is gone.
+     */
+    private static void addImportedServicesByInterface(FilterImports imports,
+                                                       Map<String, Set<ServiceReference<?>>> refsByInterface) {
+        Filter filter;
+        try {
+            filter = FrameworkUtil.createFilter(imports.getFilter());
+        } catch (InvalidSyntaxException e) {
+            filter = null; // aggregate all interfaces
+        }
+        synchronized (imports) {
+            if (imports.isClosed()) {
+                return;
+            }
+            for (ImportRegistration ir : imports.getRegistrations().values()) {
+                ImportReference iref = ir.getImportReference();
+                ServiceReference<?> ref = iref == null ? null : iref.getImportedService();
+                EndpointDescription endpoint = iref == null ? null : iref.getImportedEndpoint();
+                if (ref == null || endpoint == null) {
+                    continue;
+                }
+                for (String interfaceName : getRequestedInterfaces(filter, endpoint)) {
+                    Set<ServiceReference<?>> refs = refsByInterface.get(interfaceName);
+                    if (refs == null) {
+                        refs = new LinkedHashSet<ServiceReference<?>>();
+                        refsByInterface.put(interfaceName, refs);
+                    }
+                    refs.add(ref);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the interfaces of the given endpoint the filter matches it by. Endpoints may export
+     * several interfaces, any of which may be the requested one. If the filter does not select
+     * by interface, all interfaces are returned.
+     */
+    private static List<String> getRequestedInterfaces(Filter filter, EndpointDescription endpoint) {
+        List<String> interfaces = endpoint.getInterfaces();
+        if (filter == null || interfaces.size() <= 1) {
+            return interfaces;
+        }
+        Map<String, Object> props = new HashMap<String, Object>(endpoint.getProperties());
+        List<String> requested = new ArrayList<String>();
+        for (String interfaceName : interfaces) {
+            props.put(Constants.OBJECTCLASS, new String[] {interfaceName});
+            if (filter.matches(props)) {
+                requested.add(interfaceName);
+            }
+        }
+        return requested.isEmpty() ? interfaces : requested;
+    }
+
+    private void closeAggregatedImports() {
+        synchronized (aggregationLock) {
+            for (AggregatedImport aggregate : aggregates.values()) {
+                aggregate.close();
+            }
+            aggregates.clear();
+        }
     }
 
     /**
@@ -308,46 +786,34 @@ public class TopologyManagerImport implements EndpointListener, RemoteServiceAdm
     }
 
     /**
-     * Remove and close (unexport) the given import. The import is specified either
-     * by its ImportRegistration or by its ImportReference (only one of them must
-     * be specified).
-     * <p>
-     * If this method is called from within iterations on the underlying data structure,
-     * the iterations must be made on copies of the structures rather than the original
-     * references in order to prevent ConcurrentModificationExceptions.
+     * Remove and close (unexport) the given import.
      *
-     * @param reg the import registration to remove
      * @param ref the import reference to remove
      */
-    private void removeImport(ImportRegistration reg, ImportReference ref) {
+    private void removeImport(ImportReference ref) {
+        FilterImports imports = ref == null ? null : importsByReference.remove(ref);
+        if (imports == null) {
+            return; // not imported by us, or already removed
+        }
+        ImportRegistration removed;
+        synchronized (imports) {
+            removed = imports.remove(ref);
+        }
+        if (removed != null) {
+            // release the aggregated imports' use of the removed service before closing it
+            updateAggregatedImports();
+        }
         // this method may be called recursively by calling ImportRegistration.close()
-        // and receiving a RemoteServiceAdminEvent for its unregistration, which results
-        // in a ConcurrentModificationException. We avoid this by closing the registrations
-        // only after data structure manipulation is done, and being re-entrant.
-        synchronized (importedServices) {
-            List<ImportRegistration> removed = new ArrayList<ImportRegistration>();
-            for (Iterator<List<ImportRegistration>> it1 = importedServices.values().iterator(); it1.hasNext();) {
-                Collection<ImportRegistration> irs = it1.next();
-                for (Iterator<ImportRegistration> it2 = irs.iterator(); it2.hasNext();) {
-                    ImportRegistration ir = it2.next();
-                    if (ir.equals(reg) || ir.getImportReference().equals(ref)) {
-                        removed.add(ir);
-                        it2.remove();
-                    }
-                }
-                if (irs.isEmpty()) {
-                    it1.remove();
-                }
-            }
-            for (ImportRegistration ir : removed) {
-                ir.close();
-            }
+        // and receiving a RemoteServiceAdminEvent for its unregistration, which finds
+        // the registration already removed from the index
+        if (removed != null) {
+            removed.close();
         }
     }
 
     public void remoteAdminEvent(RemoteServiceAdminEvent event) {
         if (event.getType() == RemoteServiceAdminEvent.IMPORT_UNREGISTRATION) {
-            removeImport(null, event.getImportReference());
+            removeImport(event.getImportReference());
         }
     }
 }
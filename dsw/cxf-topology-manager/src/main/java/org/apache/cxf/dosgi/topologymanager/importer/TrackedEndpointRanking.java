@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import org.apache.cxf.dosgi.topologymanager.ranking.EndpointRanking;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * A ranking provided by other bundles as an {@link EndpointRanking} service with a given name.
+ * <p>
+ * The best ranked service of that name is used. While there is none, all endpoints are ranked
+ * equal, so the choice is left to the rankings of lower precedence.
+ */
+public class TrackedEndpointRanking implements EndpointRanking {
+
+    static final long NONE = 0;
+
+    private final ServiceTracker<EndpointRanking, EndpointRanking> tracker;
+
+    /**
+     * @param bc the context to track the services with
+     * @param name the name of the ranking
+     * @throws InvalidSyntaxException if the name cannot be used in a filter
+     */
+    public TrackedEndpointRanking(BundleContext bc, String name) throws InvalidSyntaxException {
+        String filter = "(&(" + Constants.OBJECTCLASS + "=" + EndpointRanking.class.getName() + ")"
+            + "(" + NAME + "=" + name + "))";
+        tracker = new ServiceTracker<EndpointRanking, EndpointRanking>(bc, FrameworkUtil.createFilter(filter), null);
+    }
+
+    public void open() {
+        tracker.open();
+    }
+
+    public void close() {
+        tracker.close();
+    }
+
+    public long rank(EndpointDescription endpoint) {
+        EndpointRanking ranking = tracker.getService();
+        return ranking == null ? NONE : ranking.rank(endpoint);
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.ranking;
+
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+/**
+ * Ranks the endpoints available for an import interest, so that the best one is imported
+ * when not all available endpoints are imported.
+ * <p>
+ * Besides the built-in rankings, other bundles can provide rankings by registering this interface
+ * as a service with the {@link #NAME} property. The name is then listed in the endpoint ranking
+ * framework property of the topology manager, which chooses the rankings and their precedence.
+ */
+public interface EndpointRanking {
+
+    /**
+     * The service property with the name of a ranking provided as a service.
+     */
+    String NAME = "org.apache.cxf.dosgi.endpoint.ranking.name";
+
+    /**
+     * Returns the rank of an endpoint. Endpoints with a lower rank are preferred.
+     *
+     * @param endpoint the endpoint
+     * @return the rank
+     */
+    long rank(EndpointDescription endpoint);
+}
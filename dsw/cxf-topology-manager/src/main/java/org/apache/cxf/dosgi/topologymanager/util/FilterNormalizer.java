@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Brings LDAP filters into a canonical form, so that filters which differ only in the order of
+ * their operands, in whitespace or in the nesting of conjunctions and disjunctions are equal strings.
+ * <p>
+ * Whitespace around filter components and attribute names is removed, nested <code>&amp;</code> and
+ * <code>|</code> operands are flattened into their parent, operands are sorted and duplicates removed,
+ * single-operand conjunctions and disjunctions are unwrapped and double negations are dropped.
+ * Attribute values, including their escapes, are kept as written.
+ */
+public final class FilterNormalizer {
+
+    private final String filter;
+    private int pos;
+
+    private FilterNormalizer(String filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the canonical form of the given filter.
+     *
+     * @param filter an LDAP filter
+     * @return the canonical filter, or the given filter if it cannot be parsed
+     */
+    public static String normalize(String filter) {
+        if (filter == null) {
+            return null;
+        }
+        FilterNormalizer normalizer = new FilterNormalizer(filter);
+        try {
+            String normalized = normalizer.parseFilter();
+            normalizer.skipWhitespace();
+            return normalizer.pos == filter.length() ? normalized : filter;
+        } catch (IndexOutOfBoundsException e) {
+            return filter;
+        } catch (IllegalArgumentException e) {
+            return filter;
+        }
+    }
+
+    private String parseFilter() {
+        skipWhitespace();
+        expect('(');
+        skipWhitespace();
+        char op = filter.charAt(pos);
+        String result;
+        if (op == '&' || op == '|') {
+            pos++;
+            result = parseComposite(op);
+        } else if (op == '!') {
+            pos++;
+            String operand = parseFilter();
+            // (!(!x)) is x
+            result = operand.startsWith("(!") ? operand.substring(2, operand.length() - 1) : "(!" + operand + ")";
+        } else {
+            result = parseItem();
+        }
+        skipWhitespace();
+        expect(')');
+        return result;
+    }
+
+    private String parseComposite(char op) {
+        SortedSet<String> operands = new TreeSet<String>();
+        skipWhitespace();
+        while (filter.charAt(pos) == '(') {
+            String operand = parseFilter();
+            if (operand.charAt(1) == op) {
+                // (&(a)(&(b)(c))) is (&(a)(b)(c))
+                operands.addAll(splitOperands(operand.substring(2, operand.length() - 1)));
+            } else {
+                operands.add(operand);
+            }
+            skipWhitespace();
+        }
+        if (operands.isEmpty()) {
+            throw new IllegalArgumentException("missing operands");
+        }
+        if (operands.size() == 1) {
+            return operands.first();
+        }
+        StringBuilder sb = new StringBuilder().append('(').append(op);
+        for (String operand : operands) {
+            sb.append(operand);
+        }
+        return sb.append(')').toString();
+    }
+
+    private String parseItem() {
+        int start = pos;
+        while ("=~<>()".indexOf(filter.charAt(pos)) < 0) {
+            pos++;
+        }
+        String attr = filter.substring(start, pos).trim();
+        if (attr.length() == 0) {
+            throw new IllegalArgumentException("missing attribute");
+        }
+        String op;
+        char c = filter.charAt(pos);
+        if (c == '=') {
+            op = "=";
+        } else if (filter.charAt(pos + 1) == '=' && c != '(' && c != ')') {
+            op = c + "=";
+        } else {
+            throw new IllegalArgumentException("invalid operator");
+        }
+        pos += op.length();
+        start = pos;
+        while (filter.charAt(pos) != ')') {
+            if (filter.charAt(pos) == '(') {
+                throw new IllegalArgumentException("unescaped parenthesis");
+            }
+            pos += filter.charAt(pos) == '\\' ? 2 : 1;
+        }
+        return "(" + attr + op + filter.substring(start, pos) + ")";
+    }
+
+    /**
+     * Splits the operands of a normalized composite filter.
+     */
+    private static List<String> splitOperands(String operands) {
+        List<String> result = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < operands.length(); i++) {
+            char c = operands.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                result.add(operands.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        return result;
+    }
+
+    private void expect(char c) {
+        if (filter.charAt(pos++) != c) {
+            throw new IllegalArgumentException("expected " + c);
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < filter.length() && Character.isWhitespace(filter.charAt(pos))) {
+            pos++;
+        }
+    }
+}
@@ -50,6 +50,17 @@ public class ReferenceCounter<K> {
         }
     }
 
+    /**
+     * Returns the reference count for the given key.
+     *
+     * @param key a key
+     * @return the reference count, or 0 if the key has no existing count
+     */
+    public int get(K key) {
+        Integer count = counts.get(key);
+        return count == null ? 0 : count;
+    }
+
     /**
      * Decreases the reference count for the given key,
      * and removes it if it reaches 0.
@@ -20,6 +20,7 @@ package org.apache.cxf.dosgi.topologymanager.exporter;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -93,6 +94,155 @@ public class EndpointListenerNotifierTest {
         EasyMock.verify(epl);
     }
 
+    @Test
+    public void testScopeIsCompiledOncePerTrackedListener() throws InvalidSyntaxException {
+        IMocksControl c = EasyMock.createNiceControl();
+
+        BundleContext bc = c.createMock(BundleContext.class);
+        ServiceReference sref = c.createMock(ServiceReference.class);
+        EndpointListener epl = EasyMock.createMock(EndpointListener.class);
+        EndpointDescription endpoint = c.createMock(EndpointDescription.class);
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("objectClass", new String[] {"myClass"});
+        EasyMock.expect(endpoint.getProperties()).andReturn(props).anyTimes();
+
+        EasyMock.expect(bc.createFilter((String)EasyMock.anyObject())).andAnswer(new IAnswer<Filter>() {
+            public Filter answer() throws Throwable {
+                return FrameworkUtil.createFilter((String)EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+        EasyMock.expect(bc.getServiceReferences((String)EasyMock.isNull(), (String)EasyMock.anyObject()))
+            .andReturn(new ServiceReference[] {sref}).anyTimes();
+        EasyMock.expect(bc.getService(sref)).andReturn(epl).once();
+        // the scope is read once when the listener is added, and not for each notification
+        EasyMock.expect(sref.getProperty(EndpointListener.ENDPOINT_LISTENER_SCOPE))
+            .andReturn("(objectClass=myClass)").once();
+
+        epl.endpointAdded(endpoint, "(objectClass=myClass)");
+        EasyMock.expectLastCall().times(2);
+
+        EndpointRepository exportRepository = c.createMock(EndpointRepository.class);
+        EasyMock.expect(exportRepository.getAllEndpoints())
+            .andReturn(new ArrayList<EndpointDescription>()).anyTimes();
+
+        c.replay();
+        EasyMock.replay(epl);
+
+        EndpointListenerNotifier notifier = new EndpointListenerNotifier(bc, exportRepository);
+        notifier.start();
+        notifier.notifyListeners(true, Collections.singletonList(endpoint));
+        notifier.notifyListeners(true, Collections.singletonList(endpoint));
+        notifier.stop();
+
+        c.verify();
+        EasyMock.verify(epl);
+    }
+
+    @Test
+    public void testListenersSharingScopeAreNotifiedByIndex() throws InvalidSyntaxException {
+        IMocksControl c = EasyMock.createNiceControl();
+
+        BundleContext bc = c.createMock(BundleContext.class);
+        EndpointListener shared1 = EasyMock.createMock(EndpointListener.class);
+        EndpointListener shared2 = EasyMock.createMock(EndpointListener.class);
+        EndpointListener other = EasyMock.createMock(EndpointListener.class);
+        EndpointListener unindexed = EasyMock.createMock(EndpointListener.class);
+        ServiceReference[] refs = new ServiceReference[] {
+            createListenerReference(c, bc, shared1, "(objectClass=myClass)"),
+            createListenerReference(c, bc, shared2, "(objectClass=myClass)"),
+            createListenerReference(c, bc, other, "(objectClass=otherClass)"),
+            createListenerReference(c, bc, unindexed, "(objectClass=my*)")
+        };
+        expectFilters(bc);
+        EasyMock.expect(bc.getServiceReferences((String)EasyMock.isNull(), (String)EasyMock.anyObject()))
+            .andReturn(refs).anyTimes();
+
+        EndpointDescription endpoint = c.createMock(EndpointDescription.class);
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("objectClass", new String[] {"myClass"});
+        EasyMock.expect(endpoint.getProperties()).andReturn(props).anyTimes();
+
+        // each listener sharing the matching scope is notified once, the other listener not at all
+        shared1.endpointAdded(endpoint, "(objectClass=myClass)");
+        EasyMock.expectLastCall().once();
+        shared2.endpointAdded(endpoint, "(objectClass=myClass)");
+        EasyMock.expectLastCall().once();
+        unindexed.endpointAdded(endpoint, "(objectClass=my*)");
+        EasyMock.expectLastCall().once();
+
+        EndpointRepository exportRepository = c.createMock(EndpointRepository.class);
+        EasyMock.expect(exportRepository.getAllEndpoints())
+            .andReturn(new ArrayList<EndpointDescription>()).anyTimes();
+
+        c.replay();
+        EasyMock.replay(shared1, shared2, other, unindexed);
+
+        EndpointListenerNotifier notifier = new EndpointListenerNotifier(bc, exportRepository);
+        notifier.start();
+        notifier.notifyListeners(true, Collections.singletonList(endpoint));
+        notifier.stop();
+
+        c.verify();
+        EasyMock.verify(shared1, shared2, other, unindexed);
+    }
+
+    @Test
+    public void testIndexedScopeMatchesNonStringValues() throws InvalidSyntaxException {
+        IMocksControl c = EasyMock.createNiceControl();
+
+        BundleContext bc = c.createMock(BundleContext.class);
+        EndpointListener matching = EasyMock.createMock(EndpointListener.class);
+        EndpointListener notMatching = EasyMock.createMock(EndpointListener.class);
+        ServiceReference[] refs = new ServiceReference[] {
+            createListenerReference(c, bc, matching, "(port=8080)"),
+            createListenerReference(c, bc, notMatching, "(port=9090)")
+        };
+        expectFilters(bc);
+        EasyMock.expect(bc.getServiceReferences((String)EasyMock.isNull(), (String)EasyMock.anyObject()))
+            .andReturn(refs).anyTimes();
+
+        // the scopes are indexed by the string value, which the integer property must still match
+        EndpointDescription endpoint = c.createMock(EndpointDescription.class);
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("objectClass", new String[] {"myClass"});
+        props.put("port", 8080);
+        EasyMock.expect(endpoint.getProperties()).andReturn(props).anyTimes();
+
+        matching.endpointRemoved(endpoint, "(port=8080)");
+        EasyMock.expectLastCall().once();
+
+        EndpointRepository exportRepository = c.createMock(EndpointRepository.class);
+        EasyMock.expect(exportRepository.getAllEndpoints())
+            .andReturn(new ArrayList<EndpointDescription>()).anyTimes();
+
+        c.replay();
+        EasyMock.replay(matching, notMatching);
+
+        EndpointListenerNotifier notifier = new EndpointListenerNotifier(bc, exportRepository);
+        notifier.start();
+        notifier.notifyListeners(false, Collections.singletonList(endpoint));
+        notifier.stop();
+
+        c.verify();
+        EasyMock.verify(matching, notMatching);
+    }
+
+    private static ServiceReference createListenerReference(IMocksControl c, BundleContext bc,
+                                                            EndpointListener listener, String scope) {
+        ServiceReference sref = c.createMock(ServiceReference.class);
+        EasyMock.expect(sref.getProperty(EndpointListener.ENDPOINT_LISTENER_SCOPE)).andReturn(scope).anyTimes();
+        EasyMock.expect(bc.getService(sref)).andReturn(listener).anyTimes();
+        return sref;
+    }
+
+    private static void expectFilters(BundleContext bc) throws InvalidSyntaxException {
+        EasyMock.expect(bc.createFilter((String)EasyMock.anyObject())).andAnswer(new IAnswer<Filter>() {
+            public Filter answer() throws Throwable {
+                return FrameworkUtil.createFilter((String)EasyMock.getCurrentArguments()[0]);
+            }
+        }).anyTimes();
+    }
+
     @Test
     public void testNormalizeScopeForSingleString() {
         try {
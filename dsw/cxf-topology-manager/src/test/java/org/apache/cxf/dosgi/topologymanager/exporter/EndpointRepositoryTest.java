@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.exporter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.easymock.classextension.EasyMock;
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+import org.osgi.service.remoteserviceadmin.RemoteServiceAdmin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointRepositoryTest {
+
+    @Test
+    public void testSnapshots() {
+        ServiceReference sref = EasyMock.createNiceMock(ServiceReference.class);
+        RemoteServiceAdmin rsa1 = EasyMock.createMock(RemoteServiceAdmin.class);
+        RemoteServiceAdmin rsa2 = EasyMock.createMock(RemoteServiceAdmin.class);
+        EasyMock.replay(sref);
+        EndpointDescription ep1 = createEndpoint("ep1");
+        EndpointDescription ep2 = createEndpoint("ep2");
+
+        EndpointRepository repo = new EndpointRepository();
+        repo.addEndpoints(sref, rsa1, Arrays.asList(ep1));
+        Collection<EndpointDescription> before = repo.getAllEndpoints();
+        long version = repo.getVersion();
+        assertSame("unchanged exports share their endpoints", before, repo.getAllEndpoints());
+
+        repo.addEndpoints(sref, rsa2, Arrays.asList(ep2));
+        assertTrue(repo.getVersion() > version);
+        assertEquals(Arrays.asList(ep1), before);
+        assertEquals(Arrays.asList(ep1, ep2), repo.getAllEndpoints());
+        assertTrue(repo.isAlreadyExportedForRsa(sref, rsa2));
+
+        assertEquals(Arrays.asList(ep2), repo.removeRemoteServiceAdmin(rsa2));
+        assertEquals(Collections.singleton(sref), repo.getServicesToBeExportedFor(rsa2));
+        assertEquals(Arrays.asList(ep1), repo.removeService(sref));
+        assertFalse(repo.isAlreadyExportedForRsa(sref, rsa1));
+        assertTrue(repo.getAllEndpoints().isEmpty());
+    }
+
+    @Test
+    public void testRemoveServiceNeverExported() {
+        ServiceReference sref = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.replay(sref);
+        EndpointRepository repo = new EndpointRepository();
+        long version = repo.getVersion();
+        assertTrue(repo.removeService(sref).isEmpty());
+        assertEquals(version, repo.getVersion());
+    }
+
+    private static EndpointDescription createEndpoint(String id) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(RemoteConstants.ENDPOINT_ID, id);
+        props.put(Constants.OBJECTCLASS, new String[] {"abc"});
+        props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "cxf");
+        return new EndpointDescription(props);
+    }
+}
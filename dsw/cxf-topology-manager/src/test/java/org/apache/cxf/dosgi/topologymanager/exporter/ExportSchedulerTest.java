@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.exporter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.classextension.EasyMock;
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExportSchedulerTest {
+
+    @Test
+    public void testTriggersAreCoalesced() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<ServiceReference> exported = Collections.synchronizedList(new ArrayList<ServiceReference>());
+        ExportScheduler scheduler = new ExportScheduler(new ExportScheduler.ExportAction() {
+            public void export(ServiceReference sref) {
+                exported.add(sref);
+                started.countDown();
+                await(release);
+            }
+        });
+        scheduler.setThreads(1);
+        ServiceReference sref1 = EasyMock.createMock(ServiceReference.class);
+        ServiceReference sref2 = EasyMock.createMock(ServiceReference.class);
+
+        scheduler.schedule(sref1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        // sref1 is running, so it runs once more afterwards; sref2 is pending
+        scheduler.schedule(sref1);
+        scheduler.schedule(sref1);
+        scheduler.schedule(sref2);
+        scheduler.schedule(sref2);
+        assertEquals(1, scheduler.getQueueDepth());
+        assertEquals(2, scheduler.getCoalescedCount());
+
+        release.countDown();
+        waitForExecuted(scheduler, 3);
+        assertEquals(3, exported.size());
+        assertEquals(2, Collections.frequency(exported, sref1));
+        assertEquals(1, Collections.frequency(exported, sref2));
+        assertEquals(0, scheduler.getQueueDepth());
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void testCancelDiscardsPendingExport() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<ServiceReference> exported = Collections.synchronizedList(new ArrayList<ServiceReference>());
+        ExportScheduler scheduler = new ExportScheduler(new ExportScheduler.ExportAction() {
+            public void export(ServiceReference sref) {
+                exported.add(sref);
+                await(release);
+            }
+        });
+        scheduler.setThreads(1);
+        ServiceReference sref1 = EasyMock.createMock(ServiceReference.class);
+        ServiceReference sref2 = EasyMock.createMock(ServiceReference.class);
+
+        scheduler.schedule(sref1);
+        scheduler.schedule(sref2);
+        scheduler.cancel(sref2);
+        release.countDown();
+        waitForExecuted(scheduler, 1);
+        scheduler.shutdown();
+        assertEquals(Collections.singletonList(sref1), exported);
+        assertEquals(1, scheduler.getExecutedCount());
+    }
+
+    @Test
+    public void testSetThreads() {
+        ExportScheduler scheduler = new ExportScheduler(null);
+        assertEquals(ExportScheduler.DEFAULT_THREADS, scheduler.getThreads());
+        scheduler.setThreads(12);
+        assertEquals(12, scheduler.getThreads());
+        scheduler.setThreads(2);
+        assertEquals(2, scheduler.getThreads());
+        scheduler.setThreads(0);
+        assertEquals(1, scheduler.getThreads());
+        scheduler.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitForExecuted(ExportScheduler scheduler, int count) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (scheduler.getExecutedCount() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        // give a wrongly rescheduled export the chance to show up
+        Thread.sleep(50);
+    }
+}
@@ -18,12 +18,14 @@
  */
 package org.apache.cxf.dosgi.topologymanager.exporter;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTracker;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTrackerListener;
+import org.easymock.Capture;
 import org.easymock.IAnswer;
 import org.easymock.classextension.EasyMock;
 import org.easymock.classextension.IMocksControl;
@@ -31,6 +33,7 @@ import org.junit.Test;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
@@ -90,8 +93,167 @@ public class ExportServiceTest {
         c.verify();
     }
 
-    private void simulateUserServicePublished(BundleContext bctx, final ServiceReference sref) {
-        bctx.addServiceListener((ServiceListener)EasyMock.anyObject());
+    @Test
+    public void testServiceNoLongerRequestingExportIsUnexported() throws Exception {
+        IMocksControl c = EasyMock.createControl();
+
+        BundleContext bctx = c.createMock(BundleContext.class);
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        EndpointListenerNotifier mockEpListenerNotifier = c.createMock(EndpointListenerNotifier.class);
+        mockEpListenerNotifier.start();
+        EasyMock.expectLastCall().once();
+
+        final ServiceReference sref = createUserServiceBundle(c);
+
+        EasyMock
+            .expect(bctx.getServiceReferences(EasyMock.<String> anyObject(), EasyMock.<String> anyObject()))
+            .andReturn(null).atLeastOnce();
+
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = createSingleRsaTracker(c, rsa);
+
+        EndpointDescription endpoint = createEndpoint(c);
+        ExportRegistration exportRegistration = createExportRegistration(c, endpoint);
+
+        Capture<ServiceListener> listener = new Capture<ServiceListener>();
+        bctx.addServiceListener(EasyMock.capture(listener),
+                                EasyMock.eq("(" + RemoteConstants.SERVICE_EXPORTED_INTERFACES + "=*)"));
+        EasyMock.expectLastCall().once();
+        EasyMock.expect(rsa.exportService(EasyMock.same(sref), (Map<String, Object>)EasyMock.anyObject()))
+            .andReturn(Collections.singletonList(exportRegistration)).once();
+        mockEpListenerNotifier.notifyListeners(true, Collections.singletonList(endpoint));
+        EasyMock.expectLastCall().once();
+
+        // the service is still registered, so its export has to be closed by the topology manager
+        exportRegistration.close();
+        EasyMock.expectLastCall().once();
+        mockEpListenerNotifier.notifyListeners(false, Collections.singletonList(endpoint));
+        EasyMock.expectLastCall().once();
+
+        c.replay();
+
+        TopologyManagerExport topManager = new TopologyManagerExport(bctx, rsaTracker, mockEpListenerNotifier) {
+            @Override
+            protected void triggerExport(ServiceReference sref) {
+                doExportService(sref);
+            }
+        };
+        topManager.start();
+        listener.getValue().serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, sref));
+        listener.getValue().serviceChanged(new ServiceEvent(ServiceEvent.MODIFIED_ENDMATCH, sref));
+        c.verify();
+    }
+
+    @Test
+    public void testFailedExportRegistrationIsClosedOnlyOnce() throws Exception {
+        IMocksControl c = EasyMock.createControl();
+
+        BundleContext bctx = c.createMock(BundleContext.class);
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        EndpointListenerNotifier mockEpListenerNotifier = c.createMock(EndpointListenerNotifier.class);
+        mockEpListenerNotifier.start();
+        EasyMock.expectLastCall().once();
+
+        final ServiceReference sref = createUserServiceBundle(c);
+
+        EasyMock
+            .expect(bctx.getServiceReferences(EasyMock.<String> anyObject(), EasyMock.<String> anyObject()))
+            .andReturn(null).atLeastOnce();
+
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = createSingleRsaTracker(c, rsa);
+
+        ExportRegistration failedRegistration = c.createMock(ExportRegistration.class);
+        EasyMock.expect(failedRegistration.getException()).andReturn(new RuntimeException()).anyTimes();
+        failedRegistration.close();
+        EasyMock.expectLastCall().once();
+        EndpointDescription endpoint = createEndpoint(c);
+        ExportRegistration exportRegistration = createExportRegistration(c, endpoint);
+
+        Capture<ServiceListener> listener = new Capture<ServiceListener>();
+        bctx.addServiceListener(EasyMock.capture(listener),
+                                EasyMock.eq("(" + RemoteConstants.SERVICE_EXPORTED_INTERFACES + "=*)"));
+        EasyMock.expectLastCall().once();
+        EasyMock.expect(rsa.exportService(EasyMock.same(sref), (Map<String, Object>)EasyMock.anyObject()))
+            .andReturn(Arrays.asList(failedRegistration, exportRegistration)).once();
+        mockEpListenerNotifier.notifyListeners(true, Collections.singletonList(endpoint));
+        EasyMock.expectLastCall().once();
+
+        // only the successful registration is still open when the service stops requesting export
+        exportRegistration.close();
+        EasyMock.expectLastCall().once();
+        mockEpListenerNotifier.notifyListeners(false, Collections.singletonList(endpoint));
+        EasyMock.expectLastCall().once();
+
+        c.replay();
+
+        TopologyManagerExport topManager = new TopologyManagerExport(bctx, rsaTracker, mockEpListenerNotifier) {
+            @Override
+            protected void triggerExport(ServiceReference sref) {
+                doExportService(sref);
+            }
+        };
+        topManager.start();
+        listener.getValue().serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, sref));
+        listener.getValue().serviceChanged(new ServiceEvent(ServiceEvent.MODIFIED_ENDMATCH, sref));
+        c.verify();
+    }
+
+    @Test
+    public void testFailedExportRetriedWhenRemoteServiceAdminChanges() throws Exception {
+        IMocksControl c = EasyMock.createControl();
+
+        BundleContext bctx = c.createMock(BundleContext.class);
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        EndpointListenerNotifier mockEpListenerNotifier = c.createMock(EndpointListenerNotifier.class);
+        mockEpListenerNotifier.start();
+        EasyMock.expectLastCall().once();
+
+        final ServiceReference sref = createUserServiceBundle(c);
+
+        EasyMock
+            .expect(bctx.getServiceReferences(EasyMock.<String> anyObject(), EasyMock.<String> anyObject()))
+            .andReturn(null).atLeastOnce();
+
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        Capture<SimpleServiceTrackerListener<RemoteServiceAdmin>> rsaListener
+            = new Capture<SimpleServiceTrackerListener<RemoteServiceAdmin>>();
+        rsaTracker.addListener(EasyMock.capture(rsaListener));
+        EasyMock.expectLastCall().once();
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Collections.singletonList(rsa)).times(2);
+
+        // e.g. no HttpService is available yet
+        ExportRegistration failedRegistration = c.createMock(ExportRegistration.class);
+        EasyMock.expect(failedRegistration.getException()).andReturn(new RuntimeException()).anyTimes();
+        failedRegistration.close();
+        EasyMock.expectLastCall().once();
+        EndpointDescription endpoint = createEndpoint(c);
+        ExportRegistration exportRegistration = createExportRegistration(c, endpoint);
+
+        simulateUserServicePublished(bctx, sref);
+        EasyMock.expect(rsa.exportService(EasyMock.same(sref), (Map<String, Object>)EasyMock.anyObject()))
+            .andReturn(Collections.singletonList(failedRegistration)).once();
+        EasyMock.expect(rsa.exportService(EasyMock.same(sref), (Map<String, Object>)EasyMock.anyObject()))
+            .andReturn(Collections.singletonList(exportRegistration)).once();
+        mockEpListenerNotifier.notifyListeners(true, Collections.singletonList(endpoint));
+        EasyMock.expectLastCall().once();
+
+        c.replay();
+
+        TopologyManagerExport topManager = new TopologyManagerExport(bctx, rsaTracker, mockEpListenerNotifier) {
+            @Override
+            protected void triggerExport(ServiceReference sref) {
+                doExportService(sref);
+            }
+        };
+        topManager.start();
+        // the RemoteServiceAdmin re-publishes its properties once it can handle the export
+        rsaListener.getValue().modified(null, rsa);
+        c.verify();
+    }
+
+    private void simulateUserServicePublished(BundleContext bctx, final ServiceReference sref)
+        throws InvalidSyntaxException {
+        bctx.addServiceListener((ServiceListener)EasyMock.anyObject(),
+                                EasyMock.eq("(" + RemoteConstants.SERVICE_EXPORTED_INTERFACES + "=*)"));
         EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
             public Object answer() throws Throwable {
                 System.out.println("Simulating publishing the user service");
@@ -18,8 +18,11 @@
  */
 package org.apache.cxf.dosgi.topologymanager.importer;
 
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import org.easymock.IAnswer;
 import org.easymock.classextension.EasyMock;
@@ -109,4 +112,74 @@ public class EndpointListenerImplTest extends Assert {
         EasyMock.verify(tm);
         EasyMock.verify(sr);
     }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testScopeChangesArePublishedTogether() throws InterruptedException {
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        TopologyManagerImport tm = EasyMock.createNiceMock(TopologyManagerImport.class);
+        ServiceRegistration sr = EasyMock.createMock(ServiceRegistration.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(sr).once();
+        sr.setProperties((Dictionary)EasyMock.anyObject());
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                Dictionary props = (Dictionary)EasyMock.getCurrentArguments()[0];
+                assertEquals(3, ((List<?>)props.get(EndpointListener.ENDPOINT_LISTENER_SCOPE)).size());
+                return null;
+            }
+        }).once();
+        sr.unregister();
+        EasyMock.replay(bc, tm, sr);
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        EndpointListenerManager endpointListener = new EndpointListenerManager(bc, tm, executor);
+        endpointListener.start();
+        endpointListener.extendScope("(a=b)");
+        endpointListener.extendScope("(c=d)");
+        endpointListener.extendScope("(e=f)");
+        endpointListener.flush();
+        // the scheduled update finds nothing left to publish
+        Thread.sleep(EndpointListenerManager.SCOPE_UPDATE_DELAY * 3);
+        endpointListener.stop();
+        executor.shutdown();
+
+        EasyMock.verify(bc, sr);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testScopeReductionIsPublishedImmediately() {
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        TopologyManagerImport tm = EasyMock.createNiceMock(TopologyManagerImport.class);
+        ServiceRegistration sr = EasyMock.createNiceMock(ServiceRegistration.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(sr).once();
+        final List<List<?>> published = new CopyOnWriteArrayList<List<?>>();
+        sr.setProperties((Dictionary)EasyMock.anyObject());
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                Dictionary props = (Dictionary)EasyMock.getCurrentArguments()[0];
+                published.add((List<?>)props.get(EndpointListener.ENDPOINT_LISTENER_SCOPE));
+                return null;
+            }
+        }).atLeastOnce();
+        EasyMock.replay(bc, tm, sr);
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        EndpointListenerManager endpointListener = new EndpointListenerManager(bc, tm, executor);
+        endpointListener.start();
+        endpointListener.extendScope("(a=b)");
+        endpointListener.flush();
+        endpointListener.extendScope("(c=d)");
+        endpointListener.reduceScope("(a=b)");
+        // published without waiting for the scheduled update, including the pending extension
+        assertEquals(Collections.singletonList("(c=d)"), published.get(published.size() - 1));
+        endpointListener.stop();
+        executor.shutdown();
+
+        EasyMock.verify(bc);
+    }
 }
@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyRankingTest {
+
+    @Test
+    public void testRankIsMeasuredInBackground() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final List<String> measured = new ArrayList<String>();
+        LatencyRanking ranking = new LatencyRanking(60000, new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }) {
+            @Override
+            long measure(String host, int port) {
+                measured.add(host + ":" + port);
+                return 42;
+            }
+        };
+        EndpointDescription endpoint = endpoint("http://host1:9090/my");
+
+        // the rank does not wait for the measurement, which is only scheduled once
+        assertEquals(LatencyRanking.UNKNOWN, ranking.rank(endpoint));
+        assertEquals(LatencyRanking.UNKNOWN, ranking.rank(endpoint("http://host1:9090/other")));
+        assertEquals(1, tasks.size());
+        assertEquals(0, measured.size());
+
+        tasks.remove(0).run();
+        assertEquals(2, ranking.rank(endpoint));
+        assertEquals(2, ranking.rank(endpoint("http://host1:9090/other")));
+        assertEquals(0, tasks.size());
+        assertEquals(1, measured.size());
+
+        assertEquals(LatencyRanking.UNKNOWN, ranking.rank(endpoint("http://host2/my")));
+        tasks.remove(0).run();
+        assertEquals("host2:80", measured.get(1));
+        assertEquals(LatencyRanking.UNKNOWN, ranking.rank(endpoint("my-endpoint")));
+        assertEquals(0, tasks.size());
+    }
+
+    @Test
+    public void testExpiredMeasurementIsUsedUntilRenewed() throws InterruptedException {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final long[] latency = new long[] {10};
+        LatencyRanking ranking = new LatencyRanking(0, new Executor() {
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }) {
+            @Override
+            long measure(String host, int port) {
+                return latency[0];
+            }
+        };
+        EndpointDescription endpoint = endpoint("http://host1:9090/my");
+        ranking.rank(endpoint);
+        tasks.remove(0).run();
+        Thread.sleep(2); // expire the measurement
+
+        latency[0] = 200;
+        assertEquals(2, ranking.rank(endpoint));
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(3, ranking.rank(endpoint));
+    }
+
+    @Test
+    public void testRankIsOrderOfMagnitude() {
+        assertEquals(1, LatencyRanking.toRank(0));
+        assertEquals(1, LatencyRanking.toRank(9));
+        // jitter between endpoints of similar latency does not make one of them better
+        assertEquals(3, LatencyRanking.toRank(420));
+        assertEquals(3, LatencyRanking.toRank(421));
+        assertEquals(4, LatencyRanking.toRank(1000));
+        assertEquals(19, LatencyRanking.toRank(Long.MAX_VALUE - 1));
+        assertEquals(LatencyRanking.UNREACHABLE, LatencyRanking.toRank(LatencyRanking.UNREACHABLE));
+    }
+
+    private static EndpointDescription endpoint(String id) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Constants.OBJECTCLASS, new String[] {"my.Service"});
+        props.put(RemoteConstants.ENDPOINT_ID, id);
+        props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "my.config");
+        return new EndpointDescription(props);
+    }
+}
@@ -29,6 +29,7 @@ import org.osgi.framework.FrameworkUtil;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.service.remoteserviceadmin.RemoteConstants;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -53,4 +54,16 @@ public class ListenerHookImplTest {
         m.put(RemoteConstants.ENDPOINT_FRAMEWORK_UUID, "MyUUID");
         assertFalse(filter + " filter must NOT match as uuid is the local one", f.match(m));
     }
+
+    @Test
+    public void testEquivalentFiltersShareInterest() {
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(bc.getProperty(EasyMock.eq("org.osgi.framework.uuid"))).andReturn("MyUUID").anyTimes();
+        EasyMock.replay(bc);
+
+        String filter = ListenerHookImpl.extendFilter("(&(objectClass=a.B)(zone=eu))", bc);
+        assertEquals(filter, ListenerHookImpl.extendFilter("( & (zone=eu) (objectClass=a.B) )", bc));
+        assertEquals(filter, ListenerHookImpl.extendFilter("(&(objectClass=a.B)(&(zone=eu)))", bc));
+        assertFalse(filter.equals(ListenerHookImpl.extendFilter("(&(objectClass=a.B)(zone=us))", bc)));
+    }
 }
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.osgi.framework.ServiceException;
+
+public class LoadBalancerTest {
+
+    @Test
+    public void testRoundRobin() throws Exception {
+        LoadBalancer lb = new LoadBalancer(LoadBalancingPolicy.ROUND_ROBIN);
+        Callable<String> proxy = createProxy(lb);
+        lb.setTargets(Arrays.asList(new Target("a"), new Target("b"), new Target("c")));
+        String calls = proxy.call() + proxy.call() + proxy.call() + proxy.call();
+        Assert.assertEquals("abca", calls);
+    }
+
+    @Test
+    public void testLeastOutstanding() {
+        LoadBalancer lb = new LoadBalancer(LoadBalancingPolicy.LEAST_OUTSTANDING);
+        Target a = new Target("a");
+        Target b = new Target("b");
+        lb.setTargets(Arrays.asList(a, b));
+        LoadBalancer.Target busy = lb.select();
+        busy.outstanding.incrementAndGet();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNotSame(busy.service, lb.select().service);
+        }
+    }
+
+    @Test
+    public void testLatencyWeightedTriesUnknownFirst() throws Exception {
+        LoadBalancer lb = new LoadBalancer(LoadBalancingPolicy.LATENCY_WEIGHTED);
+        Callable<String> proxy = createProxy(lb);
+        lb.setTargets(Arrays.asList(new Target("a"), new Target("b")));
+        Assert.assertEquals("ab", proxy.call() + proxy.call());
+        String s = proxy.call();
+        Assert.assertTrue("a".equals(s) || "b".equals(s));
+    }
+
+    @Test
+    public void testEjectOnRemoteFailure() throws Exception {
+        LoadBalancer lb = new LoadBalancer(LoadBalancingPolicy.ROUND_ROBIN, 60000);
+        Callable<String> proxy = createProxy(lb);
+        Target a = new Target("a");
+        a.failure = new ServiceException("down", ServiceException.REMOTE);
+        Target b = new Target("b");
+        lb.setTargets(Arrays.asList(a, b));
+        try {
+            proxy.call();
+            Assert.fail("Expected the remote failure");
+        } catch (ServiceException e) {
+            Assert.assertSame(a.failure, e);
+        }
+        Assert.assertEquals(1, lb.getAvailableCount());
+        Assert.assertEquals("bbb", proxy.call() + proxy.call() + proxy.call());
+
+        // the ejection is kept across updates
+        lb.setTargets(Arrays.asList(a, b));
+        Assert.assertEquals(1, lb.getAvailableCount());
+    }
+
+    @Test
+    public void testApplicationExceptionDoesNotEject() throws Exception {
+        LoadBalancer lb = new LoadBalancer(LoadBalancingPolicy.ROUND_ROBIN);
+        Callable<String> proxy = createProxy(lb);
+        Target a = new Target("a");
+        a.failure = new IllegalStateException();
+        lb.setTargets(Arrays.asList(a));
+        try {
+            proxy.call();
+            Assert.fail("Expected the application exception");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(1, lb.getAvailableCount());
+    }
+
+    @Test
+    public void testAllEjectedStillCalled() throws Exception {
+        LoadBalancer lb = new LoadBalancer(LoadBalancingPolicy.ROUND_ROBIN, 60000);
+        Callable<String> proxy = createProxy(lb);
+        Target a = new Target("a");
+        a.failure = new ServiceException("down", ServiceException.REMOTE);
+        lb.setTargets(Arrays.asList(a));
+        for (int i = 0; i < 2; i++) {
+            try {
+                proxy.call();
+                Assert.fail("Expected the remote failure");
+            } catch (ServiceException e) {
+                // expected
+            }
+        }
+        Assert.assertEquals(2, a.calls);
+    }
+
+    @Test(expected = ServiceException.class)
+    public void testNoTargets() throws Exception {
+        createProxy(new LoadBalancer(LoadBalancingPolicy.ROUND_ROBIN)).call();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Callable<String> createProxy(LoadBalancer lb) {
+        return (Callable<String>)Proxy.newProxyInstance(LoadBalancerTest.class.getClassLoader(),
+                                                        new Class[] {Callable.class}, lb);
+    }
+
+    static class Target implements Callable<String> {
+
+        final String name;
+        Exception failure;
+        int calls;
+
+        Target(String name) {
+            this.name = name;
+        }
+
+        public String call() throws Exception {
+            calls++;
+            if (failure != null) {
+                throw failure;
+            }
+            return name;
+        }
+    }
+}
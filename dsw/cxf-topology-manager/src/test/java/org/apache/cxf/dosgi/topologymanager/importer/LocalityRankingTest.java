@@ -0,0 +1,62 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.framework.Constants;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+
+import static org.junit.Assert.assertEquals;
+
+public class LocalityRankingTest {
+
+    @Test
+    public void testRank() {
+        LocalityRanking ranking = new LocalityRanking("uuid1", "host1", "zone1", "rack1");
+        assertEquals(LocalityRanking.SAME_HOST, ranking.rank(endpoint("uuid1", null, null, null)));
+        assertEquals(LocalityRanking.SAME_HOST, ranking.rank(endpoint("uuid2", "host1", "zone2", "rack2")));
+        assertEquals(LocalityRanking.SAME_RACK, ranking.rank(endpoint("uuid2", "host2", "zone1", "rack1")));
+        assertEquals(LocalityRanking.SAME_ZONE, ranking.rank(endpoint("uuid2", "host2", "zone1", "rack2")));
+        // racks are only meaningful within the same zone
+        assertEquals(LocalityRanking.REMOTE, ranking.rank(endpoint("uuid2", "host2", "zone2", "rack1")));
+        assertEquals(LocalityRanking.REMOTE, ranking.rank(endpoint("uuid2", null, null, null)));
+    }
+
+    private static EndpointDescription endpoint(String uuid, String host, String zone, String rack) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Constants.OBJECTCLASS, new String[] {"my.Service"});
+        props.put(RemoteConstants.ENDPOINT_ID, "http://" + host + ":9090/my");
+        props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "my.config");
+        props.put(RemoteConstants.ENDPOINT_FRAMEWORK_UUID, uuid);
+        putIfNotNull(props, LocalityRanking.ENDPOINT_HOST, host);
+        putIfNotNull(props, LocalityRanking.ENDPOINT_ZONE, zone);
+        putIfNotNull(props, LocalityRanking.ENDPOINT_RACK, rack);
+        return new EndpointDescription(props);
+    }
+
+    private static void putIfNotNull(Map<String, Object> props, String key, String value) {
+        if (value != null) {
+            props.put(key, value);
+        }
+    }
+}
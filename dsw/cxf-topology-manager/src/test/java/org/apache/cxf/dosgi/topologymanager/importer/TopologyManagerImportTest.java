@@ -19,23 +19,39 @@
 package org.apache.cxf.dosgi.topologymanager.importer;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.cxf.dosgi.topologymanager.ranking.EndpointRanking;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTracker;
 import org.apache.cxf.dosgi.topologymanager.util.SimpleServiceTrackerListener;
 import org.easymock.IAnswer;
 import org.easymock.IMocksControl;
 import org.easymock.classextension.EasyMock;
 import org.junit.Test;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.ExportReference;
+import org.osgi.service.remoteserviceadmin.ExportRegistration;
 import org.osgi.service.remoteserviceadmin.ImportReference;
 import org.osgi.service.remoteserviceadmin.ImportRegistration;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
 import org.osgi.service.remoteserviceadmin.RemoteServiceAdmin;
+import org.osgi.service.remoteserviceadmin.RemoteServiceAdminEvent;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TopologyManagerImportTest {
@@ -63,6 +79,8 @@ public class TopologyManagerImportTest {
         final ImportRegistration ireg = c.createMock(ImportRegistration.class);
         EasyMock.expect(ireg.getException()).andReturn(null).anyTimes();
         ImportReference iref = c.createMock(ImportReference.class);
+        sreg.setProperties((Dictionary)EasyMock.anyObject());
+        EasyMock.expectLastCall().anyTimes();
 
         rsaTracker.addListener(EasyMock.<SimpleServiceTrackerListener>anyObject());
         EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.asList(rsa)).anyTimes();
@@ -79,6 +97,7 @@ public class TopologyManagerImportTest {
 
         TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
 
+        tm.addServiceInterest("myFilter");
         tm.start();
         // no RSA available yet so no import...
         tm.endpointAdded(endpoint, "myFilter");
@@ -88,4 +107,505 @@ public class TopologyManagerImportTest {
         tm.stop();
         c.verify();
     }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testBurstOfEndpointsIsImportedInOnePass() throws InterruptedException {
+        IMocksControl c = EasyMock.createControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore attempted = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(null).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        rsaTracker.addListener(EasyMock.<SimpleServiceTrackerListener>anyObject());
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.asList(rsa)).anyTimes();
+
+        EndpointDescription[] endpoints = new EndpointDescription[10];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = c.createMock(EndpointDescription.class);
+            // the imports fail, so every further pass would try to import each endpoint again
+            EasyMock.expect(rsa.importService(endpoints[i])).andAnswer(new IAnswer<ImportRegistration>() {
+                public ImportRegistration answer() throws Throwable {
+                    attempted.release();
+                    return null;
+                }
+            }).anyTimes();
+        }
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.addServiceInterest("myFilter");
+        tm.start();
+        for (EndpointDescription endpoint : endpoints) {
+            tm.endpointAdded(endpoint, "myFilter");
+        }
+        assertTrue(attempted.tryAcquire(endpoints.length, 10, TimeUnit.SECONDS));
+        tm.stop();
+        // a second pass would have attempted the imports again
+        assertEquals(0, attempted.availablePermits());
+        c.verify();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testEndpointRemovedFromAllFilters() throws InterruptedException {
+        IMocksControl c = EasyMock.createControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore recorded = new Semaphore(0);
+        final Semaphore closed = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(null).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        rsaTracker.addListener(EasyMock.<SimpleServiceTrackerListener>anyObject());
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.asList(rsa)).anyTimes();
+
+        EndpointDescription endpoint = c.createMock(EndpointDescription.class);
+        for (int i = 0; i < 2; i++) {
+            final ImportRegistration ireg = c.createMock(ImportRegistration.class);
+            ImportReference iref = c.createMock(ImportReference.class);
+            EasyMock.expect(ireg.getException()).andReturn(null).anyTimes();
+            expectRecorded(ireg, iref, recorded);
+            EasyMock.expect(rsa.importService(endpoint)).andReturn(ireg).once();
+            ireg.close();
+            EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+                public Object answer() throws Throwable {
+                    closed.release();
+                    return null;
+                }
+            }).once();
+        }
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.addServiceInterest("filter1");
+        tm.addServiceInterest("filter2");
+        tm.start();
+        tm.endpointAdded(endpoint, "filter1");
+        tm.endpointAdded(endpoint, "filter2");
+        assertTrue(recorded.tryAcquire(2, 10, TimeUnit.SECONDS));
+        tm.endpointRemoved(endpoint, null);
+        assertTrue(closed.tryAcquire(2, 10, TimeUnit.SECONDS));
+        tm.stop();
+        c.verify();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testBetterRankedEndpointReplacesImport() throws InterruptedException {
+        IMocksControl c = EasyMock.createControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore recorded = new Semaphore(0);
+        final Semaphore closed = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(null).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        rsaTracker.addListener(EasyMock.<SimpleServiceTrackerListener>anyObject());
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.asList(rsa)).anyTimes();
+
+        final Map<EndpointDescription, Long> ranks = new HashMap<EndpointDescription, Long>();
+        EndpointDescription far = c.createMock(EndpointDescription.class);
+        EndpointDescription near = c.createMock(EndpointDescription.class);
+        EasyMock.expect(far.getId()).andReturn("far").anyTimes();
+        EasyMock.expect(near.getId()).andReturn("near").anyTimes();
+        ranks.put(far, 2L);
+        ranks.put(near, 1L);
+        for (EndpointDescription endpoint : Arrays.asList(far, near)) {
+            final ImportRegistration ireg = c.createMock(ImportRegistration.class);
+            ImportReference iref = c.createMock(ImportReference.class);
+            EasyMock.expect(ireg.getException()).andReturn(null).anyTimes();
+            expectRecorded(ireg, iref, recorded);
+            EasyMock.expect(rsa.importService(endpoint)).andReturn(ireg).once();
+            if (endpoint == far) {
+                // only the replaced import is closed
+                ireg.close();
+                EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+                    public Object answer() throws Throwable {
+                        closed.release();
+                        return null;
+                    }
+                }).once();
+            }
+        }
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.setImportAllAvailable(false);
+        tm.setEndpointRankings(Collections.<EndpointRanking>singletonList(new EndpointRanking() {
+            public long rank(EndpointDescription endpoint) {
+                return ranks.get(endpoint);
+            }
+        }));
+        tm.addServiceInterest("myFilter");
+        tm.start();
+        tm.endpointAdded(far, "myFilter");
+        assertTrue(recorded.tryAcquire(1, 10, TimeUnit.SECONDS));
+        tm.endpointAdded(near, "myFilter");
+        assertTrue(recorded.tryAcquire(1, 10, TimeUnit.SECONDS));
+        assertTrue(closed.tryAcquire(1, 10, TimeUnit.SECONDS));
+        tm.stop();
+        c.verify();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testFiltersAreImportedConcurrently() throws InterruptedException {
+        IMocksControl c = EasyMock.createControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore recorded = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(null).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        rsaTracker.addListener(EasyMock.<SimpleServiceTrackerListener>anyObject());
+
+        EndpointDescription slow = c.createMock(EndpointDescription.class);
+        EndpointDescription fast = c.createMock(EndpointDescription.class);
+        BlockingRemoteServiceAdmin blocking = new BlockingRemoteServiceAdmin(rsa, slow);
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.<RemoteServiceAdmin>asList(blocking)).anyTimes();
+        ImportRegistration slowReg = c.createMock(ImportRegistration.class);
+        ImportRegistration fastReg = c.createMock(ImportRegistration.class);
+        EasyMock.expect(slowReg.getException()).andReturn(null).anyTimes();
+        EasyMock.expect(fastReg.getException()).andReturn(null).anyTimes();
+        expectRecorded(slowReg, c.createMock(ImportReference.class), recorded);
+        expectRecorded(fastReg, c.createMock(ImportReference.class), recorded);
+        EasyMock.expect(rsa.importService(slow)).andReturn(slowReg).once();
+        EasyMock.expect(rsa.importService(fast)).andReturn(fastReg).once();
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.addServiceInterest("slowFilter");
+        tm.addServiceInterest("fastFilter");
+        tm.start();
+        try {
+            tm.endpointAdded(slow, "slowFilter");
+            assertTrue(blocking.started.tryAcquire(10, TimeUnit.SECONDS));
+            // the pending import of the slow filter does not hold up the other filter
+            tm.endpointAdded(fast, "fastFilter");
+            assertTrue(recorded.tryAcquire(10, TimeUnit.SECONDS));
+        } finally {
+            blocking.release.countDown();
+        }
+        assertTrue(recorded.tryAcquire(10, TimeUnit.SECONDS));
+        tm.stop();
+        c.verify();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testImportFinishedAfterInterestRemovalIsClosed() throws InterruptedException {
+        IMocksControl c = EasyMock.createControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore closed = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(null).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        rsaTracker.addListener(EasyMock.<SimpleServiceTrackerListener>anyObject());
+
+        EndpointDescription endpoint = c.createMock(EndpointDescription.class);
+        ImportRegistration ireg = c.createMock(ImportRegistration.class);
+        EasyMock.expect(ireg.getException()).andReturn(null).anyTimes();
+        EasyMock.expect(rsa.importService(endpoint)).andReturn(ireg).once();
+        BlockingRemoteServiceAdmin blocking = new BlockingRemoteServiceAdmin(rsa, endpoint);
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.<RemoteServiceAdmin>asList(blocking)).anyTimes();
+        // the registration is not recorded, only closed
+        ireg.close();
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                closed.release();
+                return null;
+            }
+        }).once();
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.addServiceInterest("myFilter");
+        tm.start();
+        try {
+            tm.endpointAdded(endpoint, "myFilter");
+            assertTrue(blocking.started.tryAcquire(10, TimeUnit.SECONDS));
+            tm.removeServiceInterest("myFilter");
+        } finally {
+            blocking.release.countDown();
+        }
+        assertTrue(closed.tryAcquire(10, TimeUnit.SECONDS));
+        tm.stop();
+        c.verify();
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testImportUnregistrationDuringPass() throws InterruptedException {
+        IMocksControl c = EasyMock.createControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore recorded = new Semaphore(0);
+        final Semaphore closed = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andReturn(null).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        rsaTracker.addListener(EasyMock.<SimpleServiceTrackerListener>anyObject());
+
+        EndpointDescription first = c.createMock(EndpointDescription.class);
+        EndpointDescription second = c.createMock(EndpointDescription.class);
+        BlockingRemoteServiceAdmin blocking = new BlockingRemoteServiceAdmin(rsa, second);
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.<RemoteServiceAdmin>asList(blocking)).anyTimes();
+        ImportRegistration firstReg = c.createMock(ImportRegistration.class);
+        ImportRegistration secondReg = c.createMock(ImportRegistration.class);
+        ImportReference firstRef = c.createMock(ImportReference.class);
+        EasyMock.expect(firstReg.getException()).andReturn(null).anyTimes();
+        EasyMock.expect(secondReg.getException()).andReturn(null).anyTimes();
+        expectRecorded(firstReg, firstRef, recorded);
+        expectRecorded(secondReg, c.createMock(ImportReference.class), recorded);
+        EasyMock.expect(rsa.importService(first)).andReturn(firstReg).once();
+        EasyMock.expect(rsa.importService(second)).andReturn(secondReg).once();
+        firstReg.close();
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                closed.release();
+                return null;
+            }
+        }).once();
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.addServiceInterest("myFilter");
+        tm.start();
+        try {
+            tm.endpointAdded(first, "myFilter");
+            assertTrue(recorded.tryAcquire(10, TimeUnit.SECONDS));
+            tm.endpointAdded(second, "myFilter");
+            assertTrue(blocking.started.tryAcquire(10, TimeUnit.SECONDS));
+            // the unregistered import is removed without waiting for the pass
+            tm.remoteAdminEvent(new RemoteServiceAdminEvent(RemoteServiceAdminEvent.IMPORT_UNREGISTRATION,
+                                                            EasyMock.createNiceMock(Bundle.class), firstRef, null));
+            assertTrue(closed.tryAcquire(10, TimeUnit.SECONDS));
+        } finally {
+            blocking.release.countDown();
+        }
+        assertTrue(recorded.tryAcquire(10, TimeUnit.SECONDS));
+        tm.stop();
+        c.verify();
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testAggregatedImportOfRequestedInterface() throws InterruptedException {
+        IMocksControl c = EasyMock.createNiceControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore registered = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        final ServiceRegistration sreg = c.createMock(ServiceRegistration.class);
+        final List<Object> registeredNames = new CopyOnWriteArrayList<Object>();
+        IAnswer<ServiceRegistration> register = new IAnswer<ServiceRegistration>() {
+            public ServiceRegistration answer() throws Throwable {
+                registeredNames.add(EasyMock.getCurrentArguments()[0]);
+                if (Runnable.class.getName().equals(EasyMock.getCurrentArguments()[0])) {
+                    registered.release();
+                }
+                return sreg;
+            }
+        };
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andAnswer(register).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.asList(rsa)).anyTimes();
+
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(org.osgi.framework.Constants.OBJECTCLASS,
+                  new String[] {Comparable.class.getName(), Runnable.class.getName()});
+        props.put(RemoteConstants.ENDPOINT_ID, "http://localhost/ep");
+        props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "myConfig");
+        EndpointDescription endpoint = new EndpointDescription(props);
+        ImportRegistration ireg = c.createMock(ImportRegistration.class);
+        ImportReference iref = c.createMock(ImportReference.class);
+        ServiceReference sref = c.createMock(ServiceReference.class);
+        EasyMock.expect(rsa.importService(endpoint)).andReturn(ireg).once();
+        EasyMock.expect(ireg.getImportReference()).andReturn(iref).anyTimes();
+        EasyMock.expect(iref.getImportedEndpoint()).andReturn(endpoint).anyTimes();
+        EasyMock.expect(iref.getImportedService()).andReturn(sref).anyTimes();
+        EasyMock.expect(sref.getPropertyKeys()).andReturn(new String[0]).anyTimes();
+        EasyMock.expect(bc.getService(sref)).andReturn(new Runnable() {
+            public void run() {
+            }
+        }).once();
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.setAggregationPolicy(LoadBalancingPolicy.ROUND_ROBIN);
+        String filter = "(objectClass=" + Runnable.class.getName() + ")";
+        tm.addServiceInterest(filter);
+        tm.start();
+        tm.endpointAdded(endpoint, filter);
+        assertTrue(registered.tryAcquire(10, TimeUnit.SECONDS));
+        // the endpoint's other interface is not requested, so it is not aggregated
+        assertFalse(registeredNames.contains(Comparable.class.getName()));
+        tm.stop();
+        c.verify();
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    @Test
+    public void testOneAggregatedImportPerInterfaceAcrossFilters() throws InterruptedException {
+        IMocksControl c = EasyMock.createNiceControl();
+        c.makeThreadSafe(true);
+
+        final Semaphore registered = new Semaphore(0);
+        final Semaphore updated = new Semaphore(0);
+        BundleContext bc = c.createMock(BundleContext.class);
+        SimpleServiceTracker<RemoteServiceAdmin> rsaTracker = c.createMock(SimpleServiceTracker.class);
+        final ServiceRegistration sreg = c.createMock(ServiceRegistration.class);
+        final ServiceRegistration aggregateReg = c.createMock(ServiceRegistration.class);
+        final List<Object> registeredNames = new CopyOnWriteArrayList<Object>();
+        IAnswer<ServiceRegistration> register = new IAnswer<ServiceRegistration>() {
+            public ServiceRegistration answer() throws Throwable {
+                registeredNames.add(EasyMock.getCurrentArguments()[0]);
+                if (Runnable.class.getName().equals(EasyMock.getCurrentArguments()[0])) {
+                    registered.release();
+                    return aggregateReg;
+                }
+                return sreg;
+            }
+        };
+        EasyMock.expect(bc.registerService((String)EasyMock.anyObject(),
+                                           EasyMock.anyObject(),
+                                           (Dictionary)EasyMock.anyObject())).andAnswer(register).anyTimes();
+        aggregateReg.setProperties((Dictionary)EasyMock.anyObject());
+        EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                updated.release();
+                return null;
+            }
+        }).anyTimes();
+        RemoteServiceAdmin rsa = c.createMock(RemoteServiceAdmin.class);
+        EasyMock.expect(rsaTracker.getAllServices()).andReturn(Arrays.asList(rsa)).anyTimes();
+        EndpointDescription endpoint1 = expectRunnableImport(c, bc, rsa, "http://host1/ep");
+        EndpointDescription endpoint2 = expectRunnableImport(c, bc, rsa, "http://host2/ep");
+        c.replay();
+
+        TopologyManagerImport tm = new TopologyManagerImport(bc, rsaTracker);
+        tm.setAggregationPolicy(LoadBalancingPolicy.ROUND_ROBIN);
+        String filter1 = "(objectClass=" + Runnable.class.getName() + ")";
+        String filter2 = "(&(objectClass=" + Runnable.class.getName() + ")(service.imported=*))";
+        tm.addServiceInterest(filter1);
+        tm.addServiceInterest(filter2);
+        tm.start();
+        tm.endpointAdded(endpoint1, filter1);
+        tm.endpointAdded(endpoint2, filter2);
+        // the import of the second filter joins the aggregate registered for the first one
+        assertTrue(registered.tryAcquire(10, TimeUnit.SECONDS));
+        assertTrue(updated.tryAcquire(10, TimeUnit.SECONDS));
+        assertEquals(1, Collections.frequency(registeredNames, Runnable.class.getName()));
+        tm.stop();
+        c.verify();
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static EndpointDescription expectRunnableImport(IMocksControl c, BundleContext bc,
+                                                            RemoteServiceAdmin rsa, String id) {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(org.osgi.framework.Constants.OBJECTCLASS, new String[] {Runnable.class.getName()});
+        props.put(RemoteConstants.ENDPOINT_ID, id);
+        props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "myConfig");
+        EndpointDescription endpoint = new EndpointDescription(props);
+        ImportRegistration ireg = c.createMock(ImportRegistration.class);
+        ImportReference iref = c.createMock(ImportReference.class);
+        ServiceReference sref = c.createMock(ServiceReference.class);
+        EasyMock.expect(rsa.importService(endpoint)).andReturn(ireg).once();
+        EasyMock.expect(ireg.getImportReference()).andReturn(iref).anyTimes();
+        EasyMock.expect(iref.getImportedEndpoint()).andReturn(endpoint).anyTimes();
+        EasyMock.expect(iref.getImportedService()).andReturn(sref).anyTimes();
+        EasyMock.expect(sref.getPropertyKeys()).andReturn(new String[0]).anyTimes();
+        EasyMock.expect(bc.getService(sref)).andReturn(new Runnable() {
+            public void run() {
+            }
+        }).once();
+        return endpoint;
+    }
+
+    /**
+     * Expects the import reference of the registration to be requested, which a pass first does
+     * when recording the import, and releases a permit when it is.
+     */
+    private static void expectRecorded(ImportRegistration ireg, final ImportReference iref,
+                                       final Semaphore recorded) {
+        IAnswer<ImportReference> answer = new IAnswer<ImportReference>() {
+            private boolean first = true;
+
+            public synchronized ImportReference answer() throws Throwable {
+                if (first) {
+                    first = false;
+                    recorded.release();
+                }
+                return iref;
+            }
+        };
+        EasyMock.expect(ireg.getImportReference()).andAnswer(answer).anyTimes();
+    }
+
+    /**
+     * Delegates to a mocked RemoteServiceAdmin, but blocks the import of one endpoint until released.
+     * It blocks outside the mock, as a thread safe mock control would keep all its mocks waiting.
+     */
+    private static final class BlockingRemoteServiceAdmin implements RemoteServiceAdmin {
+
+        final Semaphore started = new Semaphore(0);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final RemoteServiceAdmin delegate;
+        private final EndpointDescription blocked;
+
+        BlockingRemoteServiceAdmin(RemoteServiceAdmin delegate, EndpointDescription blocked) {
+            this.delegate = delegate;
+            this.blocked = blocked;
+        }
+
+        public ImportRegistration importService(EndpointDescription endpoint) {
+            if (endpoint == blocked) {
+                started.release();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return delegate.importService(endpoint);
+        }
+
+        @SuppressWarnings("rawtypes")
+        public Collection<ExportRegistration> exportService(ServiceReference reference, Map properties) {
+            return delegate.exportService(reference, properties);
+        }
+
+        public Collection<ExportReference> getExportedServices() {
+            return delegate.getExportedServices();
+        }
+
+        public Collection<ImportReference> getImportedEndpoints() {
+            return delegate.getImportedEndpoints();
+        }
+    }
 }
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.importer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.cxf.dosgi.topologymanager.ranking.EndpointRanking;
+import org.easymock.EasyMock;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrackedEndpointRankingTest {
+
+    private static final String FILTER = "(&(objectClass=" + EndpointRanking.class.getName() + ")"
+        + "(" + EndpointRanking.NAME + "=zone))";
+
+    @Test
+    public void testRankingServiceIsUsed() throws Exception {
+        ServiceReference<?> ref = EasyMock.createNiceMock(ServiceReference.class);
+        EasyMock.replay(ref);
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(bc.getServiceReferences((String)null, FILTER))
+            .andReturn(new ServiceReference[] {ref}).once();
+        EasyMock.expect(bc.getService(ref)).andReturn(new EndpointRanking() {
+            public long rank(EndpointDescription endpoint) {
+                return 7;
+            }
+        });
+        EasyMock.replay(bc);
+
+        TrackedEndpointRanking ranking = new TrackedEndpointRanking(bc, "zone");
+        ranking.open();
+        assertEquals(7, ranking.rank(createEndpoint()));
+        ranking.close();
+        EasyMock.verify(bc);
+    }
+
+    @Test
+    public void testEndpointsRankEqualWithoutService() throws Exception {
+        BundleContext bc = EasyMock.createNiceMock(BundleContext.class);
+        EasyMock.expect(bc.getServiceReferences((String)null, FILTER)).andReturn(null).once();
+        EasyMock.replay(bc);
+
+        TrackedEndpointRanking ranking = new TrackedEndpointRanking(bc, "zone");
+        ranking.open();
+        assertEquals(TrackedEndpointRanking.NONE, ranking.rank(createEndpoint()));
+        ranking.close();
+        EasyMock.verify(bc);
+    }
+
+    private static EndpointDescription createEndpoint() {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put(Constants.OBJECTCLASS, new String[] {"my.Service"});
+        props.put(RemoteConstants.ENDPOINT_ID, "http://host1:9090/my");
+        props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "my.config");
+        return new EndpointDescription(props);
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.cxf.dosgi.topologymanager.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FilterNormalizerTest {
+
+    @Test
+    public void testNormalize() {
+        assertEquals("(&(a=1)(b=2))", FilterNormalizer.normalize("(&(b=2)(a=1))"));
+        assertEquals("(&(a=1)(b=2))", FilterNormalizer.normalize(" ( & ( a =1) (b=2) ) "));
+        assertEquals("(&(a=1)(b=2)(c=3))", FilterNormalizer.normalize("(&(c=3)(&(b=2)(a=1)))"));
+        assertEquals("(|(&(b=2)(c=3))(a=1))", FilterNormalizer.normalize("(|(&(c=3)(b=2))(a=1))"));
+        assertEquals("(a=1)", FilterNormalizer.normalize("(&(a=1)(a=1))"));
+        assertEquals("(a=1)", FilterNormalizer.normalize("(!(!(a=1)))"));
+        assertEquals("(&(!(a=1))(b>=2)(c~=x)(d=*)(e=f*g))",
+                     FilterNormalizer.normalize("(&(e=f*g)(d=*)(c~=x)(b>=2)(!(a=1)))"));
+    }
+
+    @Test
+    public void testValuesAreKept() {
+        assertEquals("(a=x\\)y )", FilterNormalizer.normalize("(a=x\\)y )"));
+        assertEquals("(&(a=\\(1)(b=2))", FilterNormalizer.normalize("(&(b=2)(a=\\(1))"));
+    }
+
+    @Test
+    public void testInvalidFilterIsReturnedUnchanged() {
+        assertEquals("(&(a=1)", FilterNormalizer.normalize("(&(a=1)"));
+        assertEquals("(a=1))", FilterNormalizer.normalize("(a=1))"));
+        assertEquals("(&null(b=2))", FilterNormalizer.normalize("(&null(b=2))"));
+    }
+}
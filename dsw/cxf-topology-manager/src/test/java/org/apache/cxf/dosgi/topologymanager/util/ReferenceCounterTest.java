@@ -32,11 +32,13 @@ public class ReferenceCounterTest {
         assertEquals(1, counter.add("a"));
         assertEquals(2, counter.add("a"));
         assertEquals(3, counter.add("a"));
+        assertEquals(3, counter.get("a"));
         assertEquals(2, counter.remove("a"));
         assertEquals(1, counter.remove("a"));
         assertEquals(2, counter.add("a"));
         assertEquals(1, counter.remove("a"));
         assertEquals(0, counter.remove("a"));
+        assertEquals(0, counter.get("a"));
         assertEquals(-1, counter.remove("a"));
     }
 }